@@ -0,0 +1,119 @@
+/**
+ * Biomedical Abbreviation Miner (BioAB Miner)
+ *
+ */
+package es.imim.ibi.bioab.exec;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import es.imim.ibi.bioab.exec.util.Histogram;
+
+/**
+ * Metrics of the extraction pipeline: latency and timeouts of each stage and size of the analyzed documents.
+ *
+ * @author Francesco Ronzano
+ *
+ */
+public class BioABmetrics {
+
+	/**
+	 * Stages of the extraction pipeline
+	 */
+	public enum Stage {
+		GROBID,
+		SENTENCES,
+		FREELING,
+		MATE,
+		SPOTTER,
+		CLASSIFIER,
+		LONG_FORM
+	}
+
+	public static final double[] documentCharsBounds = new double[] {1000d, 5000d, 10000d, 25000d, 50000d, 100000d, 250000d, 500000d, 1000000d};
+	public static final double[] PDFbytesBounds = new double[] {100000d, 500000d, 1000000d, 2500000d, 5000000d, 10000000d, 25000000d, 50000000d, 100000000d};
+
+	private static final Map<Stage, Histogram> stageLatencyMap = new EnumMap<Stage, Histogram>(Stage.class);
+	static {
+		for(Stage stage : Stage.values()) {
+			stageLatencyMap.put(stage, new Histogram(Histogram.latencySecondsBounds));
+		}
+	}
+
+	private static final Map<Stage, LongAdder> stageTimeoutMap = new EnumMap<Stage, LongAdder>(Stage.class);
+	static {
+		for(Stage stage : Stage.values()) {
+			stageTimeoutMap.put(stage, new LongAdder());
+		}
+	}
+
+	private static final Histogram documentChars = new Histogram(documentCharsBounds);
+	private static final Histogram PDFbytes = new Histogram(PDFbytesBounds);
+
+	/**
+	 * Record the execution time of a stage
+	 *
+	 * @param stage
+	 * @param startNanos value of System.nanoTime() at the beginning of the stage
+	 */
+	public static void recordStage(Stage stage, long startNanos) {
+		stageLatencyMap.get(stage).observeNanos(System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * Record a document whose deadline expired during the stage (see {@link Deadline})
+	 *
+	 * @param stage
+	 */
+	public static void recordTimeout(Stage stage) {
+		stageTimeoutMap.get(stage).increment();
+	}
+
+	public static void recordDocumentChars(long chars) {
+		documentChars.observe(chars);
+	}
+
+	public static void recordPDFbytes(long bytes) {
+		PDFbytes.observe(bytes);
+	}
+
+	/**
+	 * Latency of the stage, in seconds
+	 *
+	 * @param stage
+	 * @return
+	 */
+	public static Histogram getStageLatency(Stage stage) {
+		return stageLatencyMap.get(stage);
+	}
+
+	/**
+	 * Number of documents whose deadline expired during the stage
+	 *
+	 * @param stage
+	 * @return
+	 */
+	public static long getTimeoutCount(Stage stage) {
+		return stageTimeoutMap.get(stage).sum();
+	}
+
+	/**
+	 * Number of chars of the documents analyzed by {@link BioABminer#extractNLPfeatures(gate.Document)}
+	 *
+	 * @return
+	 */
+	public static Histogram getDocumentChars() {
+		return documentChars;
+	}
+
+	/**
+	 * Size in bytes of the PDFs loaded by {@link es.imim.ibi.bioab.exec.pdf.GROBIDloader}
+	 *
+	 * @return
+	 */
+	public static Histogram getPDFbytes() {
+		return PDFbytes;
+	}
+
+}
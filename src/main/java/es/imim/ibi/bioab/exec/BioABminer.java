@@ -57,7 +57,6 @@ public class BioABminer {
 	private static BioABabbrvTypeClassifier BioABabbrvTypeClassifier_Resource = null;
 	private static Object BioABabbrvTypeClassifierSynch = new Object();
 	private static BioABabbrvLFspotter BioABabbrvLFspotter_Resource = null;
-	private static Object BioABabbrvLFspotterSynch = new Object();
 
 	private static boolean isInitializedALL = false;
 	private static boolean isInitializedNLP = false;
@@ -362,71 +361,114 @@ public class BioABminer {
 	 * @return
 	 */
 	public static Document extractNLPfeatures(Document gateDocToParse) {
+		return extractNLPfeatures(gateDocToParse, null);
+	}
+
+	/**
+	 * Apply Freeling and Mate to the Document until the deadline expires: Freeling and Mate check the deadline between
+	 * sentences, so that a pathological document does not hold the parsers for minutes. When the deadline expires, the
+	 * sentences not parsed yet are left without NLP features and the following stages are skipped (see {@link Deadline}).
+	 * 
+	 * @param gateDocToParse
+	 * @param deadline null for no deadline
+	 * @return
+	 */
+	public static Document extractNLPfeatures(Document gateDocToParse, Deadline deadline) {
 
 		if(gateDocToParse != null) {
 			
+			BioABmetrics.recordDocumentChars(gateDocToParse.getContent().size());
+			
 			// Check if the document is a PDF imported by GROBID to perform customized sentence extraction
 			boolean isGROBIDparsedPDF = false;
 			AnnotationSet originalMarckups = gateDocToParse.getAnnotations("Original markups");
 			if (originalMarckups != null && originalMarckups.get("TEI") != null && originalMarckups.get("TEI").size() > 0) {
 				isGROBIDparsedPDF = true;
-				
+			}
+			
+			// Check if the document packs many texts: the sentences are split at the boundaries of the texts (see PackedDocument)
+			boolean isPackedDocument = PackedDocument.isPacked(gateDocToParse);
+			
+			if(isGROBIDparsedPDF || isPackedDocument) {
 				/* CUSTOMIZED SENTENCE EXTRACTION */
+				if(!isExpired(deadline, BioABmetrics.Stage.SENTENCES)) {
+					long startSentences = System.nanoTime();
+					try {
+						synchronized(FreelingParserSynch) {
+							Boolean onlySentenceSplit = FreelingParser_Resource.getOnlySentenceSplit();
+							FreelingParser_Resource.setOnlySentenceSplit(true);
+							FreelingParser_Resource.setDeadline(deadline);
+							FreelingParser_Resource.setDocument(gateDocToParse);
+							FreelingParser_Resource.execute();
+							FreelingParser_Resource.setDocument(null);
+							FreelingParser_Resource.setDeadline(null);
+							FreelingParser_Resource.setOnlySentenceSplit(onlySentenceSplit);
+						}
+					} catch (Exception e) {
+						logger.error("\nError parsing GATE document by Freeling / sentence split - have you initialized BioABminet by calling BioABminer.initAll(String bioABminerPropertyFilePath)? ---> " + e.getMessage());
+						e.printStackTrace();
+					}
+					
+					try {
+						if(isGROBIDparsedPDF) {
+							gateDocToParse = GROBIDloader.sanitizeSentences(gateDocToParse, FreelingParser.mainAnnSet + "_SPA", FreelingParser.sentenceType);
+						}
+						if(isPackedDocument) {
+							PackedDocument.splitSentences(gateDocToParse, FreelingParser.mainAnnSet + "_SPA", FreelingParser.sentenceType);
+						}
+					} catch (Exception e) {
+						logger.error("\nError sanitizing GATE document sentences. ---> " + e.getMessage());
+						e.printStackTrace();
+					}
+					BioABmetrics.recordStage(BioABmetrics.Stage.SENTENCES, startSentences);
+				}
+			}
+			
+			if(!isExpired(deadline, BioABmetrics.Stage.FREELING)) {
 				try {
 					synchronized(FreelingParserSynch) {
-						Boolean onlySentenceSplit = FreelingParser_Resource.getOnlySentenceSplit();
-						FreelingParser_Resource.setOnlySentenceSplit(true);
+						if(isGROBIDparsedPDF || isPackedDocument) {
+							// Consider the sentences extracted by the customized sentence extraction and 
+							// avoid using Freeling to perform sentence extraction
+							FreelingParser_Resource.setSentenceAnnotationSetToAnalyze(FreelingParser.mainAnnSet + "_SPA");
+							FreelingParser_Resource.setSentenceAnnotationTypeToAnalyze(FreelingParser.sentenceType);
+						}
+						long startFreeling = System.nanoTime();
+						FreelingParser_Resource.setDeadline(deadline);
 						FreelingParser_Resource.setDocument(gateDocToParse);
 						FreelingParser_Resource.execute();
 						FreelingParser_Resource.setDocument(null);
-						FreelingParser_Resource.setOnlySentenceSplit(onlySentenceSplit);
+						FreelingParser_Resource.setDeadline(null);
+						BioABmetrics.recordStage(BioABmetrics.Stage.FREELING, startFreeling);
+						if(isGROBIDparsedPDF || isPackedDocument) {
+							// Reset sentence types
+							FreelingParser_Resource.setSentenceAnnotationSetToAnalyze(null);
+							FreelingParser_Resource.setSentenceAnnotationTypeToAnalyze(null);
+						}
 					}
 				} catch (Exception e) {
-					logger.error("\nError parsing GATE document by Freeling / sentence split - have you initialized BioABminet by calling BioABminer.initAll(String bioABminerPropertyFilePath)? ---> " + e.getMessage());
+					logger.error("\nError parsing GATE document by Freeling - have you initialized BioABminet by calling BioABminer.initAll(String bioABminerPropertyFilePath)? ---> " + e.getMessage());
 					e.printStackTrace();
 				}
-				
+				isExpired(deadline, BioABmetrics.Stage.FREELING);
+			}
+
+			if(!isExpired(deadline, BioABmetrics.Stage.MATE)) {
 				try {
-					gateDocToParse = GROBIDloader.sanitizeSentences(gateDocToParse, FreelingParser.mainAnnSet + "_SPA", FreelingParser.sentenceType);
-					
+					synchronized(MateParserSynch) {
+						long startMate = System.nanoTime();
+						MateParser_Resource.setDeadline(deadline);
+						MateParser_Resource.setDocument(gateDocToParse);
+						MateParser_Resource.execute();
+						MateParser_Resource.setDocument(null);
+						MateParser_Resource.setDeadline(null);
+						BioABmetrics.recordStage(BioABmetrics.Stage.MATE, startMate);
+					}
 				} catch (Exception e) {
-					logger.error("\nError sanitizing GATE document sentences. ---> " + e.getMessage());
+					logger.error("\nError parsing GATE document by MATE - have you initialized BioABminet by calling BioABminer.initAll(String bioABminerPropertyFilePath)? ---> " + e.getMessage());
 					e.printStackTrace();
 				}
-			}
-			
-			try {
-				synchronized(FreelingParserSynch) {
-					if(isGROBIDparsedPDF) {
-						// Consider the sentences extracted by the customized sentence extraction and 
-						// avoid using Freeling to perform sentence extraction
-						FreelingParser_Resource.setSentenceAnnotationSetToAnalyze(FreelingParser.mainAnnSet + "_SPA");
-						FreelingParser_Resource.setSentenceAnnotationTypeToAnalyze(FreelingParser.sentenceType);
-					}
-					FreelingParser_Resource.setDocument(gateDocToParse);
-					FreelingParser_Resource.execute();
-					FreelingParser_Resource.setDocument(null);
-					if(isGROBIDparsedPDF) {
-						// Reset sentence types
-						FreelingParser_Resource.setSentenceAnnotationSetToAnalyze(null);
-						FreelingParser_Resource.setSentenceAnnotationTypeToAnalyze(null);
-					}
-				}
-			} catch (Exception e) {
-				logger.error("\nError parsing GATE document by Freeling - have you initialized BioABminet by calling BioABminer.initAll(String bioABminerPropertyFilePath)? ---> " + e.getMessage());
-				e.printStackTrace();
-			}
-
-
-			try {
-				synchronized(MateParserSynch) {
-					MateParser_Resource.setDocument(gateDocToParse);
-					MateParser_Resource.execute();
-					MateParser_Resource.setDocument(null);
-				}
-			} catch (Exception e) {
-				logger.error("\nError parsing GATE document by MATE - have you initialized BioABminet by calling BioABminer.initAll(String bioABminerPropertyFilePath)? ---> " + e.getMessage());
-				e.printStackTrace();
+				isExpired(deadline, BioABmetrics.Stage.MATE);
 			}
 
 			return gateDocToParse;
@@ -444,44 +486,75 @@ public class BioABminer {
 	 * @return
 	 */
 	public static Document extractAbbreviations(Document gateDocToParse) {
+		return extractAbbreviations(gateDocToParse, null);
+	}
+
+	/**
+	 * Tag the abbreviations and acronym in the document until the deadline expires. The abbreviation stages are allowed
+	 * to exceed the deadline by a grace period (see {@link Deadline#getGraceDeadline()}), so that a document whose parsing
+	 * timed out gets the abbreviations of the sentences parsed before the deadline.
+	 * 
+	 * @param gateDocToParse
+	 * @param deadline null for no deadline
+	 * @return
+	 */
+	public static Document extractAbbreviations(Document gateDocToParse, Deadline deadline) {
 
 		if(gateDocToParse != null) {
-			try {
-				synchronized(BioABabbrvSpotterSynch) {
-					BioABabbrvSpotter_Resource.setDocument(gateDocToParse);
-					BioABabbrvSpotter_Resource.execute();
-					BioABabbrvSpotter_Resource.setDocument(null);
+			Deadline abbreviationDeadline = (deadline != null) ? deadline.getGraceDeadline() : null;
+
+			if(!isExpired(abbreviationDeadline, BioABmetrics.Stage.SPOTTER)) {
+				try {
+					synchronized(BioABabbrvSpotterSynch) {
+						long startSpotter = System.nanoTime();
+						BioABabbrvSpotter_Resource.setDeadline(abbreviationDeadline);
+						BioABabbrvSpotter_Resource.setDocument(gateDocToParse);
+						BioABabbrvSpotter_Resource.execute();
+						BioABabbrvSpotter_Resource.setDocument(null);
+						BioABabbrvSpotter_Resource.setDeadline(null);
+						BioABmetrics.recordStage(BioABmetrics.Stage.SPOTTER, startSpotter);
+					}
+				} catch (Exception e) {
+					logger.error("\nError parsing GATE document by BioAB Abbreviation Spotter - have you initialized BioABminet by calling BioABminer.initAll(String bioABminerPropertyFilePath)? ---> " + e.getMessage());
+					e.printStackTrace();
 				}
-			} catch (Exception e) {
-				logger.error("\nError parsing GATE document by BioAB Abbreviation Spotter - have you initialized BioABminet by calling BioABminer.initAll(String bioABminerPropertyFilePath)? ---> " + e.getMessage());
-				e.printStackTrace();
+				isExpired(abbreviationDeadline, BioABmetrics.Stage.SPOTTER);
 			}
 			
-			try {
-				synchronized(BioABabbrvTypeClassifierSynch) {
-					BioABabbrvTypeClassifier_Resource.setDocument(gateDocToParse);
-					BioABabbrvTypeClassifier_Resource.execute();
-					BioABabbrvTypeClassifier_Resource.setDocument(null);
+			if(!isExpired(abbreviationDeadline, BioABmetrics.Stage.CLASSIFIER)) {
+				try {
+					synchronized(BioABabbrvTypeClassifierSynch) {
+						long startClassifier = System.nanoTime();
+						BioABabbrvTypeClassifier_Resource.setDeadline(abbreviationDeadline);
+						BioABabbrvTypeClassifier_Resource.setDocument(gateDocToParse);
+						BioABabbrvTypeClassifier_Resource.execute();
+						BioABabbrvTypeClassifier_Resource.setDocument(null);
+						BioABabbrvTypeClassifier_Resource.setDeadline(null);
+						BioABmetrics.recordStage(BioABmetrics.Stage.CLASSIFIER, startClassifier);
+					}
+				} catch (Exception e) {
+					logger.error("\nError parsing GATE document by BioAB Type Classifier - have you initialized BioABminet by calling BioABminer.initAll(String bioABminerPropertyFilePath)? ---> " + e.getMessage());
+					e.printStackTrace();
 				}
-			} catch (Exception e) {
-				logger.error("\nError parsing GATE document by BioAB Type Classifier - have you initialized BioABminet by calling BioABminer.initAll(String bioABminerPropertyFilePath)? ---> " + e.getMessage());
-				e.printStackTrace();
+				isExpired(abbreviationDeadline, BioABmetrics.Stage.CLASSIFIER);
 			}
 
 			Set<String> abbrevTypes = gateDocToParse.getAnnotations(BioABabbrvSpotter.mainAnnSet).getAllTypes();
 			for(String abbrevType : abbrevTypes) {
-				System.out.println("    SPOTTED ABBREV : " + abbrevType + " > " + gateDocToParse.getAnnotations(BioABabbrvSpotter.mainAnnSet).get(abbrevType).size());
+				logger.debug("    SPOTTED ABBREV : " + abbrevType + " > " + gateDocToParse.getAnnotations(BioABabbrvSpotter.mainAnnSet).get(abbrevType).size());
 			}
 
-			try {
-				synchronized(BioABabbrvLFspotterSynch) {
-					BioABabbrvLFspotter_Resource.setDocument(gateDocToParse);
-					BioABabbrvLFspotter_Resource.execute();
-					BioABabbrvLFspotter_Resource.setDocument(null);
+			if(!isExpired(abbreviationDeadline, BioABmetrics.Stage.LONG_FORM)) {
+				try {
+					// Reentrant: documents are annotated in parallel
+					long startLongForm = System.nanoTime();
+					BioABabbrvLFspotter_Resource.annotate(gateDocToParse, abbreviationDeadline);
+					BioABmetrics.recordStage(BioABmetrics.Stage.LONG_FORM, startLongForm);
+				} catch (Exception e) {
+					logger.error("\nError parsing GATE document by BioAB Long Form Spotter - have you initialized BioABminet by calling BioABminer.initAll(String bioABminerPropertyFilePath)? ---> " + e.getMessage());
+					e.printStackTrace();
 				}
-			} catch (Exception e) {
-				logger.error("\nError parsing GATE document by BioAB Long Form Spotter - have you initialized BioABminet by calling BioABminer.initAll(String bioABminerPropertyFilePath)? ---> " + e.getMessage());
-				e.printStackTrace();
+				isExpired(abbreviationDeadline, BioABmetrics.Stage.LONG_FORM);
 			}
 
 			return gateDocToParse;
@@ -490,6 +563,17 @@ public class BioABminer {
 		return null;
 	}
 
+	/**
+	 * Check the deadline before or after a stage, recording the stage that timed out
+	 * 
+	 * @param deadline
+	 * @param stage
+	 * @return true if the deadline is expired
+	 */
+	private static boolean isExpired(Deadline deadline, BioABmetrics.Stage stage) {
+		return deadline != null && deadline.checkStage(stage);
+	}
+
 	/**
 	 * Retrieve a list of abbreviation extracted from the document
 	 * 
@@ -528,10 +612,21 @@ public class BioABminer {
 						Abbreviation abbrvOut = new Abbreviation();
 						abbrvOut.setLongForm(GATEutils.getAnnotationText(longForm, parsedDoc).orElse("NONE"));
 						abbrvOut.setAbbreviation(GATEutils.getAnnotationText(shortForm, parsedDoc).orElse("NONE"));
+						if(longForm != null) {
+							abbrvOut.setLongFormStart(longForm.getStartNode().getOffset());
+							abbrvOut.setLongFormEnd(longForm.getEndNode().getOffset());
+						}
+						if(shortForm != null) {
+							abbrvOut.setShortFormStart(shortForm.getStartNode().getOffset());
+							abbrvOut.setShortFormEnd(shortForm.getEndNode().getOffset());
+							abbrvOut.setConfidence(getConfidence(shortForm));
+						}
 						
 						List<Annotation> sentenceList = GATEutils.getAnnInDocOrderIntersectAnn(parsedDoc, FreelingParser.mainAnnSet + "_SPA", FreelingParser.sentenceType, LFSFanno);
 						if(sentenceList != null && sentenceList.size() > 0 && sentenceList.get(0) != null) {
 							abbrvOut.setSentence(GATEutils.getAnnotationText(sentenceList.get(0), parsedDoc).orElse("NONE"));
+							abbrvOut.setSentenceStart(sentenceList.get(0).getStartNode().getOffset());
+							abbrvOut.setSentenceEnd(sentenceList.get(0).getEndNode().getOffset());
 						}
 						
 						abbrvOut.setType("SF-LF");
@@ -563,10 +658,15 @@ public class BioABminer {
 									
 									abbrvOut.setLongForm("NONE");
 									abbrvOut.setAbbreviation(GATEutils.getAnnotationText(abbrv, parsedDoc).orElse("NONE"));
+									abbrvOut.setShortFormStart(abbrv.getStartNode().getOffset());
+									abbrvOut.setShortFormEnd(abbrv.getEndNode().getOffset());
+									abbrvOut.setConfidence(getConfidence(abbrv));
 									
 									List<Annotation> sentenceList = GATEutils.getAnnInDocOrderIntersectAnn(parsedDoc, FreelingParser.mainAnnSet + "_SPA", FreelingParser.sentenceType, abbrv);
 									if(sentenceList != null && sentenceList.size() > 0 && sentenceList.get(0) != null) {
 										abbrvOut.setSentence(GATEutils.getAnnotationText(sentenceList.get(0), parsedDoc).orElse("NONE"));
+										abbrvOut.setSentenceStart(sentenceList.get(0).getStartNode().getOffset());
+										abbrvOut.setSentenceEnd(sentenceList.get(0).getEndNode().getOffset());
 									}
 									
 									abbrvOut.setType(abbrvType);
@@ -595,6 +695,76 @@ public class BioABminer {
 		return retList;		
 	}
 	
+	/**
+	 * Extract the abbreviations of many short texts by executing the pipeline once: the texts are packed into a single
+	 * document (see {@link PackedDocument}) and the abbreviations are split back by text, with offsets relative to their text
+	 * 
+	 * @param textList
+	 * @param deadline deadline of the whole pack, null for no deadline
+	 * @return list of the abbreviations of each text, in the order of the texts (null if the texts cannot be packed)
+	 */
+	public static List<List<Abbreviation>> getAbbreviationLists(List<String> textList, Deadline deadline) {
+		
+		if(textList == null) {
+			return null;
+		}
+		
+		boolean allEmpty = true;
+		for(String text : textList) {
+			if(!StringUtils.isBlank(text)) {
+				allEmpty = false;
+				break;
+			}
+		}
+		if(allEmpty) {
+			List<List<Abbreviation>> retList = new ArrayList<List<Abbreviation>>();
+			for(int i = 0; i < textList.size(); i++) {
+				retList.add(new ArrayList<Abbreviation>());
+			}
+			return retList;
+		}
+		
+		PackedDocument packedDoc = null;
+		try {
+			packedDoc = PackedDocument.pack(textList);
+			Document parsedDoc = extractNLPfeatures(packedDoc.getDocument(), deadline);
+			parsedDoc = extractAbbreviations(parsedDoc, deadline);
+			return packedDoc.split(getAbbreviationList(parsedDoc));
+		} catch (ResourceInstantiationException e) {
+			logger.error("\nError packing " + textList.size() + " texts in a GATE document - have you initialized BioABminet by calling BioABminer.initAll(String bioABminerPropertyFilePath)? ---> " + e.getMessage());
+			e.printStackTrace();
+		}
+		finally {
+			if(packedDoc != null) {
+				packedDoc.cleanup();
+			}
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Confidence of an abbreviation: the probability of its type or, if not available, the probability of its span, 
+	 * as assigned by the CRFsuite taggers of the {@link es.imim.ibi.bioab.exec.resource.BioABabbrvSpotter}
+	 * 
+	 * @param abbrvAnno
+	 * @return null if not available
+	 */
+	private static Double getConfidence(Annotation abbrvAnno) {
+		for(String probFeat : new String[] {"CRFsuite_SFtype_prob", "CRFsuite_SF_prob"}) {
+			String prob = GATEutils.getStringFeature(abbrvAnno, probFeat).orElse(null);
+			if(prob != null) {
+				try {
+					return Double.valueOf(prob.trim());
+				}
+				catch(NumberFormatException e) {
+					/* Do nothing */
+				}
+			}
+		}
+		return null;
+	}
+	
 
 	
 	
@@ -0,0 +1,144 @@
+/**
+ * Biomedical Abbreviation Miner (BioAB Miner)
+ *
+ */
+package es.imim.ibi.bioab.exec;
+
+/**
+ * Deadline of the extraction of a document, checked cooperatively by the stages of the pipeline
+ * (see {@link BioABminer#extractNLPfeatures(gate.Document, Deadline)} and {@link BioABminer#extractAbbreviations(gate.Document, Deadline)}).
+ *
+ * The processing resources check the deadline between sentences: when the deadline is expired (or cancelled), they
+ * stop processing the document, keeping the annotations of the sentences already processed, and the following stages
+ * are skipped. The document has then partial results and {@link #isTimedOut()} is true, with the stage that did not
+ * complete ({@link #getTimedOutStage()}).
+ *
+ * The abbreviation stages are allowed to exceed the deadline by a grace period (see {@link #getGraceDeadline()}),
+ * so that the abbreviations of the sentences parsed before the deadline are extracted.
+ *
+ * @author Francesco Ronzano
+ *
+ */
+public class Deadline {
+
+	// Minimum grace period of the abbreviation stages
+	public static final long MIN_GRACE_MILLIS = 1000l;
+
+	private final long timeoutMillis;
+	private final long expirationNanos;
+	private final Deadline parent;
+
+	private volatile boolean cancelled = false;
+	private BioABmetrics.Stage timedOutStage = null;
+
+	/**
+	 *
+	 * @param timeoutMillis milliseconds from now
+	 */
+	public Deadline(long timeoutMillis) {
+		this(timeoutMillis, System.nanoTime() + timeoutMillis * 1000000l, null);
+	}
+
+	private Deadline(long timeoutMillis, long expirationNanos, Deadline parent) {
+		this.timeoutMillis = timeoutMillis;
+		this.expirationNanos = expirationNanos;
+		this.parent = parent;
+	}
+
+	/**
+	 * Deadline timeoutSeconds seconds from now
+	 *
+	 * @param timeoutSeconds
+	 * @return null (no deadline) if timeoutSeconds is not positive
+	 */
+	public static Deadline afterSeconds(long timeoutSeconds) {
+		return (timeoutSeconds > 0l) ? new Deadline(timeoutSeconds * 1000l) : null;
+	}
+
+	/**
+	 * Null-safe check of the deadline
+	 *
+	 * @param deadline
+	 * @return false if the deadline is null
+	 */
+	public static boolean isExpired(Deadline deadline) {
+		return deadline != null && deadline.isExpired();
+	}
+
+	public boolean isExpired() {
+		return this.cancelled || (this.parent != null && this.parent.cancelled) || System.nanoTime() - this.expirationNanos >= 0l;
+	}
+
+	/**
+	 * Cancel the extraction: the deadline is considered as expired
+	 */
+	public void cancel() {
+		this.cancelled = true;
+	}
+
+	public boolean isCancelled() {
+		return this.cancelled || (this.parent != null && this.parent.cancelled);
+	}
+
+	public long getTimeoutMillis() {
+		return timeoutMillis;
+	}
+
+	public long getRemainingMillis() {
+		return Math.max(0l, (this.expirationNanos - System.nanoTime()) / 1000000l);
+	}
+
+	/**
+	 * Check the deadline at the end of a stage (or before starting it): if the deadline is expired, the stage is recorded
+	 * as the stage that timed out (only the first one is recorded)
+	 *
+	 * @param stage
+	 * @return true if the deadline is expired
+	 */
+	public boolean checkStage(BioABmetrics.Stage stage) {
+		if(!isExpired()) {
+			return false;
+		}
+
+		Deadline root = (this.parent != null) ? this.parent : this;
+		synchronized(root) {
+			if(root.timedOutStage == null) {
+				root.timedOutStage = stage;
+				BioABmetrics.recordTimeout(stage);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * True if a stage did not complete because the deadline expired: the document has partial results
+	 *
+	 * @return
+	 */
+	public synchronized boolean isTimedOut() {
+		return this.timedOutStage != null;
+	}
+
+	/**
+	 * Stage that did not complete because the deadline expired
+	 *
+	 * @return null if all the stages completed
+	 */
+	public synchronized BioABmetrics.Stage getTimedOutStage() {
+		return this.timedOutStage;
+	}
+
+	/**
+	 * Deadline of the abbreviation stages: this deadline (or now, if already expired) extended by 10% of the timeout
+	 * (at least {@link #MIN_GRACE_MILLIS}); the timeouts are recorded to this deadline and the cancellation of this deadline applies
+	 *
+	 * @return
+	 */
+	public Deadline getGraceDeadline() {
+		long graceNanos = Math.max(MIN_GRACE_MILLIS, this.timeoutMillis / 10l) * 1000000l;
+		long now = System.nanoTime();
+		long graceExpirationNanos = ((this.expirationNanos - now > 0l) ? this.expirationNanos : now) + graceNanos;
+		return new Deadline(this.timeoutMillis, graceExpirationNanos, (this.parent != null) ? this.parent : this);
+	}
+
+}
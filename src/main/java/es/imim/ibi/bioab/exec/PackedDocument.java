@@ -0,0 +1,265 @@
+/**
+ * Biomedical Abbreviation Miner (BioAB Miner)
+ *
+ */
+package es.imim.ibi.bioab.exec;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import es.imim.ibi.bioab.exec.model.Abbreviation;
+import es.imim.ibi.bioab.feature.TokenAnnConst;
+import gate.Annotation;
+import gate.AnnotationSet;
+import gate.Document;
+import gate.Factory;
+import gate.FeatureMap;
+import gate.creole.ResourceInstantiationException;
+import gate.util.InvalidOffsetException;
+
+/**
+ * Many short texts (e.g. clinical notes of a few sentences) packed into a single GATE document, so that the pipeline is
+ * executed once for all of them (see {@link BioABminer#getAbbreviationLists(List, Deadline)}): the per-document costs
+ * (creation of the document and of its annotation sets, generation and filtering of the Weka instances, etc.) are paid once.
+ *
+ * The texts are separated by {@link #TEXT_SEPARATOR} and each text is annotated by a {@link TokenAnnConst#packedTextType}
+ * annotation (annotation set {@link TokenAnnConst#packedTextAnnSet}). The texts are kept apart along the pipeline:
+ *    - the sentences never cross the boundary of two texts ({@link #splitSentences(Document, String, String)} splits the
+ *      sentences identified by Freeling), so that sentence scoped features, CRFsuite sequences and long form candidates
+ *      only consider the text of the sentence
+ *    - document level features (e.g. the repetitions of a token) are computed on the text of the token (see
+ *      {@link es.imim.ibi.bioab.feature.DocumentSummary})
+ *    - the abbreviations are split back by text, with offsets relative to their text; an abbreviation that is not included
+ *      in a single text is discarded ({@link #split(List)})
+ *
+ * @author Francesco Ronzano
+ *
+ */
+public class PackedDocument {
+
+	private static Logger logger = LoggerFactory.getLogger(PackedDocument.class);
+
+	public static final String TEXT_SEPARATOR = "\n\n";
+	public static final String textIndexFeat = "textIndex";
+
+	private final Document document;
+	private final long[] textStarts;
+	private final long[] textEnds;
+
+	private PackedDocument(Document document, long[] textStarts, long[] textEnds) {
+		this.document = document;
+		this.textStarts = textStarts;
+		this.textEnds = textEnds;
+	}
+
+	/**
+	 * Pack the texts into a new GATE document
+	 *
+	 * @param textList texts to pack (a null text is considered empty)
+	 * @return
+	 * @throws ResourceInstantiationException
+	 */
+	public static PackedDocument pack(List<String> textList) throws ResourceInstantiationException {
+		long[] textStarts = new long[textList.size()];
+		long[] textEnds = new long[textList.size()];
+
+		StringBuilder packedText = new StringBuilder();
+		for(int i = 0; i < textList.size(); i++) {
+			if(i > 0) {
+				packedText.append(TEXT_SEPARATOR);
+			}
+			textStarts[i] = packedText.length();
+			packedText.append((textList.get(i) != null) ? textList.get(i) : "");
+			textEnds[i] = packedText.length();
+		}
+
+		Document document = Factory.newDocument(packedText.toString());
+		AnnotationSet textAnnSet = document.getAnnotations(TokenAnnConst.packedTextAnnSet);
+		for(int i = 0; i < textList.size(); i++) {
+			if(textEnds[i] > textStarts[i]) {
+				try {
+					FeatureMap fm = Factory.newFeatureMap();
+					fm.put(textIndexFeat, i);
+					textAnnSet.add(textStarts[i], textEnds[i], TokenAnnConst.packedTextType, fm);
+				} catch (InvalidOffsetException e) {
+					logger.error("Error while annotating the packed text " + i + " (" + textStarts[i] + " - " + textEnds[i] + ")");
+					e.printStackTrace();
+				}
+			}
+		}
+
+		return new PackedDocument(document, textStarts, textEnds);
+	}
+
+	/**
+	 * True if the document packs many texts
+	 *
+	 * @param gateDoc
+	 * @return
+	 */
+	public static boolean isPacked(Document gateDoc) {
+		return gateDoc != null && gateDoc.getNamedAnnotationSets() != null && gateDoc.getNamedAnnotationSets().containsKey(TokenAnnConst.packedTextAnnSet) &&
+				gateDoc.getAnnotations(TokenAnnConst.packedTextAnnSet).get(TokenAnnConst.packedTextType).size() > 0;
+	}
+
+	/**
+	 * Split the sentences that cross the boundary of two texts of a packed document: each sentence is replaced by its parts
+	 * included in each text (without leading and trailing white spaces). The sentences that only include text separators are removed.
+	 *
+	 * @param gateDoc
+	 * @param sentenceAnnSet
+	 * @param sentenceType
+	 */
+	public static void splitSentences(Document gateDoc, String sentenceAnnSet, String sentenceType) {
+		List<Annotation> textAnnList = gate.Utils.inDocumentOrder(gateDoc.getAnnotations(TokenAnnConst.packedTextAnnSet).get(TokenAnnConst.packedTextType));
+		if(textAnnList.size() == 0) {
+			return;
+		}
+
+		String docText = gateDoc.getContent().toString();
+		AnnotationSet sentenceSet = gateDoc.getAnnotations(sentenceAnnSet);
+		int splitSentences = 0;
+		for(Annotation sentenceAnn : gate.Utils.inDocumentOrder(sentenceSet.get(sentenceType))) {
+			long sentenceStart = sentenceAnn.getStartNode().getOffset();
+			long sentenceEnd = sentenceAnn.getEndNode().getOffset();
+
+			// Parts of the sentence included in each text
+			List<long[]> sentencePartList = new ArrayList<long[]>();
+			for(Annotation textAnn : textAnnList) {
+				long partStart = Math.max(sentenceStart, textAnn.getStartNode().getOffset());
+				long partEnd = Math.min(sentenceEnd, textAnn.getEndNode().getOffset());
+				while(partStart < partEnd && Character.isWhitespace(docText.charAt((int) partStart))) {
+					partStart++;
+				}
+				while(partEnd > partStart && Character.isWhitespace(docText.charAt((int) partEnd - 1))) {
+					partEnd--;
+				}
+				if(partStart < partEnd) {
+					sentencePartList.add(new long[] {partStart, partEnd});
+				}
+			}
+
+			if(sentencePartList.size() == 1 && sentencePartList.get(0)[0] == sentenceStart && sentencePartList.get(0)[1] == sentenceEnd) {
+				continue;
+			}
+
+			sentenceSet.remove(sentenceAnn);
+			for(long[] sentencePart : sentencePartList) {
+				try {
+					FeatureMap fm = Factory.newFeatureMap();
+					if(sentenceAnn.getFeatures() != null) {
+						fm.putAll(sentenceAnn.getFeatures());
+					}
+					sentenceSet.add(sentencePart[0], sentencePart[1], sentenceType, fm);
+				} catch (InvalidOffsetException e) {
+					logger.error("Error while splitting the sentence " + sentenceStart + " - " + sentenceEnd + " of a packed document");
+					e.printStackTrace();
+				}
+			}
+			splitSentences++;
+		}
+
+		if(splitSentences > 0) {
+			logger.debug("Split " + splitSentences + " sentences at the boundaries of the " + textAnnList.size() + " texts of a packed document.");
+		}
+	}
+
+	public Document getDocument() {
+		return document;
+	}
+
+	public int getTextCount() {
+		return textStarts.length;
+	}
+
+	public long getTextStart(int textIndex) {
+		return textStarts[textIndex];
+	}
+
+	public long getTextEnd(int textIndex) {
+		return textEnds[textIndex];
+	}
+
+	/**
+	 * Index of the text including the offset
+	 *
+	 * @param offset
+	 * @return -1 if the offset is not included in a text (separator)
+	 */
+	public int getTextIndex(long offset) {
+		int low = 0;
+		int high = textStarts.length - 1;
+		while(low <= high) {
+			int mid = (low + high) >>> 1;
+			if(textStarts[mid] <= offset) {
+				low = mid + 1;
+			}
+			else {
+				high = mid - 1;
+			}
+		}
+		return (high >= 0 && offset < textEnds[high]) ? high : -1;
+	}
+
+	/**
+	 * Split the abbreviations of the packed document by text: the offsets of each abbreviation are made relative to its text.
+	 * The abbreviations whose short form, long form or sentence are not included in a single text are discarded.
+	 *
+	 * @param abbreviationList abbreviations of the packed document (see {@link BioABminer#getAbbreviationList(Document)})
+	 * @return list of the abbreviations of each text, in the order of the texts
+	 */
+	public List<List<Abbreviation>> split(List<Abbreviation> abbreviationList) {
+		List<List<Abbreviation>> textAbbreviationList = new ArrayList<List<Abbreviation>>();
+		for(int i = 0; i < textStarts.length; i++) {
+			textAbbreviationList.add(new ArrayList<Abbreviation>());
+		}
+
+		int discarded = 0;
+		for(Abbreviation abbreviation : abbreviationList) {
+			long anchorOffset = (abbreviation.getShortFormStart() != -1l) ? abbreviation.getShortFormStart() : abbreviation.getSentenceStart();
+			int textIndex = (anchorOffset != -1l) ? getTextIndex(anchorOffset) : -1;
+			if(textIndex == -1 || !isInText(textIndex, abbreviation.getShortFormStart(), abbreviation.getShortFormEnd()) ||
+					!isInText(textIndex, abbreviation.getLongFormStart(), abbreviation.getLongFormEnd()) ||
+					!isInText(textIndex, abbreviation.getSentenceStart(), abbreviation.getSentenceEnd())) {
+				discarded++;
+				continue;
+			}
+
+			long textStart = textStarts[textIndex];
+			if(abbreviation.getShortFormStart() != -1l) {
+				abbreviation.setShortFormStart(abbreviation.getShortFormStart() - textStart);
+				abbreviation.setShortFormEnd(abbreviation.getShortFormEnd() - textStart);
+			}
+			if(abbreviation.getLongFormStart() != -1l) {
+				abbreviation.setLongFormStart(abbreviation.getLongFormStart() - textStart);
+				abbreviation.setLongFormEnd(abbreviation.getLongFormEnd() - textStart);
+			}
+			if(abbreviation.getSentenceStart() != -1l) {
+				abbreviation.setSentenceStart(abbreviation.getSentenceStart() - textStart);
+				abbreviation.setSentenceEnd(abbreviation.getSentenceEnd() - textStart);
+			}
+			textAbbreviationList.get(textIndex).add(abbreviation);
+		}
+
+		if(discarded > 0) {
+			logger.warn("Discarded " + discarded + " abbreviations not included in a single text of a packed document.");
+		}
+
+		return textAbbreviationList;
+	}
+
+	private boolean isInText(int textIndex, long start, long end) {
+		return start == -1l || (start >= textStarts[textIndex] && end <= textEnds[textIndex]);
+	}
+
+	/**
+	 * Delete the GATE document
+	 */
+	public void cleanup() {
+		Factory.deleteResource(this.document);
+	}
+
+}
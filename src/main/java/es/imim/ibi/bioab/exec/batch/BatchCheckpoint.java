@@ -0,0 +1,194 @@
+/**
+ * Biomedical Abbreviation Miner (BioAB Miner)
+ *
+ */
+package es.imim.ibi.bioab.exec.batch;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import es.imim.ibi.bioab.exec.batch.BioABbatchRunner.DocumentStatus;
+
+/**
+ * Append-only checkpoint log of a batch run: one line per document processed (file name, status, number of abbreviations,
+ * milliseconds), separated by tabs.
+ *
+ * The log is synced to disk every syncEvery documents or syncMillis milliseconds, whichever comes first, and when it is
+ * closed: after a crash, at most the documents processed since the last sync are processed again. A partial line left by
+ * a crash is removed when the log is loaded.
+ *
+ * @author Francesco Ronzano
+ *
+ */
+public class BatchCheckpoint implements Closeable {
+
+	/**
+	 * Document recorded in the checkpoint log
+	 */
+	public static class Entry {
+		private final DocumentStatus status;
+		private final int abbreviationCount;
+
+		private Entry(DocumentStatus status, int abbreviationCount) {
+			this.status = status;
+			this.abbreviationCount = abbreviationCount;
+		}
+
+		public DocumentStatus getStatus() {
+			return status;
+		}
+
+		public int getAbbreviationCount() {
+			return abbreviationCount;
+		}
+	}
+
+	private final File logFile;
+	private final int syncEvery;
+	private final long syncMillis;
+
+	private FileOutputStream logOut = null;
+	private int unsyncedCount = 0;
+	private long lastSync = 0l;
+
+	/**
+	 *
+	 * @param logFile
+	 * @param syncEvery maximum number of documents appended between two syncs
+	 * @param syncMillis maximum time between the first document appended after a sync and the next sync
+	 */
+	public BatchCheckpoint(File logFile, int syncEvery, long syncMillis) {
+		this.logFile = logFile;
+		this.syncEvery = Math.max(1, syncEvery);
+		this.syncMillis = Math.max(0l, syncMillis);
+	}
+
+	public File getLogFile() {
+		return logFile;
+	}
+
+	/**
+	 * Load the documents recorded in the log (the last line of a document wins) and remove the partial line left by a crash, if any
+	 *
+	 * @return map from the document file name to its last entry
+	 * @throws IOException
+	 */
+	public synchronized Map<String, Entry> load() throws IOException {
+		Map<String, Entry> entryMap = new HashMap<String, Entry>();
+		if(!this.logFile.exists()) {
+			return entryMap;
+		}
+
+		long lastLineEnd = 0l;
+		long position = 0l;
+		ByteArrayOutputStream lineBytes = new ByteArrayOutputStream();
+		try (InputStream logStream = Files.newInputStream(this.logFile.toPath())) {
+			byte[] buffer = new byte[65536];
+			int len;
+			while((len = logStream.read(buffer)) != -1) {
+				for(int i = 0; i < len; i++) {
+					position++;
+					if(buffer[i] != '\n') {
+						lineBytes.write(buffer[i]);
+						continue;
+					}
+
+					lastLineEnd = position;
+					String[] fields = new String(lineBytes.toByteArray(), StandardCharsets.UTF_8).split("\t");
+					lineBytes.reset();
+					if(fields.length < 3) {
+						continue;
+					}
+					try {
+						entryMap.put(fields[0], new Entry(DocumentStatus.valueOf(fields[1]), Integer.valueOf(fields[2])));
+					}
+					catch(IllegalArgumentException e) {
+						/* Skip invalid line */
+					}
+				}
+			}
+		}
+
+		if(lastLineEnd < this.logFile.length()) {
+			try (RandomAccessFile logRAF = new RandomAccessFile(this.logFile, "rw")) {
+				logRAF.setLength(lastLineEnd);
+			}
+		}
+
+		return entryMap;
+	}
+
+	/**
+	 * Delete the log, to process all the documents again
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void reset() throws IOException {
+		if(this.logOut != null) {
+			throw new IllegalStateException("Checkpoint log open");
+		}
+		Files.deleteIfExists(this.logFile.toPath());
+	}
+
+	/**
+	 * Append a document to the log, syncing the log if syncEvery documents have been appended or syncMillis milliseconds
+	 * have passed since the last sync
+	 *
+	 * @param fileName
+	 * @param status
+	 * @param abbreviationCount
+	 * @param millis
+	 * @throws IOException
+	 */
+	public synchronized void append(String fileName, DocumentStatus status, int abbreviationCount, long millis) throws IOException {
+		if(this.logOut == null) {
+			this.logOut = new FileOutputStream(this.logFile, true);
+			this.lastSync = System.currentTimeMillis();
+		}
+
+		this.logOut.write((fileName.replace('\t', ' ').replace('\n', ' ') + "\t" + status + "\t" + abbreviationCount + "\t" + millis + "\n").getBytes(StandardCharsets.UTF_8));
+		this.unsyncedCount++;
+
+		if(this.unsyncedCount >= this.syncEvery || System.currentTimeMillis() - this.lastSync >= this.syncMillis) {
+			sync();
+		}
+	}
+
+	/**
+	 * Sync to disk the documents appended to the log
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void sync() throws IOException {
+		if(this.logOut == null || this.unsyncedCount == 0) {
+			return;
+		}
+		this.logOut.getFD().sync();
+		this.unsyncedCount = 0;
+		this.lastSync = System.currentTimeMillis();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if(this.logOut == null) {
+			return;
+		}
+		try {
+			sync();
+		}
+		finally {
+			this.logOut.close();
+			this.logOut = null;
+		}
+	}
+
+}
@@ -0,0 +1,330 @@
+/**
+ * Biomedical Abbreviation Miner (BioAB Miner)
+ *
+ */
+package es.imim.ibi.bioab.exec.batch;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import es.imim.ibi.bioab.exec.util.JSONreader;
+import es.imim.ibi.bioab.exec.util.JSONwriter;
+
+/**
+ * Merge of the output of the shards of a batch run (see {@link BioABbatchRunner}, option --shard i/n).
+ *
+ * The merged output folder contains:
+ *    - abbreviations.jsonl: the abbreviations of all the documents, one JSON object per line, with the name of the
+ *    document (field document) added as first field
+ *    - sf_lf_counts.tsv: number of occurrences and number of documents of each pair (short form, long form), sorted
+ *    by decreasing number of occurrences (empty long form for the abbreviations without long form)
+ *    - manifest.json: shards merged and total counts
+ *
+ * The shards are checked before merging: missing shards (or shards without manifest, i.e. not completed) and shards
+ * of runs with a different number of shards are reported. Each argument can be a shard folder or a folder containing the
+ * shard folders (shard-i-of-n).
+ *
+ * Usage: BioABbatchMerger (merged output folder) (shard folder or parent of the shard folders)...
+ *
+ * @author Francesco Ronzano
+ *
+ */
+public class BioABbatchMerger {
+
+	private static Logger logger = LoggerFactory.getLogger(BioABbatchMerger.class);
+
+	public static final String abbreviationsFileName = "abbreviations.jsonl";
+	public static final String countsFileName = "sf_lf_counts.tsv";
+
+	/**
+	 * Occurrences of a pair (short form, long form)
+	 */
+	private static class PairCount {
+		private final String shortForm;
+		private final String longForm;
+		private long count = 0l;
+		private final Set<String> documents = new HashSet<String>();
+
+		private PairCount(String shortForm, String longForm) {
+			this.shortForm = shortForm;
+			this.longForm = longForm;
+		}
+	}
+
+	private final File mergedFolder;
+	private final List<File> shardFolders;
+
+	private final Map<String, PairCount> pairCountMap = new HashMap<String, PairCount>();
+	private final Set<String> mergedDocuments = new HashSet<String>();
+	private long abbreviationCount = 0l;
+	private int duplicatedDocumentCount = 0;
+	private int invalidLineCount = 0;
+
+	/**
+	 *
+	 * @param mergedFolder
+	 * @param shardFolders shard folders, or folders containing the shard folders
+	 */
+	public BioABbatchMerger(File mergedFolder, List<File> shardFolders) {
+		this.mergedFolder = mergedFolder;
+		this.shardFolders = new ArrayList<File>();
+		for(File folder : shardFolders) {
+			if(new File(folder, BioABbatchRunner.documentsFileName).exists() || new File(folder, BioABbatchRunner.manifestFileName).exists()) {
+				this.shardFolders.add(folder);
+				continue;
+			}
+
+			File[] subFolders = folder.listFiles((File subFolder) -> subFolder.isDirectory() && subFolder.getName().startsWith("shard-"));
+			if(subFolders == null || subFolders.length == 0) {
+				logger.warn("No shard in the folder " + folder.getAbsolutePath());
+				continue;
+			}
+			Arrays.sort(subFolders);
+			this.shardFolders.addAll(Arrays.asList(subFolders));
+		}
+	}
+
+	/**
+	 * Merge the shards
+	 *
+	 * @return true if all the shards of the run have been merged, false if shards are missing or not completed
+	 * @throws IOException
+	 */
+	public boolean merge() throws IOException {
+		Files.createDirectories(this.mergedFolder.toPath());
+
+		boolean complete = checkShards();
+
+		Path tempAbbreviations = Files.createTempFile(this.mergedFolder.toPath(), abbreviationsFileName, ".tmp");
+		try {
+			try (BufferedWriter abbreviationsWriter = Files.newBufferedWriter(tempAbbreviations, StandardCharsets.UTF_8)) {
+				for(File shardFolder : this.shardFolders) {
+					mergeShard(shardFolder, abbreviationsWriter);
+				}
+			}
+			Files.move(tempAbbreviations, new File(this.mergedFolder, abbreviationsFileName).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		finally {
+			Files.deleteIfExists(tempAbbreviations);
+		}
+
+		writeCounts();
+		writeManifest(complete);
+
+		logger.info("Merged " + this.shardFolders.size() + " shards to " + this.mergedFolder.getAbsolutePath() + ": " + this.mergedDocuments.size() + " documents, " +
+				this.abbreviationCount + " abbreviations, " + this.pairCountMap.size() + " distinct short form - long form pairs" +
+				((this.duplicatedDocumentCount > 0) ? ", " + this.duplicatedDocumentCount + " duplicated documents skipped" : "") +
+				((this.invalidLineCount > 0) ? ", " + this.invalidLineCount + " invalid lines skipped" : "") + ".");
+		return complete;
+	}
+
+	/**
+	 * Check that the shards are completed (manifest present), belong to runs with the same number of shards and cover all the shards
+	 *
+	 * @return
+	 */
+	private boolean checkShards() {
+		boolean complete = true;
+		Integer shardCount = null;
+		Set<Integer> shardIndexes = new HashSet<Integer>();
+
+		for(File shardFolder : this.shardFolders) {
+			File manifestFile = new File(shardFolder, BioABbatchRunner.manifestFileName);
+			if(!manifestFile.exists()) {
+				logger.warn("The shard " + shardFolder.getName() + " has no manifest: the batch run of the shard is not completed.");
+				complete = false;
+				continue;
+			}
+
+			Map<String, Object> manifest = null;
+			try {
+				manifest = JSONreader.parseFlatObject(new String(Files.readAllBytes(manifestFile.toPath()), StandardCharsets.UTF_8).trim());
+			}
+			catch(Exception e) {
+				logger.warn("Invalid manifest of the shard " + shardFolder.getName() + " - " + e.getMessage());
+				complete = false;
+				continue;
+			}
+
+			int shard = ((Number) manifest.get("shard")).intValue();
+			int count = ((Number) manifest.get("shardCount")).intValue();
+			if(shardCount == null) {
+				shardCount = count;
+			}
+			else if(shardCount != count) {
+				logger.warn("The shard " + shardFolder.getName() + " belongs to a run with " + count + " shards instead of " + shardCount + ".");
+				complete = false;
+			}
+			if(!shardIndexes.add(shard)) {
+				logger.warn("The shard " + shard + " is merged more than once (" + shardFolder.getName() + ").");
+			}
+			if(((Number) manifest.get("failed")).intValue() > 0) {
+				logger.warn("The shard " + shardFolder.getName() + " has " + manifest.get("failed") + " failed documents.");
+			}
+		}
+
+		if(shardCount != null) {
+			for(int i = 0; i < shardCount; i++) {
+				if(!shardIndexes.contains(i)) {
+					logger.warn("The shard " + i + "/" + shardCount + " is missing.");
+					complete = false;
+				}
+			}
+		}
+
+		return complete;
+	}
+
+	private void mergeShard(File shardFolder, BufferedWriter abbreviationsWriter) throws IOException {
+		File[] outputFiles = shardFolder.listFiles((File file) -> file.isFile() && file.getName().endsWith(BioABbatchRunner.outputFileExtension));
+		if(outputFiles == null) {
+			return;
+		}
+		Arrays.sort(outputFiles);
+
+		for(File outputFile : outputFiles) {
+			String documentName = outputFile.getName().substring(0, outputFile.getName().length() - BioABbatchRunner.outputFileExtension.length());
+			if(!this.mergedDocuments.add(documentName)) {
+				logger.warn("The document " + documentName + " of the shard " + shardFolder.getName() + " has already been merged: skipped.");
+				this.duplicatedDocumentCount++;
+				continue;
+			}
+
+			StringWriter documentFieldWriter = new StringWriter();
+			new JSONwriter(documentFieldWriter).beginObject().name("document").value(documentName);
+			String documentField = documentFieldWriter.toString();
+			try (BufferedReader reader = Files.newBufferedReader(outputFile.toPath(), StandardCharsets.UTF_8)) {
+				String line = null;
+				while((line = reader.readLine()) != null) {
+					line = line.trim();
+					if(line.isEmpty()) {
+						continue;
+					}
+
+					Map<String, Object> abbreviation = null;
+					try {
+						abbreviation = JSONreader.parseFlatObject(line);
+					}
+					catch(IllegalArgumentException e) {
+						logger.warn("Invalid line in " + outputFile.getAbsolutePath() + " - " + e.getMessage());
+						this.invalidLineCount++;
+						continue;
+					}
+
+					abbreviationsWriter.write(documentField + ((line.length() > 2) ? "," : "") + line.substring(1));
+					abbreviationsWriter.write("\n");
+					this.abbreviationCount++;
+					count(abbreviation, documentName);
+				}
+			}
+		}
+	}
+
+	private void count(Map<String, Object> abbreviation, String documentName) {
+		Object shortForm = abbreviation.get("shortForm");
+		if(shortForm == null) {
+			return;
+		}
+		Object longForm = abbreviation.get("longForm");
+		String longFormString = (longForm != null) ? longForm.toString() : "";
+
+		String key = shortForm.toString() + "\t" + longFormString;
+		PairCount pairCount = this.pairCountMap.get(key);
+		if(pairCount == null) {
+			pairCount = new PairCount(shortForm.toString(), longFormString);
+			this.pairCountMap.put(key, pairCount);
+		}
+		pairCount.count++;
+		pairCount.documents.add(documentName);
+	}
+
+	private void writeCounts() throws IOException {
+		List<PairCount> pairCountList = new ArrayList<PairCount>(this.pairCountMap.values());
+		Collections.sort(pairCountList, (PairCount p1, PairCount p2) -> {
+			int compare = Long.compare(p2.count, p1.count);
+			if(compare == 0) {
+				compare = p1.shortForm.compareTo(p2.shortForm);
+			}
+			if(compare == 0) {
+				compare = p1.longForm.compareTo(p2.longForm);
+			}
+			return compare;
+		});
+
+		List<String> lines = new ArrayList<String>();
+		lines.add("shortForm\tlongForm\tcount\tdocuments");
+		for(PairCount pairCount : pairCountList) {
+			lines.add(tsvField(pairCount.shortForm) + "\t" + tsvField(pairCount.longForm) + "\t" + pairCount.count + "\t" + pairCount.documents.size());
+		}
+		Files.write(new File(this.mergedFolder, countsFileName).toPath(), lines, StandardCharsets.UTF_8);
+	}
+
+	private void writeManifest(boolean complete) throws IOException {
+		Map<String, String> shardMap = new TreeMap<String, String>();
+		for(File shardFolder : this.shardFolders) {
+			shardMap.put(shardFolder.getName(), shardFolder.getAbsolutePath());
+		}
+
+		StringWriter manifestWriter = new StringWriter();
+		JSONwriter json = new JSONwriter(manifestWriter);
+		json.beginObject();
+		json.name("complete").value(complete);
+		json.name("shards").beginArray();
+		for(String shardFolder : shardMap.values()) {
+			json.value(shardFolder);
+		}
+		json.endArray();
+		json.name("documents").value(this.mergedDocuments.size());
+		json.name("abbreviations").value(this.abbreviationCount);
+		json.name("pairs").value(this.pairCountMap.size());
+		json.name("duplicatedDocuments").value(this.duplicatedDocumentCount);
+		json.name("invalidLines").value(this.invalidLineCount);
+		json.name("merged").value(System.currentTimeMillis());
+		json.endObject();
+		Files.write(new File(this.mergedFolder, BioABbatchRunner.manifestFileName).toPath(), (manifestWriter.toString() + "\n").getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static String tsvField(String value) {
+		return value.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+	}
+
+	public static void main(String[] args) {
+		if(args == null || args.length < 2) {
+			throw new IllegalArgumentException("Usage: BioABbatchMerger <merged output folder> <shard folder or parent of the shard folders>...");
+		}
+
+		List<File> shardFolders = new ArrayList<File>();
+		for(int i = 1; i < args.length; i++) {
+			shardFolders.add(new File(args[i]));
+		}
+
+		try {
+			if(!new BioABbatchMerger(new File(args[0]), shardFolders).merge()) {
+				logger.warn("The merged output is not complete: some shards are missing or not completed.");
+			}
+		} catch (IOException e) {
+			logger.error("Error while merging the shards - " + e.getMessage());
+			e.printStackTrace();
+		}
+	}
+
+}
@@ -0,0 +1,617 @@
+/**
+ * Biomedical Abbreviation Miner (BioAB Miner)
+ *
+ */
+
+package es.imim.ibi.bioab.exec.batch;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.backingdata.gateutils.generic.PropertyManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Strings;
+
+import es.imim.ibi.bioab.exec.BioABminer;
+import es.imim.ibi.bioab.exec.Deadline;
+import es.imim.ibi.bioab.exec.model.Abbreviation;
+import es.imim.ibi.bioab.exec.pdf.GROBIDconversionException;
+import es.imim.ibi.bioab.exec.pdf.GROBIDenginePool;
+import es.imim.ibi.bioab.exec.pdf.GROBIDloader;
+import es.imim.ibi.bioab.exec.util.JSONwriter;
+import gate.Document;
+import gate.Factory;
+
+/**
+ * Extract the abbreviations of all the documents of a folder: text files (.txt, UTF-8) and PDF of scientific publications (.pdf).
+ *
+ * For each document, the abbreviations are written to the output folder as (document file name).jsonl, one JSON object
+ * per line (see {@link JSONwriter#value(Abbreviation)}).
+ *
+ * The PDFs that GROBID fails to convert because of the PDF itself (timeout, too large, conversion error, empty result - see
+ * {@link GROBIDconversionException#isDocumentFailure()}) are quarantined: if a reject folder is specified, they are copied
+ * into it together with a (PDF file name).reason.txt file describing the failure, and they are skipped by the following runs
+ * on the same folder. The PDFs not converted because of transient failures (no free engine, interruption, I/O error) are
+ * recorded as FAILED and processed again when the run is resumed.
+ *
+ * Corpora can be split across machines with no coordination by processing a shard of the input folder on each machine
+ * (--shard i/n, with 0 &lt;= i &lt; n): each document belongs to the shard {@link #getShard(String, int)}, a stable hash of
+ * its file name, and the output of shard i is written to the folder shard-i-of-n of the output folder. A failed shard can
+ * be processed again on its own. The shards are merged by {@link BioABbatchMerger}.
+ *
+ * Besides the output of each document, the output folder (or shard folder) contains:
+ *    - documents.tsv: checkpoint log, one line per document processed (file name, status, number of abbreviations, milliseconds),
+ *    see {@link BatchCheckpoint}
+ *    - manifest.json: summary of the run (shard, input folder, host, start and end time, counts), written at the end of the run
+ *
+ * Runs are resumable: the documents recorded as processed in the checkpoint log (and whose output file exists) are skipped, so
+ * that a run interrupted by a crash only processes the remaining documents. The output of each document is written to a
+ * temporary file, synced and renamed, before the document is appended to the checkpoint log: an output file is always complete.
+ * The checkpoint log is synced every batch.checkpoint.syncEvery documents (default: 8) or batch.checkpoint.syncSeconds seconds
+ * (default: 10). To process again all the documents, specify --restart.
+ *
+ * Each document has a deadline of batch.documentTimeoutSeconds seconds (default: 600, 0 for no deadline - see {@link Deadline}):
+ * the documents that exceed it are recorded with status TIMEOUT and their output contains the abbreviations found before the
+ * deadline. They are not processed again when the run is resumed.
+ *
+ * Corpora of many short texts (e.g. clinical notes) can be processed in packs (--pack): the text files of at most
+ * batch.pack.maxTextBytes bytes (default: 4000) are packed by batch.pack.maxTexts (default: 32) into a single document, so
+ * that the pipeline is executed once for each pack (see {@link BioABminer#getAbbreviationLists(List, Deadline)}). The output
+ * and the checkpoint log still have one entry per text file; the deadline applies to the whole pack. If a pack fails, its
+ * text files are processed one by one.
+ *
+ * Usage: BioABbatchRunner (full path of the BioAB Miner property file) (input folder) (output folder) [--reject (reject folder)] [--shard i/n] [--restart] [--pack]
+ *
+ * @author Francesco Ronzano
+ *
+ */
+public class BioABbatchRunner {
+
+	private static Logger logger = LoggerFactory.getLogger(BioABbatchRunner.class);
+
+	public static final String outputFileExtension = ".jsonl";
+	public static final String rejectReasonFileExtension = ".reason.txt";
+	public static final String manifestFileName = "manifest.json";
+	public static final String documentsFileName = "documents.tsv";
+	private static final String temporaryFileExtension = ".tmp";
+
+	public static final int DEFAULT_CHECKPOINT_SYNC_EVERY = 8;
+	public static final int DEFAULT_CHECKPOINT_SYNC_SECONDS = 10;
+	public static final int DEFAULT_DOCUMENT_TIMEOUT_SECONDS = 600;
+	public static final int DEFAULT_PACK_MAX_TEXTS = 32;
+	public static final int DEFAULT_PACK_MAX_TEXT_BYTES = 4000;
+
+	/**
+	 * Status of a document of the run
+	 */
+	public enum DocumentStatus {
+		OK,
+		TIMEOUT,
+		FAILED,
+		QUARANTINED
+	}
+
+	private final File inputFolder;
+	private final File outputFolder;
+	private final File rejectFolder;
+	private final int shardIndex;
+	private final int shardCount;
+	private boolean resume = true;
+	private boolean pack = false;
+
+	private int processedCount = 0;
+	private int resumedCount = 0;
+	private int failedCount = 0;
+	private int timedOutCount = 0;
+	private int quarantinedCount = 0;
+	private int skippedCount = 0;
+	private long abbreviationCount = 0l;
+
+	// Number of abbreviations of the last document processed
+	private int lastAbbreviationCount = 0;
+
+	/**
+	 *
+	 * @param inputFolder
+	 * @param outputFolder
+	 * @param rejectFolder if null, the PDFs that GROBID fails to convert are not quarantined
+	 */
+	public BioABbatchRunner(File inputFolder, File outputFolder, File rejectFolder) {
+		this(inputFolder, outputFolder, rejectFolder, 0, 1);
+	}
+
+	/**
+	 *
+	 * @param inputFolder
+	 * @param outputFolder
+	 * @param rejectFolder if null, the PDFs that GROBID fails to convert are not quarantined
+	 * @param shardIndex index of the shard to process (0 &lt;= shardIndex &lt; shardCount)
+	 * @param shardCount number of shards of the input folder (1 to process all the documents)
+	 */
+	public BioABbatchRunner(File inputFolder, File outputFolder, File rejectFolder, int shardIndex, int shardCount) {
+		if(shardCount < 1 || shardIndex < 0 || shardIndex >= shardCount) {
+			throw new IllegalArgumentException("Invalid shard " + shardIndex + "/" + shardCount);
+		}
+		this.inputFolder = inputFolder;
+		this.outputFolder = (shardCount > 1) ? new File(outputFolder, getShardFolderName(shardIndex, shardCount)) : outputFolder;
+		this.rejectFolder = rejectFolder;
+		this.shardIndex = shardIndex;
+		this.shardCount = shardCount;
+	}
+
+	/**
+	 * If true (default), skip the documents already processed by a previous run, as recorded in the checkpoint log
+	 *
+	 * @param resume
+	 */
+	public void setResume(boolean resume) {
+		this.resume = resume;
+	}
+
+	/**
+	 * If true, process the short text files in packs (see {@link BioABminer#getAbbreviationLists(List, Deadline)})
+	 *
+	 * @param pack
+	 */
+	public void setPack(boolean pack) {
+		this.pack = pack;
+	}
+
+	/**
+	 * Process all the documents of the input folder
+	 *
+	 * @throws IOException
+	 */
+	public void run() throws IOException {
+		Files.createDirectories(this.outputFolder.toPath());
+		if(this.rejectFolder != null) {
+			Files.createDirectories(this.rejectFolder.toPath());
+		}
+
+		// The manifest marks a completed run
+		Files.deleteIfExists(new File(this.outputFolder, manifestFileName).toPath());
+		deleteTemporaryFiles();
+
+		BatchCheckpoint checkpoint = new BatchCheckpoint(new File(this.outputFolder, documentsFileName),
+				getIntProperty("batch.checkpoint.syncEvery", DEFAULT_CHECKPOINT_SYNC_EVERY), getIntProperty("batch.checkpoint.syncSeconds", DEFAULT_CHECKPOINT_SYNC_SECONDS) * 1000l);
+		if(!this.resume) {
+			checkpoint.reset();
+		}
+		Map<String, BatchCheckpoint.Entry> checkpointMap = checkpoint.load();
+
+		List<File> inputFileList = new ArrayList<File>();
+		for(File inputFile : listInputFiles(this.inputFolder)) {
+			if(getShard(inputFile.getName(), this.shardCount) == this.shardIndex) {
+				inputFileList.add(inputFile);
+			}
+		}
+		logger.info("Processing " + inputFileList.size() + " documents of " + this.inputFolder.getAbsolutePath() +
+				((this.shardCount > 1) ? " (shard " + this.shardIndex + "/" + this.shardCount + ")" : "") + "...");
+
+		int packMaxTexts = Math.max(1, getIntProperty("batch.pack.maxTexts", DEFAULT_PACK_MAX_TEXTS));
+		int packMaxTextBytes = getIntProperty("batch.pack.maxTextBytes", DEFAULT_PACK_MAX_TEXT_BYTES);
+		List<File> packFileList = new ArrayList<File>();
+
+		long startRun = System.currentTimeMillis();
+		try {
+			for(File inputFile : inputFileList) {
+				BatchCheckpoint.Entry checkpointEntry = checkpointMap.get(inputFile.getName());
+				if(checkpointEntry != null && (checkpointEntry.getStatus() == DocumentStatus.OK || checkpointEntry.getStatus() == DocumentStatus.TIMEOUT) &&
+						getOutputFile(inputFile).exists()) {
+					this.resumedCount++;
+					this.abbreviationCount += checkpointEntry.getAbbreviationCount();
+					continue;
+				}
+
+				if(isQuarantined(inputFile)) {
+					logger.info("Skipped quarantined document " + inputFile.getName());
+					this.skippedCount++;
+					continue;
+				}
+
+				if(this.pack && inputFile.getName().toLowerCase().endsWith(".txt") && inputFile.length() > 0l && inputFile.length() <= packMaxTextBytes) {
+					packFileList.add(inputFile);
+					if(packFileList.size() >= packMaxTexts) {
+						processPack(packFileList, checkpoint);
+						packFileList.clear();
+					}
+					continue;
+				}
+
+				long startDoc = System.currentTimeMillis();
+				DocumentStatus status = processFile(inputFile);
+				checkpoint.append(inputFile.getName(), status, (status == DocumentStatus.OK || status == DocumentStatus.TIMEOUT) ? this.lastAbbreviationCount : 0, System.currentTimeMillis() - startDoc);
+			}
+
+			if(packFileList.size() > 0) {
+				processPack(packFileList, checkpoint);
+				packFileList.clear();
+			}
+		}
+		finally {
+			checkpoint.close();
+		}
+
+		writeManifest(inputFileList.size(), startRun, System.currentTimeMillis());
+
+		logger.info("Processed " + this.processedCount + " documents in " + (System.currentTimeMillis() - startRun) + " ms: " + this.failedCount + " failed, " + this.timedOutCount + " timed out, " +
+				this.quarantinedCount + " quarantined" + ((this.resumedCount > 0) ? ", " + this.resumedCount + " already processed by a previous run" : "") +
+				". " + GROBIDenginePool.getStatus());
+	}
+
+	/**
+	 * Write the summary of the run to the manifest (written to a temporary file and renamed)
+	 *
+	 * @param inputFileCount
+	 * @param startRun
+	 * @param endRun
+	 * @throws IOException
+	 */
+	private void writeManifest(int inputFileCount, long startRun, long endRun) throws IOException {
+		String hostName = "unknown";
+		try {
+			hostName = InetAddress.getLocalHost().getHostName();
+		} catch (IOException e) {
+			/* Do nothing */
+		}
+
+		StringWriter manifestWriter = new StringWriter();
+		JSONwriter json = new JSONwriter(manifestWriter);
+		json.beginObject();
+		json.name("shard").value(this.shardIndex);
+		json.name("shardCount").value(this.shardCount);
+		json.name("inputFolder").value(this.inputFolder.getAbsolutePath());
+		json.name("host").value(hostName);
+		json.name("started").value(startRun);
+		json.name("finished").value(endRun);
+		json.name("inputFiles").value(inputFileCount);
+		json.name("processed").value(this.processedCount + this.resumedCount);
+		json.name("resumed").value(this.resumedCount);
+		json.name("timedOut").value(this.timedOutCount);
+		json.name("failed").value(this.failedCount);
+		json.name("quarantined").value(this.quarantinedCount);
+		json.name("skipped").value(this.skippedCount);
+		json.name("abbreviations").value(this.abbreviationCount);
+		json.endObject();
+
+		Path tempManifest = Files.createTempFile(this.outputFolder.toPath(), manifestFileName, temporaryFileExtension);
+		try {
+			Files.write(tempManifest, (manifestWriter.toString() + "\n").getBytes(StandardCharsets.UTF_8));
+			Files.move(tempManifest, new File(this.outputFolder, manifestFileName).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		finally {
+			Files.deleteIfExists(tempManifest);
+		}
+	}
+
+	private DocumentStatus processFile(File inputFile) {
+		long startDoc = System.currentTimeMillis();
+		Document gateDoc = null;
+
+		try {
+			if(inputFile.getName().toLowerCase().endsWith(".pdf")) {
+				try {
+					gateDoc = GROBIDloader.parsePDF(inputFile);
+				}
+				catch(GROBIDconversionException e) {
+					this.failedCount++;
+					if(!e.isDocumentFailure()) {
+						// Transient failure (e.g. no free engine): the PDF is processed again when the run is resumed
+						logger.warn("PDF " + inputFile.getName() + " not converted, to retry - " + e.getMessage());
+						return DocumentStatus.FAILED;
+					}
+					return (quarantine(inputFile, e)) ? DocumentStatus.QUARANTINED : DocumentStatus.FAILED;
+				}
+			}
+			else {
+				gateDoc = BioABminer.getDocumentFormText(new String(Files.readAllBytes(inputFile.toPath()), StandardCharsets.UTF_8));
+			}
+
+			if(gateDoc == null) {
+				this.failedCount++;
+				logger.warn("Impossible to load the document " + inputFile.getName());
+				return DocumentStatus.FAILED;
+			}
+
+			Deadline deadline = Deadline.afterSeconds(getIntProperty("batch.documentTimeoutSeconds", DEFAULT_DOCUMENT_TIMEOUT_SECONDS));
+			BioABminer.extractNLPfeatures(gateDoc, deadline);
+			BioABminer.extractAbbreviations(gateDoc, deadline);
+			List<Abbreviation> abbreviationList = BioABminer.getAbbreviationList(gateDoc);
+
+			List<String> outputLines = new ArrayList<String>();
+			for(Abbreviation abbreviation : abbreviationList) {
+				outputLines.add(JSONwriter.toJSON(abbreviation));
+			}
+			writeOutputFile(inputFile, outputLines);
+
+			this.processedCount++;
+			this.abbreviationCount += abbreviationList.size();
+			this.lastAbbreviationCount = abbreviationList.size();
+			if(deadline != null && deadline.isTimedOut()) {
+				this.timedOutCount++;
+				logger.warn("Document " + inputFile.getName() + " timed out after " + (System.currentTimeMillis() - startDoc) + " ms (stage " + deadline.getTimedOutStage() +
+						"): partial results (" + abbreviationList.size() + " abbreviations).");
+				return DocumentStatus.TIMEOUT;
+			}
+			logger.info("Document " + inputFile.getName() + " processed in " + (System.currentTimeMillis() - startDoc) + " ms (" + abbreviationList.size() + " abbreviations).");
+			return DocumentStatus.OK;
+		}
+		catch(Exception e) {
+			this.failedCount++;
+			logger.error("Error while processing the document " + inputFile.getName() + " - " + e.getMessage());
+			e.printStackTrace();
+			return DocumentStatus.FAILED;
+		}
+		finally {
+			if(gateDoc != null) {
+				Factory.deleteResource(gateDoc);
+			}
+		}
+	}
+
+	/**
+	 * Process a pack of text files by executing the pipeline once (see {@link BioABminer#getAbbreviationLists(List, Deadline)}),
+	 * writing the output of each text file and appending it to the checkpoint log. If the pack fails, the text files
+	 * not processed yet are processed one by one.
+	 *
+	 * @param packFileList
+	 * @param checkpoint
+	 * @throws IOException
+	 */
+	private void processPack(List<File> packFileList, BatchCheckpoint checkpoint) throws IOException {
+		long startPack = System.currentTimeMillis();
+		int processedPackFiles = 0;
+
+		try {
+			List<String> textList = new ArrayList<String>();
+			for(File inputFile : packFileList) {
+				textList.add(new String(Files.readAllBytes(inputFile.toPath()), StandardCharsets.UTF_8));
+			}
+
+			Deadline deadline = Deadline.afterSeconds(getIntProperty("batch.documentTimeoutSeconds", DEFAULT_DOCUMENT_TIMEOUT_SECONDS));
+			List<List<Abbreviation>> textAbbreviationLists = BioABminer.getAbbreviationLists(textList, deadline);
+			if(textAbbreviationLists == null || textAbbreviationLists.size() != packFileList.size()) {
+				throw new IllegalStateException("no abbreviation lists");
+			}
+
+			boolean timedOut = deadline != null && deadline.isTimedOut();
+			long textMillis = (System.currentTimeMillis() - startPack) / packFileList.size();
+			int packAbbreviationCount = 0;
+			for(int i = 0; i < packFileList.size(); i++) {
+				List<Abbreviation> abbreviationList = textAbbreviationLists.get(i);
+				List<String> outputLines = new ArrayList<String>();
+				for(Abbreviation abbreviation : abbreviationList) {
+					outputLines.add(JSONwriter.toJSON(abbreviation));
+				}
+				writeOutputFile(packFileList.get(i), outputLines);
+
+				this.processedCount++;
+				this.abbreviationCount += abbreviationList.size();
+				packAbbreviationCount += abbreviationList.size();
+				if(timedOut) {
+					this.timedOutCount++;
+				}
+				checkpoint.append(packFileList.get(i).getName(), (timedOut) ? DocumentStatus.TIMEOUT : DocumentStatus.OK, abbreviationList.size(), textMillis);
+				processedPackFiles++;
+			}
+
+			if(timedOut) {
+				logger.warn("Pack of " + packFileList.size() + " documents (" + packFileList.get(0).getName() + ", ...) timed out after " + (System.currentTimeMillis() - startPack) +
+						" ms (stage " + deadline.getTimedOutStage() + "): partial results (" + packAbbreviationCount + " abbreviations).");
+			}
+			else {
+				logger.info("Pack of " + packFileList.size() + " documents (" + packFileList.get(0).getName() + ", ...) processed in " + (System.currentTimeMillis() - startPack) +
+						" ms (" + packAbbreviationCount + " abbreviations).");
+			}
+		}
+		catch(Exception e) {
+			logger.error("Error while processing the pack of " + packFileList.size() + " documents (" + packFileList.get(0).getName() + ", ...) - " + e.getMessage() +
+					": processing the remaining " + (packFileList.size() - processedPackFiles) + " documents one by one");
+			e.printStackTrace();
+
+			for(File inputFile : packFileList.subList(processedPackFiles, packFileList.size())) {
+				long startDoc = System.currentTimeMillis();
+				DocumentStatus status = processFile(inputFile);
+				checkpoint.append(inputFile.getName(), status, (status == DocumentStatus.OK || status == DocumentStatus.TIMEOUT) ? this.lastAbbreviationCount : 0, System.currentTimeMillis() - startDoc);
+			}
+		}
+	}
+
+	private File getOutputFile(File inputFile) {
+		return new File(this.outputFolder, inputFile.getName() + outputFileExtension);
+	}
+
+	/**
+	 * Write the output of a document to a temporary file, sync it and rename it to the output file, so that the output file
+	 * is never partially written, even if the process crashes
+	 *
+	 * @param inputFile
+	 * @param outputLines
+	 * @throws IOException
+	 */
+	private void writeOutputFile(File inputFile, List<String> outputLines) throws IOException {
+		Path tempOutput = Files.createTempFile(this.outputFolder.toPath(), inputFile.getName(), temporaryFileExtension);
+		try {
+			try (FileOutputStream tempOut = new FileOutputStream(tempOutput.toFile())) {
+				for(String outputLine : outputLines) {
+					tempOut.write((outputLine + "\n").getBytes(StandardCharsets.UTF_8));
+				}
+				tempOut.getFD().sync();
+			}
+			Files.move(tempOutput, getOutputFile(inputFile).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		finally {
+			Files.deleteIfExists(tempOutput);
+		}
+	}
+
+	/**
+	 * Delete the temporary files left in the output folder by a crash
+	 *
+	 * @throws IOException
+	 */
+	private void deleteTemporaryFiles() throws IOException {
+		File[] temporaryFiles = this.outputFolder.listFiles((File f) -> f.isFile() && f.getName().endsWith(temporaryFileExtension));
+		if(temporaryFiles == null) {
+			return;
+		}
+		for(File temporaryFile : temporaryFiles) {
+			Files.deleteIfExists(temporaryFile.toPath());
+		}
+	}
+
+	/**
+	 * Copy the PDF to the reject folder together with the description of the failure
+	 *
+	 * @param PDFfile
+	 * @param failure
+	 * @return true if the PDF has been quarantined
+	 */
+	private boolean quarantine(File PDFfile, GROBIDconversionException failure) {
+		logger.warn("PDF " + PDFfile.getName() + " not converted - " + failure.getMessage());
+		if(this.rejectFolder == null) {
+			return false;
+		}
+
+		try {
+			Path rejectedPDF = Files.copy(PDFfile.toPath(), this.rejectFolder.toPath().resolve(PDFfile.getName()), StandardCopyOption.REPLACE_EXISTING);
+			String reasonText = "file: " + PDFfile.getAbsolutePath() + "\n" +
+					"date: " + new Date() + "\n" +
+					"reason: " + failure.getReason() + "\n" +
+					"message: " + failure.getMessage() + "\n";
+			Files.write(Paths.get(rejectedPDF.toString() + rejectReasonFileExtension), reasonText.getBytes(StandardCharsets.UTF_8));
+			this.quarantinedCount++;
+			return true;
+		} catch (IOException e) {
+			logger.error("Impossible to quarantine the PDF " + PDFfile.getName() + " to " + this.rejectFolder.getAbsolutePath() + " - " + e.getMessage());
+			return false;
+		}
+	}
+
+	private boolean isQuarantined(File inputFile) {
+		return this.rejectFolder != null && new File(this.rejectFolder, inputFile.getName() + rejectReasonFileExtension).exists();
+	}
+
+	/**
+	 * Text and PDF files of the folder, sorted by name
+	 *
+	 * @param folder
+	 * @return
+	 */
+	public static List<File> listInputFiles(File folder) {
+		File[] inputFiles = folder.listFiles((File f) -> f.isFile() && (f.getName().toLowerCase().endsWith(".txt") || f.getName().toLowerCase().endsWith(".pdf")));
+		if(inputFiles == null) {
+			return new ArrayList<File>();
+		}
+		Arrays.sort(inputFiles);
+		return new ArrayList<File>(Arrays.asList(inputFiles));
+	}
+
+	/**
+	 * Shard of a document: stable hash of its file name (first 8 bytes of the SHA-256 digest of the UTF-8 file name) modulo
+	 * the number of shards, independent of the machine, the JVM and the order of the files
+	 *
+	 * @param fileName
+	 * @param shardCount
+	 * @return
+	 */
+	public static int getShard(String fileName, int shardCount) {
+		if(shardCount <= 1) {
+			return 0;
+		}
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(fileName.getBytes(StandardCharsets.UTF_8));
+			long hash = 0l;
+			for(int i = 0; i < 8; i++) {
+				hash = (hash << 8) | (digest[i] & 0xFFl);
+			}
+			return (int) Long.remainderUnsigned(hash, shardCount);
+		} catch (NoSuchAlgorithmException e) {
+			// SHA-256 is always available
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public static String getShardFolderName(int shardIndex, int shardCount) {
+		return "shard-" + shardIndex + "-of-" + shardCount;
+	}
+
+	private static int getIntProperty(String propertyName, int defaultValue) {
+		try {
+			String propertyValue = PropertyManager.getProperty(propertyName);
+			if(!Strings.isNullOrEmpty(propertyValue)) {
+				return Integer.valueOf(propertyValue.trim());
+			}
+		}
+		catch(Exception e) {
+			logger.debug("Property " + propertyName + " not set or invalid, using default value " + defaultValue);
+		}
+		return defaultValue;
+	}
+
+	public static void main(String[] args) {
+		if(args == null || args.length < 3) {
+			throw new IllegalArgumentException("Usage: BioABbatchRunner <property file> <input folder> <output folder> [--reject <reject folder>] [--shard <i>/<n>] [--restart] [--pack]");
+		}
+
+		File rejectFolder = null;
+		int shardIndex = 0;
+		int shardCount = 1;
+		boolean resume = true;
+		boolean pack = false;
+		for(int i = 3; i < args.length; i++) {
+			if(args[i].equals("--reject") && i + 1 < args.length) {
+				rejectFolder = new File(args[++i]);
+			}
+			else if(args[i].equals("--shard") && i + 1 < args.length) {
+				String[] shard = args[++i].split("/");
+				try {
+					shardIndex = Integer.valueOf(shard[0].trim());
+					shardCount = Integer.valueOf(shard[1].trim());
+				}
+				catch(Exception e) {
+					throw new IllegalArgumentException("Invalid shard " + args[i] + ": specify the shard as <i>/<n>, with 0 <= i < n");
+				}
+			}
+			else if(args[i].equals("--restart")) {
+				resume = false;
+			}
+			else if(args[i].equals("--pack")) {
+				pack = true;
+			}
+			else {
+				throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+
+		BioABminer.initALL(args[0]);
+
+		try {
+			BioABbatchRunner batchRunner = new BioABbatchRunner(new File(args[1]), new File(args[2]), rejectFolder, shardIndex, shardCount);
+			batchRunner.setResume(resume);
+			batchRunner.setPack(pack);
+			batchRunner.run();
+		} catch (IOException e) {
+			logger.error("Error while processing the documents of " + args[1] + " - " + e.getMessage());
+			e.printStackTrace();
+		}
+	}
+
+}
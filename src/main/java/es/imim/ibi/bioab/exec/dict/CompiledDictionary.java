@@ -0,0 +1,377 @@
+/**
+ * Biomedical Abbreviation Miner (BioAB Miner)
+ *
+ */
+package es.imim.ibi.bioab.exec.dict;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Read-only dictionary that maps strings (keys) to sets of strings (values), stored in a compact binary format
+ * that can be memory-mapped from file.
+ *
+ * A word list is a dictionary with keys and no values.
+ *
+ * Binary format (big endian):
+ * - header: magic number (int), format version (int), creation time (long), number of keys (int), number of
+ *   distinct values (int), number of key-value references (int), length (int) and UTF-8 bytes of the version label
+ * - key offsets: (number of keys + 1) ints, offsets of the UTF-8 bytes of each key in the key data area
+ * - value reference starts: (number of keys + 1) ints, position of the first value reference of each key
+ * - value references: ids of the values of each key
+ * - value offsets: (number of distinct values + 1) ints, offsets of the UTF-8 bytes of each value in the value data area
+ * - key data area and value data area
+ *
+ * Keys are sorted by their UTF-8 bytes (unsigned comparison), so that a key is looked up by binary search directly
+ * on the buffer, without decoding the keys of the dictionary.
+ *
+ * Instances are immutable and can be shared among threads.
+ *
+ * @author Francesco Ronzano
+ *
+ */
+public class CompiledDictionary {
+
+	public static final int MAGIC = 0x42414244;
+	public static final int FORMAT_VERSION = 1;
+	public static final String FILE_EXTENSION = ".dict";
+
+	private static final int HEADER_LENGTH = 32;
+
+	private final ByteBuffer buffer;
+	private final String versionLabel;
+	private final long creationTime;
+	private final int keyCount;
+	private final int valueCount;
+	private final int keyOffsetsPos;
+	private final int valueRefStartsPos;
+	private final int valueRefsPos;
+	private final int valueOffsetsPos;
+	private final int keyDataPos;
+	private final int valueDataPos;
+
+	private CompiledDictionary(ByteBuffer dictionaryBuffer) throws IOException {
+		this.buffer = dictionaryBuffer.asReadOnlyBuffer();
+
+		if(this.buffer.capacity() < HEADER_LENGTH || this.buffer.getInt(0) != MAGIC) {
+			throw new IOException("Not a compiled dictionary");
+		}
+		if(this.buffer.getInt(4) != FORMAT_VERSION) {
+			throw new IOException("Unsupported compiled dictionary format version: " + this.buffer.getInt(4));
+		}
+
+		this.creationTime = this.buffer.getLong(8);
+		this.keyCount = this.buffer.getInt(16);
+		this.valueCount = this.buffer.getInt(20);
+		int valueRefCount = this.buffer.getInt(24);
+		int versionLabelLength = this.buffer.getInt(28);
+
+		byte[] versionLabelBytes = new byte[versionLabelLength];
+		for(int i = 0; i < versionLabelLength; i++) {
+			versionLabelBytes[i] = this.buffer.get(HEADER_LENGTH + i);
+		}
+		this.versionLabel = new String(versionLabelBytes, StandardCharsets.UTF_8);
+
+		this.keyOffsetsPos = HEADER_LENGTH + versionLabelLength;
+		this.valueRefStartsPos = this.keyOffsetsPos + 4 * (this.keyCount + 1);
+		this.valueRefsPos = this.valueRefStartsPos + 4 * (this.keyCount + 1);
+		this.valueOffsetsPos = this.valueRefsPos + 4 * valueRefCount;
+		this.keyDataPos = this.valueOffsetsPos + 4 * (this.valueCount + 1);
+		this.valueDataPos = this.keyDataPos + this.buffer.getInt(this.keyOffsetsPos + 4 * this.keyCount);
+
+		if(this.valueDataPos + this.buffer.getInt(this.valueOffsetsPos + 4 * this.valueCount) > this.buffer.capacity()) {
+			throw new IOException("Truncated compiled dictionary");
+		}
+	}
+
+	/**
+	 * Memory-map a compiled dictionary file (the mapping is released when the dictionary is garbage collected)
+	 *
+	 * @param dictionaryFile
+	 * @return
+	 * @throws IOException
+	 */
+	public static CompiledDictionary map(File dictionaryFile) throws IOException {
+		try (FileChannel channel = FileChannel.open(dictionaryFile.toPath(), StandardOpenOption.READ)) {
+			return new CompiledDictionary(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	/**
+	 * Load a compiled dictionary from a stream (for instance a classpath resource, that cannot be memory-mapped)
+	 *
+	 * @param dictionaryStream
+	 * @return
+	 * @throws IOException
+	 */
+	public static CompiledDictionary load(InputStream dictionaryStream) throws IOException {
+		byte[] dictionaryBytes = IOUtils.toByteArray(dictionaryStream);
+		ByteBuffer dictionaryBuffer = ByteBuffer.allocateDirect(dictionaryBytes.length);
+		dictionaryBuffer.put(dictionaryBytes);
+		dictionaryBuffer.flip();
+		return new CompiledDictionary(dictionaryBuffer);
+	}
+
+	/**
+	 * Compile in memory a dictionary
+	 *
+	 * @param dictionaryMap
+	 * @param versionLabel
+	 * @return
+	 */
+	public static CompiledDictionary fromMap(Map<String, Set<String>> dictionaryMap, String versionLabel) {
+		try {
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			write(dictionaryMap, versionLabel, baos);
+			return new CompiledDictionary(ByteBuffer.wrap(baos.toByteArray()));
+		} catch (IOException e) {
+			throw new IllegalStateException("Impossible to compile dictionary " + versionLabel, e);
+		}
+	}
+
+	/**
+	 * Write in the compiled binary format the dictionary (null or empty keys are ignored, null value sets are
+	 * considered as empty)
+	 *
+	 * @param dictionaryMap
+	 * @param versionLabel
+	 * @param out
+	 * @throws IOException
+	 */
+	public static void write(Map<String, Set<String>> dictionaryMap, String versionLabel, OutputStream out) throws IOException {
+		// Sort keys by UTF-8 bytes
+		List<byte[]> keyList = new ArrayList<byte[]>();
+		Map<byte[], Set<String>> keyValueMap = new HashMap<byte[], Set<String>>();
+		if(dictionaryMap != null) {
+			for(Entry<String, Set<String>> dictionaryEntry : dictionaryMap.entrySet()) {
+				if(dictionaryEntry.getKey() != null && !dictionaryEntry.getKey().equals("")) {
+					byte[] keyBytes = dictionaryEntry.getKey().getBytes(StandardCharsets.UTF_8);
+					keyList.add(keyBytes);
+					keyValueMap.put(keyBytes, (dictionaryEntry.getValue() != null) ? dictionaryEntry.getValue() : Collections.<String>emptySet());
+				}
+			}
+		}
+		keyList.sort(CompiledDictionary::compareBytes);
+
+		// Assign value ids
+		Map<String, Integer> valueIdMap = new HashMap<String, Integer>();
+		List<byte[]> valueList = new ArrayList<byte[]>();
+		List<Integer> valueRefList = new ArrayList<Integer>();
+		int[] valueRefStarts = new int[keyList.size() + 1];
+		for(int k = 0; k < keyList.size(); k++) {
+			valueRefStarts[k] = valueRefList.size();
+			for(String value : new LinkedHashSet<String>(keyValueMap.get(keyList.get(k)))) {
+				if(value == null) {
+					continue;
+				}
+				Integer valueId = valueIdMap.get(value);
+				if(valueId == null) {
+					valueId = valueList.size();
+					valueIdMap.put(value, valueId);
+					valueList.add(value.getBytes(StandardCharsets.UTF_8));
+				}
+				valueRefList.add(valueId);
+			}
+		}
+		valueRefStarts[keyList.size()] = valueRefList.size();
+
+		byte[] versionLabelBytes = ((versionLabel != null) ? versionLabel : "").getBytes(StandardCharsets.UTF_8);
+
+		DataOutputStream dos = new DataOutputStream(out);
+		dos.writeInt(MAGIC);
+		dos.writeInt(FORMAT_VERSION);
+		dos.writeLong(System.currentTimeMillis());
+		dos.writeInt(keyList.size());
+		dos.writeInt(valueList.size());
+		dos.writeInt(valueRefList.size());
+		dos.writeInt(versionLabelBytes.length);
+		dos.write(versionLabelBytes);
+
+		int offset = 0;
+		for(byte[] keyBytes : keyList) {
+			dos.writeInt(offset);
+			offset += keyBytes.length;
+		}
+		dos.writeInt(offset);
+
+		for(int valueRefStart : valueRefStarts) {
+			dos.writeInt(valueRefStart);
+		}
+
+		for(Integer valueRef : valueRefList) {
+			dos.writeInt(valueRef);
+		}
+
+		offset = 0;
+		for(byte[] valueBytes : valueList) {
+			dos.writeInt(offset);
+			offset += valueBytes.length;
+		}
+		dos.writeInt(offset);
+
+		for(byte[] keyBytes : keyList) {
+			dos.write(keyBytes);
+		}
+		for(byte[] valueBytes : valueList) {
+			dos.write(valueBytes);
+		}
+		dos.flush();
+	}
+
+	/**
+	 * True if the key is included in the dictionary
+	 *
+	 * @param key
+	 * @return
+	 */
+	public boolean contains(String key) {
+		return key != null && findKey(key.getBytes(StandardCharsets.UTF_8)) >= 0;
+	}
+
+	/**
+	 * Values of the key (empty set if the key is not included in the dictionary)
+	 *
+	 * @param key
+	 * @return
+	 */
+	public Set<String> get(String key) {
+		if(key == null) {
+			return Collections.emptySet();
+		}
+
+		int keyIdx = findKey(key.getBytes(StandardCharsets.UTF_8));
+		if(keyIdx < 0) {
+			return Collections.emptySet();
+		}
+
+		Set<String> valueSet = new LinkedHashSet<String>();
+		int refStart = this.buffer.getInt(this.valueRefStartsPos + 4 * keyIdx);
+		int refEnd = this.buffer.getInt(this.valueRefStartsPos + 4 * (keyIdx + 1));
+		for(int r = refStart; r < refEnd; r++) {
+			valueSet.add(getValue(this.buffer.getInt(this.valueRefsPos + 4 * r)));
+		}
+		return Collections.unmodifiableSet(valueSet);
+	}
+
+	/**
+	 * All the keys of the dictionary, sorted by UTF-8 bytes
+	 *
+	 * @return
+	 */
+	public List<String> getKeys() {
+		List<String> keyList = new ArrayList<String>(this.keyCount);
+		for(int k = 0; k < this.keyCount; k++) {
+			int start = this.buffer.getInt(this.keyOffsetsPos + 4 * k);
+			int end = this.buffer.getInt(this.keyOffsetsPos + 4 * (k + 1));
+			keyList.add(decode(this.keyDataPos + start, end - start));
+		}
+		return keyList;
+	}
+
+	/**
+	 * All the distinct values of the dictionary
+	 *
+	 * @return
+	 */
+	public List<String> getValues() {
+		List<String> valueList = new ArrayList<String>(this.valueCount);
+		for(int v = 0; v < this.valueCount; v++) {
+			valueList.add(getValue(v));
+		}
+		return valueList;
+	}
+
+	public int size() {
+		return this.keyCount;
+	}
+
+	public String getVersionLabel() {
+		return this.versionLabel;
+	}
+
+	public long getCreationTime() {
+		return this.creationTime;
+	}
+
+	@Override
+	public String toString() {
+		return "CompiledDictionary [versionLabel=" + versionLabel + ", keys=" + keyCount + ", values=" + valueCount + "]";
+	}
+
+	private int findKey(byte[] keyBytes) {
+		int low = 0;
+		int high = this.keyCount - 1;
+		while(low <= high) {
+			int mid = (low + high) >>> 1;
+			int start = this.buffer.getInt(this.keyOffsetsPos + 4 * mid);
+			int end = this.buffer.getInt(this.keyOffsetsPos + 4 * (mid + 1));
+
+			int cmp = compareToBuffer(this.keyDataPos + start, end - start, keyBytes);
+			if(cmp < 0) {
+				low = mid + 1;
+			}
+			else if(cmp > 0) {
+				high = mid - 1;
+			}
+			else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	private int compareToBuffer(int bufferPos, int length, byte[] keyBytes) {
+		int minLength = Math.min(length, keyBytes.length);
+		for(int i = 0; i < minLength; i++) {
+			int cmp = Integer.compare(this.buffer.get(bufferPos + i) & 0xff, keyBytes[i] & 0xff);
+			if(cmp != 0) {
+				return cmp;
+			}
+		}
+		return Integer.compare(length, keyBytes.length);
+	}
+
+	private String getValue(int valueId) {
+		int start = this.buffer.getInt(this.valueOffsetsPos + 4 * valueId);
+		int end = this.buffer.getInt(this.valueOffsetsPos + 4 * (valueId + 1));
+		return decode(this.valueDataPos + start, end - start);
+	}
+
+	private String decode(int bufferPos, int length) {
+		byte[] strBytes = new byte[length];
+		for(int i = 0; i < length; i++) {
+			strBytes[i] = this.buffer.get(bufferPos + i);
+		}
+		return new String(strBytes, StandardCharsets.UTF_8);
+	}
+
+	private static int compareBytes(byte[] b1, byte[] b2) {
+		int minLength = Math.min(b1.length, b2.length);
+		for(int i = 0; i < minLength; i++) {
+			int cmp = Integer.compare(b1[i] & 0xff, b2[i] & 0xff);
+			if(cmp != 0) {
+				return cmp;
+			}
+		}
+		return Integer.compare(b1.length, b2.length);
+	}
+
+}
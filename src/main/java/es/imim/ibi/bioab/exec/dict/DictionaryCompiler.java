@@ -0,0 +1,196 @@
+/**
+ * Biomedical Abbreviation Miner (BioAB Miner)
+ *
+ */
+package es.imim.ibi.bioab.exec.dict;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compile the textual abbreviation lists into the binary format of {@link CompiledDictionary}.
+ *
+ * The main method is executed by the Maven build (process-classes phase) to compile the lists included in the
+ * resources of the project; it can also be executed to compile a new version of a list, to be copied in the
+ * dictionary folder of a running instance (see {@link DictionaryRegistry}).
+ *
+ * @author Francesco Ronzano
+ *
+ */
+public class DictionaryCompiler {
+
+	private static Logger logger = LoggerFactory.getLogger(DictionaryCompiler.class);
+
+	/**
+	 * Format of the textual lists
+	 *
+	 */
+	public enum Format {
+		// Tab separated list with header: abbreviation (first column) and long form (fourth column), lower-cased
+		SEDOM,
+		// One word by line
+		WORD_LIST,
+		// One word by line, lower-cased
+		WORD_LIST_LOWERCASE;
+
+		/**
+		 * Suffix of the name of the compiled dictionary file
+		 *
+		 * @return
+		 */
+		public String getFileSuffix() {
+			return (this == WORD_LIST_LOWERCASE) ? "_lowercase" : "";
+		}
+	}
+
+	/**
+	 * Parse a textual list
+	 *
+	 * @param listStream
+	 * @param format
+	 * @return
+	 * @throws IOException
+	 */
+	public static Map<String, Set<String>> parse(InputStream listStream, Format format) throws IOException {
+		if(listStream == null) {
+			throw new IOException("No list to parse");
+		}
+
+		switch(format) {
+		case SEDOM:
+			return parseSEDOM(listStream);
+		case WORD_LIST:
+			return parseWordList(listStream, false);
+		default:
+			return parseWordList(listStream, true);
+		}
+	}
+
+	private static Map<String, Set<String>> parseSEDOM(InputStream listStream) throws IOException {
+		Map<String, Set<String>> abbreviationLFmap = new HashMap<String, Set<String>>();
+
+		BufferedReader br = new BufferedReader(new InputStreamReader(listStream, "UTF-8"));
+		String line;
+		int lineCounter = -1;
+		while ((line = br.readLine()) != null) {
+			try {
+				lineCounter++;
+				if(lineCounter == 0) {
+					continue;
+				}
+
+				String[] abbreviationLFline = line.split("\t");
+
+				if(abbreviationLFline != null && abbreviationLFline.length == 4) {
+					String abbrev = abbreviationLFline[0];
+					String longForm = abbreviationLFline[3];
+
+					if(abbrev != null && !abbrev.trim().equals("") && longForm != null && !longForm.trim().equals("")) {
+						if(!abbreviationLFmap.containsKey(abbrev.trim().toLowerCase())) {
+							abbreviationLFmap.put(abbrev.trim().toLowerCase(), new HashSet<String>());
+						}
+						abbreviationLFmap.get(abbrev.trim().toLowerCase()).add(longForm.trim().toLowerCase());
+					}
+				}
+			}
+			catch(Exception e) {
+				logger.warn("Error while loading SEDOM abbreviation dictionary line (" + lineCounter + "): " + line);
+			}
+		}
+
+		return abbreviationLFmap;
+	}
+
+	private static Map<String, Set<String>> parseWordList(InputStream listStream, boolean lowerCase) throws IOException {
+		Map<String, Set<String>> wordMap = new HashMap<String, Set<String>>();
+
+		BufferedReader br = new BufferedReader(new InputStreamReader(listStream, "UTF-8"));
+		String line;
+		while ((line = br.readLine()) != null) {
+			wordMap.put((lowerCase) ? line.toLowerCase() : line, null);
+		}
+
+		return wordMap;
+	}
+
+	/**
+	 * Compile a textual list into a dictionary file. The file is first written in the same folder with a temporary name
+	 * and then renamed, so that the dictionary folder never contains partially written dictionaries.
+	 *
+	 * @param listFile
+	 * @param format
+	 * @param outputFile
+	 * @param versionLabel if null, the name and last modification date of the list file
+	 * @return
+	 * @throws IOException
+	 */
+	public static CompiledDictionary compile(File listFile, Format format, File outputFile, String versionLabel) throws IOException {
+		if(versionLabel == null) {
+			versionLabel = listFile.getName() + " (" + new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date(listFile.lastModified())) + ")";
+		}
+
+		Map<String, Set<String>> dictionaryMap = null;
+		try (InputStream listStream = new FileInputStream(listFile)) {
+			dictionaryMap = parse(listStream, format);
+		}
+
+		File outputFolder = outputFile.getAbsoluteFile().getParentFile();
+		if(outputFolder != null && !outputFolder.exists()) {
+			outputFolder.mkdirs();
+		}
+
+		File tempFile = File.createTempFile(outputFile.getName(), ".tmp", outputFolder);
+		try (OutputStream out = Files.newOutputStream(tempFile.toPath())) {
+			CompiledDictionary.write(dictionaryMap, versionLabel, out);
+		}
+		try {
+			Files.move(tempFile.toPath(), outputFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		finally {
+			Files.deleteIfExists(tempFile.toPath());
+		}
+
+		CompiledDictionary compiledDictionary = CompiledDictionary.map(outputFile);
+		logger.info("Compiled " + listFile.getAbsolutePath() + " to " + outputFile.getAbsolutePath() + ": " + compiledDictionary);
+		return compiledDictionary;
+	}
+
+	/**
+	 * Compile one or more lists. Arguments: one or more groups of three values: format (SEDOM, WORD_LIST or
+	 * WORD_LIST_LOWERCASE), path of the list file, path of the dictionary file to generate.
+	 * Throws an exception if a list cannot be compiled.
+	 *
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		if(args == null || args.length == 0 || args.length % 3 != 0) {
+			throw new IllegalArgumentException("Usage: DictionaryCompiler <SEDOM|WORD_LIST|WORD_LIST_LOWERCASE> <list file> <dictionary file> [...]");
+		}
+
+		for(int i = 0; i < args.length; i += 3) {
+			try {
+				compile(new File(args[i + 1]), Format.valueOf(args[i].trim().toUpperCase()), new File(args[i + 2]), null);
+			} catch (Exception e) {
+				// Fail the build (the method is executed inside the Maven JVM, so do not call System.exit)
+				throw new IllegalStateException("Impossible to compile dictionary " + args[i + 1] + " to " + args[i + 2], e);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,301 @@
+/**
+ * Biomedical Abbreviation Miner (BioAB Miner)
+ *
+ */
+package es.imim.ibi.bioab.exec.dict;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import org.backingdata.gateutils.generic.PropertyManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Strings;
+
+import es.imim.ibi.bioab.exec.dict.DictionaryCompiler.Format;
+
+/**
+ * Shared, hot-swappable dictionaries, identified by the classpath path of their textual list (for instance
+ * /langres/sedom/abbrvList_5_2_2018_EXTENDED.csv) and by their format.
+ *
+ * A dictionary is loaded the first time it is requested, looking for:
+ * 1) the compiled dictionary file (name of the list without extension + .dict) in the dictionary folder - a private copy
+ *    of the file is memory-mapped, so that rewriting the file in place (instead of renaming a new file over it, as done
+ *    by {@link DictionaryCompiler}) cannot truncate a mapped dictionary (SIGBUS); the dictionary folder is the property
+ *    dictionaryFolder.fullPath or the folder dictionaries of the resource folder
+ * 2) the compiled dictionary generated by the build in the classpath, next to the textual list
+ * 3) the textual list in the classpath, compiled in memory
+ *
+ * To update a dictionary without restarting, compile the new version of the list (see {@link DictionaryCompiler}) into
+ * the dictionary folder and call {@link #reload()} (or start the periodic check by {@link #startWatcher(long)}): the new
+ * version is memory-mapped and atomically replaces the old one. Documents under analysis keep using the version they started
+ * with; listeners registered by {@link #addSwapListener(String, Format, Consumer)} are notified of each swap.
+ *
+ * @author Francesco Ronzano
+ *
+ */
+public class DictionaryRegistry {
+
+	private static Logger logger = LoggerFactory.getLogger(DictionaryRegistry.class);
+
+	private static Map<String, AtomicReference<CompiledDictionary>> dictionaryMap = new ConcurrentHashMap<String, AtomicReference<CompiledDictionary>>();
+	private static Map<String, Long> loadedFileLastModifiedMap = new ConcurrentHashMap<String, Long>();
+	private static Map<String, List<Consumer<CompiledDictionary>>> swapListenerMap = new ConcurrentHashMap<String, List<Consumer<CompiledDictionary>>>();
+
+	private static ScheduledExecutorService watcher = null;
+	private static Object watcherSynch = new Object();
+
+	/**
+	 * Current version of the dictionary
+	 *
+	 * @param resourcePath
+	 * @param format
+	 * @return
+	 */
+	public static CompiledDictionary get(String resourcePath, Format format) {
+		String dictionaryKey = getDictionaryKey(resourcePath, format);
+		return dictionaryMap.computeIfAbsent(dictionaryKey, key -> new AtomicReference<CompiledDictionary>(loadDictionary(resourcePath, format))).get();
+	}
+
+	/**
+	 * Register a listener called each time a new version of the dictionary is swapped in
+	 *
+	 * @param resourcePath
+	 * @param format
+	 * @param listener
+	 */
+	public static void addSwapListener(String resourcePath, Format format, Consumer<CompiledDictionary> listener) {
+		swapListenerMap.computeIfAbsent(getDictionaryKey(resourcePath, format), key -> new CopyOnWriteArrayList<Consumer<CompiledDictionary>>()).add(listener);
+	}
+
+	/**
+	 * Replace the current version of the dictionary
+	 *
+	 * @param resourcePath
+	 * @param format
+	 * @param newDictionary
+	 * @return the replaced version
+	 */
+	public static CompiledDictionary swap(String resourcePath, Format format, CompiledDictionary newDictionary) {
+		if(newDictionary == null) {
+			return null;
+		}
+
+		String dictionaryKey = getDictionaryKey(resourcePath, format);
+		CompiledDictionary oldDictionary = dictionaryMap.computeIfAbsent(dictionaryKey, key -> new AtomicReference<CompiledDictionary>()).getAndSet(newDictionary);
+		logger.info("Dictionary " + dictionaryKey + " swapped: " + ((oldDictionary != null) ? oldDictionary.getVersionLabel() : "NONE") + " --> " + newDictionary.getVersionLabel());
+
+		List<Consumer<CompiledDictionary>> listenerList = swapListenerMap.get(dictionaryKey);
+		if(listenerList != null) {
+			for(Consumer<CompiledDictionary> listener : listenerList) {
+				try {
+					listener.accept(newDictionary);
+				}
+				catch(Exception e) {
+					logger.error("Error while notifying the swap of the dictionary " + dictionaryKey + " - " + e.getMessage());
+					e.printStackTrace();
+				}
+			}
+		}
+
+		return oldDictionary;
+	}
+
+	/**
+	 * Swap in the compiled dictionaries of the dictionary folder that have been created or modified since they have been loaded
+	 *
+	 * @return number of swapped dictionaries
+	 */
+	public static int reload() {
+		int swapped = 0;
+
+		for(String dictionaryKey : new ArrayList<String>(dictionaryMap.keySet())) {
+			String resourcePath = dictionaryKey.substring(0, dictionaryKey.lastIndexOf('|'));
+			Format format = Format.valueOf(dictionaryKey.substring(dictionaryKey.lastIndexOf('|') + 1));
+
+			File dictionaryFile = getDictionaryFile(resourcePath, format);
+			if(dictionaryFile == null || !dictionaryFile.exists()) {
+				continue;
+			}
+
+			Long loadedLastModified = loadedFileLastModifiedMap.get(dictionaryKey);
+			long lastModified = dictionaryFile.lastModified();
+			if(loadedLastModified != null && loadedLastModified.longValue() == lastModified) {
+				continue;
+			}
+
+			try {
+				CompiledDictionary newDictionary = mapCopy(dictionaryFile);
+				loadedFileLastModifiedMap.put(dictionaryKey, lastModified);
+				swap(resourcePath, format, newDictionary);
+				swapped++;
+			} catch (Exception e) {
+				logger.error("Impossible to load the new version of the dictionary " + dictionaryFile.getAbsolutePath() + " - " + e.getMessage());
+				e.printStackTrace();
+			}
+		}
+
+		return swapped;
+	}
+
+	/**
+	 * Periodically check the dictionary folder for new versions of the dictionaries (see {@link #reload()})
+	 *
+	 * @param periodSeconds
+	 */
+	public static void startWatcher(long periodSeconds) {
+		synchronized(watcherSynch) {
+			if(watcher == null && periodSeconds > 0l) {
+				watcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+					Thread watcherThread = new Thread(runnable, "BioAB-dictionary-watcher");
+					watcherThread.setDaemon(true);
+					return watcherThread;
+				});
+				watcher.scheduleWithFixedDelay(() -> {
+					try {
+						reload();
+					}
+					catch(Exception e) {
+						logger.error("Error while checking for new dictionary versions - " + e.getMessage());
+					}
+				}, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+				logger.info("Checking for new dictionary versions in " + getDictionaryFolder() + " every " + periodSeconds + " seconds.");
+			}
+		}
+	}
+
+	public static void stopWatcher() {
+		synchronized(watcherSynch) {
+			if(watcher != null) {
+				watcher.shutdownNow();
+				watcher = null;
+			}
+		}
+	}
+
+	/**
+	 * Dictionary folder (null if not configured)
+	 *
+	 * @return
+	 */
+	public static String getDictionaryFolder() {
+		String dictionaryFolder = null;
+		try {
+			dictionaryFolder = PropertyManager.getProperty("dictionaryFolder.fullPath");
+			if(Strings.isNullOrEmpty(dictionaryFolder)) {
+				String resourceFolder = PropertyManager.getProperty("resourceFolder.fullPath");
+				if(!Strings.isNullOrEmpty(resourceFolder)) {
+					dictionaryFolder = resourceFolder + ((resourceFolder.endsWith(File.separator)) ? "" : File.separator) + "dictionaries";
+				}
+			}
+		}
+		catch(Exception e) {
+			logger.debug("Dictionary folder not configured - " + e.getMessage());
+		}
+
+		return (!Strings.isNullOrEmpty(dictionaryFolder)) ? dictionaryFolder : null;
+	}
+
+	private static CompiledDictionary loadDictionary(String resourcePath, Format format) {
+		String dictionaryKey = getDictionaryKey(resourcePath, format);
+
+		// 1) Compiled dictionary file in the dictionary folder
+		File dictionaryFile = getDictionaryFile(resourcePath, format);
+		if(dictionaryFile != null && dictionaryFile.exists()) {
+			try {
+				long lastModified = dictionaryFile.lastModified();
+				CompiledDictionary dictionary = mapCopy(dictionaryFile);
+				loadedFileLastModifiedMap.put(dictionaryKey, lastModified);
+				logger.info("Dictionary " + dictionaryKey + " memory-mapped from " + dictionaryFile.getAbsolutePath() + ": " + dictionary);
+				return dictionary;
+			} catch (Exception e) {
+				logger.error("Impossible to load the dictionary " + dictionaryFile.getAbsolutePath() + " - " + e.getMessage());
+			}
+		}
+
+		// 2) Compiled dictionary in the classpath
+		try (InputStream dictionaryStream = DictionaryRegistry.class.getResourceAsStream(getCompiledResourcePath(resourcePath, format))) {
+			if(dictionaryStream != null) {
+				CompiledDictionary dictionary = CompiledDictionary.load(dictionaryStream);
+				logger.info("Dictionary " + dictionaryKey + " loaded from classpath: " + dictionary);
+				return dictionary;
+			}
+		} catch (Exception e) {
+			logger.error("Impossible to load the compiled dictionary " + getCompiledResourcePath(resourcePath, format) + " - " + e.getMessage());
+		}
+
+		// 3) Textual list in the classpath
+		try (InputStream listStream = DictionaryRegistry.class.getResourceAsStream(resourcePath)) {
+			CompiledDictionary dictionary = CompiledDictionary.fromMap(DictionaryCompiler.parse(listStream, format), resourcePath);
+			logger.info("Dictionary " + dictionaryKey + " compiled from textual list: " + dictionary);
+			return dictionary;
+		} catch (Exception e) {
+			logger.error("IMPOSSIBLE TO LOAD LIST OF STRINGS FROM " + resourcePath + " - " + e.getMessage());
+			e.printStackTrace();
+		}
+
+		return CompiledDictionary.fromMap(null, resourcePath + " (EMPTY)");
+	}
+
+	/**
+	 * Memory-map a private copy of a dictionary file of the dictionary folder. The copy is deleted as soon as it is mapped
+	 * (where the operating system allows it, otherwise at exit): the mapping stays valid and is not affected by changes
+	 * of the dictionary folder.
+	 *
+	 * @param dictionaryFile
+	 * @return
+	 * @throws IOException
+	 */
+	private static CompiledDictionary mapCopy(File dictionaryFile) throws IOException {
+		File dictionaryCopy = File.createTempFile("bioab-" + dictionaryFile.getName() + "-", ".tmp");
+		try {
+			Files.copy(dictionaryFile.toPath(), dictionaryCopy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			return CompiledDictionary.map(dictionaryCopy);
+		}
+		finally {
+			if(!dictionaryCopy.delete()) {
+				dictionaryCopy.deleteOnExit();
+			}
+		}
+	}
+
+	private static File getDictionaryFile(String resourcePath, Format format) {
+		String dictionaryFolder = getDictionaryFolder();
+		if(dictionaryFolder == null) {
+			return null;
+		}
+		return new File(dictionaryFolder, getDictionaryName(resourcePath, format) + CompiledDictionary.FILE_EXTENSION);
+	}
+
+	private static String getCompiledResourcePath(String resourcePath, Format format) {
+		String resourceFolder = resourcePath.substring(0, resourcePath.lastIndexOf('/') + 1);
+		return resourceFolder + getDictionaryName(resourcePath, format) + CompiledDictionary.FILE_EXTENSION;
+	}
+
+	private static String getDictionaryName(String resourcePath, Format format) {
+		String name = resourcePath.substring(resourcePath.lastIndexOf('/') + 1);
+		if(name.lastIndexOf('.') > 0) {
+			name = name.substring(0, name.lastIndexOf('.'));
+		}
+		return name + format.getFileSuffix();
+	}
+
+	private static String getDictionaryKey(String resourcePath, Format format) {
+		return resourcePath + "|" + format.name();
+	}
+
+}
@@ -7,6 +7,17 @@ public class Abbreviation {
 	private String longForm = "";
 	private String sentence = "";
 	
+	// Character offsets in the document (-1 if not available)
+	private long shortFormStart = -1l;
+	private long shortFormEnd = -1l;
+	private long longFormStart = -1l;
+	private long longFormEnd = -1l;
+	private long sentenceStart = -1l;
+	private long sentenceEnd = -1l;
+	
+	// Probability of the abbreviation assigned by the abbreviation spotter (null if not available)
+	private Double confidence = null;
+	
 	
 	// Setters and getters	
 	public String getType() {
@@ -33,13 +44,58 @@ public class Abbreviation {
 	public void setSentence(String sentence) {
 		this.sentence = sentence;
 	}
+	public long getShortFormStart() {
+		return shortFormStart;
+	}
+	public void setShortFormStart(long shortFormStart) {
+		this.shortFormStart = shortFormStart;
+	}
+	public long getShortFormEnd() {
+		return shortFormEnd;
+	}
+	public void setShortFormEnd(long shortFormEnd) {
+		this.shortFormEnd = shortFormEnd;
+	}
+	public long getLongFormStart() {
+		return longFormStart;
+	}
+	public void setLongFormStart(long longFormStart) {
+		this.longFormStart = longFormStart;
+	}
+	public long getLongFormEnd() {
+		return longFormEnd;
+	}
+	public void setLongFormEnd(long longFormEnd) {
+		this.longFormEnd = longFormEnd;
+	}
+	public long getSentenceStart() {
+		return sentenceStart;
+	}
+	public void setSentenceStart(long sentenceStart) {
+		this.sentenceStart = sentenceStart;
+	}
+	public long getSentenceEnd() {
+		return sentenceEnd;
+	}
+	public void setSentenceEnd(long sentenceEnd) {
+		this.sentenceEnd = sentenceEnd;
+	}
+	public Double getConfidence() {
+		return confidence;
+	}
+	public void setConfidence(Double confidence) {
+		this.confidence = confidence;
+	}
 	
 	@Override
 	public String toString() {
 		return "Abbreviation [type=" + ((type != null) ? type : "-") + 
 				", shortForm=" + ((abbreviation != null) ? abbreviation : "-") + 
 				", longForm=" + ((longForm != null) ? longForm : "-") + 
-				", sentence=" + ((sentence != null) ? sentence : "-") + "]";
+				", sentence=" + ((sentence != null) ? sentence : "-") + 
+				", shortFormOffsets=" + shortFormStart + "-" + shortFormEnd + 
+				", longFormOffsets=" + longFormStart + "-" + longFormEnd + 
+				", confidence=" + ((confidence != null) ? confidence : "-") + "]";
 	}
 	
 }
@@ -0,0 +1,201 @@
+/**
+ * Biomedical Abbreviation Miner (BioAB Miner)
+ *
+ */
+
+package es.imim.ibi.bioab.exec.pdf;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.backingdata.gateutils.generic.PropertyManager;
+import org.grobid.core.engines.config.GrobidAnalysisConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Strings;
+
+/**
+ * GROBID analysis profiles, used to build the GrobidAnalysisConfig of each PDF conversion (see {@link GROBIDloader#parsePDF(byte[], String)}).
+ *
+ *    - FAST: what is needed to mine abbreviations from title, abstract and body text - no consolidation of header and citations
+ *            by external services, no raw affiliations and citations, no coordinates in the TEI. These settings are the
+ *            ones of GrobidAnalysisConfig.defaultInstance() in GROBID 0.5.1, used by the conversions before the profiles
+ *            were introduced: FAST is as fast as the baseline, not faster. It only skips work if the number of pages
+ *            is limited by the property grobid.analysisProfile.fast.maxPages (the first maxPages pages are converted,
+ *            so that long supplementary material is skipped; default 0, all the pages)
+ *    - FULL: consolidation of header and citations, raw affiliations and citations, coordinates of figures, formulas,
+ *            references and bibliographic entries in the TEI - slower than the baseline
+ *
+ * The profile is set by the property grobid.analysisProfile (FAST or FULL, default FAST) or by {@link GROBIDloader#setAnalysisProfile(GROBIDanalysisProfile)}.
+ * The TEIs of the GROBID TEI cache are kept by profile (and by page limit).
+ *
+ * {@link #main(String[])} measures the conversion times of the baseline configuration and of each profile on a folder of PDFs.
+ *
+ * @author Francesco Ronzano
+ *
+ */
+public enum GROBIDanalysisProfile {
+
+	FAST,
+	FULL;
+
+	private static Logger logger = LoggerFactory.getLogger(GROBIDanalysisProfile.class);
+
+	public static final GROBIDanalysisProfile DEFAULT_PROFILE = FAST;
+
+	private static final List<String> fullProfileTeiCoordinates = Arrays.asList("figure", "formula", "ref", "biblStruct");
+
+	/**
+	 * Build the GROBID analysis configuration of the profile
+	 *
+	 * @return
+	 */
+	public GrobidAnalysisConfig buildConfig() {
+		switch(this) {
+		case FULL:
+			return GrobidAnalysisConfig.builder()
+					.consolidateHeader(1)
+					.consolidateCitations(1)
+					.includeRawAffiliations(true)
+					.includeRawCitations(true)
+					.generateTeiCoordinates(fullProfileTeiCoordinates)
+					.build();
+		case FAST:
+		default:
+			// Same settings as GrobidAnalysisConfig.defaultInstance() (baseline), stated explicitly; only the page limit skips work
+			GrobidAnalysisConfig.GrobidAnalysisConfigBuilder builder = GrobidAnalysisConfig.builder()
+					.consolidateHeader(0)
+					.consolidateCitations(0)
+					.includeRawAffiliations(false)
+					.includeRawCitations(false)
+					.generateTeiCoordinates(new ArrayList<String>())
+					.generateTeiIds(false);
+			int maxPages = getFastMaxPages();
+			if(maxPages > 0) {
+				builder = builder.endPage(maxPages);
+			}
+			return builder.build();
+		}
+	}
+
+	/**
+	 * Maximum number of pages converted by the FAST profile (property grobid.analysisProfile.fast.maxPages)
+	 *
+	 * @return 0 if all the pages are converted
+	 */
+	public static int getFastMaxPages() {
+		try {
+			String maxPages = PropertyManager.getProperty("grobid.analysisProfile.fast.maxPages");
+			if(!Strings.isNullOrEmpty(maxPages)) {
+				return Math.max(0, Integer.valueOf(maxPages.trim()));
+			}
+		}
+		catch(Exception e) {
+			/* Do nothing */
+		}
+		return 0;
+	}
+
+	/**
+	 * Suffix of the keys of the GROBID TEI cache, so that the TEIs generated by different profiles are not mixed
+	 *
+	 * @return
+	 */
+	public String getCacheKeySuffix() {
+		int maxPages = (this == FAST) ? getFastMaxPages() : 0;
+		return "." + this.name().toLowerCase() + ((maxPages > 0) ? ".p" + maxPages : "");
+	}
+
+	/**
+	 * Profile set by the property grobid.analysisProfile, or the default profile if the property is not set or not valid
+	 *
+	 * @return
+	 */
+	public static GROBIDanalysisProfile fromProperties() {
+		String profileName = null;
+		try {
+			profileName = PropertyManager.getProperty("grobid.analysisProfile");
+			if(!Strings.isNullOrEmpty(profileName)) {
+				return GROBIDanalysisProfile.valueOf(profileName.trim().toUpperCase());
+			}
+		}
+		catch(Exception e) {
+			logger.warn("Invalid GROBID analysis profile " + profileName + ", using " + DEFAULT_PROFILE + " - " + e.getMessage());
+		}
+		return DEFAULT_PROFILE;
+	}
+
+	/**
+	 * Convert the PDFs of a folder with the baseline configuration (GrobidAnalysisConfig.defaultInstance()) and with each profile
+	 * (bypassing the GROBID TEI cache) and print the conversion times
+	 *
+	 * Usage: GROBIDanalysisProfile (full path of the BioAB Miner property file) (folder of PDFs) [repetitions]
+	 *
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		if(args == null || args.length < 2) {
+			throw new IllegalArgumentException("Usage: GROBIDanalysisProfile <property file> <folder of PDFs> [repetitions]");
+		}
+
+		PropertyManager.setPropertyFilePath(args[0]);
+		int repetitions = (args.length > 2) ? Integer.valueOf(args[2]) : 1;
+
+		File[] PDFfiles = new File(args[1]).listFiles((File f) -> f.isFile() && f.getName().toLowerCase().endsWith(".pdf"));
+		if(PDFfiles == null || PDFfiles.length == 0) {
+			throw new IllegalArgumentException("No PDF file in " + args[1]);
+		}
+		Arrays.sort(PDFfiles);
+
+		GROBIDloader.initGROBID();
+
+		List<String> configNames = new ArrayList<String>();
+		List<GrobidAnalysisConfig> configs = new ArrayList<GrobidAnalysisConfig>();
+		configNames.add("BASELINE");
+		configs.add(GrobidAnalysisConfig.defaultInstance());
+		for(GROBIDanalysisProfile profile : GROBIDanalysisProfile.values()) {
+			configNames.add(profile.name());
+			configs.add(profile.buildConfig());
+		}
+
+		for(int c = 0; c < configs.size(); c++) {
+			String profile = configNames.get(c);
+			GrobidAnalysisConfig config = configs.get(c);
+			long totalMs = 0l;
+			long totalTeiChars = 0l;
+			int converted = 0;
+
+			// The first PDF is converted once before timing, to warm up the engine
+			try (GROBIDenginePool.Checkout engineCheckout = GROBIDenginePool.checkout()) {
+				engineCheckout.getEngine().fullTextToTEI(PDFfiles[0], config);
+			} catch (Exception e) {
+				logger.error("Error while warming up GROBID with profile " + profile + " - " + e.getMessage());
+			}
+
+			for(int r = 0; r < repetitions; r++) {
+				for(File PDFfile : PDFfiles) {
+					try (GROBIDenginePool.Checkout engineCheckout = GROBIDenginePool.checkout()) {
+						long startConversion = System.currentTimeMillis();
+						String tei = engineCheckout.getEngine().fullTextToTEI(PDFfile, config);
+						long conversionMs = System.currentTimeMillis() - startConversion;
+
+						totalMs += conversionMs;
+						totalTeiChars += (tei != null) ? tei.length() : 0;
+						converted++;
+						System.out.println(profile + "\t" + PDFfile.getName() + "\t" + Files.size(PDFfile.toPath()) + " bytes\t" + conversionMs + " ms");
+					} catch (Exception e) {
+						System.out.println(profile + "\t" + PDFfile.getName() + "\tERROR: " + e.getMessage());
+					}
+				}
+			}
+
+			System.out.println(profile + " profile: " + converted + " conversions in " + totalMs + " ms (" + ((converted > 0) ? (totalMs / converted) : 0) + " ms per PDF, "
+					+ ((converted > 0) ? (totalTeiChars / converted) : 0) + " TEI chars per PDF)");
+		}
+	}
+
+}
@@ -0,0 +1,71 @@
+/**
+ * Biomedical Abbreviation Miner (BioAB Miner)
+ *
+ */
+
+package es.imim.ibi.bioab.exec.pdf;
+
+/**
+ * Failure of the conversion of a PDF by GROBID, with the reason of the failure
+ *
+ * @author Francesco Ronzano
+ *
+ */
+public class GROBIDconversionException extends Exception {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Reasons of failure of a PDF conversion
+	 *
+	 */
+	public enum Reason {
+		TOO_LARGE,
+		NO_ENGINE,
+		TIMEOUT,
+		INTERRUPTED,
+		CONVERSION_ERROR,
+		EMPTY_RESULT,
+		IO_ERROR
+	}
+
+	private final Reason reason;
+
+	public GROBIDconversionException(Reason reason, String message) {
+		super(message);
+		this.reason = reason;
+	}
+
+	public GROBIDconversionException(Reason reason, String message, Throwable cause) {
+		super(message, cause);
+		this.reason = reason;
+	}
+
+	public Reason getReason() {
+		return reason;
+	}
+
+	/**
+	 * True if the failure depends on the PDF (TIMEOUT, CONVERSION_ERROR, TOO_LARGE, EMPTY_RESULT), so that converting the
+	 * PDF again would fail again; false if the failure is transient (NO_ENGINE, INTERRUPTED, IO_ERROR)
+	 *
+	 * @return
+	 */
+	public boolean isDocumentFailure() {
+		switch(reason) {
+		case TIMEOUT:
+		case CONVERSION_ERROR:
+		case TOO_LARGE:
+		case EMPTY_RESULT:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	@Override
+	public String getMessage() {
+		return reason + ": " + super.getMessage();
+	}
+
+}
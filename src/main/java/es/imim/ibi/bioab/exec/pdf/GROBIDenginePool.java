@@ -0,0 +1,299 @@
+/**
+ * Biomedical Abbreviation Miner (BioAB Miner)
+ *
+ */
+
+package es.imim.ibi.bioab.exec.pdf;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.backingdata.gateutils.generic.PropertyManager;
+import org.grobid.core.engines.Engine;
+import org.grobid.core.factory.GrobidFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Strings;
+
+/**
+ * Bounded pool of GROBID engines, created once when GROBID is initialized (see {@link GROBIDloader#initGROBID()}).
+ *
+ * Each PDF conversion checks out an engine and returns it when done, so that at most (size of the pool) PDFs are
+ * converted in parallel; the other conversions wait in queue for a free engine.
+ *
+ * The engine of a conversion cancelled by the watchdog is abandoned (see {@link Checkout#abandon()}): the conversion
+ * thread cannot be stopped and keeps the engine until the conversion ends. At most grobid.enginePool.maxAbandoned
+ * abandoned conversions are replaced by new engines; beyond that (or if a new engine cannot be created) the engine is not
+ * replaced and the pool is reduced until the conversion ends: meanwhile, the checkouts that find no free engine fail
+ * immediately instead of waiting. The engines of the abandoned conversions that end are discarded (or
+ * returned to the pool, if they were not replaced).
+ *
+ * Configuration properties:
+ *    - grobid.enginePool.size: number of engines (default 1)
+ *    - grobid.enginePool.checkoutTimeoutSeconds: maximum time to wait for a free engine (default 600)
+ *    - grobid.enginePool.maxAbandoned: maximum number of abandoned conversions still running replaced by new engines (default: size of the pool)
+ *
+ * @author Francesco Ronzano
+ *
+ */
+public class GROBIDenginePool {
+
+	private static Logger logger = LoggerFactory.getLogger(GROBIDenginePool.class);
+
+	public static final int DEFAULT_SIZE = 1;
+	public static final long DEFAULT_CHECKOUT_TIMEOUT_SECONDS = 600l;
+
+	private static BlockingQueue<Engine> engineQueue = null;
+	private static int size = 0;
+	private static int maxAbandoned = DEFAULT_SIZE;
+	private static long checkoutTimeoutSeconds = DEFAULT_CHECKOUT_TIMEOUT_SECONDS;
+	private static Object initSynch = new Object();
+
+	// Metrics
+	private static final LongAdder checkoutCount = new LongAdder();
+	private static final LongAdder checkoutTimeoutCount = new LongAdder();
+	private static final LongAdder abandonedCount = new LongAdder();
+	private static final LongAdder totalQueueWaitMs = new LongAdder();
+	private static final LongAccumulator maxQueueWaitMs = new LongAccumulator(Long::max, 0l);
+	private static final AtomicInteger waitingCount = new AtomicInteger(0);
+	private static final AtomicInteger runningAbandonedCount = new AtomicInteger(0);
+	// Abandoned conversions still running whose engine has not been replaced: the pool is reduced by this number of engines
+	private static final AtomicInteger unreplacedAbandonedCount = new AtomicInteger(0);
+
+	/**
+	 * Engine checked out from the pool, with the time spent waiting for it
+	 *
+	 */
+	public static class Checkout implements AutoCloseable {
+		private final Engine engine;
+		private final long queueWaitMs;
+		private final AtomicBoolean released = new AtomicBoolean(false);
+		private final AtomicBoolean abandoned = new AtomicBoolean(false);
+		private boolean replaced = false;
+
+		private Checkout(Engine engine, long queueWaitMs) {
+			this.engine = engine;
+			this.queueWaitMs = queueWaitMs;
+		}
+
+		public Engine getEngine() {
+			return engine;
+		}
+
+		/**
+		 * Milliseconds waited for a free engine
+		 *
+		 * @return
+		 */
+		public long getQueueWaitMs() {
+			return queueWaitMs;
+		}
+
+		/**
+		 * Return the engine to the pool; if the engine has been abandoned, the conversion has ended: the engine is discarded
+		 * if it has been replaced, otherwise it is returned to the pool
+		 */
+		@Override
+		public synchronized void close() {
+			if(released.compareAndSet(false, true)) {
+				engineQueue.offer(engine);
+			}
+			else if(abandoned.compareAndSet(true, false)) {
+				runningAbandonedCount.decrementAndGet();
+				if(!replaced) {
+					unreplacedAbandonedCount.decrementAndGet();
+					engineQueue.offer(engine);
+					logger.info("Abandoned GROBID engine returned to the pool: its conversion has ended.");
+				}
+			}
+		}
+
+		/**
+		 * Give up the engine, still busy with a conversion that has been cancelled: a new engine is added to the pool in its place,
+		 * unless grobid.enginePool.maxAbandoned abandoned conversions are still running (the pool is then reduced by one
+		 * engine until the conversion ends). The checkout has to be closed when the cancelled conversion ends.
+		 */
+		public synchronized void abandon() {
+			if(released.compareAndSet(false, true)) {
+				abandoned.set(true);
+				abandonedCount.increment();
+				if(runningAbandonedCount.incrementAndGet() > maxAbandoned) {
+					unreplacedAbandonedCount.incrementAndGet();
+					logger.warn("GROBID engine abandoned and not replaced: " + runningAbandonedCount.get() + " abandoned conversions still running (max " + maxAbandoned + ").");
+					return;
+				}
+				try {
+					engineQueue.offer(GrobidFactory.getInstance().createEngine());
+					replaced = true;
+					logger.warn("GROBID engine abandoned and replaced by a new engine.");
+				}
+				catch(Exception e) {
+					unreplacedAbandonedCount.incrementAndGet();
+					logger.error("Impossible to create a new GROBID engine to replace an abandoned one, the pool is reduced by one engine - " + e.getMessage());
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Create the engines of the pool (if not already created); the size of the pool is read from the property grobid.enginePool.size
+	 */
+	public static void init() {
+		synchronized(initSynch) {
+			if(engineQueue != null) {
+				return;
+			}
+
+			int poolSize = getIntProperty("grobid.enginePool.size", DEFAULT_SIZE);
+			if(poolSize < 1) {
+				poolSize = DEFAULT_SIZE;
+			}
+			long timeoutSeconds = getIntProperty("grobid.enginePool.checkoutTimeoutSeconds", (int) DEFAULT_CHECKOUT_TIMEOUT_SECONDS);
+			checkoutTimeoutSeconds = (timeoutSeconds > 0l) ? timeoutSeconds : DEFAULT_CHECKOUT_TIMEOUT_SECONDS;
+			maxAbandoned = Math.max(0, getIntProperty("grobid.enginePool.maxAbandoned", poolSize));
+
+			// Room for the engines that replace abandoned ones and for the abandoned engines returned when their conversion ends
+			BlockingQueue<Engine> newEngineQueue = new ArrayBlockingQueue<Engine>(poolSize + maxAbandoned);
+			for(int i = 0; i < poolSize; i++) {
+				newEngineQueue.add(GrobidFactory.getInstance().createEngine());
+			}
+
+			size = poolSize;
+			engineQueue = newEngineQueue;
+			logger.info("GROBID engine pool initialized with " + poolSize + " engines (at most " + maxAbandoned + " abandoned engines replaced).");
+		}
+	}
+
+	/**
+	 * Wait for a free engine; the engine is returned to the pool by closing the checkout
+	 *
+	 * @return
+	 * @throws Exception if no engine gets free before the checkout timeout, or immediately if no engine is free and the pool
+	 * is reduced by abandoned conversions still running whose engine has not been replaced
+	 */
+	public static Checkout checkout() throws Exception {
+		if(engineQueue == null) {
+			init();
+		}
+
+		long startWait = System.currentTimeMillis();
+		Engine engine = engineQueue.poll();
+		if(engine == null && unreplacedAbandonedCount.get() > 0) {
+			checkoutTimeoutCount.increment();
+			throw new Exception("No GROBID engine available: " + unreplacedAbandonedCount.get() + " abandoned conversions still running without a replacement engine (" +
+					runningAbandonedCount.get() + " abandoned conversions running, max " + maxAbandoned + " replaced)");
+		}
+		waitingCount.incrementAndGet();
+		try {
+			if(engine == null) {
+				engine = engineQueue.poll(checkoutTimeoutSeconds, TimeUnit.SECONDS);
+			}
+		}
+		finally {
+			waitingCount.decrementAndGet();
+		}
+		long queueWaitMs = System.currentTimeMillis() - startWait;
+
+		if(engine == null) {
+			checkoutTimeoutCount.increment();
+			throw new Exception("No GROBID engine available after " + checkoutTimeoutSeconds + " seconds (" + size + " engines, " + waitingCount.get() + " conversions waiting)");
+		}
+
+		checkoutCount.increment();
+		totalQueueWaitMs.add(queueWaitMs);
+		maxQueueWaitMs.accumulate(queueWaitMs);
+
+		return new Checkout(engine, queueWaitMs);
+	}
+
+	public static int getSize() {
+		return size;
+	}
+
+	/**
+	 * Maximum number of abandoned conversions still running replaced by new engines
+	 *
+	 * @return
+	 */
+	public static int getMaxAbandoned() {
+		return maxAbandoned;
+	}
+
+	/**
+	 * Number of abandoned conversions still running
+	 *
+	 * @return
+	 */
+	public static int getRunningAbandoned() {
+		return runningAbandonedCount.get();
+	}
+
+	/**
+	 * Number of engines not checked out
+	 *
+	 * @return
+	 */
+	public static int getAvailable() {
+		return (engineQueue != null) ? engineQueue.size() : 0;
+	}
+
+	/**
+	 * Number of conversions waiting for a free engine
+	 *
+	 * @return
+	 */
+	public static int getWaiting() {
+		return waitingCount.get();
+	}
+
+	public static long getCheckoutCount() {
+		return checkoutCount.sum();
+	}
+
+	public static long getCheckoutTimeoutCount() {
+		return checkoutTimeoutCount.sum();
+	}
+
+	/**
+	 * Number of engines abandoned because of cancelled conversions (see {@link Checkout#abandon()})
+	 *
+	 * @return
+	 */
+	public static long getAbandonedCount() {
+		return abandonedCount.sum();
+	}
+
+	public static long getTotalQueueWaitMs() {
+		return totalQueueWaitMs.sum();
+	}
+
+	public static long getMaxQueueWaitMs() {
+		return maxQueueWaitMs.get();
+	}
+
+	public static String getStatus() {
+		return "GROBID engine pool: " + getAvailable() + " / " + size + " engines available, " + getWaiting() + " conversions waiting, "
+				+ getCheckoutCount() + " checkouts (" + getCheckoutTimeoutCount() + " timeouts, " + getAbandonedCount() + " engines abandoned, " + getRunningAbandoned() + " still running), queue wait total " + getTotalQueueWaitMs() + " ms, max " + getMaxQueueWaitMs() + " ms.";
+	}
+
+	private static int getIntProperty(String propertyName, int defaultValue) {
+		try {
+			String propertyValue = PropertyManager.getProperty(propertyName);
+			if(!Strings.isNullOrEmpty(propertyValue)) {
+				return Integer.valueOf(propertyValue.trim());
+			}
+		}
+		catch(Exception e) {
+			logger.debug("Property " + propertyName + " not set or invalid, using default value " + defaultValue);
+		}
+		return defaultValue;
+	}
+
+}
@@ -5,39 +5,53 @@
 
 package es.imim.ibi.bioab.exec.pdf;
 
-import java.io.ByteArrayOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URL;
 import java.net.URLConnection;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
-import java.util.Random;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Predicate;
 
 import org.apache.commons.lang.StringUtils;
-import org.backingdata.gateutils.GATEutils;
 import org.backingdata.gateutils.generic.PropertyManager;
-import org.grobid.core.engines.Engine;
-import org.grobid.core.engines.config.GrobidAnalysisConfig;
-import org.grobid.core.factory.GrobidFactory;
 import org.grobid.core.main.GrobidHomeFinder;
 import org.grobid.core.utilities.GrobidProperties;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.util.CollectionUtils;
 
+import com.google.common.base.Strings;
+
+import es.imim.ibi.bioab.exec.BioABmetrics;
+import es.imim.ibi.bioab.exec.util.AnnotationIntervalIndex;
 import es.imim.ibi.bioab.nlp.freeling.FreelingParser;
 import gate.Annotation;
 import gate.AnnotationSet;
@@ -71,10 +85,50 @@ public class GROBIDloader {
 	public static String affiliationAnnoType = "affiliation";
 	public static String addressAnnoType = "address";
 
-	private static Random rnd = new Random();
-	private static boolean isInitialized = false;
+	// TEI elements transferred to the mainAnnoSet as structure annotations (TEI element name to structure annotation type)
+	private static final Map<String, String> teiStructureTypeMap = new LinkedHashMap<String, String>();
+	static {
+		teiStructureTypeMap.put("abstract", abstractAnnoType);
+		teiStructureTypeMap.put("biblStruct", bibEntryAnnoType);
+		teiStructureTypeMap.put("teiHeader", headerAnnoType);
+		teiStructureTypeMap.put("head", secTitleAnnoType);
+		teiStructureTypeMap.put("title", paperTitleAnnoType);
+		teiStructureTypeMap.put("table", tableAnnoType);
+		teiStructureTypeMap.put("figure", figureAnnoType);
+		teiStructureTypeMap.put("keywords", keywordsAnnoType);
+		teiStructureTypeMap.put("author", authorAnnoType);
+		teiStructureTypeMap.put("affiliation", affiliationAnnoType);
+		teiStructureTypeMap.put("address", addressAnnoType);
+	}
+
+	// Structure types removed from the beginning or the end of the sentences that include them
+	private static final String[] headerAnnoTypes = {paperTitleAnnoType, secTitleAnnoType, affiliationAnnoType, authorAnnoType, addressAnnoType, keywordsAnnoType, figureAnnoType, tableAnnoType};
+
+	// Section policy: the text of these structure types (mainAnnoSet) is excluded from sentence creation and downstream analysis
+	public static final String defaultExcludedStructureTypes = bibEntryAnnoType + "," + affiliationAnnoType + "," + addressAnnoType + "," + 
+			authorAnnoType + "," + tableAnnoType + "," + figureAnnoType;
+	private static volatile Set<String> excludedStructureTypes = null;
+
+	// Analysis profile of the PDF conversions (null: read the property grobid.analysisProfile)
+	private static volatile GROBIDanalysisProfile analysisProfile = null;
+
+	// Watchdog of the PDF conversions
+	public static final long DEFAULT_CONVERSION_TIMEOUT_SECONDS = 300l;
+	public static final long DEFAULT_MAX_PDF_SIZE_MB = 50l;
+	public static final long DEFAULT_PDF_TO_XML_MEMORY_LIMIT_MB = 4096l;
+	// Conversion threads: one for each engine of the pool, including the ones that replace abandoned engines (created by initGROBID)
+	private static volatile ThreadPoolExecutor conversionExecutor = null;
+	private static final Map<GROBIDconversionException.Reason, LongAdder> failureCountMap = new EnumMap<GROBIDconversionException.Reason, LongAdder>(GROBIDconversionException.Reason.class);
+	static {
+		for(GROBIDconversionException.Reason reason : GROBIDconversionException.Reason.values()) {
+			failureCountMap.put(reason, new LongAdder());
+		}
+	}
 
-	public static void initGROBID() {
+	private static final String conversionFolderPrefix = "conversion_";
+	private static volatile boolean isInitialized = false;
+
+	public static synchronized void initGROBID() {
 
 		if(isInitialized) {
 			return;
@@ -89,6 +143,34 @@ public class GROBIDloader {
 				GrobidHomeFinder grobidHomeFinder = new GrobidHomeFinder(Arrays.asList(bioABminerResourceFolder + "grobid-home_0_5_1//grobid-home"));       
 				GrobidProperties.getInstance(grobidHomeFinder);
 
+				// Remove the scratch folders left by conversions interrupted by a previous shutdown
+				File GROBIDtempFolder = new File(bioABminerResourceFolder + "grobid-home_0_5_1" + File.separator  + "tmp");
+				File[] staleConversionFolders = GROBIDtempFolder.listFiles((File f) -> f.isDirectory() && f.getName().startsWith(conversionFolderPrefix));
+				if(staleConversionFolders != null) {
+					for(File staleConversionFolder : staleConversionFolders) {
+						deleteFolder(staleConversionFolder);
+					}
+				}
+
+				// Limit the memory and the time of the native pdf-to-XML step of GROBID, executed as a child process
+				setPDFtoXMLlimits();
+
+				// Create the engines once, to be reused by all the conversions
+				GROBIDenginePool.init();
+				conversionExecutor = new ThreadPoolExecutor(0, GROBIDenginePool.getSize() + GROBIDenginePool.getMaxAbandoned(), 60l, TimeUnit.SECONDS,
+						new SynchronousQueue<Runnable>(), new ThreadFactory() {
+					private final AtomicInteger threadCount = new AtomicInteger(0);
+
+					@Override
+					public Thread newThread(Runnable runnable) {
+						Thread conversionThread = new Thread(runnable, "BioAB-GROBID-conversion-" + threadCount.incrementAndGet());
+						conversionThread.setDaemon(true);
+						return conversionThread;
+					}
+				});
+				GROBIDteiCache.init();
+				logger.info("GROBID analysis profile: " + getAnalysisProfile());
+
 				logger.info("GROBID correctly initialized (home set to: " + ((GrobidProperties.get_GROBID_HOME_PATH() != null) ? GrobidProperties.get_GROBID_HOME_PATH() : "NULL") + ").");
 				isInitialized = true;
 			}
@@ -104,47 +186,109 @@ public class GROBIDloader {
 
 	public static Document parsePDF(byte[] PDFbyteArray, String PDFfileName) throws Exception {
 
+		if(PDFbyteArray == null) {
+			throw new Exception("Invalid PDF byte array (null)");
+		}
+
+		return parsePDF(new ByteArrayInputStream(PDFbyteArray), PDFfileName);
+	}
+
+	/**
+	 * Convert the PDF read from the stream: the PDF is copied from the stream to the scratch file of the conversion, 
+	 * without loading it in memory, and the copy is stopped as soon as the PDF exceeds the maximum size (see {@link #getMaxPDFsizeBytes()}).
+	 * The stream is not closed.
+	 * 
+	 * @param PDFstream
+	 * @param PDFfileName
+	 * @return
+	 * @throws Exception
+	 */
+	public static Document parsePDF(InputStream PDFstream, String PDFfileName) throws Exception {
+
 		initGROBID();
 
-		Document retDocument = null;
+		if(PDFstream == null) {
+			throw new Exception("Invalid PDF stream (null)");
+		}
+
+		String docName = getDocName(PDFfileName);
 
 		String bioABminerResourceFolder = PropertyManager.getProperty("resourceFolder.fullPath");
 		if(!bioABminerResourceFolder.endsWith(File.separator)) bioABminerResourceFolder += File.separator;
 
-		// Create temp file
-		String tempFileName = rnd.nextInt(100000) + "_tempGROBID_PDF";
+		// Create the scratch folder of the conversion (inside the GROBID temporary folder) and stream the PDF into it,
+		// computing the key of the GROBID TEI cache meanwhile
+		long maxPDFsizeBytes = getMaxPDFsizeBytes();
+		MessageDigest keyDigest = GROBIDteiCache.newKeyDigest();
+		Path conversionFolder = null;
 		File tempPDFfile = null;
 		try {
-			tempPDFfile = File.createTempFile(tempFileName, ".pdf", new File(bioABminerResourceFolder + "grobid-home_0_5_1" + File.separator  + "tmp"));
-			FileOutputStream fos = new FileOutputStream(tempPDFfile);
-			fos.write(PDFbyteArray);
-			fos.close();
+			Path GROBIDtempFolder = Paths.get(bioABminerResourceFolder + "grobid-home_0_5_1" + File.separator  + "tmp");
+			Files.createDirectories(GROBIDtempFolder);
+			conversionFolder = Files.createTempDirectory(GROBIDtempFolder, conversionFolderPrefix);
+			tempPDFfile = conversionFolder.resolve("input.pdf").toFile();
+
+			long PDFsize = 0l;
+			byte[] buffer = new byte[65536];
+			try (OutputStream tempPDFout = Files.newOutputStream(tempPDFfile.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+				int len;
+				while((len = PDFstream.read(buffer)) != -1) {
+					PDFsize += len;
+					if(maxPDFsizeBytes > 0l && PDFsize > maxPDFsizeBytes) {
+						break;
+					}
+					keyDigest.update(buffer, 0, len);
+					tempPDFout.write(buffer, 0, len);
+				}
+			}
+
+			if(maxPDFsizeBytes > 0l && PDFsize > maxPDFsizeBytes) {
+				deleteFolder(conversionFolder.toFile());
+				throw recordFailure(new GROBIDconversionException(GROBIDconversionException.Reason.TOO_LARGE, 
+						"PDF " + docName + " exceeds the maximum size of " + (maxPDFsizeBytes / (1024l * 1024l)) + " MB"));
+			}
+			BioABmetrics.recordPDFbytes(PDFsize);
 		} catch (IOException e) {
 			logger.error("Creating temporal PDF file");
 			e.printStackTrace();
+			if(conversionFolder != null) {
+				deleteFolder(conversionFolder.toFile());
+			}
+			throw recordFailure(new GROBIDconversionException(GROBIDconversionException.Reason.IO_ERROR, "Impossible to write PDF " + docName + " to a temporary file", e));
 		}
 
-
-		// Execute GROBID
-		String GROBIDresult = "";
-		try {
-			Engine engine = GrobidFactory.getInstance().createEngine();
-			GROBIDresult = engine.fullTextToTEI(tempPDFfile, GrobidAnalysisConfig.defaultInstance());
-		} 
-		catch (Exception e) {
-			logger.error("Converting PDF by GROBID");
-			e.printStackTrace();
+		// Serve the TEI from the cache if the same PDF has already been converted with the same profile
+		GROBIDanalysisProfile profile = getAnalysisProfile();
+		String teiCacheKey = GROBIDteiCache.getKey(keyDigest) + profile.getCacheKeySuffix();
+		String GROBIDresult = GROBIDteiCache.get(teiCacheKey);
+		if(GROBIDresult != null) {
+			logger.info("PDF " + docName + " TEI retrieved from cache (" + teiCacheKey + ").");
+			deleteFolder(conversionFolder.toFile());
 		}
+		else {
+			long startGROBID = System.nanoTime();
+			GROBIDresult = convert(tempPDFfile, conversionFolder, profile, docName);
+			BioABmetrics.recordStage(BioABmetrics.Stage.GROBID, startGROBID);
 
-		// Delete temp file
-		try {
-			tempPDFfile.delete();
-		} 
-		catch (Exception e) {
-			logger.error("Deleting temporal PDF file");
-			e.printStackTrace();
+			if(GROBIDresult != null && GROBIDresult.length() > 600) {
+				GROBIDteiCache.put(teiCacheKey, GROBIDresult);
+			}
 		}
 
+		return toDocument(GROBIDresult, docName);
+	}
+
+	/**
+	 * Create the GATE document from the TEI generated by GROBID
+	 * 
+	 * @param GROBIDresult
+	 * @param docName
+	 * @return
+	 * @throws GROBIDconversionException
+	 */
+	private static Document toDocument(String GROBIDresult, String docName) throws GROBIDconversionException {
+
+		Document retDocument = null;
 
 		if(GROBIDresult != null && GROBIDresult.length() > 600) {
 
@@ -152,57 +296,192 @@ public class GROBIDloader {
 				retDocument = Factory.newDocument(GROBIDresult);
 
 				if(retDocument.getContent().size() <= 30l) {
+					Factory.deleteResource(retDocument);
 					retDocument = null;
-					throw new Exception("Document textual content long less than 30 chars. Ignored document - text contents too short");
+					throw recordFailure(new GROBIDconversionException(GROBIDconversionException.Reason.EMPTY_RESULT, "Document textual content long less than 30 chars. Ignored document - text contents too short"));
 
 				}
 			} catch (ResourceInstantiationException e) {
 				retDocument = null;
 				e.printStackTrace();
-				throw new Exception("Error while instantiating Document from PDF file contents");
+				throw recordFailure(new GROBIDconversionException(GROBIDconversionException.Reason.CONVERSION_ERROR, "Error while instantiating Document from PDF file contents", e));
 			}
 
 			if(retDocument != null) {
 				// Set name feature of the document
-				retDocument.getFeatures().put("name", (StringUtils.isNotBlank(PDFfileName) ? PDFfileName : "NO_NAME"));
+				retDocument.getFeatures().put("name", docName);
 			}
 		}
 		else {
 			logger.info("Error while converting PDF file by GROBID");
+			throw recordFailure(new GROBIDconversionException(GROBIDconversionException.Reason.EMPTY_RESULT, "No TEI generated by GROBID from PDF " + docName));
 		}
 
-		// Empty temporary folder
+		return retDocument;
+	}
+
+	private static String getDocName(String PDFfileName) {
+		return (StringUtils.isNotBlank(PDFfileName) ? PDFfileName : "NO_NAME");
+	}
+
+	/**
+	 * Maximum size of the PDFs to convert, in bytes (property grobid.maxPDFsizeMB, default 50 MB; 0 or less if no limit is set)
+	 * 
+	 * @return
+	 */
+	public static long getMaxPDFsizeBytes() {
+		return getLongProperty("grobid.maxPDFsizeMB", DEFAULT_MAX_PDF_SIZE_MB) * 1024l * 1024l;
+	}
+
+	/**
+	 * Set the memory limit (property grobid.pdfToXMLmemoryLimitMB, default 4096 MB; 0 or less to keep the limit of grobid-home)
+	 * and the timeout (property grobid.conversionTimeoutSeconds) of the native pdf-to-XML step of GROBID: the child process
+	 * is killed by GROBID when it exceeds them, so that a pathological PDF does not keep its conversion thread and engine
+	 * busy after the conversion is cancelled.
+	 */
+	private static void setPDFtoXMLlimits() {
+		long memoryLimitMB = getLongProperty("grobid.pdfToXMLmemoryLimitMB", DEFAULT_PDF_TO_XML_MEMORY_LIMIT_MB);
+		if(memoryLimitMB > 0l) {
+			GrobidProperties.setPropertyValue("grobid.3rdparty.pdf2xml.memory.limit.mb", String.valueOf(memoryLimitMB));
+		}
+		long timeoutSeconds = getLongProperty("grobid.conversionTimeoutSeconds", DEFAULT_CONVERSION_TIMEOUT_SECONDS);
+		if(timeoutSeconds > 0l) {
+			GrobidProperties.setPropertyValue("grobid.3rdparty.pdf2xml.memory.timeout.sec", String.valueOf(timeoutSeconds));
+		}
+		logger.info("GROBID pdf-to-XML limits: " + ((memoryLimitMB > 0l) ? memoryLimitMB + " MB" : "memory limit of grobid-home") + ", " +
+				((timeoutSeconds > 0l) ? timeoutSeconds + " seconds" : "timeout of grobid-home") + ".");
+	}
+
+	/**
+	 * Convert the PDF by a GROBID engine of the pool, on a conversion thread watched by a deadline (property grobid.conversionTimeoutSeconds).
+	 * If the deadline expires, the conversion is cancelled, its engine is abandoned (replaced in the pool by a new one, up to
+	 * grobid.enginePool.maxAbandoned abandoned conversions still running - see {@link GROBIDenginePool}) and its scratch
+	 * folder is deleted. The scratch folder of the conversion is always deleted when the conversion ends.
+	 * The conversion threads are bounded: if no engine or no conversion thread is available, the conversion fails with
+	 * reason NO_ENGINE.
+	 * 
+	 * @param tempPDFfile
+	 * @param conversionFolder
+	 * @param profile
+	 * @param docName
+	 * @return
+	 * @throws GROBIDconversionException
+	 */
+	private static String convert(File tempPDFfile, Path conversionFolder, GROBIDanalysisProfile profile, String docName) throws GROBIDconversionException {
+
+		if(conversionExecutor == null) {
+			deleteFolder(conversionFolder.toFile());
+			throw recordFailure(new GROBIDconversionException(GROBIDconversionException.Reason.NO_ENGINE, "GROBID not initialized"));
+		}
+
+		GROBIDenginePool.Checkout engineCheckout = null;
 		try {
-			File GROBIDtempFolder = new File(bioABminerResourceFolder + "grobid-home_0_5_1" + File.separator  + "tmp");
-			if(GROBIDtempFolder != null && GROBIDtempFolder.exists() && GROBIDtempFolder.isDirectory()) {
-				File[] files = GROBIDtempFolder.listFiles();
-				if(files != null) {
-					for(File f: files) {
-						if(f.isDirectory()) {
-							deleteFolder(f);
-						} else {
-							try {
-								f.delete();
-							}
-							catch (Exception e) {
-								// DO NOTHING
-							}
-						}
-					}
+			engineCheckout = GROBIDenginePool.checkout();
+		}
+		catch(Exception e) {
+			deleteFolder(conversionFolder.toFile());
+			throw recordFailure(new GROBIDconversionException(GROBIDconversionException.Reason.NO_ENGINE, e.getMessage(), e));
+		}
+
+		// Execute GROBID
+		final GROBIDenginePool.Checkout conversionCheckout = engineCheckout;
+		long startConversion = System.currentTimeMillis();
+		Future<String> conversion = null;
+		try {
+			conversion = conversionExecutor.submit(() -> {
+				try {
+					return conversionCheckout.getEngine().fullTextToTEI(tempPDFfile, profile.buildConfig());
 				}
+				finally {
+					// Delete the scratch folder of the conversion (only this conversion uses it)
+					conversionCheckout.close();
+					deleteFolder(conversionFolder.toFile());
+				}
+			});
+		}
+		catch(RejectedExecutionException e) {
+			conversionCheckout.close();
+			deleteFolder(conversionFolder.toFile());
+			throw recordFailure(new GROBIDconversionException(GROBIDconversionException.Reason.NO_ENGINE, "No conversion thread available to convert PDF " + docName, e));
+		}
 
-				files = GROBIDtempFolder.listFiles();
-				logger.info("GROBID temporary folder empty (" + files.length +" files contained).");
-			}
-			else {
-				logger.info("Impossible to remove contents of GROBID temporary folder.");
+		long timeoutSeconds = getLongProperty("grobid.conversionTimeoutSeconds", DEFAULT_CONVERSION_TIMEOUT_SECONDS);
+		try {
+			String GROBIDresult = (timeoutSeconds > 0l) ? conversion.get(timeoutSeconds, TimeUnit.SECONDS) : conversion.get();
+			logger.info("PDF " + docName + " converted by GROBID (" + profile + " profile) in " + (System.currentTimeMillis() - startConversion) + " ms "
+					+ "(waited " + conversionCheckout.getQueueWaitMs() + " ms for a free engine).");
+			return GROBIDresult;
+		}
+		catch(TimeoutException e) {
+			conversion.cancel(true);
+			conversionCheckout.abandon();
+			deleteFolder(conversionFolder.toFile());
+			throw recordFailure(new GROBIDconversionException(GROBIDconversionException.Reason.TIMEOUT, "Conversion of PDF " + docName + " cancelled after " + timeoutSeconds + " seconds"));
+		}
+		catch(InterruptedException e) {
+			conversion.cancel(true);
+			conversionCheckout.abandon();
+			deleteFolder(conversionFolder.toFile());
+			Thread.currentThread().interrupt();
+			throw recordFailure(new GROBIDconversionException(GROBIDconversionException.Reason.INTERRUPTED, "Conversion of PDF " + docName + " interrupted", e));
+		}
+		catch(ExecutionException e) {
+			logger.error("Converting PDF by GROBID");
+			e.getCause().printStackTrace();
+			throw recordFailure(new GROBIDconversionException(GROBIDconversionException.Reason.CONVERSION_ERROR, 
+					"Error while converting PDF " + docName + " - " + e.getCause().getMessage(), e.getCause()));
+		}
+	}
+
+	private static GROBIDconversionException recordFailure(GROBIDconversionException failure) {
+		failureCountMap.get(failure.getReason()).increment();
+		logger.warn("GROBID conversion failed - " + failure.getMessage());
+		return failure;
+	}
+
+	/**
+	 * Number of PDF conversions failed for the reason
+	 * 
+	 * @param reason
+	 * @return
+	 */
+	public static long getFailureCount(GROBIDconversionException.Reason reason) {
+		return failureCountMap.get(reason).sum();
+	}
+
+	private static long getLongProperty(String propertyName, long defaultValue) {
+		try {
+			String propertyValue = PropertyManager.getProperty(propertyName);
+			if(!Strings.isNullOrEmpty(propertyValue)) {
+				return Long.valueOf(propertyValue.trim());
 			}
 		}
-		catch (Exception e) {
-			// DO NOTHING
+		catch(Exception e) {
+			logger.debug("Property " + propertyName + " not set or invalid, using default value " + defaultValue);
 		}
+		return defaultValue;
+	}
 
-		return retDocument;
+	/**
+	 * Analysis profile of the PDF conversions: the one set by {@link #setAnalysisProfile(GROBIDanalysisProfile)} or,
+	 * if not set, the one of the property grobid.analysisProfile
+	 * 
+	 * @return
+	 */
+	public static GROBIDanalysisProfile getAnalysisProfile() {
+		if(analysisProfile == null) {
+			analysisProfile = GROBIDanalysisProfile.fromProperties();
+		}
+		return analysisProfile;
+	}
+
+	/**
+	 * Set the analysis profile of the PDF conversions
+	 * 
+	 * @param profile if null, the profile is read again from the property grobid.analysisProfile
+	 */
+	public static void setAnalysisProfile(GROBIDanalysisProfile profile) {
+		analysisProfile = profile;
 	}
 
 	private static void deleteFolder(File folder) {
@@ -241,20 +520,22 @@ public class GROBIDloader {
 			throw new Exception("The file at: '" + absoluteFilePath + "' does not exist");
 		}
 
-		Document retDocument = null;
+		String fileName = inputPDF.getName().replace(".pdf", "") + "_GROBID.xml";
 
-		byte[] originalPDF = {};
-		Path filePath = Paths.get(absoluteFilePath);
-		try {
-			originalPDF = Files.readAllBytes(filePath);
+		long maxPDFsizeBytes = getMaxPDFsizeBytes();
+		if(maxPDFsizeBytes > 0l && inputPDF.length() > maxPDFsizeBytes) {
+			throw recordFailure(new GROBIDconversionException(GROBIDconversionException.Reason.TOO_LARGE, 
+					"PDF " + fileName + " of " + inputPDF.length() + " bytes exceeds the maximum size of " + (maxPDFsizeBytes / (1024l * 1024l)) + " MB"));
+		}
+
+		Document retDocument = null;
+		try (InputStream PDFstream = Files.newInputStream(inputPDF.toPath())) {
+			retDocument = parsePDF(PDFstream, fileName);
 		} catch (IOException e) {
 			e.printStackTrace();
 			throw new Exception("Error while reading PDF file");
 		}
 
-		String fileName = (new File(absoluteFilePath)).getName().replace(".pdf", "") + "_GROBID.xml";
-		retDocument = parsePDF(originalPDF, fileName);
-
 		return retDocument;
 	}
 
@@ -289,29 +570,18 @@ public class GROBIDloader {
 			connection.setRequestProperty("User-Agent", "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/42.0.2311.135 Safari/537.36");
 			connection.setRequestProperty("Accept", "application/pdf");
 
-			InputStream in = connection.getInputStream();
-
-			int contentLength = connection.getContentLength();
-
-			ByteArrayOutputStream tmpOut;
-			if (contentLength != -1) {
-				tmpOut = new ByteArrayOutputStream(contentLength);
-			} else {
-				tmpOut = new ByteArrayOutputStream(45000000);
+			// Reject PDFs declared too large without downloading them
+			long contentLength = connection.getContentLengthLong();
+			long maxPDFsizeBytes = getMaxPDFsizeBytes();
+			if(maxPDFsizeBytes > 0l && contentLength > maxPDFsizeBytes) {
+				throw recordFailure(new GROBIDconversionException(GROBIDconversionException.Reason.TOO_LARGE, 
+						"PDF " + url + " of " + contentLength + " bytes exceeds the maximum size of " + (maxPDFsizeBytes / (1024l * 1024l)) + " MB"));
 			}
 
-			byte[] buf = new byte[2048];
-			while (true) {
-				int len = in.read(buf);
-				if (len == -1) {
-					break;
-				}
-				tmpOut.write(buf, 0, len);
+			// Stream the PDF to the scratch file of the conversion
+			try (InputStream in = connection.getInputStream()) {
+				retDocument = parsePDF(in, url.getPath().toString());
 			}
-			in.close();
-			tmpOut.close();
-
-			retDocument = parsePDF(tmpOut.toByteArray(), url.getPath().toString());
 
 		} catch (IOException e) {
 			e.printStackTrace();
@@ -325,411 +595,371 @@ public class GROBIDloader {
 	public static Document sanitizeSentences(Document gateDoc, String sentenceAnnoSet, String sentenceAnnoType) {
 
 		String originalGROBIDannoSet = "Original markups";
+		String docText = gateDoc.getContent().toString();
+
+		// Structure annotations: transfer the TEI elements from originalGROBIDannoSet to mainAnnoSet, scanning the TEI markup once in document order
+		// (body and div elements are only collected, as regions of text content)
+		AnnotationSet structureAnnoSet = gateDoc.getAnnotations(mainAnnoSet);
+		Map<String, List<Annotation>> structureMap = new HashMap<String, List<Annotation>>();
+		List<Annotation> textContentList = new ArrayList<Annotation>();
+
+		Set<String> markupTypes = new HashSet<String>(teiStructureTypeMap.keySet());
+		markupTypes.add("body");
+		markupTypes.add("div");
+		for(Annotation markupAnn : gate.Utils.inDocumentOrder(gateDoc.getAnnotations(originalGROBIDannoSet).get(markupTypes))) {
+			if(markupAnn.getType().equals("body") || markupAnn.getType().equals("div")) {
+				textContentList.add(markupAnn);
+				continue;
+			}
 
-		// Transfer annotations from originalGROBIDannoSet to mainAnnoSet
-		GATEutils.transferAnnotations(gateDoc, "abstract", abstractAnnoType, originalGROBIDannoSet, mainAnnoSet, null);
-		GATEutils.transferAnnotations(gateDoc, "biblStruct", bibEntryAnnoType, originalGROBIDannoSet, mainAnnoSet, getBiblioEntries);
-		GATEutils.transferAnnotations(gateDoc, "teiHeader", headerAnnoType, originalGROBIDannoSet, mainAnnoSet, null);
-		GATEutils.transferAnnotations(gateDoc, "head", secTitleAnnoType, originalGROBIDannoSet, mainAnnoSet, null);
-		GATEutils.transferAnnotations(gateDoc, "title", paperTitleAnnoType, originalGROBIDannoSet, mainAnnoSet, null);
-		GATEutils.transferAnnotations(gateDoc, "table", figureAnnoType, originalGROBIDannoSet, mainAnnoSet, null);
-		GATEutils.transferAnnotations(gateDoc, "figure", tableAnnoType, originalGROBIDannoSet, mainAnnoSet, null);
-		GATEutils.transferAnnotations(gateDoc, "keywords", keywordsAnnoType, originalGROBIDannoSet, mainAnnoSet, null);
-		GATEutils.transferAnnotations(gateDoc, "author", authorAnnoType, originalGROBIDannoSet, mainAnnoSet, null);
-		GATEutils.transferAnnotations(gateDoc, "affiliation", affiliationAnnoType, originalGROBIDannoSet, mainAnnoSet, null);
-		GATEutils.transferAnnotations(gateDoc, "address", addressAnnoType, originalGROBIDannoSet, mainAnnoSet, null);
-
-		// Create reference and new annotation sets
-		AnnotationSet originalSentenceAnnoSet = ((sentenceAnnoSet != null && !sentenceAnnoSet.equals(""))? gateDoc.getAnnotations(sentenceAnnoSet) : gateDoc.getAnnotations());
-		AnnotationSet outputSentenceAnnoSet = gateDoc.getAnnotations(FreelingParser.mainAnnSet + "_SPA");
-
-		// Copy all the (inputSentenceAStypeAppo) sentences as annotations of type (inputSentenceAStypeAppo + "_OLD") and delete the original annotations
-		Set<Integer> annIdOfOldSentences = new HashSet<Integer>();
-		Set<Integer> annIdToDelete = new HashSet<Integer>();
-		List<Annotation> inputSentenceAnnotations = gate.Utils.inDocumentOrder(originalSentenceAnnoSet.get(sentenceAnnoType));
-		inputSentenceAnnotations.stream().forEach((ann) -> {
-			if(ann != null) {
-				ann.getFeatures().put("OLD_SENTENCE", "TO_DELETE");
-
-				// Generate a copy of the sentence with type sufficed by "_OLD"
-				try {
-					Integer annToDeleteId = originalSentenceAnnoSet.add(ann.getStartNode().getOffset(), ann.getEndNode().getOffset(), sentenceAnnoType + "_OLD", ann.getFeatures());
-					annIdOfOldSentences.add(annToDeleteId);
-				} catch (InvalidOffsetException e) {
-					e.printStackTrace();
-				}
-
-				// Delete the original annotation
-				annIdToDelete.add(ann.getId());
+			if(markupAnn.getType().equals("biblStruct") && !getBiblioEntries.test(markupAnn)) {
+				continue;
 			}
-		});
 
-		if(annIdToDelete != null && annIdToDelete.size() > 0) {
-			for(Integer annIdToDel : annIdToDelete) {
-				if(annIdToDel != null) {
-					Annotation sentenceAnn = originalSentenceAnnoSet.get(sentenceAnnoType).get(annIdToDel);
-					if(sentenceAnn != null) {
-						originalSentenceAnnoSet.remove(sentenceAnn);
-					}
+			String structureType = teiStructureTypeMap.get(markupAnn.getType());
+			try {
+				FeatureMap structureFm = Factory.newFeatureMap();
+				if(markupAnn.getFeatures() != null) {
+					structureFm.putAll(markupAnn.getFeatures());
 				}
+				Integer structureAnnId = structureAnnoSet.add(markupAnn.getStartNode().getOffset(), markupAnn.getEndNode().getOffset(), structureType, structureFm);
+				structureMap.computeIfAbsent(structureType, type -> new ArrayList<Annotation>()).add(structureAnnoSet.get(structureAnnId));
+			} catch (InvalidOffsetException e) {
+				e.printStackTrace();
 			}
 		}
 
+		Map<String, AnnotationIntervalIndex> structureIndexMap = new HashMap<String, AnnotationIntervalIndex>();
+		for(String headerType : headerAnnoTypes) {
+			structureIndexMap.put(headerType, new AnnotationIntervalIndex(structureMap.get(headerType)));
+		}
+		AnnotationIntervalIndex abstractIndex = new AnnotationIntervalIndex(structureMap.get(abstractAnnoType));
+		AnnotationIntervalIndex textContentIndex = new AnnotationIntervalIndex(textContentList);
 
-		// Adding sentences from the GROBID abstract annotations / XML elements
-		List<Annotation> abstractAnnList = GATEutils.getAnnInDocOrder(gateDoc, mainAnnoSet, abstractAnnoType);
-		if(abstractAnnList.size() > 0) {
-			for(Annotation abstractAnn : abstractAnnList) {
-
-				// Go through sentences overlapping annotation and add as sentences
-				AnnotationSet intersectingSentences = originalSentenceAnnoSet.get(sentenceAnnoType + "_OLD", abstractAnn.getStartNode().getOffset(), abstractAnn.getEndNode().getOffset());
-				Iterator<Annotation> intersectingSentencesIter = intersectingSentences.iterator();
-				while(intersectingSentencesIter.hasNext()) {
-					Annotation sentenceAnn = intersectingSentencesIter.next();
-
-					FeatureMap fm = new SimpleFeatureMapImpl();
-					fm.put("GROBID_from", "abstract");
-
-					// Import PDFX features in the new sentence annotation (names prefixed by 'PDFEXT_')
-					for(Map.Entry<Object, Object> entry : abstractAnn.getFeatures().entrySet()) {
-						try {
-							String featName = (String) entry.getKey();
-							fm.put("GROBID__" + featName, entry.getValue());
-						}
-						catch (Exception e) {
-
-						}
-					}
+		// Freeling sentences: removed from the sentence annotation set and replaced by the sanitized ones
+		AnnotationSet originalSentenceAnnoSet = ((sentenceAnnoSet != null && !sentenceAnnoSet.equals(""))? gateDoc.getAnnotations(sentenceAnnoSet) : gateDoc.getAnnotations());
+		AnnotationSet outputSentenceAnnoSet = gateDoc.getAnnotations(FreelingParser.mainAnnSet + "_SPA");
+		List<Annotation> freelingSentenceList = gate.Utils.inDocumentOrder(originalSentenceAnnoSet.get(sentenceAnnoType));
+		originalSentenceAnnoSet.removeAll(freelingSentenceList);
+
+		// Candidate sentences, by priority: Freeling sentences overlapping the abstract, Freeling sentences overlapping body / div,
+		// paper title and section titles
+		List<SentenceCandidate> candidateList = new ArrayList<SentenceCandidate>();
+		for(Annotation freelingSentence : freelingSentenceList) {
+			Annotation abstractAnn = abstractIndex.getFirstIntersecting(freelingSentence);
+			if(abstractAnn != null) {
+				addCandidate(candidateList, docText, structureIndexMap, freelingSentence, SentenceCandidate.PRIORITY_ABSTRACT, abstractAnnoType, abstractAnn);
+				continue;
+			}
 
-					Integer newSentenceId = addSentence(gateDoc, outputSentenceAnnoSet, sentenceAnnoType, sentenceAnn.getStartNode().getOffset(), sentenceAnn.getEndNode().getOffset(), fm);
-					fm.put("gateID", newSentenceId);
-				}
+			Annotation textContentAnn = textContentIndex.getFirstIntersecting(freelingSentence);
+			if(textContentAnn != null) {
+				addCandidate(candidateList, docText, structureIndexMap, freelingSentence, SentenceCandidate.PRIORITY_TEXT, null, textContentAnn);
 			}
 		}
+		for(Annotation paperTitleAnn : structureIndexMap.get(paperTitleAnnoType).getAll()) {
+			addCandidate(candidateList, docText, structureIndexMap, paperTitleAnn, SentenceCandidate.PRIORITY_TITLE, "title", paperTitleAnn);
+		}
+		for(Annotation secTitleAnn : structureIndexMap.get(secTitleAnnoType).getAll()) {
+			addCandidate(candidateList, docText, structureIndexMap, secTitleAnn, SentenceCandidate.PRIORITY_SEC_TITLE, "secTitle", secTitleAnn);
+		}
 
+		// Sweep the candidates in offset order: a candidate is discarded if it is covered by a candidate already accepted
+		// with the same or higher priority (for each priority, the maximum end offset of the accepted candidates is tracked)
+		candidateList.sort((SentenceCandidate c1, SentenceCandidate c2) -> {
+			int cmp = Long.compare(c1.start, c2.start);
+			if(cmp == 0) cmp = Integer.compare(c1.priority, c2.priority);
+			if(cmp == 0) cmp = Long.compare(c1.end, c2.end);
+			return cmp;
+		});
 
-		// Adding sentences from the GROBID div annotations
-		Set<Annotation> extractAnnoSet = new HashSet<Annotation>();
-		extractAnnoSet.addAll(GATEutils.getAnnInDocOrder(gateDoc, originalGROBIDannoSet, "body"));
-		extractAnnoSet.addAll(GATEutils.getAnnInDocOrder(gateDoc, originalGROBIDannoSet, "div"));
-
-		Set<Integer> addedSentenceIDs = new HashSet<Integer>();
-		if(extractAnnoSet != null && extractAnnoSet.size() > 0) {
-			Iterator<Annotation> extractAnnoSetIter = extractAnnoSet.iterator();
-
-			while(extractAnnoSetIter.hasNext()) {
-				Annotation textContentAnn = extractAnnoSetIter.next();
-
-				// Go through sentences overlapping annotation and add as sentences
-				AnnotationSet intersectingSentences = originalSentenceAnnoSet.get(sentenceAnnoType + "_OLD", textContentAnn.getStartNode().getOffset(), textContentAnn.getEndNode().getOffset());
-				Iterator<Annotation> intersectingSentencesIter = intersectingSentences.iterator();
-				while(intersectingSentencesIter.hasNext()) {
-					Annotation sentenceAnn = intersectingSentencesIter.next();
-
-					if(sentenceAnn == null || sentenceAnn.getId() == null) {
-						continue;
-					}
-
-					// Check if the sentence is included or is equal to an header [-5, +5] chars offset
-					boolean sentenceEqualToSectionTitle = false;
-
-					List<String> headersAnnName = new ArrayList<String>();
-					headersAnnName.add("H1");
-
-					for(String headName : headersAnnName) {
-						AnnotationSet headersAnns = gateDoc.getAnnotations(mainAnnoSet).get(headName);
-						if(headersAnns != null && headersAnns.size() > 0) {
-							Iterator<Annotation> headersAnnsIter = headersAnns.iterator();
-							while(headersAnnsIter.hasNext()) {
-								Annotation headersAnnsElem = headersAnnsIter.next();
-								if(headersAnnsElem != null) {
-									Long startOffsetHeadersAnnsElem = headersAnnsElem.getStartNode().getOffset();
-									Long endOffsetHeadersAnnsElem = headersAnnsElem.getEndNode().getOffset();
-
-									if((sentenceAnn.getStartNode().getOffset() <= startOffsetHeadersAnnsElem + 5l) && (sentenceAnn.getStartNode().getOffset() >= startOffsetHeadersAnnsElem - 5l) &&
-											(sentenceAnn.getEndNode().getOffset() <= endOffsetHeadersAnnsElem + 5l) && (sentenceAnn.getEndNode().getOffset() >= endOffsetHeadersAnnsElem - 5l)) {
-										sentenceEqualToSectionTitle = true;
-										break;
-									}
-								}
-							}
-						}
-					}
-
-					if(sentenceEqualToSectionTitle) {
-						continue;
-					}
-
-					// Check if the sentence has not been already added
-					if(addedSentenceIDs.contains(sentenceAnn.getId())) {
-						continue;
-					}
-					else {
-						addedSentenceIDs.add(sentenceAnn.getId());
-					}
-
-					// Adding sentence annotation
-					FeatureMap fm = new SimpleFeatureMapImpl();
-
-					// Import PDFX features in the new sentence annotation (names prefixed by 'PDFX_')
-					// boolean confidenceTextChunkPossible = false;
-					for(Map.Entry<Object, Object> entry : textContentAnn.getFeatures().entrySet()) {
-						try {
-							String featName = (String) entry.getKey();
-							fm.put("GROBID__" + featName, entry.getValue());
-						}
-						catch (Exception e) {
+		long[] maxEndByPriority = new long[SentenceCandidate.PRIORITY_SEC_TITLE + 1];
+		Arrays.fill(maxEndByPriority, -1l);
+		List<SentenceCandidate> sentenceList = new ArrayList<SentenceCandidate>();
+		for(SentenceCandidate candidate : candidateList) {
+			boolean covered = false;
+			for(int priority = 0; priority <= candidate.priority; priority++) {
+				if(maxEndByPriority[priority] >= candidate.end) {
+					covered = true;
+					break;
+				}
+			}
 
-						}
-					}
+			if(!covered) {
+				sentenceList.add(candidate);
+				maxEndByPriority[candidate.priority] = Math.max(maxEndByPriority[candidate.priority], candidate.end);
+			}
+		}
 
-					Integer newSentenceId = addSentence(gateDoc, outputSentenceAnnoSet, sentenceAnnoType, sentenceAnn.getStartNode().getOffset(), sentenceAnn.getEndNode().getOffset(), fm);
-					fm.put("gateID", newSentenceId);
+		// If there is no abstract, all sentences from the first to the beginning of the first section are abstract
+		if(abstractIndex.size() == 0 && structureIndexMap.get(secTitleAnnoType).size() > 0) {
+			long firstSecTitleStart = structureIndexMap.get(secTitleAnnoType).getAll().get(0).getStartNode().getOffset();
+			Long initialAbstractOffset = null;
+			Long finalAbstractOffset = null;
+			for(SentenceCandidate sentence : sentenceList) {
+				if(sentence.start >= firstSecTitleStart) {
+					break;
+				}
+				if(sentence.end <= firstSecTitleStart) {
+					if(initialAbstractOffset == null) initialAbstractOffset = sentence.start;
+					finalAbstractOffset = sentence.end;
+				}
+			}
 
+			if(initialAbstractOffset != null) {
+				try {
+					Integer abstractAnnId = structureAnnoSet.add(initialAbstractOffset, finalAbstractOffset, abstractAnnoType, Factory.newFeatureMap());
+					structureMap.computeIfAbsent(abstractAnnoType, type -> new ArrayList<Annotation>()).add(structureAnnoSet.get(abstractAnnId));
+				} catch (InvalidOffsetException e) {
+					/* Do nothing */
 				}
 			}
 		}
 
-		// Add title as sentence
-		List<Annotation> paperTitleAnnoList = GATEutils.getAnnInDocOrder(gateDoc, mainAnnoSet, paperTitleAnnoType);
-		if(paperTitleAnnoList != null && paperTitleAnnoList.size() > 0) {
-			for(Annotation anno : paperTitleAnnoList) {
-				FeatureMap fm = new SimpleFeatureMapImpl();
-
-				fm.put("GROBID_from", "title");
-
-				// Import PDFX features in the new sentence annotation (names prefixed by 'PDFX_')
-				// boolean confidenceTextChunkPossible = false;
-				for(Map.Entry<Object, Object> entry : anno.getFeatures().entrySet()) {
-					try {
-						String featName = (String) entry.getKey();
-						fm.put("GROBID__" + featName, entry.getValue());
-					}
-					catch (Exception e) {
-
-					}
-				}
+		// Discard all sentences that are after the first bibliographic entry
+		List<Annotation> bibEntryList = structureMap.get(bibEntryAnnoType);
+		if(bibEntryList != null && bibEntryList.size() > 0) {
+			long firstBibEntryStartOffset = bibEntryList.get(0).getStartNode().getOffset();
+			sentenceList.removeIf(sentence -> sentence.start >= firstBibEntryStartOffset);
+		}
 
+		// Discard the sentences of the structures excluded by the section policy and count tokens by section
+		applySectionPolicy(gateDoc, docText, structureMap, sentenceList);
 
-				Integer newSentenceId = addSentence(gateDoc, outputSentenceAnnoSet, sentenceAnnoType, anno.getStartNode().getOffset(), anno.getEndNode().getOffset(), fm);
-				fm.put("gateID", newSentenceId);
+		// Add the sanitized sentences
+		for(SentenceCandidate sentence : sentenceList) {
+			try {
+				Integer newSentenceId = outputSentenceAnnoSet.add(sentence.start, sentence.end, sentenceAnnoType, sentence.fm);
+				sentence.fm.put("gateID", newSentenceId);
+			} catch (InvalidOffsetException e) {
+				logger.error("ERROR, InvalidOffsetException - " + e.getLocalizedMessage());
+				e.printStackTrace();
 			}
 		}
 
-		// Add title as sentence
-		List<Annotation> paperSecTitleAnnoList = GATEutils.getAnnInDocOrder(gateDoc, mainAnnoSet, secTitleAnnoType);
-		if(paperSecTitleAnnoList != null && paperSecTitleAnnoList.size() > 0) {
-			for(Annotation anno : paperSecTitleAnnoList) {
-				FeatureMap fm = new SimpleFeatureMapImpl();
-
-				fm.put("GROBID_from", "secTitle");
+		return gateDoc;
+	}
 
-				// Import PDFX features in the new sentence annotation (names prefixed by 'PDFX_')
-				// boolean confidenceTextChunkPossible = false;
-				for(Map.Entry<Object, Object> entry : anno.getFeatures().entrySet()) {
-					try {
-						String featName = (String) entry.getKey();
-						fm.put("GROBID__" + featName, entry.getValue());
-					}
-					catch (Exception e) {
+	/**
+	 * Candidate sentence: span (without headers and trimmed) and features of the sentence annotation
+	 *
+	 */
+	private static class SentenceCandidate {
+		private static final int PRIORITY_ABSTRACT = 0;
+		private static final int PRIORITY_TEXT = 1;
+		private static final int PRIORITY_TITLE = 2;
+		private static final int PRIORITY_SEC_TITLE = 3;
+
+		private final long start;
+		private final long end;
+		private final int priority;
+		private final FeatureMap fm;
+
+		private SentenceCandidate(long start, long end, int priority, FeatureMap fm) {
+			this.start = start;
+			this.end = end;
+			this.priority = priority;
+			this.fm = fm;
+		}
+	}
 
-					}
+	/**
+	 * Add to the list the candidate sentence corresponding to the span of the annotation, after removing the headers of section
+	 * eventually included in the span and left and right trimming it; candidates shorter than 10 chars are ignored.
+	 * The features of the source annotation are imported in the features of the sentence (names prefixed by 'GROBID__').
+	 * 
+	 * @param candidateList
+	 * @param docText
+	 * @param structureIndexMap
+	 * @param spanAnn
+	 * @param priority
+	 * @param from value of the feature GROBID_from (if not null)
+	 * @param sourceAnn
+	 */
+	private static void addCandidate(List<SentenceCandidate> candidateList, String docText, Map<String, AnnotationIntervalIndex> structureIndexMap, 
+			Annotation spanAnn, int priority, String from, Annotation sourceAnn) {
+		long startNode = spanAnn.getStartNode().getOffset();
+		long endNode = spanAnn.getEndNode().getOffset();
+
+		// Check if not header in sentence - if header in sentence, remove it
+		for(String headerType : headerAnnoTypes) {
+			for(Annotation headersAnnsElem : structureIndexMap.get(headerType).getIntersecting(startNode, endNode)) {
+				long endOffsetHeadersAnnsElem = headersAnnsElem.getEndNode().getOffset();
+				if(endOffsetHeadersAnnsElem > startNode && endOffsetHeadersAnnsElem < endNode) {
+					startNode = endOffsetHeadersAnnsElem;
 				}
 
-
-				Integer newSentenceId = addSentence(gateDoc, outputSentenceAnnoSet, sentenceAnnoType, anno.getStartNode().getOffset(), anno.getEndNode().getOffset(), fm);
-				fm.put("gateID", newSentenceId);
+				long startOffsetHeadersAnnsElem = headersAnnsElem.getStartNode().getOffset();
+				if(startOffsetHeadersAnnsElem > startNode && startOffsetHeadersAnnsElem < endNode) {
+					endNode = startOffsetHeadersAnnsElem;
+				}
 			}
 		}
 
-		// If there is no abstract, all sentences from the first to the beginning of the first section are abstract
-		List<Annotation> abstractAnnotationList = GATEutils.getAnnInDocOrder(gateDoc, mainAnnoSet, abstractAnnoType);
-		if(CollectionUtils.isEmpty(abstractAnnotationList)) {
-			Optional<Annotation> h1AnnList = GATEutils.getFirstAnnotationInDocOrder(gateDoc, mainAnnoSet, secTitleAnnoType);
-			if(h1AnnList.isPresent()) {
-				List<Annotation> abstractSentenceList = GATEutils.getAnnInDocOrderContainedOffset(gateDoc, sentenceAnnoSet, sentenceAnnoType,
-						0l, h1AnnList.get().getStartNode().getOffset());
-				if(abstractSentenceList.size() > 0) {
-					Long initialAbstractOffset = abstractSentenceList.get(0).getStartNode().getOffset();
-					Long finalAbstractOffset = abstractSentenceList.get(abstractSentenceList.size() - 1).getEndNode().getOffset();
-					try {
-						gateDoc.getAnnotations(mainAnnoSet).add(initialAbstractOffset, finalAbstractOffset, abstractAnnoType, Factory.newFeatureMap());
-					} catch (InvalidOffsetException e) {
-						/* Do nothing */
-					}
+		// Trim the span
+		long contentStart = startNode;
+		long contentEnd = endNode;
+		for(long i = contentStart; i < contentEnd; i++) {
+			char ch = docText.charAt((int) i);
+			if(ch == ' ' || ch == '\n' || ch == '\t') {
+				if(startNode < (endNode - 1)) {
+					startNode = startNode + 1;
 				}
 			}
+			else {
+				break;
+			}
 		}
-
-		// Delete all sentences and header annotations that are after the first bibliographic entry or the section headers that have more than 14 tokens
-		Annotation firstBibEntryAnn = GATEutils.getFirstAnnotationInDocOrder(gateDoc, mainAnnoSet, bibEntryAnnoType).orElse(null);
-		if(firstBibEntryAnn != null) {
-			Long firstBibEntryStartOffset = firstBibEntryAnn.getStartNode().getOffset();
-			if(firstBibEntryStartOffset != null) {
-				Set<Integer> annIdToRemove = new HashSet<Integer>();
-
-				List<String> annTypesToRemove = new ArrayList<String>();
-				annTypesToRemove.add(sentenceAnnoType);
-				annTypesToRemove.add("H1");
-
-				for(String annTypeToRem : annTypesToRemove) {
-					List<Annotation> sentenceAnnList_1 = GATEutils.getAnnInDocOrder(gateDoc, mainAnnoSet, annTypeToRem);
-					List<Annotation> sentenceAnnList_2 = GATEutils.getAnnInDocOrder(gateDoc, FreelingParser.mainAnnSet + "_SPA", annTypeToRem);
-					Set<Annotation> sentenceSet = new HashSet<Annotation>();
-					sentenceSet.addAll(sentenceAnnList_1);
-					sentenceSet.addAll(sentenceAnnList_2);
-					for(Annotation sent : sentenceAnnList_2) {
-						if(sent != null && sent.getStartNode().getOffset() >= firstBibEntryStartOffset && sent.getId() != null) {
-							annIdToRemove.add(sent.getId());
-						}
-					}
-				}
-
-				if(annIdToRemove.size() > 0) {
-					for(Integer annIdToRem : annIdToRemove) {
-						Annotation annToRem = gateDoc.getAnnotations(mainAnnoSet).get(annIdToRem);
-						if(annToRem != null) {
-							gateDoc.getAnnotations(mainAnnoSet).remove(annToRem);
-						}
-
-						annToRem = gateDoc.getAnnotations(sentenceAnnoSet).get(annIdToRem);
-						if(annToRem != null) {
-							gateDoc.getAnnotations(FreelingParser.mainAnnSet + "_SPA").remove(annToRem);
-						}
-					}
+		for(long i = contentEnd - 1; i >= contentStart; i--) {
+			char ch = docText.charAt((int) i);
+			if(ch == ' ' || ch == '\n' || ch == '\t') {
+				if(startNode < (endNode - 1)) {
+					endNode = endNode - 1;
 				}
-
+			}
+			else {
+				break;
 			}
 		}
 
-		// Remove all the annotation ids of sentences to remove - with type sentenceAnnoType + "_OLD"		
-		if(annIdOfOldSentences != null && annIdOfOldSentences.size() > 0) {
-			for(Integer annIdOfOldSent : annIdOfOldSentences) {
-				if(annIdOfOldSent != null) {
-					Annotation sentenceAnn = originalSentenceAnnoSet.get(sentenceAnnoType + "_OLD").get(annIdOfOldSent);
-					if(sentenceAnn != null) {
-						originalSentenceAnnoSet.remove(sentenceAnn);
-					}
+		// Check if the sentence is at least 10 chars long
+		if((endNode - startNode) < 10l) {
+			return;
+		}
+
+		FeatureMap fm = new SimpleFeatureMapImpl();
+		if(from != null) {
+			fm.put("GROBID_from", from);
+		}
+		if(sourceAnn.getFeatures() != null) {
+			for(Map.Entry<Object, Object> entry : sourceAnn.getFeatures().entrySet()) {
+				if(entry.getKey() instanceof String) {
+					fm.put("GROBID__" + ((String) entry.getKey()), entry.getValue());
 				}
 			}
 		}
 
-		return gateDoc;
+		candidateList.add(new SentenceCandidate(startNode, endNode, priority, fm));
 	}
 
 
 	/**
-	 * Internal utility function to add a sentence annotation of type outputAStypeAppo to the annotation sets outputAs
-	 * and outputAsOriginal, starting at startNode, ending at endNode and with features map equal to fm.
-	 * 
-	 * This method, before adding a new sentence annotation, performs the following steps:
-	 *    - removes the header of section eventually included in the sentence
-	 *    - left and right trims the sentence span
-	 *    - check for duplicated sentence annotations
+	 * Structure types (annotations of the mainAnnoSet) whose sentences are not analyzed. By default the types listed in
+	 * defaultExcludedStructureTypes; can be configured by the property grobid.excludedStructureTypes (comma separated
+	 * list of types, empty to analyze all sentences) or by {@link #setExcludedStructureTypes(Set)}.
 	 * 
-	 * @param doc
-	 * @param outputAs
-	 * @param outputAsOriginal
-	 * @param outputAStypeAppo
-	 * @param startNode
-	 * @param endNode
-	 * @param fm
 	 * @return
 	 */
-	private static Integer addSentence(Document doc, AnnotationSet outputAs, String outputAStypeAppo, Long startNode, Long endNode, FeatureMap fm) {
-		Integer newSentId = null;
+	public static Set<String> getExcludedStructureTypes() {
+		if(excludedStructureTypes == null) {
+			String excludedTypes = defaultExcludedStructureTypes;
+			try {
+				String excludedTypesProp = PropertyManager.getProperty("grobid.excludedStructureTypes");
+				if(excludedTypesProp != null) {
+					excludedTypes = excludedTypesProp;
+				}
+			}
+			catch(Exception e) {
+				/* Do nothing - default section policy */
+			}
 
-		try {
-			// Check if not header in sentence - if header in sentence, remove it
-			List<String> headersAnnName = new ArrayList<String>();
-			headersAnnName.add(paperTitleAnnoType);
-			headersAnnName.add(secTitleAnnoType);
-			headersAnnName.add(affiliationAnnoType);
-			headersAnnName.add(authorAnnoType);
-			headersAnnName.add(addressAnnoType);
-			headersAnnName.add(keywordsAnnoType);
-			headersAnnName.add(figureAnnoType);
-			headersAnnName.add(tableAnnoType);
-
-			for(String headName : headersAnnName) {
-				AnnotationSet headersAnns = doc.getAnnotations(mainAnnoSet).get(headName, startNode, endNode);
-				if(headersAnns != null && headersAnns.size() > 0) {
-					Iterator<Annotation> headersAnnsIter = headersAnns.iterator();
-					while(headersAnnsIter.hasNext()) {
-						Annotation headersAnnsElem = headersAnnsIter.next();
-						if(headersAnnsElem != null) {
-							Long endOffsetHeadersAnnsElem = headersAnnsElem.getEndNode().getOffset();
-							if(endOffsetHeadersAnnsElem != null && endOffsetHeadersAnnsElem > startNode && endOffsetHeadersAnnsElem < endNode) {
-								startNode = endOffsetHeadersAnnsElem;
-							}
-
-							Long startOffsetHeadersAnnsElem = headersAnnsElem.getStartNode().getOffset();
-							if(startOffsetHeadersAnnsElem != null && startOffsetHeadersAnnsElem > startNode && startOffsetHeadersAnnsElem < endNode) {
-								endNode = startOffsetHeadersAnnsElem;
-							}
-						}
-					}
+			Set<String> excludedTypeSet = new HashSet<String>();
+			for(String excludedType : excludedTypes.split(",")) {
+				if(excludedType != null && !excludedType.trim().equals("")) {
+					excludedTypeSet.add(excludedType.trim());
 				}
 			}
+			excludedStructureTypes = Collections.unmodifiableSet(excludedTypeSet);
+		}
 
-			// Trim the new sentence annotation
-			try {
-				String sentContent = doc.getContent().getContent(startNode, endNode).toString();
-				if(sentContent != null && sentContent.length() > 0) {
-					for(int i = 0; i < sentContent.length(); i++) {
-						char ch = sentContent.charAt(i);
-						if(ch == ' ' || ch == '\n' || ch == '\t') {
-							if(startNode < (endNode - 1)) {
-								startNode = startNode + 1;
-							}
-						}
-						else {
-							break;
-						}
-					}
+		return excludedStructureTypes;
+	}
 
-					for(int i = (sentContent.length() - 1); i >= 0; i--) {
-						char ch = sentContent.charAt(i);
-						if(ch == ' ' || ch == '\n' || ch == '\t') {
-							if(startNode < (endNode - 1)) {
-								endNode = endNode - 1;
-							}
-						}
-						else {
-							break;
-						}
-					}
-				}
+	public static void setExcludedStructureTypes(Set<String> excludedTypes) {
+		excludedStructureTypes = (excludedTypes != null) ? Collections.unmodifiableSet(new HashSet<String>(excludedTypes)) : null;
+	}
+
+	/**
+	 * Discard the sentences contained in a structure excluded by the section policy and add to the document the number of tokens
+	 * (white-space separated) by section:
+	 *    - GROBID_tokens_(structure type): tokens of the structures of that type
+	 *    - GROBID_tokens_analyzed: tokens of the sentences to analyze
+	 *    - GROBID_tokens_excluded: tokens of the sentences discarded by the section policy
+	 * 
+	 * @param gateDoc
+	 * @param docText
+	 * @param structureMap
+	 * @param sentenceList
+	 */
+	private static void applySectionPolicy(Document gateDoc, String docText, Map<String, List<Annotation>> structureMap, List<SentenceCandidate> sentenceList) {
+		Set<String> excludedTypes = getExcludedStructureTypes();
+
+		List<Annotation> excludedStructureList = new ArrayList<Annotation>();
+		for(String excludedType : excludedTypes) {
+			if(structureMap.containsKey(excludedType)) {
+				excludedStructureList.addAll(structureMap.get(excludedType));
 			}
-			catch (Exception e) {
-				e.printStackTrace();
+		}
+		AnnotationIntervalIndex excludedStructureIndex = new AnnotationIntervalIndex(excludedStructureList);
+
+		int analyzedTokens = 0;
+		int excludedTokens = 0;
+		int excludedSentences = 0;
+		Iterator<SentenceCandidate> sentenceIter = sentenceList.iterator();
+		while(sentenceIter.hasNext()) {
+			SentenceCandidate sentence = sentenceIter.next();
+
+			boolean excluded = false;
+			for(Annotation coveringStructure : excludedStructureIndex.getCovering(sentence.start)) {
+				if(coveringStructure.getEndNode().getOffset() >= sentence.end) {
+					excluded = true;
+					break;
+				}
 			}
 
-			// Check if the sentence is at least 10 chars long
-			boolean tooFewChars = false;
-			if( (endNode - startNode) < 10l) {
-				tooFewChars = true;
+			int sentenceTokens = countTokens(docText, sentence.start, sentence.end);
+			if(excluded) {
+				sentenceIter.remove();
+				excludedSentences++;
+				excludedTokens += sentenceTokens;
 			}
-
-			// Check if the same sentence annotation was not already present, in order not to duplicate it
-			boolean alreadyCreatedSentence = false;
-			AnnotationSet asCheck = outputAs.getCovering(outputAStypeAppo, startNode, endNode);
-			if(asCheck != null && asCheck.size() > 0) {
-				alreadyCreatedSentence = true;
+			else {
+				analyzedTokens += sentenceTokens;
 			}
+		}
 
-			if(!tooFewChars && !alreadyCreatedSentence) {	
-				newSentId = outputAs.add(startNode, endNode, outputAStypeAppo, fm);
+		StringBuilder sectionTokensSb = new StringBuilder();
+		for(String structureType : new TreeSet<String>(structureMap.keySet())) {
+			int structureTokens = 0;
+			for(Annotation structureAnn : structureMap.get(structureType)) {
+				structureTokens += countTokens(docText, structureAnn.getStartNode().getOffset(), structureAnn.getEndNode().getOffset());
 			}
-
-		} catch (InvalidOffsetException e) {
-			logger.error("ERROR, InvalidOffsetException - " + e.getLocalizedMessage());
-			e.printStackTrace();
+			gateDoc.getFeatures().put("GROBID_tokens_" + structureType, structureTokens);
+			sectionTokensSb.append(" " + structureType + ((excludedTypes.contains(structureType)) ? " (excluded)" : "") + ": " + structureTokens + ";");
 		}
+		gateDoc.getFeatures().put("GROBID_tokens_analyzed", analyzedTokens);
+		gateDoc.getFeatures().put("GROBID_tokens_excluded", excludedTokens);
+
+		logger.info("Section policy: " + excludedSentences + " sentences excluded, tokens analyzed: " + analyzedTokens + ", excluded: " + excludedTokens + 
+				" - tokens by section:" + sectionTokensSb.toString());
+	}
 
-		return newSentId;
+	private static int countTokens(String text, long start, long end) {
+		int tokenCount = 0;
+		boolean inToken = false;
+		for(int i = (int) start; i < end && i < text.length(); i++) {
+			if(Character.isWhitespace(text.charAt(i))) {
+				inToken = false;
+			}
+			else if(!inToken) {
+				inToken = true;
+				tokenCount++;
+			}
+		}
+		return tokenCount;
 	}
 
+
 	private static Predicate<Annotation> getBiblioEntries = (Annotation ann) -> {
 		if(ann != null && ann.getFeatures() != null && ann.getFeatures().containsKey("xml:id")) {
 			return true;
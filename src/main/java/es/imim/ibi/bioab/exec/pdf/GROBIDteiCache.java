@@ -0,0 +1,282 @@
+/**
+ * Biomedical Abbreviation Miner (BioAB Miner)
+ *
+ */
+
+package es.imim.ibi.bioab.exec.pdf;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.backingdata.gateutils.generic.PropertyManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Strings;
+
+/**
+ * On-disk cache of the TEI XML generated by GROBID, addressed by the SHA-256 of the PDF bytes.
+ *
+ * Each TEI is stored in the cache folder as (key).tei.xml, where the key is the SHA-256 hex of the PDF followed by the suffix of the
+ * GROBID analysis profile used to convert it (see {@link GROBIDanalysisProfile#getCacheKeySuffix()}); when the total size of the cached TEIs exceeds the
+ * maximum size, the least recently used ones are deleted. The last modification time of the files is updated at
+ * each hit, so that the LRU order is preserved across restarts.
+ *
+ * Configuration properties:
+ *    - grobid.teiCache.folder: cache folder (default: folder grobid-tei-cache of the resource folder)
+ *    - grobid.teiCache.maxSizeMB: maximum size of the cache in MB (default 512, 0 to disable the cache)
+ *
+ * @author Francesco Ronzano
+ *
+ */
+public class GROBIDteiCache {
+
+	private static Logger logger = LoggerFactory.getLogger(GROBIDteiCache.class);
+
+	public static final long DEFAULT_MAX_SIZE_MB = 512l;
+	private static final String fileExtension = ".tei.xml";
+
+	private static Path cacheFolder = null;
+	private static long maxSizeBytes = 0l;
+	private static long sizeBytes = 0l;
+	private static boolean isInitialized = false;
+
+	// Key to size of the cached TEI, in access order (least recently used first)
+	private static LinkedHashMap<String, Long> entryMap = new LinkedHashMap<String, Long>(16, 0.75f, true);
+
+	// Metrics
+	private static final LongAdder hitCount = new LongAdder();
+	private static final LongAdder missCount = new LongAdder();
+	private static final LongAdder evictionCount = new LongAdder();
+
+	/**
+	 * Load the index of the cached TEIs from the cache folder (if not already loaded)
+	 */
+	public static synchronized void init() {
+		if(isInitialized) {
+			return;
+		}
+		isInitialized = true;
+
+		long maxSizeMB = DEFAULT_MAX_SIZE_MB;
+		String cacheFolderPath = null;
+		try {
+			String maxSizeMBprop = PropertyManager.getProperty("grobid.teiCache.maxSizeMB");
+			if(!Strings.isNullOrEmpty(maxSizeMBprop)) {
+				maxSizeMB = Long.valueOf(maxSizeMBprop.trim());
+			}
+
+			cacheFolderPath = PropertyManager.getProperty("grobid.teiCache.folder");
+			if(Strings.isNullOrEmpty(cacheFolderPath)) {
+				String resourceFolder = PropertyManager.getProperty("resourceFolder.fullPath");
+				cacheFolderPath = resourceFolder + ((resourceFolder.endsWith(File.separator)) ? "" : File.separator) + "grobid-tei-cache";
+			}
+		}
+		catch(Exception e) {
+			logger.warn("GROBID TEI cache not configured, disabled - " + e.getMessage());
+			return;
+		}
+
+		if(maxSizeMB <= 0l) {
+			logger.info("GROBID TEI cache disabled.");
+			return;
+		}
+
+		try {
+			Path folder = Paths.get(cacheFolderPath);
+			Files.createDirectories(folder);
+
+			// Least recently used first
+			File[] cachedFiles = folder.toFile().listFiles((File f) -> f.isFile() && f.getName().endsWith(fileExtension));
+			List<File> cachedFileList = new ArrayList<File>();
+			if(cachedFiles != null) {
+				for(File cachedFile : cachedFiles) {
+					cachedFileList.add(cachedFile);
+				}
+			}
+			cachedFileList.sort((File f1, File f2) -> Long.compare(f1.lastModified(), f2.lastModified()));
+
+			for(File cachedFile : cachedFileList) {
+				String key = cachedFile.getName().substring(0, cachedFile.getName().length() - fileExtension.length());
+				entryMap.put(key, cachedFile.length());
+				sizeBytes += cachedFile.length();
+			}
+
+			cacheFolder = folder;
+			maxSizeBytes = maxSizeMB * 1024l * 1024l;
+			evict();
+
+			logger.info("GROBID TEI cache: " + entryMap.size() + " TEIs (" + (sizeBytes / 1024l) + " KB of max " + maxSizeMB + " MB) in " + folder.toAbsolutePath());
+		}
+		catch(Exception e) {
+			logger.error("Impossible to initialize the GROBID TEI cache in " + cacheFolderPath + ", disabled - " + e.getMessage());
+			cacheFolder = null;
+		}
+	}
+
+	/**
+	 * Cache key of a PDF: hex of the SHA-256 of its bytes
+	 *
+	 * @param PDFbyteArray
+	 * @return
+	 */
+	public static String getKey(byte[] PDFbyteArray) {
+		MessageDigest keyDigest = newKeyDigest();
+		keyDigest.update(PDFbyteArray);
+		return getKey(keyDigest);
+	}
+
+	/**
+	 * Digest to compute the cache key of a PDF while streaming its bytes (see {@link #getKey(MessageDigest)})
+	 *
+	 * @return
+	 */
+	public static MessageDigest newKeyDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 not available", e);
+		}
+	}
+
+	/**
+	 * Cache key of a PDF whose bytes have been added to the digest
+	 *
+	 * @param keyDigest digest created by {@link #newKeyDigest()}
+	 * @return
+	 */
+	public static String getKey(MessageDigest keyDigest) {
+		byte[] digest = keyDigest.digest();
+		StringBuilder keySb = new StringBuilder(digest.length * 2);
+		for(byte b : digest) {
+			keySb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return keySb.toString();
+	}
+
+	/**
+	 * Cached TEI or null
+	 *
+	 * @param key
+	 * @return
+	 */
+	public static String get(String key) {
+		init();
+
+		Path teiFile = null;
+		synchronized(GROBIDteiCache.class) {
+			if(cacheFolder == null || key == null || !entryMap.containsKey(key)) {
+				missCount.increment();
+				return null;
+			}
+			entryMap.get(key); // Access order update
+			teiFile = cacheFolder.resolve(key + fileExtension);
+		}
+
+		try {
+			String tei = new String(Files.readAllBytes(teiFile), StandardCharsets.UTF_8);
+			Files.setLastModifiedTime(teiFile, FileTime.fromMillis(System.currentTimeMillis()));
+			hitCount.increment();
+			return tei;
+		} catch (IOException e) {
+			// Deleted meanwhile
+			synchronized(GROBIDteiCache.class) {
+				Long size = entryMap.remove(key);
+				if(size != null) {
+					sizeBytes -= size;
+				}
+			}
+			missCount.increment();
+			return null;
+		}
+	}
+
+	/**
+	 * Store the TEI in the cache, evicting the least recently used TEIs if the cache exceeds its maximum size
+	 *
+	 * @param key
+	 * @param tei
+	 */
+	public static void put(String key, String tei) {
+		init();
+
+		if(cacheFolder == null || key == null || tei == null) {
+			return;
+		}
+
+		byte[] teiBytes = tei.getBytes(StandardCharsets.UTF_8);
+		if(teiBytes.length > maxSizeBytes) {
+			return;
+		}
+
+		try {
+			// Write in a temporary file and rename, so that the cache never contains partially written TEIs
+			Path tempFile = Files.createTempFile(cacheFolder, key, ".tmp");
+			try {
+				Files.write(tempFile, teiBytes);
+				Files.move(tempFile, cacheFolder.resolve(key + fileExtension), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			}
+			finally {
+				Files.deleteIfExists(tempFile);
+			}
+
+			synchronized(GROBIDteiCache.class) {
+				Long oldSize = entryMap.put(key, (long) teiBytes.length);
+				sizeBytes += teiBytes.length - ((oldSize != null) ? oldSize : 0l);
+				evict();
+			}
+		} catch (IOException e) {
+			logger.warn("Impossible to store TEI " + key + " in the GROBID TEI cache - " + e.getMessage());
+		}
+	}
+
+	private static synchronized void evict() {
+		Iterator<Entry<String, Long>> entryIter = entryMap.entrySet().iterator();
+		while(sizeBytes > maxSizeBytes && entryIter.hasNext()) {
+			Entry<String, Long> lruEntry = entryIter.next();
+			try {
+				Files.deleteIfExists(cacheFolder.resolve(lruEntry.getKey() + fileExtension));
+			} catch (IOException e) {
+				logger.warn("Impossible to delete TEI " + lruEntry.getKey() + " from the GROBID TEI cache - " + e.getMessage());
+			}
+			sizeBytes -= lruEntry.getValue();
+			entryIter.remove();
+			evictionCount.increment();
+		}
+	}
+
+	public static long getHitCount() {
+		return hitCount.sum();
+	}
+
+	public static long getMissCount() {
+		return missCount.sum();
+	}
+
+	public static long getEvictionCount() {
+		return evictionCount.sum();
+	}
+
+	public static synchronized int getSize() {
+		return entryMap.size();
+	}
+
+	public static synchronized long getSizeBytes() {
+		return sizeBytes;
+	}
+
+}
@@ -4,17 +4,19 @@
  */
 package es.imim.ibi.bioab.exec.resource;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.InputStreamReader;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.stream.Collectors;
@@ -28,8 +30,13 @@ import org.slf4j.LoggerFactory;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
 
+import es.imim.ibi.bioab.exec.Deadline;
+import es.imim.ibi.bioab.exec.dict.CompiledDictionary;
+import es.imim.ibi.bioab.exec.dict.DictionaryCompiler;
+import es.imim.ibi.bioab.exec.dict.DictionaryRegistry;
+import es.imim.ibi.bioab.exec.util.AhoCorasickAutomaton;
+import es.imim.ibi.bioab.exec.util.AnnotationIntervalIndex;
 import es.imim.ibi.bioab.feature.TokenAnnConst;
-import es.imim.ibi.bioab.feature.generator.StringInList;
 import es.imim.ibi.bioab.nlp.freeling.FreelingParser;
 import es.imim.ibi.bioab.nlp.mate.MateParser;
 import gate.Annotation;
@@ -66,9 +73,12 @@ public class BioABabbrvLFspotter extends AbstractLanguageAnalyser implements Pro
 	public static final String shortFormType = "SHORT";
 	public static final String shortLongFormType = "SF - LF";
 
-	private static int relationID = 0;
+	private static AtomicInteger relationID = new AtomicInteger(0);
 
-	private static Map<String, Set<String>> abbreviationLFmap = new HashMap<String, Set<String>>();
+	public static final String SEDOMlistPath = "/langres/sedom/abbrvList_5_2_2018_EXTENDED.csv";
+
+	// SEDOM dictionary (abbreviation to long forms) and automaton of the long forms, swapped as a whole when a new version of the dictionary is loaded
+	private static AtomicReference<SEDOMdictionary> sedomDictionaryRef = new AtomicReference<SEDOMdictionary>(new SEDOMdictionary(CompiledDictionary.fromMap(null, "EMPTY")));
 
 	// Where to read input textual annotations and features
 	private String tokenAnnSet = FreelingParser.mainAnnSet;
@@ -82,17 +92,67 @@ public class BioABabbrvLFspotter extends AbstractLanguageAnalyser implements Pro
 	private String chunkType = FreelingParser.sentenceType;
 	private String chunkLabelFeat = FreelingParser.sentenceType;
 
-	private static boolean isInitialized = false;
+	private static volatile boolean isInitialized = false;
+	private static Object initSynch = new Object();
 
-	// STATS
-	public static Map<Integer, Integer> longFormBySpan = new HashMap<Integer, Integer>();
-	public static Integer candidateMatchASingleSpanLongForm = 0;
-	public static Integer candidateMatchAMultipleSpanLongForm = 0;
-	public static Integer longFormWithAtLeastOneCandidateSpanMatch = 0;
-	public static Integer longFormWithoutAnyCandidateSpanMatch = 0;
-	public static List<String> longFormWithoutAnyCandidateSpanMatchList = new ArrayList<String>();
-	public static Map<String, Integer> longFormMatchByTypeSingle = new HashMap<String, Integer>();
-	public static Map<String, Integer> longFormMatchByTypeMulti = new HashMap<String, Integer>();
+	/**
+	 * State of the analysis of one document: interval indexes of the annotations queried while looking for long forms
+	 * (built at the beginning of each execution), SEDOM dictionary version used for the whole document, long forms occurring
+	 * in each sentence (by sentence annotation id) and long form candidate scorer.
+	 * 
+	 * A new context is created by each execution, so that several documents can be analyzed in parallel.
+	 *
+	 */
+	private static class DocumentContext {
+		private final Document document;
+		private final SEDOMdictionary sedomDictionary;
+		
+		private AnnotationIntervalIndex sentenceIndex = null;
+		private AnnotationIntervalIndex tokenIndex = null;
+		private AnnotationIntervalIndex chunkIndex = null;
+		private AnnotationIntervalIndex longFormCRFindex = null;
+		private AnnotationIntervalIndex abbreviationIndex = null;
+		private AnnotationIntervalIndex shortAbbreviationIndex = null;
+		private AnnotationIntervalIndex goldStandardShortIndex = null;
+		private AnnotationIntervalIndex goldStandardLongIndex = null;
+
+		private final Map<Integer, List<AhoCorasickAutomaton.Match>> sedomMatchesBySentence = new HashMap<Integer, List<AhoCorasickAutomaton.Match>>();
+		private LongFormCandidateScorer candidateScorer = null;
+
+		private DocumentContext(Document document, SEDOMdictionary sedomDictionary) {
+			this.document = document;
+			this.sedomDictionary = sedomDictionary;
+		}
+
+		/**
+		 * Scorer of the document (initials and POS of its tokens are computed once)
+		 * 
+		 * @return
+		 */
+		private LongFormCandidateScorer getCandidateScorer() {
+			if(this.candidateScorer == null) {
+				this.candidateScorer = new LongFormCandidateScorer(this.document, this.tokenIndex.getAll());
+			}
+			return this.candidateScorer;
+		}
+	}
+
+	/**
+	 * Version of the SEDOM dictionary together with the automaton of its long forms (immutable, shared by all the executions)
+	 *
+	 */
+	private static class SEDOMdictionary {
+		private final CompiledDictionary dictionary;
+		private final AhoCorasickAutomaton longFormAutomaton;
+
+		private SEDOMdictionary(CompiledDictionary dictionary) {
+			this.dictionary = dictionary;
+			this.longFormAutomaton = new AhoCorasickAutomaton(dictionary.getValues());
+		}
+	}
+
+	// STATS: match of gold standard long forms with candidate long forms (disabled by default)
+	public static final LFspotterStats stats = new LFspotterStats();
 
 	// Setters and getters
 	public String getTokenAnnSet() {
@@ -198,67 +258,30 @@ public class BioABabbrvLFspotter extends AbstractLanguageAnalyser implements Pro
 	@Override
 	public Resource init() {
 
-		if(!isInitialized) {
+		synchronized(initSynch) {
+			if(!isInitialized) {
 
-			try {
-				String bioABminerResourceFolder = PropertyManager.getProperty("resourceFolder.fullPath");
-				if(!bioABminerResourceFolder.endsWith(File.separator)) bioABminerResourceFolder += File.separator;
-
-				// Load list
-				StringInList instanceCr = new StringInList();
-				BufferedReader br = null;
 				try {
+					String bioABminerResourceFolder = PropertyManager.getProperty("resourceFolder.fullPath");
+					if(!bioABminerResourceFolder.endsWith(File.separator)) bioABminerResourceFolder += File.separator;
 
-					br = new BufferedReader(new InputStreamReader(instanceCr.getClass().getResourceAsStream("/langres/sedom/abbrvList_5_2_2018_EXTENDED.csv"), "UTF-8"));
-					String line;
-					int lineCounter = -1;
-					while ((line = br.readLine()) != null) {
-						try {
-							lineCounter++;
-							if(lineCounter == 0) {
-								continue;
-							}
+					// Load SEDOM dictionary and compile the automaton of its long forms; rebuild both each time a new version is swapped in
+					sedomDictionaryRef.set(new SEDOMdictionary(DictionaryRegistry.get(SEDOMlistPath, DictionaryCompiler.Format.SEDOM)));
+					DictionaryRegistry.addSwapListener(SEDOMlistPath, DictionaryCompiler.Format.SEDOM, newDictionary -> {
+						sedomDictionaryRef.set(new SEDOMdictionary(newDictionary));
+						logger.info("SEDOM: swapped in version " + newDictionary.getVersionLabel() + " (" + newDictionary.size() + " abbreviations).");
+					});
+					logger.info("SEDOM: loaded list of length: " + sedomDictionaryRef.get().dictionary.size() + " abbreviations, " + 
+							sedomDictionaryRef.get().longFormAutomaton.size() + " long forms (" + sedomDictionaryRef.get().dictionary.getVersionLabel() + ").");
 
-							String[] abbreviationLFline = line.split("\t");
 
-							if(abbreviationLFline != null && abbreviationLFline.length == 4) {
-								String abbrev = abbreviationLFline[0];
-								String longForm = abbreviationLFline[3];
-
-								if(abbrev != null && !abbrev.trim().equals("") && longForm != null && !longForm.trim().equals("")) {
-
-									if(abbreviationLFmap.containsKey(abbrev.trim().toLowerCase())) {
-										abbreviationLFmap.get(abbrev.trim().toLowerCase()).add(longForm.trim().toLowerCase());
-									}
-									else {
-										Set<String> longFormSet = new HashSet<String>();
-										longFormSet.add(longForm.trim().toLowerCase());
-										abbreviationLFmap.put(abbrev.trim().toLowerCase(), longFormSet);
-									}
-								}
-							}
-
-
-						}
-						catch(Exception e) {
-							System.out.println("Error while loading SEDOM abbreviation dictionary line (" + lineCounter + "): " + line);
-						}
-					}
-
-					logger.info("SEDOM: loaded list of length: " + abbreviationLFmap.size() + " abbreviations.");
+					isInitialized = true;
 
 				} catch (Exception e) {
-					logger.error("IMPOSSIBLE TO LOAD LIST OF SEDOM ABBREVIATIONS-LONG FORMS.");
-					e.printStackTrace();
+					GenericUtil.notifyException("Initializing BioAB Abbreviation Spotter Module", e, logger);
 				}
 
-
-				isInitialized = true;
-
-			} catch (Exception e) {
-				GenericUtil.notifyException("Initializing BioAB Abbreviation Spotter Module", e, logger);
 			}
-
 		}
 
 		return this;
@@ -266,6 +289,27 @@ public class BioABabbrvLFspotter extends AbstractLanguageAnalyser implements Pro
 
 	@Override
 	public void execute() {
+		annotate(this.document);
+	}
+
+	/**
+	 * Look for the long forms of the abbreviations of the document. All the state of the analysis is kept in a context
+	 * local to the method, thus the same instance can annotate several documents in parallel.
+	 * 
+	 * @param doc
+	 */
+	public void annotate(Document doc) {
+		annotate(doc, null);
+	}
+
+	/**
+	 * Look for the long forms of the abbreviations of the document, until the deadline expires: when expired, the long
+	 * forms of the remaining abbreviations are not searched.
+	 * 
+	 * @param doc
+	 * @param deadline null for no deadline
+	 */
+	public void annotate(Document doc, Deadline deadline) {
 
 		if(!isInitialized) {
 			this.init();
@@ -273,31 +317,36 @@ public class BioABabbrvLFspotter extends AbstractLanguageAnalyser implements Pro
 
 		long t1 = System.currentTimeMillis();
 
+		// Merge chunks and index sentences, tokens, chunks, long form candidates and abbreviations of the document
+		// The same version of the SEDOM dictionary is used for the whole document, even if a new one is swapped in meanwhile
+		createNewChunks(doc);
+		DocumentContext ctx = createContext(doc, sedomDictionaryRef.get());
+
 		// **********************************************************
 		// Get all abbreviations to consider
-		Map<String, Set<Annotation>> abbreviationToScanSet = new HashMap<String, Set<Annotation>>();
+		Map<String, Set<Annotation>> abbreviationToScanSet = new LinkedHashMap<String, Set<Annotation>>();
 
 		// > FROM CRF / RF
-		List<Annotation> abbreviaitonCRF_List = GATEutils.getAnnInDocOrder(this.document, BioABabbrvSpotter.mainAnnSet, BioABabbrvSpotter.abbreviationType);
+		List<Annotation> abbreviaitonCRF_List = GATEutils.getAnnInDocOrder(ctx.document, BioABabbrvSpotter.mainAnnSet, BioABabbrvSpotter.abbreviationType);
 		for(Annotation abbreviaitonCRF : abbreviaitonCRF_List) {
-			String annoOffsetKey = abbreviaitonCRF.getStartNode().getOffset() + "_" + abbreviaitonCRF.getEndNode().getOffset();
+			String annoOffsetKey = offsetKey(abbreviaitonCRF);
 			if(!abbreviationToScanSet.containsKey(annoOffsetKey)) abbreviationToScanSet.put(annoOffsetKey, new HashSet<Annotation>());
 			abbreviationToScanSet.get(annoOffsetKey).add(abbreviaitonCRF);
 		}
 
 
-		List<Annotation> abbreviaitonCRFshort_LIST = GATEutils.getAnnInDocOrder(this.document, BioABabbrvSpotter.mainAnnSet, BioABabbrvSpotter.short_abbrvType);
+		List<Annotation> abbreviaitonCRFshort_LIST = GATEutils.getAnnInDocOrder(ctx.document, BioABabbrvSpotter.mainAnnSet, BioABabbrvSpotter.short_abbrvType);
 		for(Annotation abbreviaitonCRFshort : abbreviaitonCRFshort_LIST) {
-			String annoOffsetKey = abbreviaitonCRFshort.getStartNode().getOffset() + "_" + abbreviaitonCRFshort.getEndNode().getOffset();
+			String annoOffsetKey = offsetKey(abbreviaitonCRFshort);
 			if(!abbreviationToScanSet.containsKey(annoOffsetKey)) abbreviationToScanSet.put(annoOffsetKey, new HashSet<Annotation>());
 			abbreviationToScanSet.get(annoOffsetKey).add(abbreviaitonCRFshort);
 		}
 
 
 		// > TOKEN NOT DETECTED BY CRF / RF AS ABBREVIATIONS WITH LESS THAN 4 CHARS AND IN PARENTHESIS
-		Set<Annotation> abbreviaitonInParenthesis_SET = getTokenInParenthesisNotInSet();
+		Set<Annotation> abbreviaitonInParenthesis_SET = getTokenInParenthesisNotInSet(ctx);
 		for(Annotation abbreviaitonInParenthesis : abbreviaitonInParenthesis_SET) {
-			String annoOffsetKey = abbreviaitonInParenthesis.getStartNode().getOffset() + "_" + abbreviaitonInParenthesis.getEndNode().getOffset();
+			String annoOffsetKey = offsetKey(abbreviaitonInParenthesis);
 			if(!abbreviationToScanSet.containsKey(annoOffsetKey)) abbreviationToScanSet.put(annoOffsetKey, new HashSet<Annotation>());
 			abbreviationToScanSet.get(annoOffsetKey).add(abbreviaitonInParenthesis);
 		}
@@ -305,54 +354,61 @@ public class BioABabbrvLFspotter extends AbstractLanguageAnalyser implements Pro
 
 		for(Entry<String, Set<Annotation>> abbreviationToScan : abbreviationToScanSet.entrySet()) {
 			for(Annotation ann : abbreviationToScan.getValue()) {
-				logger.debug("      > Candidate abbreviation " + abbreviationToScan.getKey() + ": '" + GATEutils.getAnnotationText(ann, this.document).orElse("NULL") + "' (" + ann.getType() + " " + ((ann.getFeatures() != null) ? ann.getFeatures() : "") + ")");
+				logger.debug("      > Candidate abbreviation " + abbreviationToScan.getKey() + ": '" + GATEutils.getAnnotationText(ann, ctx.document).orElse("NULL") + "' (" + ann.getType() + " " + ((ann.getFeatures() != null) ? ann.getFeatures() : "") + ")");
 			}
 		}
 		
-		// Remove overlapping abbreviations
-		Set<String> abbreviationToRemove = new HashSet<String>();
-		for(Entry<String, Set<Annotation>> abbrCandidate : abbreviationToScanSet.entrySet()) {
-			
-			boolean foundContained = false;
-			for(Entry<String, Set<Annotation>> abbrCandidate_INT : abbreviationToScanSet.entrySet()) {
-				if(!abbrCandidate.getKey().equals(abbrCandidate_INT.getKey()) && abbrCandidate.getValue().size() > 0 && abbrCandidate_INT.getValue().size() > 0) {
-					Annotation abbrv = abbrCandidate.getValue().iterator().next();
-					Annotation abbrvInt = abbrCandidate_INT.getValue().iterator().next();
-					
-					if(abbrv.getStartNode().getOffset() <= abbrvInt.getStartNode().getOffset() && abbrv.getEndNode().getOffset() >= abbrvInt.getEndNode().getOffset()) {
-						foundContained = true;
-					}
-				}
-			}
-			
-			if(foundContained) {
-				abbreviationToRemove.add(abbrCandidate.getKey());
+		// Remove overlapping abbreviations (the candidates that contain another candidate span)
+		// Sweep line over the candidate spans sorted by decreasing start offset (increasing end offset for the same start offset):
+		// a candidate contains another one if the minimum end offset of the spans already visited is not greater than its end offset
+		List<Annotation> candidateSpanList = new ArrayList<Annotation>();
+		for(Set<Annotation> abbrCandidate : abbreviationToScanSet.values()) {
+			if(abbrCandidate.size() > 0) {
+				candidateSpanList.add(abbrCandidate.iterator().next());
 			}
 		}
-		
-		for(String abbreviationToRemoveStr : abbreviationToRemove) {
-			abbreviationToScanSet.remove(abbreviationToRemoveStr);
+		candidateSpanList.sort((Annotation a1, Annotation a2) -> {
+			int cmp = Long.compare(a2.getStartNode().getOffset(), a1.getStartNode().getOffset());
+			return (cmp != 0) ? cmp : Long.compare(a1.getEndNode().getOffset(), a2.getEndNode().getOffset());
+		});
+
+		long minEndOffsetVisited = Long.MAX_VALUE;
+		for(Annotation candidateSpan : candidateSpanList) {
+			if(minEndOffsetVisited <= candidateSpan.getEndNode().getOffset()) {
+				abbreviationToScanSet.remove(offsetKey(candidateSpan));
+			}
+			minEndOffsetVisited = Math.min(minEndOffsetVisited, candidateSpan.getEndNode().getOffset());
 		}
+
+		// Start and end offsets of the remaining abbreviations, sorted by end offset
+		long[][] abbreviationSpansByEnd = sortSpansByEnd(abbreviationToScanSet);
 		
 		
 		// **********************************************************
 		// Look for a Long Form for each abbreviation
+		int scannedAbbreviations = 0;
 		for(Entry<String, Set<Annotation>> abbreviationToScan : abbreviationToScanSet.entrySet()) {
+			if(Deadline.isExpired(deadline)) {
+				logger.warn("Deadline expired: long form search stopped after " + scannedAbbreviations + " of " + abbreviationToScanSet.size() + " abbreviations.");
+				break;
+			}
+			scannedAbbreviations++;
+
 			try {
 				
 				// Get set of SHORT and LONG form candidates
 				Set<Annotation> shortFormSet = abbreviationToScan.getValue();
-				Map<String, Set<Annotation>> longFormsToScanMap = spotLongForm(shortFormSet);
+				Map<String, Set<Annotation>> longFormsToScanMap = spotLongForm(ctx, shortFormSet);
 
 				// Chose the long form
 				Annotation shortForm = abbreviationToScan.getValue().iterator().next();
 				long startOffsetCtx = (shortForm.getStartNode().getOffset() > 35l) ? shortForm.getStartNode().getOffset() - 35l : 0l;
-				long endOffsetCtx = (shortForm.getEndNode().getOffset() + 35l < gate.Utils.lengthLong(this.document)) ? shortForm.getEndNode().getOffset() + 35l : gate.Utils.lengthLong(this.document);
+				long endOffsetCtx = (shortForm.getEndNode().getOffset() + 35l < gate.Utils.lengthLong(ctx.document)) ? shortForm.getEndNode().getOffset() + 35l : gate.Utils.lengthLong(ctx.document);
 
 				logger.debug("");
 				logger.debug("CHOSING AMONG CANDIDATE LONG FORMS...");
 				try {
-					logger.debug("   with context: " + this.document.getContent().getContent(startOffsetCtx, endOffsetCtx).toString());
+					logger.debug("   with context: " + ctx.document.getContent().getContent(startOffsetCtx, endOffsetCtx).toString());
 				} catch (InvalidOffsetException e) {
 					logger.debug("   Context: ERROR");
 				}
@@ -368,8 +424,8 @@ public class BioABabbrvLFspotter extends AbstractLanguageAnalyser implements Pro
 						Annotation longFormAnno = longFormsToScanMap.entrySet().iterator().next().getValue().iterator().next();
 						Set<Annotation> longFormAnnoSet = longFormsToScanMap.entrySet().iterator().next().getValue();
 
-						String shortText = GATEutils.getAnnotationText(shortForm, this.document).orElse(null);
-						String longText = GATEutils.getAnnotationText(longFormAnno, this.document).orElse(null);
+						String shortText = GATEutils.getAnnotationText(shortForm, ctx.document).orElse(null);
+						String longText = GATEutils.getAnnotationText(longFormAnno, ctx.document).orElse(null);
 
 						if(shortText.length() >= longText.length()) {
 							chosenLFset = null;
@@ -408,7 +464,7 @@ public class BioABabbrvLFspotter extends AbstractLanguageAnalyser implements Pro
 								// The only candidate long is derived from a CHUNK
 
 								// ATTENTION: implement choice strategy
-								double matchScore = matchShortLong(this.document, shortFormSet, longFormAnnoSet);
+								double matchScore = matchShortLong(ctx.getCandidateScorer(), shortFormSet, longFormAnnoSet);
 
 								if(matchScore > 0.5) {
 									chosenLFset = longFormsToScanMap.entrySet().iterator().next().getValue();
@@ -426,9 +482,9 @@ public class BioABabbrvLFspotter extends AbstractLanguageAnalyser implements Pro
 						Map<String, Double> annotaRatingMap = new HashMap<String, Double>();
 
 						for(Entry<String, Set<Annotation>> annToRate : longFormsToScanMap.entrySet()) {
-							double rankValue = matchShortLong(this.document, shortFormSet, annToRate.getValue());
+							double rankValue = matchShortLong(ctx.getCandidateScorer(), shortFormSet, annToRate.getValue());
 							annotaRatingMap.put(annToRate.getKey(), rankValue);
-							logger.debug(" MULTI LF RANKING > '" + GATEutils.getAnnotationText(annToRate.getValue().iterator().next(), this.document).orElse("NULL") + " > RANK: " + rankValue);
+							logger.debug(" MULTI LF RANKING > '" + GATEutils.getAnnotationText(annToRate.getValue().iterator().next(), ctx.document).orElse("NULL") + " > RANK: " + rankValue);
 						}
 
 						// Choose best rank
@@ -498,36 +554,22 @@ public class BioABabbrvLFspotter extends AbstractLanguageAnalyser implements Pro
 				//  > Check for the previous SF in the sentence if not get start offset of sentence
 				if(chosenLFset == null) {
 					try {
-						List<Annotation> sentenceList = GATEutils.getAnnInDocOrderIntersectAnn(this.document, this.sentenceAnnSet, this.sentenceType, shortForm);
+						List<Annotation> sentenceList = ctx.sentenceIndex.getIntersecting(shortForm);
 
 						if(sentenceList != null && sentenceList.size() > 0 && sentenceList.get(0) != null) {
 
 							if(sentenceList.size() > 1) {
-								logger.debug("More then one sentence identified for abbreviation: " +  GATEutils.getAnnotationText(shortForm, this.document).orElse("NULL"));
+								logger.debug("More then one sentence identified for abbreviation: " +  GATEutils.getAnnotationText(shortForm, ctx.document).orElse("NULL"));
 							} 
 
 							Annotation sentenceAnno = sentenceList.get(0);
 
 							// Get the end offset of the preceding abbreviation that is more than 15 chars before the beginning of the current one or get the start offset of the sentence
-							String previousAbbreviationsInSentenceSel = "";
-							long endOffsetOfPreviousAbbreviationsInSentenceSel = sentenceAnno.getStartNode().getOffset();
-							for(Entry<String, Set<Annotation>> abbreviationToScan_INT : abbreviationToScanSet.entrySet()) {
-								long startOffsetOfAbbreviation = Long.valueOf(abbreviationToScan_INT.getKey().split("_")[0]);
-								long endOffsetOfAbbreviation = Long.valueOf(abbreviationToScan_INT.getKey().split("_")[1]);
-
-								if(startOffsetOfAbbreviation >= sentenceAnno.getStartNode().getOffset() && endOffsetOfAbbreviation <= sentenceAnno.getEndNode().getOffset() &&
-										endOffsetOfAbbreviation <= shortForm.getStartNode().getOffset() && (shortForm.getStartNode().getOffset() - endOffsetOfAbbreviation) > 15l && 
-										(endOffsetOfPreviousAbbreviationsInSentenceSel == -1 || endOffsetOfPreviousAbbreviationsInSentenceSel < endOffsetOfAbbreviation)) {
-									previousAbbreviationsInSentenceSel = abbreviationToScan_INT.getKey();
-									endOffsetOfPreviousAbbreviationsInSentenceSel = endOffsetOfAbbreviation;
-								}
-							}
+							long endOffsetOfPreviousAbbreviationsInSentenceSel = getEndOfPreviousAbbreviation(abbreviationSpansByEnd, sentenceAnno, shortForm);
 
 							//  > Get the LFs between the startOffsetSerach and the abbrevAnn start offset
-							List<Annotation> previousLFannCOMPLETEList_CRF = GATEutils.getAnnInDocOrderContainedOffset(this.document, BioABabbrvSpotter.mainAnnSet, BioABabbrvSpotter.longFormType, 
-									endOffsetOfPreviousAbbreviationsInSentenceSel, shortForm.getStartNode().getOffset());
-							List<Annotation> previousLFannCOMPLETEList_CHUNK = GATEutils.getAnnInDocOrderContainedOffset(this.document, this.chunkAnnSet, this.chunkType, 
-									endOffsetOfPreviousAbbreviationsInSentenceSel, shortForm.getStartNode().getOffset());
+							List<Annotation> previousLFannCOMPLETEList_CRF = ctx.longFormCRFindex.getContained(endOffsetOfPreviousAbbreviationsInSentenceSel, shortForm.getStartNode().getOffset());
+							List<Annotation> previousLFannCOMPLETEList_CHUNK = ctx.chunkIndex.getContained(endOffsetOfPreviousAbbreviationsInSentenceSel, shortForm.getStartNode().getOffset());
 							previousLFannCOMPLETEList_CHUNK = previousLFannCOMPLETEList_CHUNK.stream().filter(anno -> this.checkChunkType(anno)).collect(Collectors.toList());
 							List<Annotation> previousLFannCOMPLETEList = new ArrayList<Annotation>();
 							previousLFannCOMPLETEList.addAll(previousLFannCOMPLETEList_CRF);
@@ -536,7 +578,7 @@ public class BioABabbrvLFspotter extends AbstractLanguageAnalyser implements Pro
 							for(Annotation previousLF : previousLFannCOMPLETEListReverse) {
 								Set<Annotation> previousLFlist = new HashSet<Annotation>();
 								previousLFlist.add(previousLF);
-								double matchSL = matchShortLong(this.document,  abbreviationToScan.getValue(), previousLFlist);
+								double matchSL = matchShortLong(ctx.getCandidateScorer(), abbreviationToScan.getValue(), previousLFlist);
 								if(previousLF != null && matchSL > 0.5d) {
 									chosenLFset = new HashSet<Annotation>();
 									chosenLFset.add(previousLF);
@@ -585,19 +627,19 @@ public class BioABabbrvLFspotter extends AbstractLanguageAnalyser implements Pro
 						
 						for(Entry<String, Set<Annotation>> lfset : longFormsToScanMap.entrySet()) {
 							
-							List<Annotation> tokenAnnotationList = GATEutils.getAnnInDocOrderContainedAnn(this.document, this.tokenAnnSet, this.tokenType, lfset.getValue().iterator().next());
+							List<Annotation> tokenAnnotationList = ctx.tokenIndex.getContained(lfset.getValue().iterator().next());
 							
 							if(tokenAnnotationList != null && tokenAnnotationList.size() > 1 && tokenAnnotationList.get(0) != null) {
 								String tokenPOS = GATEutils.getStringFeature(tokenAnnotationList.get(0), TokenAnnConst.tokenPOSFeat).orElse("___").trim().toLowerCase();
 								if(tokenPOS.equals("c") || tokenPOS.endsWith("p") || tokenPOS.endsWith("d")) {
 									try {
-										Integer longFormWithoutFirstTokenID = this.document.getAnnotations(mainAnnSet).add(tokenAnnotationList.get(1).getStartNode().getOffset(), 
+										Integer longFormWithoutFirstTokenID = ctx.document.getAnnotations(mainAnnSet).add(tokenAnnotationList.get(1).getStartNode().getOffset(), 
 												lfset.getValue().iterator().next().getEndNode().getOffset(), NoFirstToken_CandidateLF, Factory.newFeatureMap());
-										Annotation longFormWithoutFirstTokenAnno = this.document.getAnnotations(mainAnnSet).get(longFormWithoutFirstTokenID);
+										Annotation longFormWithoutFirstTokenAnno = ctx.document.getAnnotations(mainAnnSet).get(longFormWithoutFirstTokenID);
 										
 										Set<Annotation> previousLFlist = new HashSet<Annotation>();
 										previousLFlist.add(longFormWithoutFirstTokenAnno);
-										double matchSL = matchShortLong(this.document,  abbreviationToScan.getValue(), previousLFlist);
+										double matchSL = matchShortLong(ctx.getCandidateScorer(), abbreviationToScan.getValue(), previousLFlist);
 										if(longFormWithoutFirstTokenAnno != null && matchSL > 0.5d) {
 											chosenLFset = new HashSet<Annotation>();
 											chosenLFset.add(longFormWithoutFirstTokenAnno);
@@ -623,55 +665,143 @@ public class BioABabbrvLFspotter extends AbstractLanguageAnalyser implements Pro
 				// End special case: REMOVE ARTICLE LF
 				
 				
-				generateSF_LFanno(chosenLFset, choiceStrategy, abbreviationToScan.getValue());
+				generateSF_LFanno(ctx, chosenLFset, choiceStrategy, abbreviationToScan.getValue());
 
 			} catch (Exception e) {
-				GenericUtil.notifyException("Error looking for Long Form of the abbreviation " + GATEutils.getAnnotationText(abbreviationToScan.getValue().iterator().next(), this.document).orElse("NULL"), e, logger);
+				GenericUtil.notifyException("Error looking for Long Form of the abbreviation " + GATEutils.getAnnotationText(abbreviationToScan.getValue().iterator().next(), ctx.document).orElse("NULL"), e, logger);
 			}
 		}
 		
 		// Transfet annotations from the mainAnnSet to the finalAnnoSet
-		GATEutils.transferAnnotations(this.document, longFormType, longFormType, mainAnnSet, finalAnnoSet, null);
-		GATEutils.transferAnnotations(this.document, shortFormType, shortFormType, mainAnnSet, finalAnnoSet, null);
-		GATEutils.transferAnnotations(this.document, shortLongFormType, shortLongFormType, mainAnnSet, finalAnnoSet, null);
-
-		GATEutils.transferAnnotations(this.document, BioABabbrvSpotter.contextual_abbrvType, "CONTEXTUAL", mainAnnSet, finalAnnoSet, null);
-		GATEutils.transferAnnotations(this.document, BioABabbrvSpotter.derived_abbrvType, "DERIVED", mainAnnSet, finalAnnoSet, null);
-		GATEutils.transferAnnotations(this.document, BioABabbrvSpotter.multiple_abbrvType, "MULTIPLE", mainAnnSet, finalAnnoSet, null);
-		GATEutils.transferAnnotations(this.document, BioABabbrvSpotter.global_abbrvType, "GLOBAL", mainAnnSet, finalAnnoSet, null);
+		GATEutils.transferAnnotations(ctx.document, longFormType, longFormType, mainAnnSet, finalAnnoSet, null);
+		GATEutils.transferAnnotations(ctx.document, shortFormType, shortFormType, mainAnnSet, finalAnnoSet, null);
+		GATEutils.transferAnnotations(ctx.document, shortLongFormType, shortLongFormType, mainAnnSet, finalAnnoSet, null);
+
+		GATEutils.transferAnnotations(ctx.document, BioABabbrvSpotter.contextual_abbrvType, "CONTEXTUAL", mainAnnSet, finalAnnoSet, null);
+		GATEutils.transferAnnotations(ctx.document, BioABabbrvSpotter.derived_abbrvType, "DERIVED", mainAnnSet, finalAnnoSet, null);
+		GATEutils.transferAnnotations(ctx.document, BioABabbrvSpotter.multiple_abbrvType, "MULTIPLE", mainAnnSet, finalAnnoSet, null);
+		GATEutils.transferAnnotations(ctx.document, BioABabbrvSpotter.global_abbrvType, "GLOBAL", mainAnnSet, finalAnnoSet, null);
 		
 		
 		long needed = System.currentTimeMillis() - t1;
-		logger.debug("   - End tagging document: " + (((this.document.getName() != null) ? this.document.getName() : "NULL")));
+		logger.debug("   - End tagging document: " + (((ctx.document.getName() != null) ? ctx.document.getName() : "NULL")));
 		logger.debug("     in (seconds): " + (needed / 1000));
 		logger.debug("********************************************");
 	}
 
-	private Map<String, Set<Annotation>> spotLongForm(Set<Annotation> shortFormSet) {
+	/**
+	 * Create the context of the analysis of the document, building the interval indexes of the annotations queried while looking for long forms
+	 * 
+	 * @param doc
+	 * @param sedomDictionary
+	 * @return
+	 */
+	private DocumentContext createContext(Document doc, SEDOMdictionary sedomDictionary) {
+		DocumentContext ctx = new DocumentContext(doc, sedomDictionary);
+
+		ctx.sentenceIndex = AnnotationIntervalIndex.build(doc, this.sentenceAnnSet, this.sentenceType);
+		ctx.tokenIndex = AnnotationIntervalIndex.build(doc, this.tokenAnnSet, this.tokenType);
+		ctx.chunkIndex = AnnotationIntervalIndex.build(doc, this.chunkAnnSet, this.chunkType);
+		ctx.longFormCRFindex = AnnotationIntervalIndex.build(doc, BioABabbrvSpotter.mainAnnSet, BioABabbrvSpotter.longFormType);
+		ctx.shortAbbreviationIndex = AnnotationIntervalIndex.build(doc, BioABabbrvSpotter.mainAnnSet, BioABabbrvSpotter.short_abbrvType);
+
+		List<Annotation> abbreviationList = new ArrayList<Annotation>();
+		abbreviationList.addAll(GATEutils.getAnnInDocOrder(doc, BioABabbrvSpotter.mainAnnSet, BioABabbrvSpotter.abbreviationType));
+		abbreviationList.addAll(GATEutils.getAnnInDocOrder(doc, BioABabbrvSpotter.mainAnnSet, BioABabbrvSpotter.short_abbrvType));
+		ctx.abbreviationIndex = new AnnotationIntervalIndex(abbreviationList);
+
+		// Gold standard annotations are needed only to collect statistics
+		if(stats.isEnabled()) {
+			ctx.goldStandardShortIndex = AnnotationIntervalIndex.build(doc, "GoldStandard", "SHORT");
+			ctx.goldStandardLongIndex = AnnotationIntervalIndex.build(doc, "GoldStandard", "LONG");
+		}
+
+		return ctx;
+	}
+
+	private static String offsetKey(Annotation ann) {
+		return ann.getStartNode().getOffset() + "_" + ann.getEndNode().getOffset();
+	}
+
+	/**
+	 * Start offsets (position 0) and end offsets (position 1) of the candidate spans, sorted by end offset
+	 * 
+	 * @param candidateMap
+	 * @return
+	 */
+	private static long[][] sortSpansByEnd(Map<String, Set<Annotation>> candidateMap) {
+		List<Annotation> spanList = new ArrayList<Annotation>();
+		for(Set<Annotation> candidate : candidateMap.values()) {
+			if(candidate.size() > 0) {
+				spanList.add(candidate.iterator().next());
+			}
+		}
+		spanList.sort((Annotation a1, Annotation a2) -> Long.compare(a1.getEndNode().getOffset(), a2.getEndNode().getOffset()));
+
+		long[][] spans = new long[2][spanList.size()];
+		for(int i = 0; i < spanList.size(); i++) {
+			spans[0][i] = spanList.get(i).getStartNode().getOffset();
+			spans[1][i] = spanList.get(i).getEndNode().getOffset();
+		}
+		return spans;
+	}
+
+	/**
+	 * Get the end offset of the abbreviation of the same sentence that ends closest to the short form, but more than 15 chars before
+	 * its beginning - or the start offset of the sentence if there is no such abbreviation
+	 * 
+	 * @param spansByEnd
+	 * @param sentenceAnno
+	 * @param shortForm
+	 * @return
+	 */
+	private static long getEndOfPreviousAbbreviation(long[][] spansByEnd, Annotation sentenceAnno, Annotation shortForm) {
+		long sentenceStart = sentenceAnno.getStartNode().getOffset();
+		long maxEndOffset = Math.min(sentenceAnno.getEndNode().getOffset(), shortForm.getStartNode().getOffset() - 16l);
+
+		// Last span ending not after maxEndOffset
+		int spanIdx = Arrays.binarySearch(spansByEnd[1], maxEndOffset);
+		if(spanIdx < 0) {
+			spanIdx = -spanIdx - 2;
+		}
+		else {
+			while(spanIdx + 1 < spansByEnd[1].length && spansByEnd[1][spanIdx + 1] == maxEndOffset) spanIdx++;
+		}
+
+		for(; spanIdx >= 0 && spansByEnd[1][spanIdx] > sentenceStart; spanIdx--) {
+			if(spansByEnd[0][spanIdx] >= sentenceStart) {
+				return spansByEnd[1][spanIdx];
+			}
+		}
+
+		return sentenceStart;
+	}
+
+	private Map<String, Set<Annotation>> spotLongForm(DocumentContext ctx, Set<Annotation> shortFormSet) {
 
 		Map<String, Set<Annotation>> longFormsToScanMap = new HashMap<String, Set<Annotation>>();
 		
 		Annotation shortForm = shortFormSet.iterator().next();
 
 		// Retrieve Long forms
-		List<Annotation> sentenceList = GATEutils.getAnnInDocOrderIntersectAnn(this.document, this.sentenceAnnSet, this.sentenceType, shortForm);
+		List<Annotation> sentenceList = ctx.sentenceIndex.getIntersecting(shortForm);
 
 		if(sentenceList != null && sentenceList.size() > 0 && sentenceList.get(0) != null) {
 
 			if(sentenceList.size() > 1) {
-				logger.debug("More then one sentence identified for abbreviation: " +  GATEutils.getAnnotationText(shortForm, this.document).orElse("NULL"));
+				logger.debug("More then one sentence identified for abbreviation: " +  GATEutils.getAnnotationText(shortForm, ctx.document).orElse("NULL"));
 			} 
 
 			Annotation sentenceAnno = sentenceList.get(0);
 
 			logger.debug("********************************************");
-			logger.debug("   Analyzing short form: " + GATEutils.getAnnotationText(shortForm, this.document).orElse("NULL"));
-			logger.debug("   Document: " + ((this.document.getName() == null) ? "NULL" : this.document.getName()));
-			logger.debug("   Sentence: " + GATEutils.getAnnotationText(sentenceAnno, this.document).orElse("NULL"));
+			logger.debug("   Analyzing short form: " + GATEutils.getAnnotationText(shortForm, ctx.document).orElse("NULL"));
+			logger.debug("   Document: " + ((ctx.document.getName() == null) ? "NULL" : ctx.document.getName()));
+			logger.debug("   Sentence: " + GATEutils.getAnnotationText(sentenceAnno, ctx.document).orElse("NULL"));
 			long startOffsetCtx = (shortForm.getStartNode().getOffset() > 35l) ? shortForm.getStartNode().getOffset() - 35l : 0l;
-			long endOffsetCtx = (shortForm.getEndNode().getOffset() + 35l < gate.Utils.lengthLong(this.document)) ? shortForm.getEndNode().getOffset() + 35l : gate.Utils.lengthLong(this.document);
+			long endOffsetCtx = (shortForm.getEndNode().getOffset() + 35l < gate.Utils.lengthLong(ctx.document)) ? shortForm.getEndNode().getOffset() + 35l : gate.Utils.lengthLong(ctx.document);
 			try {
-				logger.debug("   Context: " + this.document.getContent().getContent(startOffsetCtx, endOffsetCtx).toString());
+				logger.debug("   Context: " + ctx.document.getContent().getContent(startOffsetCtx, endOffsetCtx).toString());
 			} catch (InvalidOffsetException e) {
 				logger.debug("   Context: ERROR");
 			}
@@ -682,38 +812,37 @@ public class BioABabbrvLFspotter extends AbstractLanguageAnalyser implements Pro
 			logger.debug("SELECTING CANDIDATE LONG FORMS...");
 
 			// > FROM CRF / RF
-			List<Annotation> longFormCRF_List = GATEutils.getAnnInDocOrderContainedAnn(this.document, BioABabbrvSpotter.mainAnnSet, BioABabbrvSpotter.longFormType, sentenceAnno);
+			List<Annotation> longFormCRF_List = ctx.longFormCRFindex.getContained(sentenceAnno);
 			logger.debug(" longFormCRF_List: " + longFormCRF_List.size());
 			for(Annotation longFormCRF : longFormCRF_List) {
-				String annoOffsetKey = longFormCRF.getStartNode().getOffset() + "_" + longFormCRF.getEndNode().getOffset();
+				String annoOffsetKey = offsetKey(longFormCRF);
 				if(!longFormsToScanMap.containsKey(annoOffsetKey)) longFormsToScanMap.put(annoOffsetKey, new HashSet<Annotation>());
 				longFormsToScanMap.get(annoOffsetKey).add(longFormCRF);
-				logger.debug("      > CRF long form: '" + GATEutils.getAnnotationText(longFormCRF, this.document).orElse("NULL") + "' (" + longFormCRF.getType() + ")");
+				logger.debug("      > CRF long form: '" + GATEutils.getAnnotationText(longFormCRF, ctx.document).orElse("NULL") + "' (" + longFormCRF.getType() + ")");
 			}
 			logger.debug(" TOTAL SELECTED long form: " + longFormsToScanMap.size());
 
 			// > FROM chunks
-			List<Annotation> longFormChunk_List = GATEutils.getAnnInDocOrderContainedAnn(this.document, this.chunkAnnSet, this.chunkType, sentenceAnno);
+			List<Annotation> longFormChunk_List = ctx.chunkIndex.getContained(sentenceAnno);
 			logger.debug("      > The sentence contains " + longFormChunk_List.size() + " chunks.");
-			createNewChunks();
 			longFormChunk_List = longFormChunk_List.stream().filter(anno -> this.checkChunkType(anno)).collect(Collectors.toList());
 			logger.debug(" longFormChunk_List: " + longFormChunk_List.size());
 			for(Annotation longFormChunk : longFormChunk_List) {
-				String annoOffsetKey = longFormChunk.getStartNode().getOffset() + "_" + longFormChunk.getEndNode().getOffset();
+				String annoOffsetKey = offsetKey(longFormChunk);
 				if(!longFormsToScanMap.containsKey(annoOffsetKey)) longFormsToScanMap.put(annoOffsetKey, new HashSet<Annotation>());
 				longFormsToScanMap.get(annoOffsetKey).add(longFormChunk);
-				logger.debug("      > Chunk long form: '" + GATEutils.getAnnotationText(longFormChunk, this.document).orElse("NULL") + "' (" + longFormChunk.getType() + ", " + GATEutils.getStringFeature(longFormChunk, this.chunkLabelFeat).orElse("NULL") + ")");
+				logger.debug("      > Chunk long form: '" + GATEutils.getAnnotationText(longFormChunk, ctx.document).orElse("NULL") + "' (" + longFormChunk.getType() + ", " + GATEutils.getStringFeature(longFormChunk, this.chunkLabelFeat).orElse("NULL") + ")");
 			}
 			logger.debug(" TOTAL SELECTED long form: " + longFormsToScanMap.size());
 
 			// > FROM SEDOM
-			Set<Annotation> longFormSEDOM_Set = annotateSEDOMlognForms(shortForm, sentenceAnno);
+			Set<Annotation> longFormSEDOM_Set = annotateSEDOMlognForms(ctx, shortForm, sentenceAnno);
 			logger.debug(" longFormSEDOM_Set: " + longFormSEDOM_Set.size());
 			for(Annotation longFormSEDOM : longFormSEDOM_Set) {
-				String annoOffsetKey = longFormSEDOM.getStartNode().getOffset() + "_" + longFormSEDOM.getEndNode().getOffset();
+				String annoOffsetKey = offsetKey(longFormSEDOM);
 				if(!longFormsToScanMap.containsKey(annoOffsetKey)) longFormsToScanMap.put(annoOffsetKey, new HashSet<Annotation>());
 				longFormsToScanMap.get(annoOffsetKey).add(longFormSEDOM);
-				logger.debug("      > SEDOM long form: '" + GATEutils.getAnnotationText(longFormSEDOM, this.document).orElse("NULL") + "' (" + longFormSEDOM.getType() + ")");
+				logger.debug("      > SEDOM long form: '" + GATEutils.getAnnotationText(longFormSEDOM, ctx.document).orElse("NULL") + "' (" + longFormSEDOM.getType() + ")");
 			}
 			logger.debug(" TOTAL SELECTED long form: " + longFormsToScanMap.size());
 
@@ -722,18 +851,18 @@ public class BioABabbrvLFspotter extends AbstractLanguageAnalyser implements Pro
 			logger.debug(" TOTAL SELECTED long form after filter: " + longFormsToScanMap.size());
 
 			// Retrieve other facets of the abbreviation
-			boolean betweenParenthesis = isTokenBetweenParenthesis(shortForm);
-			boolean SHORTabbrvType = isSHORTabbrvType(shortForm);
+			boolean betweenParenthesis = isTokenBetweenParenthesis(ctx, shortForm);
+			boolean SHORTabbrvType = isSHORTabbrvType(ctx, shortForm);
 
 			// Remove LF following the SHORT form if in parenthesis
 			if(betweenParenthesis) {
 				Set<String> longFormToDelSet = new HashSet<String>();
 				long shortFormStartOffset = shortForm.getStartNode().getOffset();
 				for(Entry<String, Set<Annotation>> longFormsToScan : longFormsToScanMap.entrySet()) {
-					long longFormEndNode = Long.valueOf(longFormsToScan.getKey().split("_")[1]);
+					long longFormEndNode = longFormsToScan.getValue().iterator().next().getEndNode().getOffset();
 					if(longFormEndNode > shortFormStartOffset) {
 						longFormToDelSet.add(longFormsToScan.getKey());
-						logger.debug("      > Removing long form before parenthesis of short form: '" + GATEutils.getAnnotationText(longFormsToScan.getValue().iterator().next(), this.document).orElse("NULL") + 
+						logger.debug("      > Removing long form before parenthesis of short form: '" + GATEutils.getAnnotationText(longFormsToScan.getValue().iterator().next(), ctx.document).orElse("NULL") + 
 								"' (" + longFormsToScan.getValue().iterator().next().getType() + ")");
 					}
 				}
@@ -753,7 +882,7 @@ public class BioABabbrvLFspotter extends AbstractLanguageAnalyser implements Pro
 
 			for(Entry<String, Set<Annotation>> longFormToScan : longFormsToScanMap.entrySet()) {
 				for(Annotation ann : longFormToScan.getValue()) {
-					logger.debug("      " + longFormToScan.getKey() + "> Candidate long form: '" + GATEutils.getAnnotationText(ann, this.document).orElse("NULL") + "' (" + ann.getType() + " " + ((ann.getFeatures() != null) ? ann.getFeatures() : "") + ")");
+					logger.debug("      " + longFormToScan.getKey() + "> Candidate long form: '" + GATEutils.getAnnotationText(ann, ctx.document).orElse("NULL") + "' (" + ann.getType() + " " + ((ann.getFeatures() != null) ? ann.getFeatures() : "") + ")");
 				}
 			}
 
@@ -764,7 +893,7 @@ public class BioABabbrvLFspotter extends AbstractLanguageAnalyser implements Pro
 		}
 		
 		/* START STATS */
-		List<Annotation> shortGSlist = GATEutils.getAnnInDocOrderContainedAnn(this.document, "GoldStandard", "SHORT", shortForm);
+		List<Annotation> shortGSlist = (stats.isEnabled() && ctx.goldStandardShortIndex != null) ? ctx.goldStandardShortIndex.getContained(shortForm) : null;
 		if(shortGSlist != null && shortGSlist.size() == 1 && shortGSlist.get(0) != null) {
 			try {
 				Annotation shortGS = shortGSlist.get(0);
@@ -777,10 +906,10 @@ public class BioABabbrvLFspotter extends AbstractLanguageAnalyser implements Pro
 				}
 
 				if(relId_SF != null && !relId_SF.trim().equals("")) {
-					List<Annotation> intersectingSetnenceList = GATEutils.getAnnInDocOrderIntersectAnn(this.document, this.sentenceAnnSet, this.sentenceType, shortGS);
+					List<Annotation> intersectingSetnenceList = ctx.sentenceIndex.getIntersecting(shortGS);
 					for(Annotation intersectingSetnence : intersectingSetnenceList) {
 
-						List<Annotation> longFormsList = GATEutils.getAnnInDocOrderContainedAnn(this.document, "GoldStandard", "LONG", intersectingSetnence);
+						List<Annotation> longFormsList = ctx.goldStandardLongIndex.getContained(intersectingSetnence);
 
 						List<Annotation> matchingLlongFormsList = new ArrayList<Annotation>();
 						for(Annotation longFormAnno : longFormsList) {
@@ -798,16 +927,15 @@ public class BioABabbrvLFspotter extends AbstractLanguageAnalyser implements Pro
 						}
 
 						if(matchingLlongFormsList != null && matchingLlongFormsList.size() > 0) {
-							if(!longFormBySpan.containsKey(matchingLlongFormsList.size())) longFormBySpan.put(matchingLlongFormsList.size(), 0);
-							longFormBySpan.put(matchingLlongFormsList.size(), longFormBySpan.get(matchingLlongFormsList.size()) + 1);
+							stats.addGoldStandardLongForm(matchingLlongFormsList.size());
 
 							// Does it match any long form candidate?
 							boolean match = false;
 							for(Annotation matchingLongF : matchingLlongFormsList) {
 
 								for(Entry<String, Set<Annotation>> longFormToScan : longFormsToScanMap.entrySet()) {
-									long startCandidate = Long.valueOf(longFormToScan.getKey().split("_")[0]);
-									long endCandidate = Long.valueOf(longFormToScan.getKey().split("_")[1]);
+									long startCandidate = longFormToScan.getValue().iterator().next().getStartNode().getOffset();
+									long endCandidate = longFormToScan.getValue().iterator().next().getEndNode().getOffset();
 
 									if(matchingLongF.getStartNode().getOffset() == startCandidate && matchingLongF.getEndNode().getOffset() == endCandidate) {
 										match = true;
@@ -817,23 +945,7 @@ public class BioABabbrvLFspotter extends AbstractLanguageAnalyser implements Pro
 											setTypes.add(anno.getType() + "_" + ((anno.getType().equals(this.chunkType)) ? GATEutils.getStringFeature(anno, this.chunkLabelFeat).orElse("NULL") : ""));
 										}
 
-										if(matchingLlongFormsList.size() == 1) {
-											candidateMatchASingleSpanLongForm += 1;
-
-											if(!String.join("-", setTypes).equals("")) {
-												if(!longFormMatchByTypeSingle.containsKey(String.join("-", setTypes))) longFormMatchByTypeSingle.put(String.join("-", setTypes), 0);
-												longFormMatchByTypeSingle.put(String.join("-", setTypes), longFormMatchByTypeSingle.get(String.join("-", setTypes)) + 1);
-											}
-
-										}
-										else {
-											candidateMatchAMultipleSpanLongForm += 1;
-
-											if(!String.join("-", setTypes).equals("")) {
-												if(!longFormMatchByTypeMulti.containsKey(String.join("-", setTypes))) longFormMatchByTypeMulti.put(String.join("-", setTypes), 0);
-												longFormMatchByTypeMulti.put(String.join("-", setTypes), longFormMatchByTypeMulti.get(String.join("-", setTypes)) + 1);
-											}
-										}
+										stats.addCandidateMatch(matchingLlongFormsList.size() == 1, String.join("-", setTypes));
 
 									}
 								}
@@ -844,20 +956,16 @@ public class BioABabbrvLFspotter extends AbstractLanguageAnalyser implements Pro
 							}
 
 							if(match) {
-								longFormWithAtLeastOneCandidateSpanMatch += 1;
+								stats.addLongFormWithCandidateMatch();
 							}
 							else {
-								longFormWithoutAnyCandidateSpanMatch += 1;
-								logger.debug("The following LF has no candidate span matching it:\n"
-										+ "LONG " + matchingLlongFormsList.stream().map(anno -> GATEutils.getAnnotationText(anno, this.document).orElse("___")).collect(Collectors.joining(" / "))
-										+ " SHORT: " + GATEutils.getAnnotationText(shortGS, this.document).orElse("NULL")
-										+ " DOC: " + ((this.document.getName() != null) ? this.document.getName() : "NO_NAME")
-										+ "\n Sentence: " + GATEutils.getAnnotationText(intersectingSetnence, this.document).orElse("NULL"));
-								longFormWithoutAnyCandidateSpanMatchList.add("The following LF has no candidate span matching it:\n"
-										+ "LONG " + matchingLlongFormsList.stream().map(anno -> GATEutils.getAnnotationText(anno, this.document).orElse("___")).collect(Collectors.joining(" / "))
-										+ " SHORT: " + GATEutils.getAnnotationText(shortGS, this.document).orElse("NULL")
-										+ " DOC: " + ((this.document.getName() != null) ? this.document.getName() : "NO_NAME")
-										+ "\n Sentence: " + GATEutils.getAnnotationText(intersectingSetnence, this.document).orElse("NULL"));
+								String noMatchDescription = "The following LF has no candidate span matching it:\n"
+										+ "LONG " + matchingLlongFormsList.stream().map(anno -> GATEutils.getAnnotationText(anno, ctx.document).orElse("___")).collect(Collectors.joining(" / "))
+										+ " SHORT: " + GATEutils.getAnnotationText(shortGS, ctx.document).orElse("NULL")
+										+ " DOC: " + ((ctx.document.getName() != null) ? ctx.document.getName() : "NO_NAME")
+										+ "\n Sentence: " + GATEutils.getAnnotationText(intersectingSetnence, ctx.document).orElse("NULL");
+								logger.debug(noMatchDescription);
+								stats.addLongFormWithoutCandidateMatch(noMatchDescription);
 							}
 
 						}
@@ -878,7 +986,7 @@ public class BioABabbrvLFspotter extends AbstractLanguageAnalyser implements Pro
 	}
 
 
-	private void generateSF_LFanno(Set<Annotation> chosenCandidateLFset, String strategy, Set<Annotation> shortFormSet) throws InvalidOffsetException {
+	private void generateSF_LFanno(DocumentContext ctx, Set<Annotation> chosenCandidateLFset, String strategy, Set<Annotation> shortFormSet) throws InvalidOffsetException {
 
 		// If the LF starts with article or prop
 		if(chosenCandidateLFset != null && chosenCandidateLFset.size() > 0 && strategy != null && shortFormSet != null && shortFormSet.size() > 0) {
@@ -886,7 +994,7 @@ public class BioABabbrvLFspotter extends AbstractLanguageAnalyser implements Pro
 			Annotation chosenCandidateLF = chosenCandidateLFset.iterator().next();
 
 			boolean startOrEndWithSpecialChars = false;
-			String LFtext = GATEutils.getAnnotationText(chosenCandidateLF, this.document).orElse("");
+			String LFtext = GATEutils.getAnnotationText(chosenCandidateLF, ctx.document).orElse("");
 			long offsetToRemFronNewLF = 0l;
 			if(LFtext.toLowerCase().trim().startsWith("la ") || LFtext.toLowerCase().trim().startsWith("el ") ||
 					LFtext.toLowerCase().trim().startsWith("lo ") || LFtext.toLowerCase().trim().startsWith("de ") ||
@@ -913,14 +1021,15 @@ public class BioABabbrvLFspotter extends AbstractLanguageAnalyser implements Pro
 
 				if(newStartNode < chosenCandidateLFset.iterator().next().getEndNode().getOffset()) {
 					// Old Candidate LONG
-					this.document.getAnnotations(BioABabbrvSpotter.mainAnnSet).add(chosenCandidateLF.getStartNode().getOffset(), chosenCandidateLF.getEndNode().getOffset(),
+					ctx.document.getAnnotations(BioABabbrvSpotter.mainAnnSet).add(chosenCandidateLF.getStartNode().getOffset(), chosenCandidateLF.getEndNode().getOffset(),
 							BioABabbrvSpotter.longFormType + "_OLD", chosenCandidateLF.getFeatures());
 					// New Candidate LONG
-					Integer newLongId = this.document.getAnnotations(BioABabbrvSpotter.mainAnnSet).add(newStartNode, chosenCandidateLF.getEndNode().getOffset(),
+					Integer newLongId = ctx.document.getAnnotations(BioABabbrvSpotter.mainAnnSet).add(newStartNode, chosenCandidateLF.getEndNode().getOffset(),
 							BioABabbrvSpotter.longFormType, chosenCandidateLF.getFeatures());
 					if(newLongId != null) {
-						Annotation newChosenCandidateLF = this.document.getAnnotations(mainAnnSet).get(newLongId);
+						Annotation newChosenCandidateLF = ctx.document.getAnnotations(mainAnnSet).get(newLongId);
 						if(newChosenCandidateLF != null) {
+							ctx.longFormCRFindex.add(newChosenCandidateLF);
 							chosenCandidateLF = newChosenCandidateLF;
 						}
 					}
@@ -929,14 +1038,14 @@ public class BioABabbrvLFspotter extends AbstractLanguageAnalyser implements Pro
 
 			// Generate LF - SF annotation
 			if(chosenCandidateLF != null) {
-				int relID = relationID++;
+				int relID = relationID.getAndIncrement();
 
 				// New Candidate LONG
-				Integer newLongId = this.document.getAnnotations(mainAnnSet).add(chosenCandidateLF.getStartNode().getOffset(), chosenCandidateLF.getEndNode().getOffset(),
+				Integer newLongId = ctx.document.getAnnotations(mainAnnSet).add(chosenCandidateLF.getStartNode().getOffset(), chosenCandidateLF.getEndNode().getOffset(),
 						longFormType, chosenCandidateLF.getFeatures());
 				Annotation LONG_FORM = null;
 				if(newLongId != null) {
-					Annotation newChosenLF = this.document.getAnnotations(mainAnnSet).get(newLongId);
+					Annotation newChosenLF = ctx.document.getAnnotations(mainAnnSet).get(newLongId);
 					if(newChosenLF != null) {
 						LONG_FORM = newChosenLF;
 						LONG_FORM.setFeatures((chosenCandidateLF.getFeatures() == null) ? Factory.newFeatureMap() : chosenCandidateLF.getFeatures());
@@ -949,11 +1058,11 @@ public class BioABabbrvLFspotter extends AbstractLanguageAnalyser implements Pro
 
 					// New Candidate SHORT
 					Annotation shortForm = shortFormSet.iterator().next();
-					Integer newShortId = this.document.getAnnotations(mainAnnSet).add(shortForm.getStartNode().getOffset(), shortForm.getEndNode().getOffset(),
+					Integer newShortId = ctx.document.getAnnotations(mainAnnSet).add(shortForm.getStartNode().getOffset(), shortForm.getEndNode().getOffset(),
 							shortFormType, chosenCandidateLF.getFeatures());
 					Annotation SHORT_FORM = null;
 					if(newShortId != null) {
-						Annotation newChosenSF = this.document.getAnnotations(mainAnnSet).get(newShortId);
+						Annotation newChosenSF = ctx.document.getAnnotations(mainAnnSet).get(newShortId);
 						if(newChosenSF != null) {
 							SHORT_FORM = newChosenSF;
 							SHORT_FORM.setFeatures((shortForm.getFeatures() == null) ? Factory.newFeatureMap() : shortForm.getFeatures());
@@ -980,16 +1089,16 @@ public class BioABabbrvLFspotter extends AbstractLanguageAnalyser implements Pro
 						FeatureMap fm = Factory.newFeatureMap();
 						fm.put("strategy", ((strategy != null) ? strategy : "NULL"));
 						fm.put("relationID", relID + "");
-						Integer newLongShortId = this.document.getAnnotations(mainAnnSet).add(startSF_LFann, endSF_LFann, shortLongFormType, fm);
+						Integer newLongShortId = ctx.document.getAnnotations(mainAnnSet).add(startSF_LFann, endSF_LFann, shortLongFormType, fm);
 
 						Annotation LONG_SHORT_FORM = null;
 						if(newLongShortId != null) {
-							Annotation newChosenLSF = this.document.getAnnotations(mainAnnSet).get(newLongShortId);
+							Annotation newChosenLSF = ctx.document.getAnnotations(mainAnnSet).get(newLongShortId);
 							if(newChosenLSF != null) {
 								LONG_SHORT_FORM = newChosenLSF;
-								logger.info("Generated " + shortLongFormType + " annotaiton: " + GATEutils.getAnnotationText(LONG_SHORT_FORM, this.document));
-								logger.info("   > " + shortFormType + " annotaiton: " + GATEutils.getAnnotationText(SHORT_FORM, this.document));
-								logger.info("   > " + longFormType + " annotaiton: " + GATEutils.getAnnotationText(LONG_FORM, this.document));
+								logger.info("Generated " + shortLongFormType + " annotaiton: " + GATEutils.getAnnotationText(LONG_SHORT_FORM, ctx.document));
+								logger.info("   > " + shortFormType + " annotaiton: " + GATEutils.getAnnotationText(SHORT_FORM, ctx.document));
+								logger.info("   > " + longFormType + " annotaiton: " + GATEutils.getAnnotationText(LONG_FORM, ctx.document));
 								logger.info("   > STRATEGY: " + ((strategy != null) ? strategy : "NULL"));
 							}
 						}
@@ -1021,31 +1130,26 @@ public class BioABabbrvLFspotter extends AbstractLanguageAnalyser implements Pro
 	}
 
 
-	private Set<Annotation> getTokenInParenthesisNotInSet() {
+	private Set<Annotation> getTokenInParenthesisNotInSet(DocumentContext ctx) {
 
 		Set<Annotation> addedAbbreviations = new HashSet<Annotation>();
 
 		// Add abbreviations not detected by CRF / RF and with less than 4 letters in parenthesis
-		List<Annotation> sentenceAnnList = GATEutils.getAnnInDocOrder(this.document, this.sentenceAnnSet, this.sentenceType);
-		for(Annotation sentenceAnn : sentenceAnnList) {
+		for(Annotation sentenceAnn : ctx.sentenceIndex.getAll()) {
 			if(sentenceAnn != null) {
-				List<Annotation> tokenAnnInSameSentList = GATEutils.getAnnInDocOrderContainedAnn(this.document, this.tokenAnnSet, this.tokenType, sentenceAnn);
+				List<Annotation> tokenAnnInSameSentList = ctx.tokenIndex.getContained(sentenceAnn);
 
 				for(int tokenIndex = 0; tokenIndex < tokenAnnInSameSentList.size(); tokenIndex++) {
 					Annotation tokenAnnInSameSent = tokenAnnInSameSentList.get(tokenIndex);
 
 					if(tokenAnnInSameSent != null) {
 
-						// Get ABBREVIATION inside same sentence to check if there is not an overlapping ABBREVIATION
-						List<Annotation> ABBREVIATIONannInSameSentList = GATEutils.getAnnInDocOrderContainedAnn(this.document, BioABabbrvSpotter.mainAnnSet, BioABabbrvSpotter.abbreviationType, sentenceAnn);
-						ABBREVIATIONannInSameSentList.addAll(GATEutils.getAnnInDocOrderContainedAnn(this.document, BioABabbrvSpotter.mainAnnSet, BioABabbrvSpotter.short_abbrvType, sentenceAnn));
+						// Check if there is an ABBREVIATION inside same sentence that overlaps the beginning of the token
 						boolean foundOverlappingABBREVIATION = false;
-						if(ABBREVIATIONannInSameSentList != null) {
-							for(Annotation ABBREVIATIONannInSameSentAnn : ABBREVIATIONannInSameSentList) {
-								if(tokenAnnInSameSent.getStartNode().getOffset() >= ABBREVIATIONannInSameSentAnn.getStartNode().getOffset() && tokenAnnInSameSent.getStartNode().getOffset() < ABBREVIATIONannInSameSentAnn.getEndNode().getOffset()) {
-									foundOverlappingABBREVIATION = true;
-									break;
-								}
+						for(Annotation ABBREVIATIONannCoveringToken : ctx.abbreviationIndex.getCovering(tokenAnnInSameSent.getStartNode().getOffset())) {
+							if(ABBREVIATIONannCoveringToken.getStartNode().getOffset() >= sentenceAnn.getStartNode().getOffset() && ABBREVIATIONannCoveringToken.getEndNode().getOffset() <= sentenceAnn.getEndNode().getOffset()) {
+								foundOverlappingABBREVIATION = true;
+								break;
 							}
 						}
 
@@ -1058,16 +1162,16 @@ public class BioABabbrvLFspotter extends AbstractLanguageAnalyser implements Pro
 						Annotation nextToken = (tokenIndex + 1 < tokenAnnInSameSentList.size()) ? tokenAnnInSameSentList.get(tokenIndex + 1) : null;
 
 						if(previousToken != null && nextToken != null && 
-								GATEutils.getAnnotationText(previousToken, this.document).orElse("NONE").equals("(") && GATEutils.getAnnotationText(nextToken, this.document).orElse("NONE").equals(")") ) {
-							String ABBRstring = GATEutils.getAnnotationText(tokenAnnInSameSent, this.document).orElse(null);
+								GATEutils.getAnnotationText(previousToken, ctx.document).orElse("NONE").equals("(") && GATEutils.getAnnotationText(nextToken, ctx.document).orElse("NONE").equals(")") ) {
+							String ABBRstring = GATEutils.getAnnotationText(tokenAnnInSameSent, ctx.document).orElse(null);
 							if(ABBRstring != null && ABBRstring.trim().length() < 4) {
 								try {
 									FeatureMap fmAbbrv = Factory.newFeatureMap();
 									fmAbbrv.put("TYPE", "BETWEEN_APRENTHESIS");
-									Integer annotationID = this.document.getAnnotations(mainAnnSet).add(tokenAnnInSameSent.getStartNode().getOffset(), tokenAnnInSameSent.getEndNode().getOffset(), parenthesisType_ShortForm, fmAbbrv);
+									Integer annotationID = ctx.document.getAnnotations(mainAnnSet).add(tokenAnnInSameSent.getStartNode().getOffset(), tokenAnnInSameSent.getEndNode().getOffset(), parenthesisType_ShortForm, fmAbbrv);
 									// System.out.println("getEntities > Added abbreviation - string < 4 chars in parenthesis: " + GATEutils.getDocumentText(gateDoc, tokenAnnInSameSent.getStartNode().getOffset(), tokenAnnInSameSent.getEndNode().getOffset()).orElse("---"));
 
-									addedAbbreviations.add(this.document.getAnnotations(mainAnnSet).get(annotationID));
+									addedAbbreviations.add(ctx.document.getAnnotations(mainAnnSet).get(annotationID));
 
 								} catch (InvalidOffsetException e) {
 									e.printStackTrace();
@@ -1084,9 +1188,9 @@ public class BioABabbrvLFspotter extends AbstractLanguageAnalyser implements Pro
 	}
 	
 	
-	private void createNewChunks() {
+	private void createNewChunks(Document doc) {
 		
-		List<Annotation> chunkAnno = GATEutils.getAnnInDocOrder(this.document, this.chunkAnnSet, this.chunkType);
+		List<Annotation> chunkAnno = GATEutils.getAnnInDocOrder(doc, this.chunkAnnSet, this.chunkType);
 		
 		for(int i = 0; i < chunkAnno.size(); i++) {
 			if(i < (chunkAnno.size() - 1) ) {
@@ -1104,7 +1208,7 @@ public class BioABabbrvLFspotter extends AbstractLanguageAnalyser implements Pro
 								FeatureMap fm = Factory.newFeatureMap();
 								fm.put("type", "DERIVED BY MERGING TWO CHUNKS");
 								fm.put("label", currentChunkLabel + "___" + nextChunkLabel);
-								this.document.getAnnotations(this.chunkAnnSet).add(currentChunk.getStartNode().getOffset(), nextChunk.getEndNode().getOffset(), this.chunkType, fm);
+								doc.getAnnotations(this.chunkAnnSet).add(currentChunk.getStartNode().getOffset(), nextChunk.getEndNode().getOffset(), this.chunkType, fm);
 							} catch (InvalidOffsetException e) {
 								e.printStackTrace();
 							}
@@ -1138,32 +1242,38 @@ public class BioABabbrvLFspotter extends AbstractLanguageAnalyser implements Pro
 	}
 
 
-	private Set<Annotation> annotateSEDOMlognForms(Annotation shortFormAnno, Annotation sentenceAnno) {
+	private Set<Annotation> annotateSEDOMlognForms(DocumentContext ctx, Annotation shortFormAnno, Annotation sentenceAnno) {
 		Set<Annotation> retLongFormSEDOMset = new HashSet<Annotation>();
 
-		String shortFormString = GATEutils.getAnnotationText(shortFormAnno, this.document).orElse("");
-		String sentenceString = GATEutils.getAnnotationText(sentenceAnno, this.document).orElse("");
+		String shortFormString = GATEutils.getAnnotationText(shortFormAnno, ctx.document).orElse("");
 
-		if(shortFormString != null && !shortFormString.trim().equals("") && 
-				abbreviationLFmap != null && abbreviationLFmap.containsKey(shortFormString.trim().toLowerCase()) &&
-				abbreviationLFmap.get(shortFormString.trim().toLowerCase()) != null && abbreviationLFmap.get(shortFormString.trim().toLowerCase()).size() > 0) {
+		Set<String> longFormSEDOMlist = (shortFormString != null && !shortFormString.trim().equals("")) ? 
+				ctx.sedomDictionary.dictionary.get(shortFormString.trim().toLowerCase()) : null;
 
-			Set<String> longFormSEDOMlist = abbreviationLFmap.get(shortFormString.trim().toLowerCase());
+		if(longFormSEDOMlist != null && longFormSEDOMlist.size() > 0) {
 
+			// Ids of the long forms of the short form in the automaton
+			Set<Integer> longFormSEDOMids = new HashSet<Integer>();
 			for(String longFormSEDOM : longFormSEDOMlist) {
-				if(longFormSEDOM != null && sentenceString != null && sentenceString.toLowerCase().contains(longFormSEDOM.trim().toLowerCase())) {
-					int firstIndex = sentenceString.toLowerCase().indexOf(longFormSEDOM.trim().toLowerCase());
+				longFormSEDOMids.add(ctx.sedomDictionary.longFormAutomaton.getPatternId(longFormSEDOM));
+			}
 
-					try {
-						FeatureMap fmSEDOM_LF = Factory.newFeatureMap();
-						fmSEDOM_LF.put("TYPE", "FROM_SEDOM");
-						Integer sedomLFAnnoID = this.document.getAnnotations(mainAnnSet).add(sentenceAnno.getStartNode().getOffset() + ((long) firstIndex), 
-								sentenceAnno.getStartNode().getOffset() + ((long) firstIndex + longFormSEDOM.trim().length()), SEDOMtype_CandidateLF, fmSEDOM_LF);
-						retLongFormSEDOMset.add(this.document.getAnnotations(mainAnnSet).get(sedomLFAnnoID));
-					}
-					catch(Exception e) {
-						logger.debug("Impossible to create annotation of SEDOM string " + longFormSEDOM + " occurring in sentence '" + sentenceString + "' ---> " + e.getMessage());	
-					}
+			// Every occurrence in the sentence of a long form of the short form
+			for(AhoCorasickAutomaton.Match longFormMatch : getSEDOMmatches(ctx, sentenceAnno)) {
+				if(!longFormSEDOMids.contains(longFormMatch.getPatternId())) {
+					continue;
+				}
+				String longFormSEDOM = ctx.sedomDictionary.longFormAutomaton.getPattern(longFormMatch.getPatternId());
+
+				try {
+					FeatureMap fmSEDOM_LF = Factory.newFeatureMap();
+					fmSEDOM_LF.put("TYPE", "FROM_SEDOM");
+					Integer sedomLFAnnoID = ctx.document.getAnnotations(mainAnnSet).add(sentenceAnno.getStartNode().getOffset() + ((long) longFormMatch.getStart()), 
+							sentenceAnno.getStartNode().getOffset() + ((long) longFormMatch.getEnd()), SEDOMtype_CandidateLF, fmSEDOM_LF);
+					retLongFormSEDOMset.add(ctx.document.getAnnotations(mainAnnSet).get(sedomLFAnnoID));
+				}
+				catch(Exception e) {
+					logger.debug("Impossible to create annotation of SEDOM string " + longFormSEDOM + " occurring in sentence '" + GATEutils.getAnnotationText(sentenceAnno, ctx.document).orElse("") + "' ---> " + e.getMessage());	
 				}
 			}
 		}
@@ -1171,17 +1281,35 @@ public class BioABabbrvLFspotter extends AbstractLanguageAnalyser implements Pro
 		return retLongFormSEDOMset;
 	}
 
+	/**
+	 * Occurrences of SEDOM long forms in the sentence (offsets relative to the beginning of the sentence): the sentence is
+	 * scanned by the automaton only once, the first time a short form of the sentence is analyzed
+	 * 
+	 * @param sentenceAnno
+	 * @return
+	 */
+	private List<AhoCorasickAutomaton.Match> getSEDOMmatches(DocumentContext ctx, Annotation sentenceAnno) {
+		List<AhoCorasickAutomaton.Match> sentenceMatches = ctx.sedomMatchesBySentence.get(sentenceAnno.getId());
+		if(sentenceMatches == null) {
+			String sentenceString = GATEutils.getAnnotationText(sentenceAnno, ctx.document).orElse("");
+			sentenceMatches = ctx.sedomDictionary.longFormAutomaton.findAll(sentenceString);
+			ctx.sedomMatchesBySentence.put(sentenceAnno.getId(), sentenceMatches);
+		}
+
+		return sentenceMatches;
+	}
+
 	public double matchShortLong(Document gateDoc, Set<Annotation> shortAnnSet, Set<Annotation> longAnnSet) {
+		return (gateDoc != null) ? matchShortLong(getCandidateScorer(gateDoc), shortAnnSet, longAnnSet) : 0d;
+	}
+
+	private static double matchShortLong(LongFormCandidateScorer candidateScorer, Set<Annotation> shortAnnSet, Set<Annotation> longAnnSet) {
 
 		if(shortAnnSet != null && longAnnSet != null && shortAnnSet.size() > 0 && longAnnSet.size() > 0) {
 
 			Annotation shortAnn = shortAnnSet.iterator().next();
 			Annotation longAnn = longAnnSet.iterator().next();
 
-			String shortText = GATEutils.getAnnotationText(shortAnn, gateDoc).orElse("");
-			shortText = shortText.replaceAll("\\s+","");
-			String longText = GATEutils.getAnnotationText(longAnn, gateDoc).orElse(null);
-
 			boolean isSF_SHORT = false;
 			for(Annotation shortAnnElem : shortAnnSet) {
 				if(shortAnnElem.getType().equals(BioABabbrvSpotter.short_abbrvType)) {
@@ -1189,92 +1317,9 @@ public class BioABabbrvLFspotter extends AbstractLanguageAnalyser implements Pro
 				}
 			}
 
-			boolean isLF_CHUNK = false;
-			for(Annotation longAnnElem : longAnnSet) {
-				if(longAnnElem.getType().equals(this.chunkType)) {
-					isLF_CHUNK = true;
-				}
-			}
-
-			boolean isLF_CRF = false;
-			for(Annotation longAnnElem : longAnnSet) {
-				if(longAnnElem.getType().equals(BioABabbrvSpotter.abbreviationType)) {
-					isLF_CRF = true;
-				}
-			}
-
-			boolean isLF_SEDOM = false;
-			for(Annotation longAnnElem : longAnnSet) {
-				if(longAnnElem.getType().equals(SEDOMtype_CandidateLF)) {
-					isLF_SEDOM = true;
-				}
-			}
-
-
-			if(shortText != null && longText != null && !shortText.trim().equals("") && !longText.trim().equals("") && shortText.length() < longText.length()) {
-
-				List<Annotation> longTextTokens = GATEutils.getAnnInDocOrderContainedAnn(gateDoc, this.tokenAnnSet,this.tokenType, longAnn);
-
-				// Not consider long forms starting with article or conjunction
-				if(beginWithArticleOrConj(longAnn, gateDoc)) {
-					return 0d;
-				}
-
-				// STRATEGY 1 - Match first letter
-				String abbrv1 = ""; // Only n / a / g
-				String abbrv2 = ""; // All tokens
-				for(Annotation annTok : longTextTokens) {
-					if(annTok != null) {
-						String tokenStr = GATEutils.getAnnotationText(annTok, gateDoc).orElse("").trim();						
-						String tokenPOS = GATEutils.getStringFeature(annTok, TokenAnnConst.tokenPOSFeat).orElse("___").trim().toLowerCase();
-						tokenPOS = tokenPOS.trim().toLowerCase();
-						if(tokenPOS.equals("n") || tokenPOS.endsWith("a") || tokenPOS.endsWith("g")) {
-							abbrv1 += (tokenStr != null) ? tokenStr.trim().toLowerCase().charAt(0) : tokenStr;
-						}
-						abbrv2 += (tokenStr != null) ? tokenStr.trim().toLowerCase().charAt(0) : tokenStr;
-					}
-				}
-
-				// All POS n / a / g
-				String shortTextNoPunct = shortText.replaceAll("-", "").replaceAll("_", "").replaceAll("/", "").replaceAll("\\*", "\\\\*");
-				if(!shortText.equals(shortTextNoPunct)) {
-					// SSystem.out.println("SHORT TEXT: " + shortText + " > NO PUNCT: " + shortTextNoPunct);
-				}
-				if(abbrv1.length() == abbrv2.length() && shortText.length() > 1 && 
-						(shortText.trim().toLowerCase().equals(abbrv1.trim().toLowerCase()) || shortTextNoPunct.trim().toLowerCase().equals(abbrv1.trim().toLowerCase()))) {
-					// SSystem.out.println("EVAL: " + shortText + " long: " + longText + " - " + ((isSF_SHORT) ? 1.0 : 0.6));
-					return (isSF_SHORT) ? 1.0 : 0.510;
-				}
-
-				// POS other than n / a / g
-				if(abbrv1.length() != abbrv2.length() && shortText.length() > 1 && 
-						(shortText.trim().toLowerCase().equals(abbrv1.trim().toLowerCase()) || shortText.trim().toLowerCase().equals(abbrv2.trim().toLowerCase()) ||
-								shortTextNoPunct.trim().toLowerCase().equals(abbrv1.trim().toLowerCase()) || shortTextNoPunct.trim().toLowerCase().equals(abbrv2.trim().toLowerCase())) ) {
-					// SSystem.out.println("EVAL: " + shortText + " long: " + longText + " - " +  ((isSF_SHORT) ? 0.95 : 0.55));
-					return (isSF_SHORT) ? 0.9 : 0.509;
-				}
-
-				// Auto build abbreviation
-				String abbrv3 = "";
-				String[] longFormSplit = longText.split(" ");
-				for(String longElem : longFormSplit) {
-					if(longElem != null && longElem.length() > 2) {
-						abbrv3 += longElem.trim().toLowerCase().charAt(0);
-					}
-				}
-
-				if(shortText.length() > 1 && shortText.trim().toLowerCase().equals(abbrv3.trim().toLowerCase())) {
-					// System.out.println("EVAL: " + shortText + " long: " + longText + " - " + ((isSF_SHORT) ? 0.93 : 0.53));
-					return (isSF_SHORT) ? 0.8 : 0.508;
-				}
-
-
-				// System.out.println("EVAL: " + shortText + " long: " + longText + " - " + 0.1);
-				return 0.1d;
-			}
+			return candidateScorer.score(shortAnn, isSF_SHORT, longAnn);
 		}
 
-		// System.out.println("EVAL - " + 0);
 		return 0d;
 	}
 
@@ -1289,31 +1334,34 @@ public class BioABabbrvLFspotter extends AbstractLanguageAnalyser implements Pro
 	public boolean beginWithArticleOrConj(Annotation ann, Document doc) {
 
 		if(ann != null && doc != null) {
-			List<Annotation> longTextTokens = GATEutils.getAnnInDocOrderContainedAnn(doc, this.tokenAnnSet, this.tokenType, ann);
-
-			if(longTextTokens != null && longTextTokens.size() > 0 && longTextTokens.get(0) != null) {
-				String POSofFirstToken = GATEutils.getStringFeature(longTextTokens.get(0), "POS").orElse("____").trim().toLowerCase();
-				if(POSofFirstToken.toLowerCase().equals("c") || POSofFirstToken.toLowerCase().equals("s") || POSofFirstToken.toLowerCase().equals("d") || POSofFirstToken.toLowerCase().equals("p")) {
-					return true;
-				}
-			}
+			return getCandidateScorer(doc).beginsWithArticleOrConj(ann);
 		}
 
 		return false;		
 	}
 
+	/**
+	 * New scorer of the document (to score several candidates of the same document, reuse the scorer)
+	 * 
+	 * @param gateDoc
+	 * @return
+	 */
+	private LongFormCandidateScorer getCandidateScorer(Document gateDoc) {
+		return new LongFormCandidateScorer(gateDoc, GATEutils.getAnnInDocOrder(gateDoc, this.tokenAnnSet, this.tokenType));
+	}
+
 
-	private boolean isTokenBetweenParenthesis(Annotation shortFormAnno) {
+	private boolean isTokenBetweenParenthesis(DocumentContext ctx, Annotation shortFormAnno) {
 
 		boolean isINPATRENTHESIS = false;
 		String previousText = "";
 		if(shortFormAnno.getStartNode().getOffset() >= 2l) {
-			previousText = GATEutils.getDocumentText(this.document, shortFormAnno.getStartNode().getOffset() - 2l, shortFormAnno.getStartNode().getOffset()).orElse(null);
+			previousText = GATEutils.getDocumentText(ctx.document, shortFormAnno.getStartNode().getOffset() - 2l, shortFormAnno.getStartNode().getOffset()).orElse(null);
 
 		}
 		String afterText = "";
-		if(shortFormAnno.getEndNode().getOffset() + 2l < gate.Utils.lengthLong(this.document)) {
-			afterText = GATEutils.getDocumentText(this.document, shortFormAnno.getEndNode().getOffset(), shortFormAnno.getEndNode().getOffset() + 2l).orElse(null);
+		if(shortFormAnno.getEndNode().getOffset() + 2l < gate.Utils.lengthLong(ctx.document)) {
+			afterText = GATEutils.getDocumentText(ctx.document, shortFormAnno.getEndNode().getOffset(), shortFormAnno.getEndNode().getOffset() + 2l).orElse(null);
 		}
 
 		if(previousText != null && previousText.contains("(") && afterText != null && afterText.contains(")")) {
@@ -1324,14 +1372,12 @@ public class BioABabbrvLFspotter extends AbstractLanguageAnalyser implements Pro
 	}
 
 
-	private boolean isSHORTabbrvType(Annotation shortFormAnno) {
+	private boolean isSHORTabbrvType(DocumentContext ctx, Annotation shortFormAnno) {
 
 		boolean isSHORTabbrvType = false;
 		if(shortFormAnno != null) {
 
-			List<Annotation> shortAbbrTypeAnnoList = GATEutils.getAnnInDocOrderIntersectAnn(this.document, BioABabbrvSpotter.mainAnnSet, BioABabbrvSpotter.short_abbrvType, shortFormAnno);
-
-			if(shortAbbrTypeAnnoList != null && shortAbbrTypeAnnoList.size() > 0) {
+			if(ctx.shortAbbreviationIndex.getFirstIntersecting(shortFormAnno) != null) {
 				isSHORTabbrvType = true;
 			}
 
@@ -1347,8 +1393,8 @@ public class BioABabbrvLFspotter extends AbstractLanguageAnalyser implements Pro
 		if(shortFormAnno != null && longFormList != null && longFormList.size() > 0) {
 			for(Entry<String, Set<Annotation>> candidateLongFormMapEntry : longFormList.entrySet()) {
 				if(candidateLongFormMapEntry != null) {
-					long startOffset = Long.valueOf(candidateLongFormMapEntry.getKey().split("_")[0]);
-					long endOffset = Long.valueOf(candidateLongFormMapEntry.getKey().split("_")[1]);
+					long startOffset = candidateLongFormMapEntry.getValue().iterator().next().getStartNode().getOffset();
+					long endOffset = candidateLongFormMapEntry.getValue().iterator().next().getEndNode().getOffset();
 
 					if((endOffset <= shortFormAnno.getStartNode().getOffset() && endOffset >= shortFormAnno.getStartNode().getOffset() - 3l) || 
 							(startOffset <= shortFormAnno.getEndNode().getOffset() + 3l && startOffset >= shortFormAnno.getEndNode().getOffset()) ) {
@@ -34,6 +34,8 @@ import org.slf4j.LoggerFactory;
 import com.github.jcrfsuite.CrfTagger;
 import com.github.jcrfsuite.util.Pair;
 
+import es.imim.ibi.bioab.exec.Deadline;
+import es.imim.ibi.bioab.feature.DocumentSummary;
 import es.imim.ibi.bioab.feature.TokenFeatureGenerationContext;
 import es.imim.ibi.bioab.feature.TokenFeatureGenerator;
 import es.imim.ibi.bioab.feature.TokenFeatureGeneratorCRFsuite;
@@ -96,6 +98,8 @@ public class BioABabbrvSpotter extends AbstractLanguageAnalyser implements Proce
 	private String sentenceAnnSet = FreelingParser.mainAnnSet;
 	private String sentenceType = FreelingParser.sentenceType;
 
+	private Deadline deadline = null;
+
 	private FeatureSet<Document, TokenFeatureGenerationContext> featSet = null;
 
 	// Load taggers
@@ -185,6 +189,19 @@ public class BioABabbrvSpotter extends AbstractLanguageAnalyser implements Proce
 		this.sentenceType = sentenceType;
 	}
 
+	public Deadline getDeadline() {
+		return deadline;
+	}
+
+	/**
+	 * Deadline of the document to annotate: when expired, the remaining sentences are not annotated (null: no deadline)
+	 *
+	 * @param deadline
+	 */
+	public void setDeadline(Deadline deadline) {
+		this.deadline = deadline;
+	}
+
 
 	@Override
 	public Resource init() {
@@ -291,90 +308,40 @@ public class BioABabbrvSpotter extends AbstractLanguageAnalyser implements Proce
 
 		String documentID = ((this.document.getName() != null && this.document.getName().trim().length() > 0) ? document.getName() : "DOC_ID_" + rnd.nextInt(100000));
 
-		// Create a training example for each token of the document - in the documentTokenAnnList
-		for(Annotation documentTokenAnn : documentTokenAnnList) {
-
-			// Set training context
-			TokenFeatureGenerationContext trCtx = new TokenFeatureGenerationContext(this.document);
-			trCtx.setCoreTokenAnn(documentTokenAnn);
-
-			// Set document global features
-			trCtx.setDocumentTokenList(documentTokenAnnList);
-			trCtx.setTokenIDtoSentenceIDmap(tokenIDtoSentenceIDAPPOmap);
-
-			// Set Sentence ID
-			trCtx.setSentenceID("" + tokenIDtoSentenceIDAPPOmap.get(documentTokenAnn.getId()));
-			trCtx.setGATEsentenceID(tokenIDtoSentenceIDAPPOmap.get(documentTokenAnn.getId()));
-
-			// Set Document ID
-			trCtx.setDocumentID(documentID);
-
-			featSet.addElement(this.document, trCtx);
-			tokenCount++;
-
-			System.out.print("+");
-			if(tokenCount % 100 == 0) {
-				System.out.print("\n > " + tokenCount + " tokens > ");
-			} 
-		}
-
+		// Process the document by windows of sentences: the features, the ARFF and the CRFsuite sequences of each window 
+		// are discarded before processing the next window, only the labels of the tagged sentences are kept
+		// Document level features are computed by means of a summary of the whole document
+		DocumentSummary documentSummary = new DocumentSummary(this.document, documentTokenAnnList);
+		List<List<Pair<String, Double>>> taggedSentences_SF = new ArrayList<List<Pair<String, Double>>>();
+		List<List<Pair<String, Double>>> taggedSentences_SFtype = new ArrayList<List<Pair<String, Double>>>();
+		List<List<Pair<String, Double>>> taggedSentences_LF = new ArrayList<List<Pair<String, Double>>>();
 
-		// Generate ARFF
-		Instances ARFFinstances = null;
-		try {
-			ARFFinstances = FeatUtil.wekaInstanceGeneration(featSet, "abbrv_v_" + documentID);
-			featSet.emptySet();
-		} catch (FeatSetConsistencyException e) {
-			logger.error("ERROR while generating ARFF / CRF suite features.");
-			e.printStackTrace();
+		List<List<Annotation>> windowList = TokenFeatureGenerator.getSentenceWindows(documentTokenAnnList, tokenIDtoSentenceIDAPPOmap, TokenFeatureGenerator.getWindowMaxTokens());
+		if(windowList.size() > 1) {
+			logger.debug("Tagging document " + documentID + " (" + documentTokenAnnList.size() + " tokens) by " + windowList.size() + " windows of sentences.");
 		}
-
-		// Filter ARFF
-		Instances filteredARFF = null;
-		try {
-			synchronized(multiFilterSynch) {
-				filteredARFF = Filter.useFilter(ARFFinstances, multiFilter);
+		for(List<Annotation> windowTokenAnnList : windowList) {
+			tokenCount += tagWindow(windowTokenAnnList, documentTokenAnnList, tokenIDtoSentenceIDAPPOmap, documentSummary, documentID, 
+					taggedSentences_SF, taggedSentences_SFtype, taggedSentences_LF);
+
+			// If the deadline expires, the sentences of the following windows are not tagged
+			if(Deadline.isExpired(this.deadline)) {
+				if(tokenCount < documentTokenAnnList.size()) {
+					logger.warn("Deadline expired: abbreviation spotting stopped after " + tokenCount + " of " + documentTokenAnnList.size() + " tokens.");
+				}
+				break;
 			}
-			filteredARFF.setClassIndex(filteredARFF.numAttributes() - 1);
-		} catch (Exception e) {
-			logger.error("ERROR while generating ARFF / CRF suite features.");
-			e.printStackTrace();
 		}
 
-		// Prepare for SF / SFtype / LF tagging
-		Instances filteredARFF_SF = null;
-		String CRFsuiteTaggingFile_GLOBAL = null;
-		try {
-			Remove removeFilter = new Remove();
-			removeFilter.setOptions(weka.core.Utils.splitOptions("-R 87-88"));
-			removeFilter.setInputFormat(filteredARFF);
-			filteredARFF_SF = Filter.useFilter(filteredARFF, removeFilter);
-			filteredARFF_SF.setClassIndex(filteredARFF_SF.numAttributes() - 1);
-
-			// Conversion from ARFF
-			CRFsuiteTaggingFile_GLOBAL = CRFsuite.fromARFFtoCRFsuite(filteredARFF_SF, "SENT_ID", true, null);
-		} catch (Exception e) {
-			logger.error("ERROR while generating ARFF / CRF suite features.");
-			e.printStackTrace();
+		if(tokenCount == 0 && Deadline.isExpired(this.deadline)) {
+			return;
 		}
 
-		// Here I have in the CRFsuiteTaggingFile_SF the crfsuite file to tag by means of the models
-
 
 		// ***************************************************************
 		// ***************************************************************
 		// ***** Abbreviations spotting (SF) *****************************
 
-		// Apply sequence tagger model to identify SF
-		List<List<Pair<String, Double>>> taggedSentences_SF = new ArrayList<List<Pair<String, Double>>>();
-
-		Pair<List<ItemSequence>, List<StringList>> taggingSequences_SF = readItemSequencesToTagFromString(CRFsuiteTaggingFile_GLOBAL);
-		synchronized(crfTagger_SFSynch) {
-			for (ItemSequence xseq: taggingSequences_SF.getFirst()) {
-				taggedSentences_SF.add(crfTagger_SF.tag(xseq));
-			}
-		}
-
 		// Report annotations back to original document
 		long startOffsetBegin_SF = -1l;
 		long startOffsetEnd_SF = -1l;
@@ -463,16 +430,6 @@ public class BioABabbrvSpotter extends AbstractLanguageAnalyser implements Proce
 		// ***************************************************************
 		// ***** Abbreviations spotting (SF type) ************************
 
-		// Apply sequence tagger model to identify SF
-		List<List<Pair<String, Double>>> taggedSentences_SFtype = new ArrayList<List<Pair<String, Double>>>();
-
-		Pair<List<ItemSequence>, List<StringList>> taggingSequences_SFtype = readItemSequencesToTagFromString(CRFsuiteTaggingFile_GLOBAL);
-		synchronized(crfTagger_SFtypeSynch) {
-			for (ItemSequence xseq: taggingSequences_SFtype.getFirst()) {
-				taggedSentences_SFtype.add(crfTagger_SFtype.tag(xseq));
-			}
-		}
-
 		// Report annotations back to original document
 		long startOffsetBegin_SFtype = -1l;
 		long startOffsetEnd_SFtype = -1l;
@@ -592,16 +549,6 @@ public class BioABabbrvSpotter extends AbstractLanguageAnalyser implements Proce
 		// ***************************************************************
 		// ***** Abbreviations spotting (LF) *****************************
 
-		// Apply sequence tagger model to identify SF
-		List<List<Pair<String, Double>>> taggedSentences_LF = new ArrayList<List<Pair<String, Double>>>();
-
-		Pair<List<ItemSequence>, List<StringList>> taggingSequences_LF = readItemSequencesToTagFromString(CRFsuiteTaggingFile_GLOBAL);
-		synchronized(crfTagger_LFSynch) {
-			for (ItemSequence xseq: taggingSequences_LF.getFirst()) {
-				taggedSentences_LF.add(crfTagger_LF.tag(xseq));
-			}
-		}
-
 		// Report annotations back to original document
 		long startOffsetBegin_LF = -1l;
 		long startOffsetEnd_LF = -1l;
@@ -693,6 +640,142 @@ public class BioABabbrvSpotter extends AbstractLanguageAnalyser implements Proce
 	}
 
 
+	/**
+	 * Generate the features of the tokens of a window of sentences and tag the sentences of the window by means of the 
+	 * SF, SF type and LF sequence taggers: the labels of the sentences are added to the lists of tagged sentences.
+	 * 
+	 * @param windowTokenAnnList tokens of the window
+	 * @param documentTokenAnnList all the tokens of the document (context of the features)
+	 * @param tokenIDtoSentenceIDAPPOmap
+	 * @param documentSummary
+	 * @param documentID
+	 * @param taggedSentences_SF
+	 * @param taggedSentences_SFtype
+	 * @param taggedSentences_LF
+	 * @return number of tokens of the window tagged (less than the tokens of the window if the deadline expired)
+	 */
+	private int tagWindow(List<Annotation> windowTokenAnnList, List<Annotation> documentTokenAnnList, Map<Integer, Integer> tokenIDtoSentenceIDAPPOmap,
+			DocumentSummary documentSummary, String documentID, List<List<Pair<String, Double>>> taggedSentences_SF, 
+			List<List<Pair<String, Double>>> taggedSentences_SFtype, List<List<Pair<String, Double>>> taggedSentences_LF) {
+
+		// Create a training example for each token of the window - in the windowTokenAnnList
+		// If the deadline expires, stop at the end of a sentence: only the sentences with all their tokens are tagged
+		int tokenCount = 0;
+		Integer previousSentenceID = null;
+		for(Annotation documentTokenAnn : windowTokenAnnList) {
+
+			Integer sentenceID = tokenIDtoSentenceIDAPPOmap.get(documentTokenAnn.getId());
+			if(!sentenceID.equals(previousSentenceID) && Deadline.isExpired(this.deadline)) {
+				break;
+			}
+			previousSentenceID = sentenceID;
+
+			// Set training context
+			TokenFeatureGenerationContext trCtx = new TokenFeatureGenerationContext(this.document);
+			trCtx.setCoreTokenAnn(documentTokenAnn);
+
+			// Set document global features
+			trCtx.setDocumentTokenList(documentTokenAnnList);
+			trCtx.setTokenIDtoSentenceIDmap(tokenIDtoSentenceIDAPPOmap);
+			trCtx.setDocumentSummary(documentSummary);
+
+			// Set Sentence ID
+			trCtx.setSentenceID("" + tokenIDtoSentenceIDAPPOmap.get(documentTokenAnn.getId()));
+			trCtx.setGATEsentenceID(tokenIDtoSentenceIDAPPOmap.get(documentTokenAnn.getId()));
+
+			// Set Document ID
+			trCtx.setDocumentID(documentID);
+
+			featSet.addElement(this.document, trCtx);
+			tokenCount++;
+
+			System.out.print("+");
+			if(tokenCount % 100 == 0) {
+				System.out.print("\n > " + tokenCount + " tokens > ");
+			} 
+		}
+
+		if(tokenCount == 0) {
+			return 0;
+		}
+
+		// Generate ARFF
+		Instances ARFFinstances = null;
+		try {
+			ARFFinstances = FeatUtil.wekaInstanceGeneration(featSet, "abbrv_v_" + documentID);
+			featSet.emptySet();
+		} catch (FeatSetConsistencyException e) {
+			logger.error("ERROR while generating ARFF / CRF suite features.");
+			e.printStackTrace();
+		}
+
+		// Filter ARFF
+		Instances filteredARFF = null;
+		try {
+			synchronized(multiFilterSynch) {
+				filteredARFF = Filter.useFilter(ARFFinstances, multiFilter);
+			}
+			filteredARFF.setClassIndex(filteredARFF.numAttributes() - 1);
+		} catch (Exception e) {
+			logger.error("ERROR while generating ARFF / CRF suite features.");
+			e.printStackTrace();
+		}
+
+		// Prepare for SF / SFtype / LF tagging
+		Instances filteredARFF_SF = null;
+		String CRFsuiteTaggingFile_GLOBAL = null;
+		try {
+			Remove removeFilter = new Remove();
+			removeFilter.setOptions(weka.core.Utils.splitOptions("-R 87-88"));
+			removeFilter.setInputFormat(filteredARFF);
+			filteredARFF_SF = Filter.useFilter(filteredARFF, removeFilter);
+			filteredARFF_SF.setClassIndex(filteredARFF_SF.numAttributes() - 1);
+
+			// Conversion from ARFF
+			CRFsuiteTaggingFile_GLOBAL = CRFsuite.fromARFFtoCRFsuite(filteredARFF_SF, "SENT_ID", true, null);
+		} catch (Exception e) {
+			logger.error("ERROR while generating ARFF / CRF suite features.");
+			e.printStackTrace();
+		}
+
+		// Here I have in the CRFsuiteTaggingFile_SF the crfsuite file to tag by means of the models
+
+		// Apply sequence tagger model to identify SF
+		Pair<List<ItemSequence>, List<StringList>> taggingSequences_SF = readItemSequencesToTagFromString(CRFsuiteTaggingFile_GLOBAL);
+		synchronized(crfTagger_SFSynch) {
+			for (ItemSequence xseq: taggingSequences_SF.getFirst()) {
+				if(Deadline.isExpired(this.deadline)) {
+					break;
+				}
+				taggedSentences_SF.add(crfTagger_SF.tag(xseq));
+			}
+		}
+
+		// Apply sequence tagger model to identify SF type
+		Pair<List<ItemSequence>, List<StringList>> taggingSequences_SFtype = readItemSequencesToTagFromString(CRFsuiteTaggingFile_GLOBAL);
+		synchronized(crfTagger_SFtypeSynch) {
+			for (ItemSequence xseq: taggingSequences_SFtype.getFirst()) {
+				if(Deadline.isExpired(this.deadline)) {
+					break;
+				}
+				taggedSentences_SFtype.add(crfTagger_SFtype.tag(xseq));
+			}
+		}
+
+		// Apply sequence tagger model to identify LF
+		Pair<List<ItemSequence>, List<StringList>> taggingSequences_LF = readItemSequencesToTagFromString(CRFsuiteTaggingFile_GLOBAL);
+		synchronized(crfTagger_LFSynch) {
+			for (ItemSequence xseq: taggingSequences_LF.getFirst()) {
+				if(Deadline.isExpired(this.deadline)) {
+					break;
+				}
+				taggedSentences_LF.add(crfTagger_LF.tag(xseq));
+			}
+		}
+
+		return tokenCount;
+	}
+
 	private Pair<List<ItemSequence>, List<StringList>> readItemSequencesToTagFromString(String inputCRFsuiteString) {
 		List<ItemSequence> xseqs = new ArrayList<ItemSequence>();
 		List<StringList> yseqs = new ArrayList<StringList>();
@@ -32,6 +32,8 @@ import org.slf4j.LoggerFactory;
 
 import com.github.jcrfsuite.util.Pair;
 
+import es.imim.ibi.bioab.exec.Deadline;
+import es.imim.ibi.bioab.feature.DocumentSummary;
 import es.imim.ibi.bioab.feature.TokenFeatureGenerationContext;
 import es.imim.ibi.bioab.feature.TokenFeatureGenerator;
 import es.imim.ibi.bioab.nlp.freeling.FreelingParser;
@@ -91,6 +93,8 @@ public class BioABabbrvTypeClassifier extends AbstractLanguageAnalyser implement
 	private String sentenceAnnSet = FreelingParser.mainAnnSet;
 	private String sentenceType = FreelingParser.sentenceType;
 
+	private Deadline deadline = null;
+
 	private FeatureSet<Document, TokenFeatureGenerationContext> featSet = null;
 
 
@@ -169,6 +173,19 @@ public class BioABabbrvTypeClassifier extends AbstractLanguageAnalyser implement
 		this.sentenceType = sentenceType;
 	}
 
+	public Deadline getDeadline() {
+		return deadline;
+	}
+
+	/**
+	 * Deadline of the document to annotate: when expired, the remaining abbreviations are not classified (null: no deadline)
+	 *
+	 * @param deadline
+	 */
+	public void setDeadline(Deadline deadline) {
+		this.deadline = deadline;
+	}
+
 	@Override
 	public Resource init() {
 
@@ -242,7 +259,6 @@ public class BioABabbrvTypeClassifier extends AbstractLanguageAnalyser implement
 		long t1 = System.currentTimeMillis();
 
 		Integer sentenceIDappo = Integer.MAX_VALUE;
-		Integer tokenCount = 0;
 
 		// Select all the sentences of the document
 		// Computing document level features
@@ -283,8 +299,41 @@ public class BioABabbrvTypeClassifier extends AbstractLanguageAnalyser implement
 
 		String documentID = ((this.document.getName() != null && this.document.getName().trim().length() > 0) ? document.getName() : "DOC_ID_" + rnd.nextInt(100000));
 
-		// Create a training example for each token of the document - in the documentTokenAnnList
-		for(Annotation documentTokenAnn : documentTokenAnnList) {
+		// Classify the tokens by windows of sentences: the features and the ARFF of each window are discarded before 
+		// processing the next window
+		// Document level features are computed by means of a summary of the whole document
+		DocumentSummary documentSummary = new DocumentSummary(this.document, documentTokenAnnList);
+		for(List<Annotation> windowTokenAnnList : TokenFeatureGenerator.getSentenceWindows(documentTokenAnnList, tokenIDtoSentenceIDAPPOmap, TokenFeatureGenerator.getWindowMaxTokens())) {
+			if(Deadline.isExpired(this.deadline)) {
+				break;
+			}
+			classifyWindow(windowTokenAnnList, documentTokenAnnList, tokenIDtoSentenceIDAPPOmap, tokenAnnoToAbbrebviationAnnoMap, documentSummary, documentID);
+		}
+
+
+		long needed = System.currentTimeMillis() - t1;
+		logger.debug("   - End tagging document: " + (((this.document.getName() != null) ? this.document.getName() : "NULL")));
+		logger.debug("     in (seconds): " + (needed / 1000));
+		logger.debug("********************************************");
+	}
+
+
+	/**
+	 * Generate the features of the tokens of a window of sentences and classify them
+	 * 
+	 * @param windowTokenAnnList tokens of the window
+	 * @param documentTokenAnnList all the tokens to classify (context of the features)
+	 * @param tokenIDtoSentenceIDAPPOmap
+	 * @param tokenAnnoToAbbrebviationAnnoMap
+	 * @param documentSummary
+	 * @param documentID
+	 */
+	private void classifyWindow(List<Annotation> windowTokenAnnList, List<Annotation> documentTokenAnnList, Map<Integer, Integer> tokenIDtoSentenceIDAPPOmap,
+			Map<Annotation, Annotation> tokenAnnoToAbbrebviationAnnoMap, DocumentSummary documentSummary, String documentID) {
+
+		// Create a training example for each token of the window - in the windowTokenAnnList
+		int tokenCount = 0;
+		for(Annotation documentTokenAnn : windowTokenAnnList) {
 
 			// Set training context
 			TokenFeatureGenerationContext trCtx = new TokenFeatureGenerationContext(this.document);
@@ -293,6 +342,7 @@ public class BioABabbrvTypeClassifier extends AbstractLanguageAnalyser implement
 			// Set document global features
 			trCtx.setDocumentTokenList(documentTokenAnnList);
 			trCtx.setTokenIDtoSentenceIDmap(tokenIDtoSentenceIDAPPOmap);
+			trCtx.setDocumentSummary(documentSummary);
 
 			// Set Sentence ID
 			trCtx.setSentenceID("" + tokenIDtoSentenceIDAPPOmap.get(documentTokenAnn.getId()));
@@ -345,8 +395,8 @@ public class BioABabbrvTypeClassifier extends AbstractLanguageAnalyser implement
 		// ***** Abbreviations spotting (SF type) ************************
 		try {
 			if(filteredARFF_step2 != null) {
-				if(documentTokenAnnList.size()!= filteredARFF_step2.numInstances()) {
-					System.out.println("Error!!! Different number of tokens than weka instances (" + documentTokenAnnList.size() + " / " + filteredARFF_step2.numInstances() + ")");
+				if(windowTokenAnnList.size()!= filteredARFF_step2.numInstances()) {
+					System.out.println("Error!!! Different number of tokens than weka instances (" + windowTokenAnnList.size() + " / " + filteredARFF_step2.numInstances() + ")");
 				}
 
 				/* REDIRECTING STD OUT AND ERR - START */
@@ -360,9 +410,13 @@ public class BioABabbrvTypeClassifier extends AbstractLanguageAnalyser implement
 				}));
 
 				try {
-					for(int tokIdx = 0; tokIdx < documentTokenAnnList.size(); tokIdx++) {
+					for(int tokIdx = 0; tokIdx < windowTokenAnnList.size(); tokIdx++) {
+
+						if(Deadline.isExpired(this.deadline)) {
+							break;
+						}
 
-						Annotation tokenAnno = documentTokenAnnList.get(tokIdx);
+						Annotation tokenAnno = windowTokenAnnList.get(tokIdx);
 
 						try {
 							// Classify instance
@@ -421,12 +475,6 @@ public class BioABabbrvTypeClassifier extends AbstractLanguageAnalyser implement
 			e.printStackTrace();
 			GenericUtil.notifyException("Generic error", e, logger);
 		}
-
-
-		long needed = System.currentTimeMillis() - t1;
-		logger.debug("   - End tagging document: " + (((this.document.getName() != null) ? this.document.getName() : "NULL")));
-		logger.debug("     in (seconds): " + (needed / 1000));
-		logger.debug("********************************************");
 	}
 
 
@@ -0,0 +1,173 @@
+/**
+ * Biomedical Abbreviation Miner (BioAB Miner)
+ *
+ */
+package es.imim.ibi.bioab.exec.resource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Statistics of the {@link BioABabbrvLFspotter} about how many gold standard long forms (GoldStandard annotation set)
+ * match the span of one of the candidate long forms of their short form.
+ *
+ * Statistics are collected only if enabled and can be updated by several LF spotters in parallel. Memory is bounded:
+ * at most {@link #MAX_KEYS} distinct keys are counted for each map (the other keys are counted under {@link #OTHER_KEY},
+ * or -1 for the number of spans)
+ * and at most {@link #MAX_SAMPLES} descriptions of the long forms without matching candidate are kept.
+ *
+ * @author Francesco Ronzano
+ *
+ */
+public class LFspotterStats {
+
+	public static final int MAX_KEYS = 500;
+	public static final int MAX_SAMPLES = 100;
+	public static final String OTHER_KEY = "OTHER";
+
+	private volatile boolean enabled = false;
+
+	private final Map<Integer, LongAdder> longFormBySpan = new ConcurrentHashMap<Integer, LongAdder>();
+	private final LongAdder candidateMatchASingleSpanLongForm = new LongAdder();
+	private final LongAdder candidateMatchAMultipleSpanLongForm = new LongAdder();
+	private final LongAdder longFormWithAtLeastOneCandidateSpanMatch = new LongAdder();
+	private final LongAdder longFormWithoutAnyCandidateSpanMatch = new LongAdder();
+	private final Map<String, LongAdder> longFormMatchByTypeSingle = new ConcurrentHashMap<String, LongAdder>();
+	private final Map<String, LongAdder> longFormMatchByTypeMulti = new ConcurrentHashMap<String, LongAdder>();
+	private final ConcurrentLinkedQueue<String> longFormWithoutAnyCandidateSpanMatchSamples = new ConcurrentLinkedQueue<String>();
+	private final AtomicInteger sampleCount = new AtomicInteger(0);
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Count a gold standard long form made of spanCount spans
+	 *
+	 * @param spanCount
+	 */
+	public void addGoldStandardLongForm(int spanCount) {
+		increment(this.longFormBySpan, spanCount, -1);
+	}
+
+	/**
+	 * Count a candidate long form matching a span of a gold standard long form
+	 *
+	 * @param singleSpan true if the gold standard long form has a single span
+	 * @param candidateTypes types of the annotations of the candidate long form
+	 */
+	public void addCandidateMatch(boolean singleSpan, String candidateTypes) {
+		if(singleSpan) {
+			this.candidateMatchASingleSpanLongForm.increment();
+		}
+		else {
+			this.candidateMatchAMultipleSpanLongForm.increment();
+		}
+
+		if(candidateTypes != null && !candidateTypes.equals("")) {
+			increment((singleSpan) ? this.longFormMatchByTypeSingle : this.longFormMatchByTypeMulti, candidateTypes, OTHER_KEY);
+		}
+	}
+
+	public void addLongFormWithCandidateMatch() {
+		this.longFormWithAtLeastOneCandidateSpanMatch.increment();
+	}
+
+	/**
+	 * Count a gold standard long form that does not match any candidate long form
+	 *
+	 * @param description kept only if less than MAX_SAMPLES descriptions have been kept so far
+	 */
+	public void addLongFormWithoutCandidateMatch(String description) {
+		this.longFormWithoutAnyCandidateSpanMatch.increment();
+		if(description != null && this.sampleCount.getAndIncrement() < MAX_SAMPLES) {
+			this.longFormWithoutAnyCandidateSpanMatchSamples.add(description);
+		}
+	}
+
+	public Map<Integer, Long> getLongFormBySpan() {
+		return snapshot(this.longFormBySpan);
+	}
+
+	public long getCandidateMatchASingleSpanLongForm() {
+		return this.candidateMatchASingleSpanLongForm.sum();
+	}
+
+	public long getCandidateMatchAMultipleSpanLongForm() {
+		return this.candidateMatchAMultipleSpanLongForm.sum();
+	}
+
+	public long getLongFormWithAtLeastOneCandidateSpanMatch() {
+		return this.longFormWithAtLeastOneCandidateSpanMatch.sum();
+	}
+
+	public long getLongFormWithoutAnyCandidateSpanMatch() {
+		return this.longFormWithoutAnyCandidateSpanMatch.sum();
+	}
+
+	public Map<String, Long> getLongFormMatchByTypeSingle() {
+		return snapshot(this.longFormMatchByTypeSingle);
+	}
+
+	public Map<String, Long> getLongFormMatchByTypeMulti() {
+		return snapshot(this.longFormMatchByTypeMulti);
+	}
+
+	public List<String> getLongFormWithoutAnyCandidateSpanMatchSamples() {
+		return new ArrayList<String>(this.longFormWithoutAnyCandidateSpanMatchSamples);
+	}
+
+	/**
+	 * Set all the statistics to zero
+	 */
+	public void reset() {
+		this.longFormBySpan.clear();
+		this.candidateMatchASingleSpanLongForm.reset();
+		this.candidateMatchAMultipleSpanLongForm.reset();
+		this.longFormWithAtLeastOneCandidateSpanMatch.reset();
+		this.longFormWithoutAnyCandidateSpanMatch.reset();
+		this.longFormMatchByTypeSingle.clear();
+		this.longFormMatchByTypeMulti.clear();
+		this.longFormWithoutAnyCandidateSpanMatchSamples.clear();
+		this.sampleCount.set(0);
+	}
+
+	private static <K> void increment(Map<K, LongAdder> counterMap, K key, K otherKey) {
+		LongAdder counter = counterMap.get(key);
+		if(counter == null) {
+			counter = counterMap.computeIfAbsent((counterMap.size() < MAX_KEYS) ? key : otherKey, k -> new LongAdder());
+		}
+		counter.increment();
+	}
+
+	private static <K> Map<K, Long> snapshot(Map<K, LongAdder> counterMap) {
+		Map<K, Long> retMap = new TreeMap<K, Long>();
+		for(Entry<K, LongAdder> counter : counterMap.entrySet()) {
+			retMap.put(counter.getKey(), counter.getValue().sum());
+		}
+		return retMap;
+	}
+
+	@Override
+	public String toString() {
+		return "LFspotterStats [enabled=" + enabled + ", longFormBySpan=" + getLongFormBySpan()
+				+ ", candidateMatchASingleSpanLongForm=" + getCandidateMatchASingleSpanLongForm()
+				+ ", candidateMatchAMultipleSpanLongForm=" + getCandidateMatchAMultipleSpanLongForm()
+				+ ", longFormWithAtLeastOneCandidateSpanMatch=" + getLongFormWithAtLeastOneCandidateSpanMatch()
+				+ ", longFormWithoutAnyCandidateSpanMatch=" + getLongFormWithoutAnyCandidateSpanMatch()
+				+ ", longFormMatchByTypeSingle=" + getLongFormMatchByTypeSingle()
+				+ ", longFormMatchByTypeMulti=" + getLongFormMatchByTypeMulti() + "]";
+	}
+
+}
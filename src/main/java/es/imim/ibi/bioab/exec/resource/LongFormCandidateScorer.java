@@ -0,0 +1,278 @@
+/**
+ * Biomedical Abbreviation Miner (BioAB Miner)
+ *
+ */
+package es.imim.ibi.bioab.exec.resource;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.backingdata.gateutils.GATEutils;
+
+import es.imim.ibi.bioab.feature.TokenAnnConst;
+import gate.Annotation;
+import gate.Document;
+
+/**
+ * Score the match between a short form and a candidate long form (see {@link BioABabbrvLFspotter#matchShortLong(Document, java.util.Set, java.util.Set)}).
+ *
+ * The initial (lower-cased first char) and the POS class of each token of the document are computed once, when the scorer
+ * is created; the normalized char arrays of a short form are computed once, the first time the short form is scored.
+ * Candidate long forms are then scored by comparing char arrays, without building intermediate strings.
+ *
+ * Scores: 1.0 / 0.510 if the short form matches the initials of the long form tokens (all tokens noun, adjective or gerund),
+ * 0.9 / 0.509 if it matches the initials of the noun / adjective / gerund tokens or of all tokens, 0.8 / 0.508 if it
+ * matches the initials of the space separated words of more than 2 chars, 0.1 otherwise (the first value if the short
+ * form is a SHORT abbreviation). Long forms starting with an article, conjunction, preposition or pronoun get 0.
+ *
+ * Not thread safe: create one scorer for each document.
+ *
+ * @author Francesco Ronzano
+ *
+ */
+public class LongFormCandidateScorer {
+
+	private static final byte POS_NOUN_ADJ_GER = 1;
+	private static final byte POS_ART_CONJ_PREP_PRON = 2;
+
+	private final String documentText;
+
+	// Tokens of the document in document order
+	private final long[] tokenStarts;
+	private final long[] tokenEnds;
+	private final char[] tokenInitials; // 0 if the token text is empty once trimmed
+	private final byte[] tokenPOSclasses;
+
+	// Short form scored last
+	private long shortFormStart = -1l;
+	private long shortFormEnd = -1l;
+	private int shortFormLength = 0;
+	private boolean shortFormEmpty = true;
+	private char[] shortFormLower = new char[0];
+	private char[] shortFormNoPunctLower = new char[0];
+
+	// Buffers of the abbreviations built from the long form
+	private char[] abbrvPOS = new char[32];
+	private char[] abbrvAll = new char[32];
+	private char[] abbrvWords = new char[32];
+
+	/**
+	 * Create the scorer of the document
+	 *
+	 * @param gateDoc
+	 * @param tokenList tokens of the document in document order
+	 */
+	public LongFormCandidateScorer(Document gateDoc, List<Annotation> tokenList) {
+		this.documentText = gateDoc.getContent().toString();
+
+		int tokenCount = (tokenList != null) ? tokenList.size() : 0;
+		this.tokenStarts = new long[tokenCount];
+		this.tokenEnds = new long[tokenCount];
+		this.tokenInitials = new char[tokenCount];
+		this.tokenPOSclasses = new byte[tokenCount];
+
+		for(int t = 0; t < tokenCount; t++) {
+			Annotation tokenAnn = tokenList.get(t);
+			this.tokenStarts[t] = tokenAnn.getStartNode().getOffset();
+			this.tokenEnds[t] = tokenAnn.getEndNode().getOffset();
+
+			int firstCharIdx = firstNonBlank((int) this.tokenStarts[t], (int) this.tokenEnds[t]);
+			this.tokenInitials[t] = (firstCharIdx != -1) ? lowerCaseFirst(this.documentText.charAt(firstCharIdx)) : 0;
+
+			String tokenPOS = GATEutils.getStringFeature(tokenAnn, TokenAnnConst.tokenPOSFeat).orElse("___").trim().toLowerCase();
+			if(tokenPOS.equals("n") || tokenPOS.endsWith("a") || tokenPOS.endsWith("g")) {
+				this.tokenPOSclasses[t] |= POS_NOUN_ADJ_GER;
+			}
+			if(tokenPOS.equals("c") || tokenPOS.equals("s") || tokenPOS.equals("d") || tokenPOS.equals("p")) {
+				this.tokenPOSclasses[t] |= POS_ART_CONJ_PREP_PRON;
+			}
+		}
+	}
+
+	/**
+	 * Score the match between the short form and the long form
+	 *
+	 * @param shortAnn
+	 * @param isSF_SHORT true if the short form is a SHORT abbreviation
+	 * @param longAnn
+	 * @return
+	 */
+	public double score(Annotation shortAnn, boolean isSF_SHORT, Annotation longAnn) {
+		setShortForm(shortAnn);
+
+		int longStart = longAnn.getStartNode().getOffset().intValue();
+		int longEnd = longAnn.getEndNode().getOffset().intValue();
+
+		if(this.shortFormEmpty || firstNonBlank(longStart, longEnd) == -1 || this.shortFormLength >= longEnd - longStart) {
+			return 0d;
+		}
+
+		// Not consider long forms starting with article or conjunction
+		int firstToken = firstContainedToken(longStart, longEnd);
+		if(firstToken != -1 && (this.tokenPOSclasses[firstToken] & POS_ART_CONJ_PREP_PRON) != 0) {
+			return 0d;
+		}
+
+		// STRATEGY 1 - Match first letter
+		int abbrvPOSlength = 0; // Only n / a / g
+		int abbrvAllLength = 0; // All tokens
+		for(int t = firstToken; t != -1 && t < this.tokenStarts.length && this.tokenStarts[t] <= longEnd; t++) {
+			if(this.tokenEnds[t] > longEnd) {
+				continue;
+			}
+			if(this.tokenInitials[t] == 0) {
+				throw new StringIndexOutOfBoundsException("Empty token at offset " + this.tokenStarts[t]);
+			}
+
+			if((this.tokenPOSclasses[t] & POS_NOUN_ADJ_GER) != 0) {
+				this.abbrvPOS = ensureCapacity(this.abbrvPOS, abbrvPOSlength + 1);
+				this.abbrvPOS[abbrvPOSlength++] = this.tokenInitials[t];
+			}
+			this.abbrvAll = ensureCapacity(this.abbrvAll, abbrvAllLength + 1);
+			this.abbrvAll[abbrvAllLength++] = this.tokenInitials[t];
+		}
+
+		// All POS n / a / g
+		if(abbrvPOSlength == abbrvAllLength && this.shortFormLength > 1 &&
+				(equalChars(this.shortFormLower, this.abbrvPOS, abbrvPOSlength) || equalChars(this.shortFormNoPunctLower, this.abbrvPOS, abbrvPOSlength))) {
+			return (isSF_SHORT) ? 1.0 : 0.510;
+		}
+
+		// POS other than n / a / g
+		if(abbrvPOSlength != abbrvAllLength && this.shortFormLength > 1 &&
+				(equalChars(this.shortFormLower, this.abbrvPOS, abbrvPOSlength) || equalChars(this.shortFormLower, this.abbrvAll, abbrvAllLength) ||
+						equalChars(this.shortFormNoPunctLower, this.abbrvPOS, abbrvPOSlength) || equalChars(this.shortFormNoPunctLower, this.abbrvAll, abbrvAllLength))) {
+			return (isSF_SHORT) ? 0.9 : 0.509;
+		}
+
+		// Auto build abbreviation: initials of the space separated words longer than 2 chars
+		int abbrvWordsLength = 0;
+		int wordStart = longStart;
+		while(wordStart <= longEnd) {
+			int wordEnd = wordStart;
+			while(wordEnd < longEnd && this.documentText.charAt(wordEnd) != ' ') {
+				wordEnd++;
+			}
+
+			if(wordEnd - wordStart > 2) {
+				int firstCharIdx = firstNonBlank(wordStart, wordEnd);
+				if(firstCharIdx == -1) {
+					throw new StringIndexOutOfBoundsException("Blank word at offset " + wordStart);
+				}
+				this.abbrvWords = ensureCapacity(this.abbrvWords, abbrvWordsLength + 1);
+				this.abbrvWords[abbrvWordsLength++] = lowerCaseFirst(this.documentText.charAt(firstCharIdx));
+			}
+
+			wordStart = wordEnd + 1;
+		}
+
+		if(this.shortFormLength > 1 && equalChars(this.shortFormLower, this.abbrvWords, abbrvWordsLength)) {
+			return (isSF_SHORT) ? 0.8 : 0.508;
+		}
+
+		return 0.1d;
+	}
+
+	/**
+	 * True if the first token contained in the annotation is an article, conjunction, preposition or pronoun
+	 *
+	 * @param ann
+	 * @return
+	 */
+	public boolean beginsWithArticleOrConj(Annotation ann) {
+		int firstToken = firstContainedToken(ann.getStartNode().getOffset().intValue(), ann.getEndNode().getOffset().intValue());
+		return firstToken != -1 && (this.tokenPOSclasses[firstToken] & POS_ART_CONJ_PREP_PRON) != 0;
+	}
+
+	private void setShortForm(Annotation shortAnn) {
+		long start = shortAnn.getStartNode().getOffset();
+		long end = shortAnn.getEndNode().getOffset();
+		if(start == this.shortFormStart && end == this.shortFormEnd) {
+			return;
+		}
+
+		String shortText = this.documentText.substring((int) start, (int) end).replaceAll("\\s+","");
+		String shortTextNoPunct = shortText.replaceAll("-", "").replaceAll("_", "").replaceAll("/", "").replaceAll("\\*", "\\\\*");
+
+		this.shortFormStart = start;
+		this.shortFormEnd = end;
+		this.shortFormLength = shortText.length();
+		this.shortFormEmpty = shortText.trim().equals("");
+		this.shortFormLower = shortText.trim().toLowerCase().toCharArray();
+		this.shortFormNoPunctLower = shortTextNoPunct.trim().toLowerCase().toCharArray();
+	}
+
+	/**
+	 * Index of the first token (in document order) contained in the span, or -1
+	 *
+	 * @param start
+	 * @param end
+	 * @return
+	 */
+	private int firstContainedToken(long start, long end) {
+		int low = 0;
+		int high = this.tokenStarts.length;
+		while(low < high) {
+			int mid = (low + high) >>> 1;
+			if(this.tokenStarts[mid] < start) {
+				low = mid + 1;
+			}
+			else {
+				high = mid;
+			}
+		}
+
+		for(int t = low; t < this.tokenStarts.length && this.tokenStarts[t] <= end; t++) {
+			if(this.tokenEnds[t] <= end) {
+				return t;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Index of the first char of the span that is not removed by String.trim(), or -1
+	 *
+	 * @param start
+	 * @param end
+	 * @return
+	 */
+	private int firstNonBlank(int start, int end) {
+		for(int i = start; i < end; i++) {
+			if(this.documentText.charAt(i) > ' ') {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * First char of the lower-cased string starting with c (locale dependent, as String.toLowerCase())
+	 *
+	 * @param c
+	 * @return
+	 */
+	private static char lowerCaseFirst(char c) {
+		if((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')) {
+			return c;
+		}
+		return String.valueOf(c).toLowerCase().charAt(0);
+	}
+
+	private static boolean equalChars(char[] chars, char[] buffer, int bufferLength) {
+		if(chars.length != bufferLength) {
+			return false;
+		}
+		for(int i = 0; i < bufferLength; i++) {
+			if(chars[i] != buffer[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static char[] ensureCapacity(char[] buffer, int length) {
+		return (length <= buffer.length) ? buffer : Arrays.copyOf(buffer, Math.max(length, buffer.length * 2));
+	}
+
+}
@@ -0,0 +1,278 @@
+/**
+ * Biomedical Abbreviation Miner (BioAB Miner)
+ *
+ */
+package es.imim.ibi.bioab.exec.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Case-folded Aho-Corasick automaton over a set of string patterns.
+ *
+ * The automaton is built once from the patterns and then scans a text in a single pass, reporting every occurrence
+ * (also overlapping ones) of every pattern together with its offsets in the text: the cost of a scan depends on the
+ * length of the text and on the number of matches, not on the number of patterns.
+ *
+ * Case folding is performed char by char (Character.toLowerCase), so that the offsets of the matches are the offsets
+ * of the original (not case-folded) text.
+ *
+ * Once built, the automaton is immutable and can be shared among threads.
+ *
+ * @author Francesco Ronzano
+ *
+ */
+public class AhoCorasickAutomaton {
+
+	private final String[] patterns;
+	private final Map<String, Integer> patternIdMap;
+
+	// Trie edges in compressed form: the edges of the node n are the ones from firstEdge[n] (included) to firstEdge[n + 1] (excluded),
+	// sorted by edge char
+	private final int[] firstEdge;
+	private final char[] edgeChars;
+	private final int[] edgeTargets;
+
+	// Failure link, id of the pattern ending in the node (or -1) and closest node with a pattern reachable by failure links (or -1)
+	private final int[] failure;
+	private final int[] patternOfNode;
+	private final int[] outputLink;
+
+	/**
+	 * Occurrence of a pattern in a text
+	 *
+	 */
+	public static class Match {
+		private final int start;
+		private final int end;
+		private final int patternId;
+
+		public Match(int start, int end, int patternId) {
+			this.start = start;
+			this.end = end;
+			this.patternId = patternId;
+		}
+
+		public int getStart() {
+			return start;
+		}
+
+		public int getEnd() {
+			return end;
+		}
+
+		public int getPatternId() {
+			return patternId;
+		}
+
+		@Override
+		public String toString() {
+			return "Match [start=" + start + ", end=" + end + ", patternId=" + patternId + "]";
+		}
+	}
+
+	/**
+	 * Build the automaton from a collection of patterns: null or empty patterns are ignored, patterns that are equal
+	 * once case-folded are merged into a single pattern
+	 *
+	 * @param patternCollection
+	 */
+	public AhoCorasickAutomaton(Collection<String> patternCollection) {
+
+		// Build trie
+		List<String> patternList = new ArrayList<String>();
+		Map<String, Integer> patternIds = new HashMap<String, Integer>();
+		List<Map<Character, Integer>> trie = new ArrayList<Map<Character, Integer>>();
+		List<Integer> patternOfNodeList = new ArrayList<Integer>();
+		trie.add(new HashMap<Character, Integer>());
+		patternOfNodeList.add(-1);
+
+		if(patternCollection != null) {
+			for(String pattern : patternCollection) {
+				String foldedPattern = fold(pattern);
+				if(foldedPattern == null || foldedPattern.length() == 0 || patternIds.containsKey(foldedPattern)) {
+					continue;
+				}
+
+				int node = 0;
+				for(int i = 0; i < foldedPattern.length(); i++) {
+					Character c = foldedPattern.charAt(i);
+					Integer nextNode = trie.get(node).get(c);
+					if(nextNode == null) {
+						nextNode = trie.size();
+						trie.add(new HashMap<Character, Integer>());
+						patternOfNodeList.add(-1);
+						trie.get(node).put(c, nextNode);
+					}
+					node = nextNode;
+				}
+
+				patternIds.put(foldedPattern, patternList.size());
+				patternOfNodeList.set(node, patternList.size());
+				patternList.add(foldedPattern);
+			}
+		}
+
+		this.patterns = patternList.toArray(new String[patternList.size()]);
+		this.patternIdMap = Collections.unmodifiableMap(patternIds);
+
+		// Compress edges
+		int nodeCount = trie.size();
+		int edgeCount = 0;
+		for(Map<Character, Integer> edges : trie) {
+			edgeCount += edges.size();
+		}
+
+		this.firstEdge = new int[nodeCount + 1];
+		this.edgeChars = new char[edgeCount];
+		this.edgeTargets = new int[edgeCount];
+		this.patternOfNode = new int[nodeCount];
+		int edgeIdx = 0;
+		for(int node = 0; node < nodeCount; node++) {
+			this.firstEdge[node] = edgeIdx;
+			this.patternOfNode[node] = patternOfNodeList.get(node);
+
+			Character[] nodeChars = trie.get(node).keySet().toArray(new Character[0]);
+			Arrays.sort(nodeChars);
+			for(Character c : nodeChars) {
+				this.edgeChars[edgeIdx] = c;
+				this.edgeTargets[edgeIdx] = trie.get(node).get(c);
+				edgeIdx++;
+			}
+		}
+		this.firstEdge[nodeCount] = edgeIdx;
+
+		// Failure and output links, breadth first
+		this.failure = new int[nodeCount];
+		this.outputLink = new int[nodeCount];
+		this.outputLink[0] = -1;
+		int[] queue = new int[nodeCount];
+		int queueHead = 0;
+		int queueTail = 0;
+		for(int e = this.firstEdge[0]; e < this.firstEdge[1]; e++) {
+			this.failure[this.edgeTargets[e]] = 0;
+			this.outputLink[this.edgeTargets[e]] = -1;
+			queue[queueTail++] = this.edgeTargets[e];
+		}
+
+		while(queueHead < queueTail) {
+			int node = queue[queueHead++];
+			for(int e = this.firstEdge[node]; e < this.firstEdge[node + 1]; e++) {
+				int child = this.edgeTargets[e];
+				char c = this.edgeChars[e];
+
+				int fallback = this.failure[node];
+				int fallbackChild = getChild(fallback, c);
+				while(fallbackChild == -1 && fallback != 0) {
+					fallback = this.failure[fallback];
+					fallbackChild = getChild(fallback, c);
+				}
+				this.failure[child] = (fallbackChild != -1) ? fallbackChild : 0;
+				this.outputLink[child] = (this.patternOfNode[this.failure[child]] != -1) ? this.failure[child] : this.outputLink[this.failure[child]];
+
+				queue[queueTail++] = child;
+			}
+		}
+	}
+
+	/**
+	 * All the occurrences of the patterns in the text, sorted by end offset
+	 *
+	 * @param text
+	 * @return
+	 */
+	public List<Match> findAll(CharSequence text) {
+		List<Match> retList = new ArrayList<Match>();
+		if(text == null || this.patterns.length == 0) {
+			return retList;
+		}
+
+		int node = 0;
+		for(int i = 0; i < text.length(); i++) {
+			char c = Character.toLowerCase(text.charAt(i));
+
+			int nextNode = getChild(node, c);
+			while(nextNode == -1 && node != 0) {
+				node = this.failure[node];
+				nextNode = getChild(node, c);
+			}
+			node = (nextNode != -1) ? nextNode : 0;
+
+			int outNode = (this.patternOfNode[node] != -1) ? node : this.outputLink[node];
+			while(outNode != -1) {
+				int patternId = this.patternOfNode[outNode];
+				retList.add(new Match(i + 1 - this.patterns[patternId].length(), i + 1, patternId));
+				outNode = this.outputLink[outNode];
+			}
+		}
+
+		return retList;
+	}
+
+	/**
+	 * Case-folded pattern with the given id
+	 *
+	 * @param patternId
+	 * @return
+	 */
+	public String getPattern(int patternId) {
+		return this.patterns[patternId];
+	}
+
+	/**
+	 * Id of the pattern (case-folded) or -1 if the pattern is not included in the automaton
+	 *
+	 * @param pattern
+	 * @return
+	 */
+	public int getPatternId(String pattern) {
+		Integer patternId = this.patternIdMap.get(fold(pattern));
+		return (patternId != null) ? patternId : -1;
+	}
+
+	public int size() {
+		return this.patterns.length;
+	}
+
+	/**
+	 * Char by char lower case of the string (the length of the string does not change)
+	 *
+	 * @param str
+	 * @return
+	 */
+	public static String fold(String str) {
+		if(str == null) {
+			return null;
+		}
+
+		char[] chars = str.toCharArray();
+		for(int i = 0; i < chars.length; i++) {
+			chars[i] = Character.toLowerCase(chars[i]);
+		}
+		return new String(chars);
+	}
+
+	private int getChild(int node, char c) {
+		int low = this.firstEdge[node];
+		int high = this.firstEdge[node + 1] - 1;
+		while(low <= high) {
+			int mid = (low + high) >>> 1;
+			if(this.edgeChars[mid] < c) {
+				low = mid + 1;
+			}
+			else if(this.edgeChars[mid] > c) {
+				high = mid - 1;
+			}
+			else {
+				return this.edgeTargets[mid];
+			}
+		}
+		return -1;
+	}
+
+}
@@ -0,0 +1,252 @@
+/**
+ * Biomedical Abbreviation Miner (BioAB Miner)
+ *
+ */
+package es.imim.ibi.bioab.exec.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+import gate.Annotation;
+import gate.AnnotationSet;
+import gate.Document;
+
+/**
+ * Read-mostly interval index over the annotations of a single type of a GATE document.
+ *
+ * Annotations are stored in document order (start offset, then end offset, then annotation id) together with
+ * two parallel arrays of primitive start / end offsets, so that containment, overlap and covering queries
+ * are resolved by binary search in O(log n + k), instead of scanning the whole annotation set for each query.
+ *
+ * Overlap queries exploit the length of the longest indexed annotation to bound the binary search: only the
+ * annotations starting after (queryStart - maxLength) can overlap the query interval.
+ *
+ * The index is not thread safe: build one instance for each document that is processed.
+ *
+ * @author Francesco Ronzano
+ *
+ */
+public class AnnotationIntervalIndex {
+
+	private static final Comparator<Annotation> docOrder = (Annotation a1, Annotation a2) -> {
+		int cmp = Long.compare(a1.getStartNode().getOffset(), a2.getStartNode().getOffset());
+		if(cmp == 0) cmp = Long.compare(a1.getEndNode().getOffset(), a2.getEndNode().getOffset());
+		if(cmp == 0) cmp = Integer.compare(a1.getId(), a2.getId());
+		return cmp;
+	};
+
+	private Annotation[] annotations;
+	private long[] starts;
+	private long[] ends;
+	private int size = 0;
+	private long maxLength = 0l;
+
+	/**
+	 * Build the index of the annotations of type annType included in the annotation set annSet of the document
+	 *
+	 * @param gateDoc
+	 * @param annSet
+	 * @param annType
+	 * @return
+	 */
+	public static AnnotationIntervalIndex build(Document gateDoc, String annSet, String annType) {
+		if(gateDoc == null || annType == null) {
+			return new AnnotationIntervalIndex(null);
+		}
+
+		AnnotationSet as = (annSet != null && !annSet.equals("")) ? gateDoc.getAnnotations(annSet) : gateDoc.getAnnotations();
+		return new AnnotationIntervalIndex((as != null) ? as.get(annType) : null);
+	}
+
+	public AnnotationIntervalIndex(Collection<Annotation> annotationsToIndex) {
+		List<Annotation> annList = new ArrayList<Annotation>();
+		if(annotationsToIndex != null) {
+			for(Annotation ann : annotationsToIndex) {
+				if(ann != null) {
+					annList.add(ann);
+				}
+			}
+		}
+		annList.sort(docOrder);
+
+		this.size = annList.size();
+		this.annotations = new Annotation[Math.max(this.size, 8)];
+		this.starts = new long[this.annotations.length];
+		this.ends = new long[this.annotations.length];
+		for(int i = 0; i < this.size; i++) {
+			Annotation ann = annList.get(i);
+			this.annotations[i] = ann;
+			this.starts[i] = ann.getStartNode().getOffset();
+			this.ends[i] = ann.getEndNode().getOffset();
+			this.maxLength = Math.max(this.maxLength, this.ends[i] - this.starts[i]);
+		}
+	}
+
+	/**
+	 * Add an annotation to the index, keeping the document order (O(n), meant for the few annotations
+	 * created while a document is processed)
+	 *
+	 * @param ann
+	 */
+	public void add(Annotation ann) {
+		if(ann == null) {
+			return;
+		}
+
+		if(this.size == this.annotations.length) {
+			int newLength = this.annotations.length * 2;
+			this.annotations = Arrays.copyOf(this.annotations, newLength);
+			this.starts = Arrays.copyOf(this.starts, newLength);
+			this.ends = Arrays.copyOf(this.ends, newLength);
+		}
+
+		long start = ann.getStartNode().getOffset();
+		long end = ann.getEndNode().getOffset();
+
+		int insertionIdx = this.size;
+		while(insertionIdx > 0 && docOrder.compare(this.annotations[insertionIdx - 1], ann) > 0) {
+			insertionIdx--;
+		}
+
+		System.arraycopy(this.annotations, insertionIdx, this.annotations, insertionIdx + 1, this.size - insertionIdx);
+		System.arraycopy(this.starts, insertionIdx, this.starts, insertionIdx + 1, this.size - insertionIdx);
+		System.arraycopy(this.ends, insertionIdx, this.ends, insertionIdx + 1, this.size - insertionIdx);
+		this.annotations[insertionIdx] = ann;
+		this.starts[insertionIdx] = start;
+		this.ends[insertionIdx] = end;
+		this.size++;
+		this.maxLength = Math.max(this.maxLength, end - start);
+	}
+
+	/**
+	 * Annotations in document order
+	 *
+	 * @return
+	 */
+	public List<Annotation> getAll() {
+		return Arrays.asList(Arrays.copyOf(this.annotations, this.size));
+	}
+
+	/**
+	 * Annotations starting at or after startOffset and ending at or before endOffset, in document order
+	 *
+	 * @param startOffset
+	 * @param endOffset
+	 * @return
+	 */
+	public List<Annotation> getContained(long startOffset, long endOffset) {
+		List<Annotation> retList = new ArrayList<Annotation>();
+
+		for(int i = lowerBound(startOffset); i < this.size && this.starts[i] <= endOffset; i++) {
+			if(this.ends[i] <= endOffset) {
+				retList.add(this.annotations[i]);
+			}
+		}
+
+		return retList;
+	}
+
+	public List<Annotation> getContained(Annotation ann) {
+		if(ann == null) {
+			return new ArrayList<Annotation>();
+		}
+		return getContained(ann.getStartNode().getOffset(), ann.getEndNode().getOffset());
+	}
+
+	/**
+	 * Annotations overlapping the interval from startOffset to endOffset, in document order: the annotations
+	 * starting inside the interval and the ones starting before the interval and ending after its start offset
+	 *
+	 * @param startOffset
+	 * @param endOffset
+	 * @return
+	 */
+	public List<Annotation> getIntersecting(long startOffset, long endOffset) {
+		List<Annotation> retList = new ArrayList<Annotation>();
+
+		for(int i = lowerBound(startOffset - this.maxLength); i < this.size && this.starts[i] < endOffset; i++) {
+			if(this.starts[i] >= startOffset || this.ends[i] > startOffset) {
+				retList.add(this.annotations[i]);
+			}
+		}
+
+		return retList;
+	}
+
+	public List<Annotation> getIntersecting(Annotation ann) {
+		if(ann == null) {
+			return new ArrayList<Annotation>();
+		}
+		return getIntersecting(ann.getStartNode().getOffset(), ann.getEndNode().getOffset());
+	}
+
+	/**
+	 * Annotations that include the character at the offset (start offset less or equal than the offset and
+	 * end offset greater than the offset), in document order
+	 *
+	 * @param offset
+	 * @return
+	 */
+	public List<Annotation> getCovering(long offset) {
+		List<Annotation> retList = new ArrayList<Annotation>();
+
+		for(int i = lowerBound(offset - this.maxLength); i < this.size && this.starts[i] <= offset; i++) {
+			if(this.ends[i] > offset) {
+				retList.add(this.annotations[i]);
+			}
+		}
+
+		return retList;
+	}
+
+	/**
+	 * First annotation overlapping the annotation ann (in document order), if any
+	 *
+	 * @param ann
+	 * @return
+	 */
+	public Annotation getFirstIntersecting(Annotation ann) {
+		if(ann == null) {
+			return null;
+		}
+
+		long startOffset = ann.getStartNode().getOffset();
+		long endOffset = ann.getEndNode().getOffset();
+		for(int i = lowerBound(startOffset - this.maxLength); i < this.size && this.starts[i] < endOffset; i++) {
+			if(this.starts[i] >= startOffset || this.ends[i] > startOffset) {
+				return this.annotations[i];
+			}
+		}
+
+		return null;
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Index of the first annotation with start offset greater or equal than offset
+	 *
+	 * @param offset
+	 * @return
+	 */
+	private int lowerBound(long offset) {
+		int low = 0;
+		int high = this.size;
+		while(low < high) {
+			int mid = (low + high) >>> 1;
+			if(this.starts[mid] < offset) {
+				low = mid + 1;
+			}
+			else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+}
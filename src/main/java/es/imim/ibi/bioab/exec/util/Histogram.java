@@ -0,0 +1,92 @@
+/**
+ * Biomedical Abbreviation Miner (BioAB Miner)
+ *
+ */
+package es.imim.ibi.bioab.exec.util;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of observed values with fixed bucket upper bounds, updated without locks by concurrent threads.
+ *
+ * The bucket counts are not cumulative: {@link #getBucketCounts()} returns, for each upper bound, the number of values
+ * greater than the previous upper bound and less than or equal to the upper bound, followed by the number of values
+ * greater than the last upper bound.
+ *
+ * @author Francesco Ronzano
+ *
+ */
+public class Histogram {
+
+	public static final double[] latencySecondsBounds = new double[] {0.005d, 0.01d, 0.025d, 0.05d, 0.1d, 0.25d, 0.5d, 1d, 2.5d, 5d, 10d, 30d, 60d, 120d, 300d};
+
+	private final double[] upperBounds;
+	private final LongAdder[] bucketCounts;
+	private final DoubleAdder sum = new DoubleAdder();
+
+	/**
+	 *
+	 * @param upperBounds upper bounds of the buckets, in increasing order
+	 */
+	public Histogram(double... upperBounds) {
+		if(upperBounds == null || upperBounds.length == 0) {
+			throw new IllegalArgumentException("Specify at least one bucket upper bound");
+		}
+		for(int i = 1; i < upperBounds.length; i++) {
+			if(upperBounds[i] <= upperBounds[i - 1]) {
+				throw new IllegalArgumentException("Bucket upper bounds have to be in increasing order");
+			}
+		}
+
+		this.upperBounds = Arrays.copyOf(upperBounds, upperBounds.length);
+		this.bucketCounts = new LongAdder[upperBounds.length + 1];
+		for(int i = 0; i < this.bucketCounts.length; i++) {
+			this.bucketCounts[i] = new LongAdder();
+		}
+	}
+
+	public void observe(double value) {
+		int bucket = Arrays.binarySearch(this.upperBounds, value);
+		if(bucket < 0) {
+			bucket = -bucket - 1;
+		}
+		this.bucketCounts[bucket].increment();
+		this.sum.add(value);
+	}
+
+	/**
+	 * Observe a duration in nanoseconds, as seconds
+	 *
+	 * @param nanos
+	 */
+	public void observeNanos(long nanos) {
+		observe(nanos / 1000000000d);
+	}
+
+	public double[] getUpperBounds() {
+		return Arrays.copyOf(this.upperBounds, this.upperBounds.length);
+	}
+
+	public long[] getBucketCounts() {
+		long[] counts = new long[this.bucketCounts.length];
+		for(int i = 0; i < counts.length; i++) {
+			counts[i] = this.bucketCounts[i].sum();
+		}
+		return counts;
+	}
+
+	public long getCount() {
+		long count = 0l;
+		for(LongAdder bucketCount : this.bucketCounts) {
+			count += bucketCount.sum();
+		}
+		return count;
+	}
+
+	public double getSum() {
+		return this.sum.sum();
+	}
+
+}
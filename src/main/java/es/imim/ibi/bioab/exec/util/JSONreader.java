@@ -0,0 +1,181 @@
+/**
+ * Biomedical Abbreviation Miner (BioAB Miner)
+ *
+ */
+package es.imim.ibi.bioab.exec.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Parser of flat JSON objects, as written by {@link JSONwriter#toJSON(es.imim.ibi.bioab.exec.model.Abbreviation)}: the values
+ * of the fields have to be strings, numbers, booleans or null (nested arrays and objects are not supported).
+ *
+ * @author Francesco Ronzano
+ *
+ */
+public class JSONreader {
+
+	private final String json;
+	private int pos = 0;
+
+	private JSONreader(String json) {
+		this.json = json;
+	}
+
+	/**
+	 * Parse a flat JSON object
+	 *
+	 * @param json
+	 * @return map of the fields of the object, in the order of the JSON object; values are String, Long, Double, Boolean or null
+	 * @throws IllegalArgumentException if the JSON is not a valid flat object
+	 */
+	public static Map<String, Object> parseFlatObject(String json) throws IllegalArgumentException {
+		if(json == null) {
+			throw new IllegalArgumentException("Null JSON");
+		}
+		return new JSONreader(json).readObject();
+	}
+
+	private Map<String, Object> readObject() {
+		Map<String, Object> fieldMap = new LinkedHashMap<String, Object>();
+		skipWhitespaces();
+		expect('{');
+		skipWhitespaces();
+		if(peek() == '}') {
+			pos++;
+			return fieldMap;
+		}
+
+		while(true) {
+			skipWhitespaces();
+			String name = readString();
+			skipWhitespaces();
+			expect(':');
+			skipWhitespaces();
+			fieldMap.put(name, readValue());
+			skipWhitespaces();
+			char separator = next();
+			if(separator == '}') {
+				break;
+			}
+			if(separator != ',') {
+				throw error("',' or '}' expected");
+			}
+		}
+
+		skipWhitespaces();
+		if(pos < json.length()) {
+			throw error("unexpected chars after the end of the object");
+		}
+		return fieldMap;
+	}
+
+	private Object readValue() {
+		char c = peek();
+		if(c == '"') {
+			return readString();
+		}
+		if(json.startsWith("null", pos)) {
+			pos += 4;
+			return null;
+		}
+		if(json.startsWith("true", pos)) {
+			pos += 4;
+			return Boolean.TRUE;
+		}
+		if(json.startsWith("false", pos)) {
+			pos += 5;
+			return Boolean.FALSE;
+		}
+		if(c == '-' || (c >= '0' && c <= '9')) {
+			int start = pos;
+			while(pos < json.length() && "+-0123456789.eE".indexOf(json.charAt(pos)) >= 0) {
+				pos++;
+			}
+			String number = json.substring(start, pos);
+			try {
+				if(number.indexOf('.') >= 0 || number.indexOf('e') >= 0 || number.indexOf('E') >= 0) {
+					return Double.valueOf(number);
+				}
+				return Long.valueOf(number);
+			}
+			catch(NumberFormatException e) {
+				throw error("invalid number " + number);
+			}
+		}
+		throw error("unsupported value");
+	}
+
+	private String readString() {
+		expect('"');
+		StringBuilder valueSb = new StringBuilder();
+		while(true) {
+			char c = next();
+			if(c == '"') {
+				return valueSb.toString();
+			}
+			if(c != '\\') {
+				valueSb.append(c);
+				continue;
+			}
+
+			char escaped = next();
+			switch(escaped) {
+			case '"': valueSb.append('"'); break;
+			case '\\': valueSb.append('\\'); break;
+			case '/': valueSb.append('/'); break;
+			case 'b': valueSb.append('\b'); break;
+			case 'f': valueSb.append('\f'); break;
+			case 'n': valueSb.append('\n'); break;
+			case 'r': valueSb.append('\r'); break;
+			case 't': valueSb.append('\t'); break;
+			case 'u':
+				if(pos + 4 > json.length()) {
+					throw error("invalid unicode escape");
+				}
+				try {
+					valueSb.append((char) Integer.parseInt(json.substring(pos, pos + 4), 16));
+				}
+				catch(NumberFormatException e) {
+					throw error("invalid unicode escape");
+				}
+				pos += 4;
+				break;
+			default:
+				throw error("invalid escape");
+			}
+		}
+	}
+
+	private void skipWhitespaces() {
+		while(pos < json.length() && Character.isWhitespace(json.charAt(pos))) {
+			pos++;
+		}
+	}
+
+	private char peek() {
+		if(pos >= json.length()) {
+			throw error("unexpected end");
+		}
+		return json.charAt(pos);
+	}
+
+	private char next() {
+		char c = peek();
+		pos++;
+		return c;
+	}
+
+	private void expect(char expected) {
+		if(next() != expected) {
+			pos--;
+			throw error("'" + expected + "' expected");
+		}
+	}
+
+	private IllegalArgumentException error(String message) {
+		return new IllegalArgumentException("Invalid JSON at char " + pos + ": " + message);
+	}
+
+}
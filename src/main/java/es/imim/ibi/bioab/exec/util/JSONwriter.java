@@ -0,0 +1,194 @@
+/**
+ * Biomedical Abbreviation Miner (BioAB Miner)
+ *
+ */
+package es.imim.ibi.bioab.exec.util;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import es.imim.ibi.bioab.exec.model.Abbreviation;
+
+/**
+ * Streaming JSON writer: values are written to the underlying writer as soon as they are added, without building the JSON
+ * document in memory. The writer takes care of the separators between the values of arrays and objects.
+ *
+ * Not thread safe.
+ *
+ * @author Francesco Ronzano
+ *
+ */
+public class JSONwriter {
+
+	private final Writer out;
+
+	// For each open array / object, true if no value has been written yet
+	private final Deque<Boolean> firstValueStack = new ArrayDeque<Boolean>();
+	private boolean afterName = false;
+
+	public JSONwriter(Writer out) {
+		this.out = out;
+	}
+
+	public JSONwriter beginArray() throws IOException {
+		beforeValue();
+		this.out.write('[');
+		this.firstValueStack.push(true);
+		return this;
+	}
+
+	public JSONwriter endArray() throws IOException {
+		this.firstValueStack.pop();
+		this.out.write(']');
+		return this;
+	}
+
+	public JSONwriter beginObject() throws IOException {
+		beforeValue();
+		this.out.write('{');
+		this.firstValueStack.push(true);
+		return this;
+	}
+
+	public JSONwriter endObject() throws IOException {
+		this.firstValueStack.pop();
+		this.out.write('}');
+		return this;
+	}
+
+	/**
+	 * Name of the next value of the current object
+	 *
+	 * @param name
+	 * @return
+	 * @throws IOException
+	 */
+	public JSONwriter name(String name) throws IOException {
+		beforeValue();
+		writeString(name);
+		this.out.write(':');
+		this.afterName = true;
+		return this;
+	}
+
+	public JSONwriter value(String value) throws IOException {
+		beforeValue();
+		if(value == null) {
+			this.out.write("null");
+		}
+		else {
+			writeString(value);
+		}
+		return this;
+	}
+
+	public JSONwriter value(Number value) throws IOException {
+		beforeValue();
+		this.out.write((value != null && !(value instanceof Double && (((Double) value).isNaN() || ((Double) value).isInfinite()))) ? value.toString() : "null");
+		return this;
+	}
+
+	public JSONwriter value(long value) throws IOException {
+		beforeValue();
+		this.out.write(Long.toString(value));
+		return this;
+	}
+
+	public JSONwriter value(boolean value) throws IOException {
+		beforeValue();
+		this.out.write(value ? "true" : "false");
+		return this;
+	}
+
+	/**
+	 * Write the abbreviation as a JSON object; offsets are null if not available
+	 *
+	 * @param abbreviation
+	 * @return
+	 * @throws IOException
+	 */
+	public JSONwriter value(Abbreviation abbreviation) throws IOException {
+		beginObject();
+		name("type").value(abbreviation.getType());
+		name("shortForm").value(abbreviation.getAbbreviationm());
+		name("longForm").value(abbreviation.getLongForm());
+		name("sentence").value(abbreviation.getSentence());
+		name("shortFormStart").value(offset(abbreviation.getShortFormStart()));
+		name("shortFormEnd").value(offset(abbreviation.getShortFormEnd()));
+		name("longFormStart").value(offset(abbreviation.getLongFormStart()));
+		name("longFormEnd").value(offset(abbreviation.getLongFormEnd()));
+		name("sentenceStart").value(offset(abbreviation.getSentenceStart()));
+		name("sentenceEnd").value(offset(abbreviation.getSentenceEnd()));
+		name("confidence").value(abbreviation.getConfidence());
+		endObject();
+		return this;
+	}
+
+	public void flush() throws IOException {
+		this.out.flush();
+	}
+
+	/**
+	 * JSON object of the abbreviation, on a single line
+	 *
+	 * @param abbreviation
+	 * @return
+	 */
+	public static String toJSON(Abbreviation abbreviation) {
+		StringWriter abbreviationWriter = new StringWriter();
+		try {
+			new JSONwriter(abbreviationWriter).value(abbreviation);
+		} catch (IOException e) {
+			// Not thrown by StringWriter
+			throw new IllegalStateException(e);
+		}
+		return abbreviationWriter.toString();
+	}
+
+	private static Long offset(long offset) {
+		return (offset >= 0l) ? offset : null;
+	}
+
+	private void beforeValue() throws IOException {
+		if(this.afterName) {
+			this.afterName = false;
+			return;
+		}
+
+		if(!this.firstValueStack.isEmpty()) {
+			if(this.firstValueStack.peek()) {
+				this.firstValueStack.pop();
+				this.firstValueStack.push(false);
+			}
+			else {
+				this.out.write(',');
+			}
+		}
+	}
+
+	private void writeString(String value) throws IOException {
+		this.out.write('"');
+		for(int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch(c) {
+			case '"': this.out.write("\\\""); break;
+			case '\\': this.out.write("\\\\"); break;
+			case '\n': this.out.write("\\n"); break;
+			case '\r': this.out.write("\\r"); break;
+			case '\t': this.out.write("\\t"); break;
+			default:
+				if(c < 0x20 || c == '\u2028' || c == '\u2029') {
+					this.out.write(String.format("\\u%04x", (int) c));
+				}
+				else {
+					this.out.write(c);
+				}
+			}
+		}
+		this.out.write('"');
+	}
+
+}
@@ -0,0 +1,165 @@
+/**
+ * Biomedical Abbreviation Miner (BioAB Miner)
+ *
+ */
+package es.imim.ibi.bioab.feature;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.backingdata.gateutils.GATEutils;
+
+import gate.Annotation;
+import gate.Document;
+
+/**
+ * Document level information shared by the feature generation contexts of all the tokens of a document, computed once
+ * per document instead of once per token:
+ *    - the position of each token in the document token list of the contexts
+ *    - the number of tokens of the document (annotation set and type of {@link TokenAnnConst}) with each value of a feature
+ *      (or text), used by {@link es.imim.ibi.bioab.feature.generator.FeatureRepetitionsOfContext}; the values of a feature
+ *      are counted the first time the feature is requested
+ *
+ * If the document packs many texts (see es.imim.ibi.bioab.exec.PackedDocument), the values are counted separately for each
+ * text ({@link TokenAnnConst#packedTextType} annotations), so that the features of a token do not depend on the other texts.
+ *
+ * Document level features stay correct when the tokens of a document are processed by windows of sentences, since
+ * the summary always refers to the whole document.
+ *
+ * @author Francesco Ronzano
+ *
+ */
+public class DocumentSummary {
+
+	private final Document gateDoc;
+
+	private final Map<Integer, Integer> tokenIDtoPositionMap = new HashMap<Integer, Integer>();
+
+	// Start offsets of the texts packed in the document (a single text starting at 0 if the document is not packed)
+	private final long[] textStarts;
+
+	private List<Annotation> countedTokenList = null;
+	private Set<Integer> countedTokenIDset = null;
+	private final Map<String, Map<Integer, Map<String, Integer>>> valueCountMap = new HashMap<String, Map<Integer, Map<String, Integer>>>();
+
+	/**
+	 *
+	 * @param gateDoc
+	 * @param documentTokenList document token list of the feature generation contexts
+	 */
+	public DocumentSummary(Document gateDoc, List<Annotation> documentTokenList) {
+		this.gateDoc = gateDoc;
+
+		if(documentTokenList != null) {
+			for(int position = 0; position < documentTokenList.size(); position++) {
+				Annotation tokenAnn = documentTokenList.get(position);
+				if(tokenAnn != null && !tokenIDtoPositionMap.containsKey(tokenAnn.getId())) {
+					tokenIDtoPositionMap.put(tokenAnn.getId(), position);
+				}
+			}
+		}
+
+		List<Annotation> textAnnList = (gateDoc.getNamedAnnotationSets() != null && gateDoc.getNamedAnnotationSets().containsKey(TokenAnnConst.packedTextAnnSet)) ?
+				GATEutils.getAnnInDocOrder(gateDoc, TokenAnnConst.packedTextAnnSet, TokenAnnConst.packedTextType) : null;
+		if(textAnnList != null && textAnnList.size() > 0) {
+			this.textStarts = new long[textAnnList.size()];
+			for(int i = 0; i < textAnnList.size(); i++) {
+				this.textStarts[i] = textAnnList.get(i).getStartNode().getOffset();
+			}
+			Arrays.sort(this.textStarts);
+		}
+		else {
+			this.textStarts = new long[] {0l};
+		}
+	}
+
+	/**
+	 * Position of the token in the document token list (the first one, if the token is repeated)
+	 *
+	 * @param tokenAnn
+	 * @return -1 if the token is not in the document token list
+	 */
+	public int getTokenPosition(Annotation tokenAnn) {
+		Integer position = (tokenAnn != null) ? tokenIDtoPositionMap.get(tokenAnn.getId()) : null;
+		return (position != null) ? position : -1;
+	}
+
+	/**
+	 * Number of tokens of the document (of the text of tokenAnn, if the document is packed), other than tokenAnn, with the same value of the feature
+	 *
+	 * @param featureName name of the token feature (null to consider the text of the token)
+	 * @param value value of the feature of tokenAnn
+	 * @param tokenAnn
+	 * @return
+	 */
+	public int getRepetitionCount(String featureName, String value, Annotation tokenAnn) {
+		if(value == null) {
+			return 0;
+		}
+
+		Map<String, Integer> countMap = getValueCountMap(featureName).get(getTextIndex(tokenAnn));
+		if(countMap == null) {
+			return 0;
+		}
+
+		int count = countMap.containsKey(value) ? countMap.get(value) : 0;
+		if(tokenAnn != null && countedTokenIDset.contains(tokenAnn.getId())) {
+			count--;
+		}
+
+		return Math.max(0, count);
+	}
+
+	/**
+	 * Index of the text of the token: last text starting before the token (0 if the document is not packed)
+	 * 
+	 * @param tokenAnn
+	 * @return
+	 */
+	private int getTextIndex(Annotation tokenAnn) {
+		if(textStarts.length == 1 || tokenAnn == null) {
+			return 0;
+		}
+		int insertionPoint = Arrays.binarySearch(textStarts, tokenAnn.getStartNode().getOffset());
+		return Math.max(0, (insertionPoint >= 0) ? insertionPoint : -insertionPoint - 2);
+	}
+
+	private Map<Integer, Map<String, Integer>> getValueCountMap(String featureName) {
+		Map<Integer, Map<String, Integer>> textCountMap = valueCountMap.get(featureName);
+		if(textCountMap != null) {
+			return textCountMap;
+		}
+
+		if(countedTokenList == null) {
+			countedTokenList = GATEutils.getAnnInDocOrder(gateDoc, TokenAnnConst.tokenAnnSet, TokenAnnConst.tokenType);
+			countedTokenIDset = new HashSet<Integer>();
+			for(Annotation tokenAnn : countedTokenList) {
+				countedTokenIDset.add(tokenAnn.getId());
+			}
+		}
+
+		textCountMap = new HashMap<Integer, Map<String, Integer>>();
+		for(Annotation tokenAnn : countedTokenList) {
+			String tokenValue = null;
+			if(featureName != null) {
+				tokenValue = GATEutils.getStringFeature(tokenAnn, featureName).orElse(null);
+			}
+			else {
+				tokenValue = GATEutils.getAnnotationText(tokenAnn, gateDoc).orElse(null);
+			}
+
+			if(tokenValue != null) {
+				Map<String, Integer> countMap = textCountMap.computeIfAbsent(getTextIndex(tokenAnn), textIndex -> new HashMap<String, Integer>());
+				countMap.put(tokenValue, countMap.containsKey(tokenValue) ? countMap.get(tokenValue) + 1 : 1);
+			}
+		}
+		valueCountMap.put(featureName, textCountMap);
+
+		return textCountMap;
+	}
+
+}
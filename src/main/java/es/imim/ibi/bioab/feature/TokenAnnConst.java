@@ -22,6 +22,10 @@ public class TokenAnnConst {
 	public static final String sentenceAnnSet = FreelingParser.mainAnnSet + "_SPA";
 	public static final String sentenceType = FreelingParser.sentenceType;
 	
+	// Texts packed in a single document (see es.imim.ibi.bioab.exec.PackedDocument): features are not computed across texts
+	public static final String packedTextAnnSet = "BioABpacked";
+	public static final String packedTextType = "PackedText";
+	
 	
 	public static final String punctutations = "(){}[]?¿!\\*+.,:;-_'´\"";//add all the ones you want.
 }
@@ -30,6 +30,7 @@ public class TokenFeatureGenerationContext {
 	private Integer GATEsentenceID;
 	private List<Annotation> documentTokenList;
 	private Map<Integer, Integer> tokenIDtoSentenceIDmap = new HashMap<Integer, Integer>();
+	private DocumentSummary documentSummary;
 	
 	// Constructor
 	public TokenFeatureGenerationContext(Document gateDocument) {
@@ -94,5 +95,31 @@ public class TokenFeatureGenerationContext {
 	public void setTokenIDtoSentenceIDmap(Map<Integer, Integer> tokenIDtoSentenceIDmap) {
 		this.tokenIDtoSentenceIDmap = tokenIDtoSentenceIDmap;
 	}
+
+	public DocumentSummary getDocumentSummary() {
+		return documentSummary;
+	}
+
+	/**
+	 * Document level information computed once per document (null: computed by each feature generator)
+	 * 
+	 * @param documentSummary
+	 */
+	public void setDocumentSummary(DocumentSummary documentSummary) {
+		this.documentSummary = documentSummary;
+	}
+
+	/**
+	 * Position of the token in the document token list
+	 * 
+	 * @param tokenAnn
+	 * @return -1 if the token is not in the document token list
+	 */
+	public int getTokenPosition(Annotation tokenAnn) {
+		if(documentSummary != null) {
+			return documentSummary.getTokenPosition(tokenAnn);
+		}
+		return (documentTokenList != null) ? documentTokenList.indexOf(tokenAnn) : -1;
+	}
 	
 }
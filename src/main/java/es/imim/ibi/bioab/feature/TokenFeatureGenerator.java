@@ -33,6 +33,8 @@ import org.backingdata.nlp.utils.langres.wikifreq.LangENUM;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Strings;
+
 import es.imim.ibi.bioab.feature.generator.CharNumber;
 import es.imim.ibi.bioab.feature.generator.CharPercentage;
 import es.imim.ibi.bioab.feature.generator.ClassLFGetterBOI;
@@ -76,6 +78,9 @@ public class TokenFeatureGenerator {
 
 	private static Logger logger = LoggerFactory.getLogger(TokenFeatureGenerator.class);
 
+	// Default maximum number of tokens of a window of sentences (see getWindowMaxTokens)
+	public static final int DEFAULT_WINDOW_MAX_TOKENS = 5000;
+
 	// Input folder - including all GATE XML texts annotated by Freeling (Freeling annotator implemented by the class: es.imim.ibi.bioab.nlp.FreelingParser)
 	private static String inputFolder = "/full/path/to/folder_with_GATE_XML_training_documents";
 
@@ -210,6 +215,7 @@ public class TokenFeatureGenerator {
 				}
 
 				// Create a training example for each token of the document - in the documentTokenAnnList
+				DocumentSummary documentSummary = new DocumentSummary(gateDoc, documentTokenAnnList);
 				for(Annotation documentTokenAnn : documentTokenAnnList) {
 					
 					// Set training context
@@ -219,6 +225,7 @@ public class TokenFeatureGenerator {
 					// Set document global features
 					trCtx.setDocumentTokenList(documentTokenAnnList);
 					trCtx.setTokenIDtoSentenceIDmap(tokenIDtoSentenceIDAPPOmap);
+					trCtx.setDocumentSummary(documentSummary);
 
 					// Set Sentence ID
 					trCtx.setSentenceID(gateDocCount + "_" + tokenIDtoSentenceIDAPPOmap.get(documentTokenAnn.getId()));
@@ -339,6 +346,67 @@ public class TokenFeatureGenerator {
 		return filtersArray;
 	}
 
+	/**
+	 * Maximum number of tokens of the windows of sentences in which the abbreviation spotter and type classifier split 
+	 * a document (property features.windowMaxTokens, default 5000, 0 to process each document in a single window).
+	 * 
+	 * The features, the Weka instances and the CRFsuite sequences of a window are discarded before processing the 
+	 * next window, so that the memory needed to process a document is bounded by the size of the windows.
+	 * 
+	 * @return
+	 */
+	public static int getWindowMaxTokens() {
+		try {
+			String propertyValue = PropertyManager.getProperty("features.windowMaxTokens");
+			if(!Strings.isNullOrEmpty(propertyValue)) {
+				return Integer.valueOf(propertyValue.trim());
+			}
+		}
+		catch(Exception e) {
+			logger.debug("Property features.windowMaxTokens not set or invalid, using default value " + DEFAULT_WINDOW_MAX_TOKENS);
+		}
+		return DEFAULT_WINDOW_MAX_TOKENS;
+	}
+
+	/**
+	 * Split a list of tokens in windows of consecutive sentences: each window includes at most windowMaxTokens tokens, 
+	 * except when a single sentence is longer (a sentence is never split between two windows).
+	 * 
+	 * @param tokenAnnList tokens in document order
+	 * @param tokenIDtoSentenceIDmap sentence ID of each token
+	 * @param windowMaxTokens if not positive, a single window with all the tokens is returned
+	 * @return list of windows (views of tokenAnnList)
+	 */
+	public static List<List<Annotation>> getSentenceWindows(List<Annotation> tokenAnnList, Map<Integer, Integer> tokenIDtoSentenceIDmap, int windowMaxTokens) {
+		List<List<Annotation>> windowList = new ArrayList<List<Annotation>>();
+		if(tokenAnnList == null || tokenAnnList.size() == 0) {
+			return windowList;
+		}
+		if(windowMaxTokens <= 0 || tokenAnnList.size() <= windowMaxTokens) {
+			windowList.add(tokenAnnList);
+			return windowList;
+		}
+
+		int windowStart = 0;
+		int sentenceStart = 0;
+		Integer previousSentenceID = null;
+		for(int tokenIdx = 0; tokenIdx <= tokenAnnList.size(); tokenIdx++) {
+			Integer sentenceID = (tokenIdx < tokenAnnList.size()) ? tokenIDtoSentenceIDmap.get(tokenAnnList.get(tokenIdx).getId()) : null;
+			if(tokenIdx > 0 && (tokenIdx == tokenAnnList.size() || sentenceID == null || !sentenceID.equals(previousSentenceID))) {
+				// End of the sentence started at sentenceStart: close the window before it if the window becomes too long
+				if(tokenIdx - windowStart > windowMaxTokens && sentenceStart > windowStart) {
+					windowList.add(tokenAnnList.subList(windowStart, sentenceStart));
+					windowStart = sentenceStart;
+				}
+				sentenceStart = tokenIdx;
+			}
+			previousSentenceID = sentenceID;
+		}
+		windowList.add(tokenAnnList.subList(windowStart, tokenAnnList.size()));
+
+		return windowList;
+	}
+
 	/**
 	 * Instantiate the set of Feature generator classes in charge to generate the features describing each token.
 	 * 
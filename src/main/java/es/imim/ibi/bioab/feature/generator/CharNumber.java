@@ -45,7 +45,7 @@ public class CharNumber implements FeatCalculator<Double, Document, TokenFeature
 				tokenAnnToConsider = ctxDoc.getCoreTokenAnn();
 			}
 			else {
-				int indexOfTokenPositionZero = ctxDoc.getDocumentTokenList().indexOf(ctxDoc.getCoreTokenAnn());
+				int indexOfTokenPositionZero = ctxDoc.getTokenPosition(ctxDoc.getCoreTokenAnn());
 				int newPosition = indexOfTokenPositionZero + relativePosition;
 
 				if(newPosition >= 0 && newPosition < ctxDoc.getDocumentTokenList().size()) {
@@ -52,7 +52,7 @@ public class CharPercentage implements FeatCalculator<Double, Document, TokenFea
 				tokenAnnToConsider = ctxDoc.getCoreTokenAnn();
 			}
 			else {
-				int indexOfTokenPositionZero = ctxDoc.getDocumentTokenList().indexOf(ctxDoc.getCoreTokenAnn());
+				int indexOfTokenPositionZero = ctxDoc.getTokenPosition(ctxDoc.getCoreTokenAnn());
 				int newPosition = indexOfTokenPositionZero + relativePosition;
 
 				if(newPosition >= 0 && newPosition < ctxDoc.getDocumentTokenList().size()) {
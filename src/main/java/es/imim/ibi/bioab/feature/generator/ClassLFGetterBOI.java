@@ -57,7 +57,7 @@ public class ClassLFGetterBOI implements FeatCalculator<String, Document, TokenF
 			
 			boolean isCoreTokenAbbrv = (globalLongFormList.size() > 0) ? true : false;
 			
-			int coreTokenIndex = ctxDoc.getDocumentTokenList().indexOf(coreTokenAnn);
+			int coreTokenIndex = ctxDoc.getTokenPosition(coreTokenAnn);
 			
 			boolean isPrevCoreTokenAbbrv = false;
 			if(coreTokenIndex > 0) {
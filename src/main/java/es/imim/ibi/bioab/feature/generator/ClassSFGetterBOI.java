@@ -78,7 +78,7 @@ public class ClassSFGetterBOI implements FeatCalculator<String, Document, TokenF
 			
 			boolean isCoreTokenAbbrv = (globalShortFormList.size() > 0) ? true : false;
 			
-			int coreTokenIndex = ctxDoc.getDocumentTokenList().indexOf(coreTokenAnn);
+			int coreTokenIndex = ctxDoc.getTokenPosition(coreTokenAnn);
 			
 			boolean isPrevCoreTokenAbbrv = false;
 			if(coreTokenIndex > 0) {
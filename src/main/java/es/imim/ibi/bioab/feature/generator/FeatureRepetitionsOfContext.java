@@ -21,6 +21,7 @@ import gate.Factory;
 
 /**
  * Count how many time a token with that feature is present in the document
+ * (by means of the document summary of the context, if set - see {@link es.imim.ibi.bioab.feature.DocumentSummary})
  * 
  * @author Francesco Ronzano
  *
@@ -50,7 +51,7 @@ public class FeatureRepetitionsOfContext implements FeatCalculator<Double, Docum
 				tokenAnnToConsider = ctxDoc.getCoreTokenAnn();
 			}
 			else {
-				int indexOfTokenPositionZero = ctxDoc.getDocumentTokenList().indexOf(ctxDoc.getCoreTokenAnn());
+				int indexOfTokenPositionZero = ctxDoc.getTokenPosition(ctxDoc.getCoreTokenAnn());
 				int newPosition = indexOfTokenPositionZero + relativePosition;
 
 				if(newPosition >= 0 && newPosition < ctxDoc.getDocumentTokenList().size()) {
@@ -72,7 +73,10 @@ public class FeatureRepetitionsOfContext implements FeatCalculator<Double, Docum
 							featureVal = GATEutils.getAnnotationText(tokenAnnToConsider, ctxDoc.getGateDoc()).orElse(null);						
 						}
 						
-						if(featureVal != null && featureVal.length() > 0) {
+						if(featureVal != null && featureVal.length() > 0 && ctxDoc.getDocumentSummary() != null) {
+							retValue.setValue((double) ctxDoc.getDocumentSummary().getRepetitionCount(this.featureExtractName, featureVal, tokenAnnToConsider));
+						}
+						else if(featureVal != null && featureVal.length() > 0) {
 							List<Annotation> getAllDocTokens = GATEutils.getAnnInDocOrder(doc, TokenAnnConst.tokenAnnSet, TokenAnnConst.tokenType);
 							double counterOfRepetitions = 0d;
 							for(Annotation tokAnn : getAllDocTokens) {
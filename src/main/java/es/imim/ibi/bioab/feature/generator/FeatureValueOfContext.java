@@ -46,7 +46,7 @@ public class FeatureValueOfContext implements FeatCalculator<String, Document, T
 				tokenAnnToConsider = ctxDoc.getCoreTokenAnn();
 			}
 			else {
-				int indexOfTokenPositionZero = ctxDoc.getDocumentTokenList().indexOf(ctxDoc.getCoreTokenAnn());
+				int indexOfTokenPositionZero = ctxDoc.getTokenPosition(ctxDoc.getCoreTokenAnn());
 				int newPosition = indexOfTokenPositionZero + relativePosition;
 
 				if(newPosition >= 0 && newPosition < ctxDoc.getDocumentTokenList().size()) {
@@ -58,7 +58,7 @@ public class IsFirstLastCharSpecial implements FeatCalculator<Double, Document,
 				tokenAnnToConsider = ctxDoc.getCoreTokenAnn();
 			}
 			else {
-				int indexOfTokenPositionZero = ctxDoc.getDocumentTokenList().indexOf(ctxDoc.getCoreTokenAnn());
+				int indexOfTokenPositionZero = ctxDoc.getTokenPosition(ctxDoc.getCoreTokenAnn());
 				int newPosition = indexOfTokenPositionZero + relativePosition;
 
 				if(newPosition >= 0 && newPosition < ctxDoc.getDocumentTokenList().size()) {
@@ -5,10 +5,9 @@
 package es.imim.ibi.bioab.feature.generator;
 
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.backingdata.gateutils.GATEutils;
 import org.backingdata.mlfeats.base.FeatCalculator;
@@ -16,6 +15,9 @@ import org.backingdata.mlfeats.base.MyDouble;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import es.imim.ibi.bioab.exec.dict.CompiledDictionary;
+import es.imim.ibi.bioab.exec.dict.DictionaryCompiler;
+import es.imim.ibi.bioab.exec.dict.DictionaryRegistry;
 import es.imim.ibi.bioab.feature.TokenFeatureGenerationContext;
 import gate.Annotation;
 import gate.Document;
@@ -31,11 +33,16 @@ public class StringInList implements FeatCalculator<Double, Document, TokenFeatu
 
 	private static Logger logger = LoggerFactory.getLogger(StringInList.class);
 
+	// Current version of each list, shared by all the instances that refer to the same list and updated when a new version
+	// is swapped in by the DictionaryRegistry - key: path of the list and format
+	private static Map<String, AtomicReference<CompiledDictionary>> wordListMap = new ConcurrentHashMap<String, AtomicReference<CompiledDictionary>>();
+
 	private Integer relativePosition = -1;
 	private String mavenResourcePath = "";
 	private Boolean isCaseInsensitive = false;
 	private boolean sentenceScoped = false;
-	private Set<String> wordList = new HashSet<String>();
+	private DictionaryCompiler.Format listFormat = DictionaryCompiler.Format.WORD_LIST;
+	private AtomicReference<CompiledDictionary> wordListRef = new AtomicReference<CompiledDictionary>(CompiledDictionary.fromMap(null, "EMPTY"));
 
 	public StringInList() {
 		// Do not use this constructor
@@ -48,23 +55,10 @@ public class StringInList implements FeatCalculator<Double, Document, TokenFeatu
 		this.isCaseInsensitive = isCasInsens;
 		this.sentenceScoped = sentScoped;
 
-		// Load list
-		StringInList instanceCr = new StringInList();
-		BufferedReader br = null;
-		try {
-
-			br = new BufferedReader(new InputStreamReader(instanceCr.getClass().getResourceAsStream(this.mavenResourcePath), "UTF-8"));
-			String line;
-			while ((line = br.readLine()) != null) {
-				wordList.add( (isCaseInsensitive) ? line.toLowerCase() : line );
-			}
-
-			logger.info("Loaded list of length: " + wordList.size() + " from: " + ((this.mavenResourcePath != null) ? this.mavenResourcePath : "NULL"));
-		} catch (Exception e) {
-			logger.error("IMPOSSIBLE TO LOAD LIST OF STRINGS FROM " + ((this.mavenResourcePath != null) ? this.mavenResourcePath : "NULL"));
-			e.printStackTrace();
-		}
-
+		// Load list (shared by all the instances that refer to the same list)
+		this.listFormat = (isCaseInsensitive) ? DictionaryCompiler.Format.WORD_LIST_LOWERCASE : DictionaryCompiler.Format.WORD_LIST;
+		this.wordListRef = getWordListRef(this.mavenResourcePath, this.listFormat);
+		logger.info("Loaded list of length: " + this.wordListRef.get().size() + " from: " + ((this.mavenResourcePath != null) ? this.mavenResourcePath : "NULL"));
 	}
 
 	@Override
@@ -77,7 +71,7 @@ public class StringInList implements FeatCalculator<Double, Document, TokenFeatu
 				tokenAnnToConsider = ctxDoc.getCoreTokenAnn();
 			}
 			else {
-				int indexOfTokenPositionZero = ctxDoc.getDocumentTokenList().indexOf(ctxDoc.getCoreTokenAnn());
+				int indexOfTokenPositionZero = ctxDoc.getTokenPosition(ctxDoc.getCoreTokenAnn());
 				int newPosition = indexOfTokenPositionZero + relativePosition;
 
 				if(newPosition >= 0 && newPosition < ctxDoc.getDocumentTokenList().size()) {
@@ -92,6 +86,8 @@ public class StringInList implements FeatCalculator<Double, Document, TokenFeatu
 					
 					String text = GATEutils.getAnnotationText(tokenAnnToConsider, doc).orElse(null);
 					try {
+						// Current version of the list (a new one can be swapped in at runtime)
+						CompiledDictionary wordList = wordListRef.get();
 						if(wordList.contains((isCaseInsensitive) ? text.toLowerCase() : text)) {
 							retValue.setValue(Double.valueOf(1d));
 						}
@@ -115,4 +111,12 @@ public class StringInList implements FeatCalculator<Double, Document, TokenFeatu
 		return retValue;
 	}
 
+	private static AtomicReference<CompiledDictionary> getWordListRef(String listPath, DictionaryCompiler.Format format) {
+		return wordListMap.computeIfAbsent(listPath + "|" + format.name(), key -> {
+			AtomicReference<CompiledDictionary> wordListRef = new AtomicReference<CompiledDictionary>(DictionaryRegistry.get(listPath, format));
+			DictionaryRegistry.addSwapListener(listPath, format, newWordList -> wordListRef.set(newWordList));
+			return wordListRef;
+		});
+	}
+
 }
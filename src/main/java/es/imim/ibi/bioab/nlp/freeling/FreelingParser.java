@@ -45,6 +45,7 @@ import edu.upc.freeling.TreeConstPreorderIteratorNode;
 import edu.upc.freeling.Ukb;
 import edu.upc.freeling.Util;
 import edu.upc.freeling.Word;
+import es.imim.ibi.bioab.exec.Deadline;
 import gate.Annotation;
 import gate.AnnotationSet;
 import gate.Document;
@@ -143,6 +144,7 @@ public class FreelingParser extends AbstractLanguageAnalyser implements Processi
 	private String addAnalysisLangToAnnSetName = null;
 	private LangENUM analysisLangENUM = null;
 	private Boolean onlySentenceSplit = null;
+	private Deadline deadline = null;
 
 	public String getSentenceAnnotationSetToAnalyze() {
 		return sentenceAnnotationSetToAnalyze;
@@ -196,6 +198,19 @@ public class FreelingParser extends AbstractLanguageAnalyser implements Processi
 		this.onlySentenceSplit = onlySentenceSplit;
 	}
 
+	public Deadline getDeadline() {
+		return deadline;
+	}
+
+	/**
+	 * Deadline of the document to parse: when expired, the remaining sentences are not parsed (null: no deadline)
+	 *
+	 * @param deadline
+	 */
+	public void setDeadline(Deadline deadline) {
+		this.deadline = deadline;
+	}
+
 	/**
 	 * Initialize Freeling and load resources in a specific language
 	 * 
@@ -385,6 +400,12 @@ public class FreelingParser extends AbstractLanguageAnalyser implements Processi
 		}
 		else { // Identify and then parse sentences
 
+			// The text is analyzed by Freeling as a whole: the deadline can only be checked before
+			if(Deadline.isExpired(this.deadline)) {
+				logger.warn("Deadline expired: document not parsed by Freeling.");
+				return;
+			}
+
 			// Visiting all the sentences
 			ListSentenceIterator sIt = null;
 			try {
@@ -596,6 +617,11 @@ public class FreelingParser extends AbstractLanguageAnalyser implements Processi
 		// Parse each sentence
 		for (Annotation actualSentence : sentencesSorted) {
 
+			if(Deadline.isExpired(this.deadline)) {
+				logger.warn("Deadline expired: parsing by Freeling stopped after " + parsedSentences + " of " + sentencesSorted.size() + " sentences.");
+				break;
+			}
+
 			try {
 
 				String sentenceText = doc.getContent().getContent(actualSentence.getStartNode().getOffset(), actualSentence.getEndNode().getOffset()).toString();
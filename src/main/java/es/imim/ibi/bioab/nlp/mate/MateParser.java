@@ -31,6 +31,7 @@ import org.slf4j.LoggerFactory;
 
 import com.google.common.util.concurrent.AtomicDouble;
 
+import es.imim.ibi.bioab.exec.Deadline;
 import es.imim.ibi.bioab.nlp.freeling.FreelingParser;
 import es.imim.ibi.bioab.nlp.freeling.FreelingParserUtilities;
 import gate.Annotation;
@@ -118,6 +119,7 @@ public class MateParser extends AbstractLanguageAnalyser implements ProcessingRe
 	private String tokenAnnotationSetToAnalyze = FreelingParser.mainAnnSet;
 	private String tokenAnnotationTypeToAnalyze = FreelingParser.tokenType;
 	private Integer excludeThreshold;
+	private Deadline deadline = null;
 
 
 	public String getSentenceAnnotationSetToAnalyze() {
@@ -172,6 +174,19 @@ public class MateParser extends AbstractLanguageAnalyser implements ProcessingRe
 		this.excludeThreshold = excludeThreshold;
 	}
 
+	public Deadline getDeadline() {
+		return deadline;
+	}
+
+	/**
+	 * Deadline of the document to parse: when expired, the remaining sentences are not parsed (null: no deadline)
+	 *
+	 * @param deadline
+	 */
+	public void setDeadline(Deadline deadline) {
+		this.deadline = deadline;
+	}
+
 	public String getLemmaModelPath() {
 		return lemmaModelPath;
 	}
@@ -340,6 +355,11 @@ public class MateParser extends AbstractLanguageAnalyser implements ProcessingRe
 		// Parse each sentence
 		for (Annotation actualSentence : sentencesSorted) {
 
+			if(Deadline.isExpired(this.deadline)) {
+				logger.warn("Deadline expired: parsing by MATE stopped after " + parsedSentences + " of " + sentencesSorted.size() + " sentences.");
+				break;
+			}
+
 			try {
 
 				// References to the document (actualDoc) and the sentence (actualSentence) to parse
@@ -4,6 +4,7 @@ import java.io.File;
 
 import javax.servlet.MultipartConfigElement;
 
+import org.backingdata.gateutils.generic.PropertyManager;
 import org.eclipse.jetty.server.Connector;
 import org.eclipse.jetty.server.Handler;
 import org.eclipse.jetty.server.Server;
@@ -15,12 +16,24 @@ import org.eclipse.jetty.server.handler.ResourceHandler;
 import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.servlet.ServletHolder;
 import org.eclipse.jetty.util.resource.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Strings;
 
 import es.imim.ibi.bioab.exec.BioABminer;
+import es.imim.ibi.bioab.exec.dict.DictionaryRegistry;
 import es.imim.ibi.bioab.exec.pdf.GROBIDloader;
+import es.imim.ibi.bioab.server.coordinator.BioABcoordinator;
+import es.imim.ibi.bioab.server.coordinator.CoordinatorClient;
+import es.imim.ibi.bioab.server.job.ExtractionJobManager;
+import es.imim.ibi.bioab.server.servlet.AbbreviationExtractionAPIServlet;
 import es.imim.ibi.bioab.server.servlet.AbbreviationExtractionServlet;
+import es.imim.ibi.bioab.server.servlet.ExtractionJobServlet;
+import es.imim.ibi.bioab.server.servlet.MetricsServlet;
+import es.imim.ibi.bioab.server.servlet.ReadinessServlet;
+import es.imim.ibi.bioab.server.servlet.StatusServlet;
 import es.imim.ibi.bioab.server.servlet.WebFormManagerServlet;
-import gate.Document;
 
 
 /**
@@ -31,22 +44,44 @@ import gate.Document;
  */
 public class BioABserver {
 	
+	private static Logger logger = LoggerFactory.getLogger(BioABserver.class);
+	
+	public static final String defaultPropertyFilePath = "/home/ronzano/Desktop/Hackathon_PLN/BioAbMinerConfig.properties";
+	public static final int DEFAULT_PORT = 8181;
+	
+	/**
+	 * Usage: BioABserver [full path of the BioAB Miner property file] [port]
+	 * 
+	 * To run the server as a worker of a coordinator (see {@link BioABcoordinator}), set the property server.coordinatorURL
+	 * (and server.publicURL, if the coordinator cannot reach the worker at http://localhost:(port)), together with the
+	 * registration token of the coordinator (coordinator.registrationToken), if the coordinator requires it.
+	 * 
+	 * @param args
+	 * @throws Exception
+	 */
 	public static void main(String[] args) throws Exception {
 		
+		String propertyFilePath = (args != null && args.length > 0) ? args[0] : defaultPropertyFilePath;
+		int port = (args != null && args.length > 1) ? Integer.valueOf(args[1]) : DEFAULT_PORT;
+		
 		// Initialize BioAB Miner by specifying the full path of the property file
-		BioABminer.initALL("/home/ronzano/Desktop/Hackathon_PLN/BioAbMinerConfig.properties");
+		BioABminer.initALL(propertyFilePath);
 		GROBIDloader.initGROBID();
 		
-		Document doc = BioABminer.getDocumentFormText("This is an example text.");
-		BioABminer.extractNLPfeatures(doc);
-		BioABminer.extractAbbreviations(doc);
-		doc.cleanup();
+		// Bounded queue of the extraction requests, processed by a fixed number of workers
+		ExtractionQueue.init();
+		
+		// Background jobs for large PDFs and ZIP batches (jobs not completed before the last shutdown are resumed)
+		ExtractionJobManager.init();
+		
+		// Swap in the new versions of the dictionaries copied in the dictionary folder, without restarting the server
+		DictionaryRegistry.startWatcher(60l);
 		
 		
 		Server server = new Server();
 
 		ServerConnector connector = new ServerConnector(server);
-		connector.setPort(8181);
+		connector.setPort(port);
 		server.setConnectors(new Connector[] { connector });
 		connector.setIdleTimeout(90000);
 		
@@ -56,7 +91,7 @@ public class BioABserver {
         context0.setContextPath("/bioabminer/css");
         ClassLoader classLoader = (new BioABserver()).getClass().getClassLoader();
         File dir0 = new File(classLoader.getResource("webtempl/css").getPath());
-        System.out.println("CSS dir path: " + dir0.getAbsolutePath());
+        logger.info("CSS dir path: " + dir0.getAbsolutePath());
         context0.setBaseResource(Resource.newResource(dir0));
         context0.setHandler(rh0);
 
@@ -64,7 +99,7 @@ public class BioABserver {
         ContextHandler context1 = new ContextHandler();
         context1.setContextPath("/bioabminer/js");
         File dir1 = new File(classLoader.getResource("webtempl/js").getPath());
-        System.out.println("JS dir path: " + dir1.getAbsolutePath());
+        logger.info("JS dir path: " + dir1.getAbsolutePath());
         context1.setBaseResource(Resource.newResource(dir1));
         context1.setHandler(rh1);
 	    
@@ -72,11 +107,39 @@ public class BioABserver {
 	    // Add processing servlet
         ServletContextHandler context = new ServletContextHandler();
 		context.setContextPath("/");
+        // Uploads are always written to disk (no in-memory threshold) and rejected above the maximum PDF size
+        long maxPDFsizeBytes = GROBIDloader.getMaxPDFsizeBytes();
+        MultipartConfigElement multipartConfig = new MultipartConfigElement("data/tmp", 
+        		(maxPDFsizeBytes > 0l) ? maxPDFsizeBytes : -1l, (maxPDFsizeBytes > 0l) ? maxPDFsizeBytes + 1048576l : -1l, 0);
         ServletHolder fileUploadServletHolder = new ServletHolder(new AbbreviationExtractionServlet());
-        fileUploadServletHolder.getRegistration().setMultipartConfig(new MultipartConfigElement("data/tmp"));
+        fileUploadServletHolder.setAsyncSupported(true);
+        fileUploadServletHolder.getRegistration().setMultipartConfig(multipartConfig);
         context.addServlet(fileUploadServletHolder, "/bioabminer/fileUpload");
+        
+        // JSON API
+        ServletHolder APIservletHolder = new ServletHolder(new AbbreviationExtractionAPIServlet());
+        APIservletHolder.setAsyncSupported(true);
+        APIservletHolder.getRegistration().setMultipartConfig(multipartConfig);
+        context.addServlet(APIservletHolder, "/bioabminer/api/extract");
+        
+        // Job API (uploads up to server.jobs.maxUploadMB)
+        long maxUploadBytes = ExtractionJobManager.getMaxUploadBytes();
+        ServletHolder jobServletHolder = new ServletHolder(new ExtractionJobServlet());
+        jobServletHolder.setAsyncSupported(true);
+        jobServletHolder.getRegistration().setMultipartConfig(new MultipartConfigElement("data/tmp", maxUploadBytes, maxUploadBytes + 1048576l, 0));
+        context.addServlet(jobServletHolder, ExtractionJobServlet.jobsPath + "/*");
 		context.addServlet(WebFormManagerServlet.class, "/bioabminer/home");
 		
+		// Prometheus metrics
+		context.addServlet(MetricsServlet.class, "/bioabminer/metrics");
+		
+		// Readiness probe, ready after the warm-up
+		context.addServlet(ReadinessServlet.class, "/ready");
+		context.addServlet(ReadinessServlet.class, "/bioabminer/ready");
+		
+		// Status and load, read by the coordinator
+		context.addServlet(StatusServlet.class, StatusServlet.statusPath);
+		
 		
 
 		ContextHandlerCollection handlers = new ContextHandlerCollection();
@@ -84,6 +147,18 @@ public class BioABserver {
 		server.setHandler(handlers);
 
 		server.start();
+		
+		// Warm up all the stages of the pipeline: /ready answers 503 until the warm-up is completed
+		ServerWarmup.run();
+		
+		// Register to the coordinator, if any
+		String coordinatorURL = PropertyManager.getProperty("server.coordinatorURL");
+		if(!Strings.isNullOrEmpty(coordinatorURL)) {
+			String publicURL = PropertyManager.getProperty("server.publicURL");
+			CoordinatorClient.startRegistration(coordinatorURL, (!Strings.isNullOrEmpty(publicURL)) ? publicURL : "http://localhost:" + port,
+					PropertyManager.getProperty("coordinator.registrationToken"), CoordinatorClient.DEFAULT_REGISTRATION_SECONDS);
+		}
+		
 		server.join();
 		
 		
@@ -0,0 +1,536 @@
+/**
+ * Biomedical Abbreviation Miner (BioAB Miner)
+ *
+ */
+package es.imim.ibi.bioab.server;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.backingdata.gateutils.generic.PropertyManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Strings;
+
+import es.imim.ibi.bioab.exec.Deadline;
+import es.imim.ibi.bioab.exec.util.Histogram;
+
+/**
+ * Bounded work queue of the extraction requests received by the server, with two priority lanes:
+ *    - INTERACTIVE: short texts, answered synchronously to a user waiting for them
+ *    - BULK: PDFs (GROBID conversion), long texts and the items of the extraction jobs
+ *
+ * Requests are processed by a fixed number of worker threads, sized to the capacity of the pipeline. Each lane has its own
+ * bounded queue: when the queue of a lane is full, new requests of that lane are rejected immediately (see
+ * {@link #submit(Lane, Runnable)}), so that the server can answer 503 instead of letting clients time out.
+ *
+ * When a worker is free, the next request is chosen by weighted fair dispatch: up to server.lanes.interactiveWeight
+ * interactive requests are dispatched for each bulk request, if both lanes have requests waiting. At most
+ * server.lanes.bulkMaxConcurrency bulk requests are processed at the same time, so that the other workers are always
+ * available to the interactive lane and a large PDF does not delay the short texts queued behind it.
+ *
+ * Configuration properties:
+ *    - server.workers: number of worker threads (default 2)
+ *    - server.queueCapacity: maximum number of interactive requests waiting for a worker (default 32)
+ *    - server.lanes.bulkQueueCapacity: maximum number of bulk requests waiting for a worker (default 32)
+ *    - server.lanes.bulkMaxConcurrency: maximum number of bulk requests processed at the same time (default 1, at most
+ *      the number of workers)
+ *    - server.lanes.interactiveWeight: interactive requests dispatched for each bulk request (default 4)
+ *    - server.lanes.interactiveMaxChars: maximum size of the texts of the interactive lane (default 20000, see
+ *      {@link #getInteractiveMaxChars()})
+ *    - server.documentTimeoutSeconds: deadline of the extraction of each document, from the start of its processing
+ *      (default 120, 0 for no deadline, see {@link #newDocumentDeadline()})
+ *
+ * @author Francesco Ronzano
+ *
+ */
+public class ExtractionQueue {
+
+	private static Logger logger = LoggerFactory.getLogger(ExtractionQueue.class);
+
+	/**
+	 * Priority lanes of the queue
+	 */
+	public enum Lane {
+		INTERACTIVE,
+		BULK
+	}
+
+	public static final int DEFAULT_WORKERS = 2;
+	public static final int DEFAULT_QUEUE_CAPACITY = 32;
+	public static final int DEFAULT_BULK_QUEUE_CAPACITY = 32;
+	public static final int DEFAULT_BULK_MAX_CONCURRENCY = 1;
+	public static final int DEFAULT_INTERACTIVE_WEIGHT = 4;
+	public static final int DEFAULT_INTERACTIVE_MAX_CHARS = 20000;
+	public static final int DEFAULT_DOCUMENT_TIMEOUT_SECONDS = 120;
+
+	private static final ReentrantLock queueLock = new ReentrantLock();
+	private static final Condition requestAvailable = queueLock.newCondition();
+	private static final Condition bulkSpaceAvailable = queueLock.newCondition();
+
+	private static Map<Lane, Deque<QueuedRequest>> laneQueueMap = null;
+	private static Map<Lane, Integer> laneCapacityMap = new EnumMap<Lane, Integer>(Lane.class);
+	private static Map<Lane, Integer> laneRunningMap = new EnumMap<Lane, Integer>(Lane.class);
+	private static int workers = 0;
+	private static int bulkMaxConcurrency = 0;
+	private static int interactiveWeight = 0;
+	private static int interactiveDispatchedInRow = 0;
+	private static Object initSynch = new Object();
+
+	// Metrics, by lane
+	private static final Map<Lane, LaneMetrics> laneMetricsMap = new EnumMap<Lane, LaneMetrics>(Lane.class);
+	static {
+		for(Lane lane : Lane.values()) {
+			laneMetricsMap.put(lane, new LaneMetrics());
+			laneRunningMap.put(lane, 0);
+			laneCapacityMap.put(lane, 0);
+		}
+	}
+
+	private static class LaneMetrics {
+		private final LongAdder submittedCount = new LongAdder();
+		private final LongAdder rejectedCount = new LongAdder();
+		private final LongAdder completedCount = new LongAdder();
+		private final LongAdder totalProcessingMs = new LongAdder();
+		private final Histogram queueWait = new Histogram(Histogram.latencySecondsBounds);
+	}
+
+	private static class QueuedRequest {
+		private final Runnable request;
+		private final Lane lane;
+		private final long queuedNanos = System.nanoTime();
+
+		private QueuedRequest(Runnable request, Lane lane) {
+			this.request = request;
+			this.lane = lane;
+		}
+	}
+
+	/**
+	 * Create the worker threads and the queues of the lanes (if not already created)
+	 */
+	public static void init() {
+		synchronized(initSynch) {
+			if(laneQueueMap != null) {
+				return;
+			}
+
+			int workerCount = getIntProperty("server.workers", DEFAULT_WORKERS);
+			if(workerCount < 1) {
+				workerCount = DEFAULT_WORKERS;
+			}
+			int capacity = getIntProperty("server.queueCapacity", DEFAULT_QUEUE_CAPACITY);
+			if(capacity < 1) {
+				capacity = DEFAULT_QUEUE_CAPACITY;
+			}
+			int bulkCapacity = getIntProperty("server.lanes.bulkQueueCapacity", DEFAULT_BULK_QUEUE_CAPACITY);
+			if(bulkCapacity < 1) {
+				bulkCapacity = DEFAULT_BULK_QUEUE_CAPACITY;
+			}
+			int bulkConcurrency = getIntProperty("server.lanes.bulkMaxConcurrency", DEFAULT_BULK_MAX_CONCURRENCY);
+			bulkConcurrency = Math.max(1, Math.min(bulkConcurrency, workerCount));
+			int weight = getIntProperty("server.lanes.interactiveWeight", DEFAULT_INTERACTIVE_WEIGHT);
+			if(weight < 1) {
+				weight = DEFAULT_INTERACTIVE_WEIGHT;
+			}
+
+			queueLock.lock();
+			try {
+				Map<Lane, Deque<QueuedRequest>> queueMap = new EnumMap<Lane, Deque<QueuedRequest>>(Lane.class);
+				for(Lane lane : Lane.values()) {
+					queueMap.put(lane, new ArrayDeque<QueuedRequest>());
+				}
+				laneCapacityMap.put(Lane.INTERACTIVE, capacity);
+				laneCapacityMap.put(Lane.BULK, bulkCapacity);
+				workers = workerCount;
+				bulkMaxConcurrency = bulkConcurrency;
+				interactiveWeight = weight;
+				laneQueueMap = queueMap;
+			}
+			finally {
+				queueLock.unlock();
+			}
+
+			for(int i = 1; i <= workerCount; i++) {
+				Thread workerThread = new Thread(ExtractionQueue::work, "BioAB-extraction-worker-" + i);
+				workerThread.setDaemon(true);
+				workerThread.start();
+			}
+
+			logger.info("Extraction queue initialized with " + workerCount + " workers, interactive lane capacity " + capacity + ", bulk lane capacity " + bulkCapacity +
+					", bulk concurrency " + bulkConcurrency + ", interactive weight " + weight + ".");
+		}
+	}
+
+	/**
+	 * Queue the request in the lane
+	 *
+	 * @param lane
+	 * @param request
+	 * @throws RejectedExecutionException if the queue of the lane is full
+	 */
+	public static void submit(Lane lane, Runnable request) throws RejectedExecutionException {
+		init();
+
+		LaneMetrics laneMetrics = laneMetricsMap.get(lane);
+		queueLock.lock();
+		try {
+			Deque<QueuedRequest> laneQueue = laneQueueMap.get(lane);
+			if(laneQueue.size() >= laneCapacityMap.get(lane)) {
+				laneMetrics.rejectedCount.increment();
+				throw new RejectedExecutionException("The " + lane.name().toLowerCase() + " lane of the extraction queue is full");
+			}
+			laneQueue.addLast(new QueuedRequest(request, lane));
+			laneMetrics.submittedCount.increment();
+			requestAvailable.signal();
+		}
+		finally {
+			queueLock.unlock();
+		}
+	}
+
+	/**
+	 * Process the task in the lane and wait for its result. If the queue of the lane is full, wait for a free slot instead
+	 * of rejecting the task (bulk lane only, used by background jobs).
+	 *
+	 * @param lane
+	 * @param task
+	 * @return
+	 * @throws Exception the exception thrown by the task
+	 */
+	public static <T> T execute(Lane lane, Callable<T> task) throws Exception {
+		init();
+
+		FutureTask<T> futureTask = new FutureTask<T>(task);
+		while(true) {
+			try {
+				submit(lane, futureTask);
+				break;
+			}
+			catch(RejectedExecutionException e) {
+				if(lane != Lane.BULK) {
+					throw e;
+				}
+				queueLock.lock();
+				try {
+					while(laneQueueMap.get(lane).size() >= laneCapacityMap.get(lane)) {
+						bulkSpaceAvailable.await();
+					}
+				}
+				finally {
+					queueLock.unlock();
+				}
+			}
+		}
+
+		try {
+			return futureTask.get();
+		}
+		catch(ExecutionException e) {
+			if(e.getCause() instanceof Exception) {
+				throw (Exception) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Lane of a text of the given size: interactive if not greater than server.lanes.interactiveMaxChars, bulk otherwise
+	 *
+	 * @param textChars number of chars of the text, -1 if not known
+	 * @return
+	 */
+	public static Lane getTextLane(long textChars) {
+		return (textChars >= 0l && textChars <= getInteractiveMaxChars()) ? Lane.INTERACTIVE : Lane.BULK;
+	}
+
+	/**
+	 * Maximum size of the texts processed in the interactive lane (property server.lanes.interactiveMaxChars)
+	 *
+	 * @return
+	 */
+	public static int getInteractiveMaxChars() {
+		return getIntProperty("server.lanes.interactiveMaxChars", DEFAULT_INTERACTIVE_MAX_CHARS);
+	}
+
+	/**
+	 * Deadline of the extraction of a document starting now (property server.documentTimeoutSeconds): a document that
+	 * exceeds it gets partial results, instead of holding the pipeline for minutes
+	 *
+	 * @return null if no deadline is set
+	 */
+	public static Deadline newDocumentDeadline() {
+		return Deadline.afterSeconds(getIntProperty("server.documentTimeoutSeconds", DEFAULT_DOCUMENT_TIMEOUT_SECONDS));
+	}
+
+	/**
+	 * Worker loop: take the next request by weighted fair dispatch and process it
+	 */
+	private static void work() {
+		while(true) {
+			QueuedRequest queuedRequest = null;
+			try {
+				queuedRequest = next();
+			} catch (InterruptedException e) {
+				return;
+			}
+
+			LaneMetrics laneMetrics = laneMetricsMap.get(queuedRequest.lane);
+			laneMetrics.queueWait.observeNanos(System.nanoTime() - queuedRequest.queuedNanos);
+			long startProcessing = System.currentTimeMillis();
+			try {
+				queuedRequest.request.run();
+			}
+			catch(Throwable e) {
+				// Errors too (e.g. OutOfMemoryError, StackOverflowError on a pathological document): the worker must not die,
+				// otherwise the pool of workers shrinks silently
+				logger.error("Error while processing request - " + e.getMessage(), e);
+			}
+			finally {
+				laneMetrics.completedCount.increment();
+				laneMetrics.totalProcessingMs.add(System.currentTimeMillis() - startProcessing);
+
+				queueLock.lock();
+				try {
+					laneRunningMap.put(queuedRequest.lane, laneRunningMap.get(queuedRequest.lane) - 1);
+					if(queuedRequest.lane == Lane.BULK) {
+						// A bulk request waiting for the concurrency cap can be dispatched
+						requestAvailable.signal();
+					}
+				}
+				finally {
+					queueLock.unlock();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Wait for the next request to process: interactive requests are preferred, but after interactiveWeight interactive
+	 * requests in a row a waiting bulk request is dispatched; bulk requests are only dispatched below the bulk concurrency cap
+	 *
+	 * @return
+	 * @throws InterruptedException
+	 */
+	private static QueuedRequest next() throws InterruptedException {
+		queueLock.lock();
+		try {
+			while(true) {
+				Deque<QueuedRequest> interactiveQueue = laneQueueMap.get(Lane.INTERACTIVE);
+				Deque<QueuedRequest> bulkQueue = laneQueueMap.get(Lane.BULK);
+				boolean bulkDispatchable = !bulkQueue.isEmpty() && laneRunningMap.get(Lane.BULK) < bulkMaxConcurrency;
+
+				QueuedRequest queuedRequest = null;
+				if(!interactiveQueue.isEmpty() && (!bulkDispatchable || interactiveDispatchedInRow < interactiveWeight)) {
+					queuedRequest = interactiveQueue.pollFirst();
+					interactiveDispatchedInRow++;
+				}
+				else if(bulkDispatchable) {
+					queuedRequest = bulkQueue.pollFirst();
+					interactiveDispatchedInRow = 0;
+					bulkSpaceAvailable.signalAll();
+				}
+
+				if(queuedRequest != null) {
+					laneRunningMap.put(queuedRequest.lane, laneRunningMap.get(queuedRequest.lane) + 1);
+					return queuedRequest;
+				}
+
+				requestAvailable.await();
+			}
+		}
+		finally {
+			queueLock.unlock();
+		}
+	}
+
+	/**
+	 * Number of requests waiting for a worker, in all the lanes
+	 *
+	 * @return
+	 */
+	public static int getQueueDepth() {
+		int depth = 0;
+		for(Lane lane : Lane.values()) {
+			depth += getQueueDepth(lane);
+		}
+		return depth;
+	}
+
+	/**
+	 * Number of requests of the lane waiting for a worker
+	 *
+	 * @param lane
+	 * @return
+	 */
+	public static int getQueueDepth(Lane lane) {
+		queueLock.lock();
+		try {
+			return (laneQueueMap != null) ? laneQueueMap.get(lane).size() : 0;
+		}
+		finally {
+			queueLock.unlock();
+		}
+	}
+
+	/**
+	 * Capacity of the queue of the interactive lane
+	 *
+	 * @return
+	 */
+	public static int getQueueCapacity() {
+		return getQueueCapacity(Lane.INTERACTIVE);
+	}
+
+	public static int getQueueCapacity(Lane lane) {
+		queueLock.lock();
+		try {
+			return laneCapacityMap.get(lane);
+		}
+		finally {
+			queueLock.unlock();
+		}
+	}
+
+	/**
+	 * Number of requests being processed, in all the lanes
+	 *
+	 * @return
+	 */
+	public static int getActiveCount() {
+		int active = 0;
+		for(Lane lane : Lane.values()) {
+			active += getActiveCount(lane);
+		}
+		return active;
+	}
+
+	/**
+	 * Number of requests of the lane being processed
+	 *
+	 * @param lane
+	 * @return
+	 */
+	public static int getActiveCount(Lane lane) {
+		queueLock.lock();
+		try {
+			return laneRunningMap.get(lane);
+		}
+		finally {
+			queueLock.unlock();
+		}
+	}
+
+	public static int getWorkers() {
+		return workers;
+	}
+
+	public static int getBulkMaxConcurrency() {
+		return bulkMaxConcurrency;
+	}
+
+	public static long getSubmittedCount() {
+		long count = 0l;
+		for(Lane lane : Lane.values()) {
+			count += getSubmittedCount(lane);
+		}
+		return count;
+	}
+
+	public static long getSubmittedCount(Lane lane) {
+		return laneMetricsMap.get(lane).submittedCount.sum();
+	}
+
+	public static long getRejectedCount() {
+		long count = 0l;
+		for(Lane lane : Lane.values()) {
+			count += getRejectedCount(lane);
+		}
+		return count;
+	}
+
+	public static long getRejectedCount(Lane lane) {
+		return laneMetricsMap.get(lane).rejectedCount.sum();
+	}
+
+	public static long getCompletedCount() {
+		long count = 0l;
+		for(Lane lane : Lane.values()) {
+			count += getCompletedCount(lane);
+		}
+		return count;
+	}
+
+	public static long getCompletedCount(Lane lane) {
+		return laneMetricsMap.get(lane).completedCount.sum();
+	}
+
+	/**
+	 * Time waited in queue by the requests of the lane, in seconds
+	 *
+	 * @param lane
+	 * @return
+	 */
+	public static Histogram getQueueWait(Lane lane) {
+		return laneMetricsMap.get(lane).queueWait;
+	}
+
+	/**
+	 * Estimate of the seconds needed to process the requests queued in all the lanes (the maximum of the lanes)
+	 *
+	 * @return
+	 */
+	public static long getRetryAfterSeconds() {
+		long retryAfterSeconds = 1l;
+		for(Lane lane : Lane.values()) {
+			retryAfterSeconds = Math.max(retryAfterSeconds, getRetryAfterSeconds(lane));
+		}
+		return retryAfterSeconds;
+	}
+
+	/**
+	 * Estimate of the seconds needed to process the requests queued in the lane, given the average processing time of the
+	 * requests of the lane and the number of workers available to the lane (at least 1 second)
+	 *
+	 * @param lane
+	 * @return
+	 */
+	public static long getRetryAfterSeconds(Lane lane) {
+		LaneMetrics laneMetrics = laneMetricsMap.get(lane);
+		long completed = laneMetrics.completedCount.sum();
+		long averageProcessingMs = (completed > 0l) ? (laneMetrics.totalProcessingMs.sum() / completed) : 1000l;
+		int laneWorkers = Math.max(1, (lane == Lane.BULK) ? bulkMaxConcurrency : workers);
+		long estimateMs = ((long) (getQueueDepth(lane) + getActiveCount(lane)) * averageProcessingMs) / laneWorkers;
+		return Math.max(1l, (estimateMs + 999l) / 1000l);
+	}
+
+	public static String getStatus() {
+		return "Extraction queue: " + getActiveCount() + " / " + workers + " workers busy (" + getActiveCount(Lane.BULK) + " / " + bulkMaxConcurrency + " bulk), " +
+				getQueueDepth(Lane.INTERACTIVE) + " / " + getQueueCapacity(Lane.INTERACTIVE) + " interactive and " + getQueueDepth(Lane.BULK) + " / " + getQueueCapacity(Lane.BULK) + " bulk requests in queue, "
+				+ getSubmittedCount() + " submitted, " + getCompletedCount() + " completed, " + getRejectedCount() + " rejected.";
+	}
+
+	private static int getIntProperty(String propertyName, int defaultValue) {
+		try {
+			String propertyValue = PropertyManager.getProperty(propertyName);
+			if(!Strings.isNullOrEmpty(propertyValue)) {
+				return Integer.valueOf(propertyValue.trim());
+			}
+		}
+		catch(Exception e) {
+			logger.debug("Property " + propertyName + " not set or invalid, using default value " + defaultValue);
+		}
+		return defaultValue;
+	}
+
+}
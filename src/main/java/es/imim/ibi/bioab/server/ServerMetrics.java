@@ -0,0 +1,200 @@
+/**
+ * Biomedical Abbreviation Miner (BioAB Miner)
+ *
+ */
+package es.imim.ibi.bioab.server;
+
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToDoubleFunction;
+
+import es.imim.ibi.bioab.exec.BioABmetrics;
+import es.imim.ibi.bioab.exec.pdf.GROBIDconversionException;
+import es.imim.ibi.bioab.exec.pdf.GROBIDenginePool;
+import es.imim.ibi.bioab.exec.pdf.GROBIDloader;
+import es.imim.ibi.bioab.exec.pdf.GROBIDteiCache;
+import es.imim.ibi.bioab.exec.util.Histogram;
+import es.imim.ibi.bioab.server.job.ExtractionJobManager;
+
+/**
+ * Metrics of the server, exposed in the Prometheus text format (see {@link #write(PrintWriter)}): requests by endpoint,
+ * input kind (text, pdf, zip) and outcome, request latency, extraction queue lanes, GROBID engine pool, GROBID TEI cache and failures,
+ * extraction jobs, pipeline stage latency and document size (see {@link BioABmetrics}) and JVM heap.
+ *
+ * @author Francesco Ronzano
+ *
+ */
+public class ServerMetrics {
+
+	public static final String contentType = "text/plain; version=0.0.4; charset=utf-8";
+
+	// Key: endpoint, input kind and outcome separated by tab
+	private static final Map<String, LongAdder> requestCountMap = new ConcurrentHashMap<String, LongAdder>();
+	// Key: endpoint and input kind separated by tab
+	private static final Map<String, Histogram> requestLatencyMap = new ConcurrentHashMap<String, Histogram>();
+
+	/**
+	 * Record a request
+	 *
+	 * @param endpoint path of the endpoint
+	 * @param inputKind text, pdf, zip or unknown
+	 * @param outcome processed, failed, accepted (jobs), invalid, rejected (queue full), expired (waited too long in queue) or timeout (no answer from the worker)
+	 * @param startNanos value of System.nanoTime() when the request has been received, or -1 to not record the latency
+	 */
+	public static void recordRequest(String endpoint, String inputKind, String outcome, long startNanos) {
+		requestCountMap.computeIfAbsent(endpoint + "\t" + inputKind + "\t" + outcome, (String key) -> new LongAdder()).increment();
+		if(startNanos >= 0l) {
+			requestLatencyMap.computeIfAbsent(endpoint + "\t" + inputKind, (String key) -> new Histogram(Histogram.latencySecondsBounds)).observeNanos(System.nanoTime() - startNanos);
+		}
+	}
+
+	/**
+	 * Write all the metrics in the Prometheus text format
+	 *
+	 * @param out
+	 */
+	public static void write(PrintWriter out) {
+
+		// Requests
+		writeHeader(out, "bioab_requests_total", "counter", "Requests received, by endpoint, input kind and outcome.");
+		for(Map.Entry<String, LongAdder> requestCount : new TreeMap<String, LongAdder>(requestCountMap).entrySet()) {
+			String[] keyElements = requestCount.getKey().split("\t", -1);
+			out.println("bioab_requests_total{endpoint=\"" + escape(keyElements[0]) + "\",kind=\"" + escape(keyElements[1]) + "\",outcome=\"" + escape(keyElements[2]) + "\"} " + requestCount.getValue().sum());
+		}
+
+		writeHeader(out, "bioab_request_duration_seconds", "histogram", "Time from the receipt of a request to the end of its processing, queue wait included.");
+		for(Map.Entry<String, Histogram> requestLatency : new TreeMap<String, Histogram>(requestLatencyMap).entrySet()) {
+			String[] keyElements = requestLatency.getKey().split("\t", -1);
+			writeHistogram(out, "bioab_request_duration_seconds", "endpoint=\"" + escape(keyElements[0]) + "\",kind=\"" + escape(keyElements[1]) + "\"", requestLatency.getValue());
+		}
+
+		// Pipeline
+		writeHeader(out, "bioab_stage_duration_seconds", "histogram", "Execution time of the stages of the extraction pipeline.");
+		for(BioABmetrics.Stage stage : BioABmetrics.Stage.values()) {
+			writeHistogram(out, "bioab_stage_duration_seconds", "stage=\"" + stage.name().toLowerCase() + "\"", BioABmetrics.getStageLatency(stage));
+		}
+
+		writeHeader(out, "bioab_stage_timeouts_total", "counter", "Documents whose deadline expired during the stage (partial results).");
+		for(BioABmetrics.Stage stage : BioABmetrics.Stage.values()) {
+			out.println("bioab_stage_timeouts_total{stage=\"" + stage.name().toLowerCase() + "\"} " + format(BioABmetrics.getTimeoutCount(stage)));
+		}
+
+		writeHeader(out, "bioab_document_chars", "histogram", "Number of chars of the analyzed documents.");
+		writeHistogram(out, "bioab_document_chars", null, BioABmetrics.getDocumentChars());
+
+		writeHeader(out, "bioab_pdf_bytes", "histogram", "Size of the PDFs loaded.");
+		writeHistogram(out, "bioab_pdf_bytes", null, BioABmetrics.getPDFbytes());
+
+		// Extraction queue, by lane
+		writeGauge(out, "bioab_queue_workers", "Workers of the extraction queue.", ExtractionQueue.getWorkers());
+		writeGauge(out, "bioab_queue_bulk_max_concurrency", "Maximum number of bulk requests processed at the same time.", ExtractionQueue.getBulkMaxConcurrency());
+		writeLaneMetric(out, "bioab_queue_depth", "gauge", "Requests waiting for a worker of the extraction queue.", (ExtractionQueue.Lane lane) -> ExtractionQueue.getQueueDepth(lane));
+		writeLaneMetric(out, "bioab_queue_capacity", "gauge", "Maximum number of requests waiting for a worker.", (ExtractionQueue.Lane lane) -> ExtractionQueue.getQueueCapacity(lane));
+		writeLaneMetric(out, "bioab_queue_workers_busy", "gauge", "Workers of the extraction queue processing a request.", (ExtractionQueue.Lane lane) -> ExtractionQueue.getActiveCount(lane));
+		writeLaneMetric(out, "bioab_queue_submitted_total", "counter", "Requests queued.", (ExtractionQueue.Lane lane) -> ExtractionQueue.getSubmittedCount(lane));
+		writeLaneMetric(out, "bioab_queue_rejected_total", "counter", "Requests rejected because the queue was full.", (ExtractionQueue.Lane lane) -> ExtractionQueue.getRejectedCount(lane));
+		writeLaneMetric(out, "bioab_queue_completed_total", "counter", "Requests processed by the workers.", (ExtractionQueue.Lane lane) -> ExtractionQueue.getCompletedCount(lane));
+		writeHeader(out, "bioab_queue_wait_seconds", "histogram", "Time waited in queue for a worker.");
+		for(ExtractionQueue.Lane lane : ExtractionQueue.Lane.values()) {
+			writeHistogram(out, "bioab_queue_wait_seconds", "lane=\"" + lane.name().toLowerCase() + "\"", ExtractionQueue.getQueueWait(lane));
+		}
+
+		// GROBID
+		writeGauge(out, "bioab_grobid_engines", "GROBID engines of the pool.", GROBIDenginePool.getSize());
+		writeGauge(out, "bioab_grobid_engines_available", "GROBID engines not checked out.", GROBIDenginePool.getAvailable());
+		writeGauge(out, "bioab_grobid_conversions_waiting", "PDF conversions waiting for a GROBID engine.", GROBIDenginePool.getWaiting());
+		writeCounter(out, "bioab_grobid_checkouts_total", "GROBID engine checkouts.", GROBIDenginePool.getCheckoutCount());
+		writeCounter(out, "bioab_grobid_checkout_timeouts_total", "GROBID engine checkouts timed out.", GROBIDenginePool.getCheckoutTimeoutCount());
+		writeCounter(out, "bioab_grobid_engines_abandoned_total", "GROBID engines abandoned after a cancelled conversion.", GROBIDenginePool.getAbandonedCount());
+		writeGauge(out, "bioab_grobid_abandoned_running", "Cancelled GROBID conversions still running on their abandoned engine.", GROBIDenginePool.getRunningAbandoned());
+		writeCounter(out, "bioab_grobid_checkout_wait_seconds_total", "Total time waited for a GROBID engine.", GROBIDenginePool.getTotalQueueWaitMs() / 1000d);
+
+		writeHeader(out, "bioab_grobid_failures_total", "counter", "PDF conversions failed, by reason.");
+		for(GROBIDconversionException.Reason reason : GROBIDconversionException.Reason.values()) {
+			out.println("bioab_grobid_failures_total{reason=\"" + reason.name().toLowerCase() + "\"} " + GROBIDloader.getFailureCount(reason));
+		}
+
+		writeCounter(out, "bioab_tei_cache_hits_total", "GROBID TEI cache hits.", GROBIDteiCache.getHitCount());
+		writeCounter(out, "bioab_tei_cache_misses_total", "GROBID TEI cache misses.", GROBIDteiCache.getMissCount());
+		writeCounter(out, "bioab_tei_cache_evictions_total", "GROBID TEI cache evictions.", GROBIDteiCache.getEvictionCount());
+		writeGauge(out, "bioab_tei_cache_entries", "Entries of the GROBID TEI cache.", GROBIDteiCache.getSize());
+		writeGauge(out, "bioab_tei_cache_bytes", "Size of the GROBID TEI cache.", GROBIDteiCache.getSizeBytes());
+
+		// Jobs
+		writeGauge(out, "bioab_jobs_pending", "Extraction jobs queued or running.", ExtractionJobManager.getPendingJobCount());
+
+		// Warm-up
+		writeGauge(out, "bioab_ready", "1 if the warm-up of the server is completed.", (ServerWarmup.isReady()) ? 1 : 0);
+		writeGauge(out, "bioab_warmup_last_iteration_seconds", "Duration of the last warm-up iteration.", ServerWarmup.getLastIterationMs() / 1000d);
+
+		// JVM
+		MemoryUsage heapUsage = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+		writeGauge(out, "bioab_jvm_heap_used_bytes", "Heap used.", heapUsage.getUsed());
+		writeGauge(out, "bioab_jvm_heap_committed_bytes", "Heap committed.", heapUsage.getCommitted());
+		writeGauge(out, "bioab_jvm_heap_max_bytes", "Maximum heap size.", heapUsage.getMax());
+
+		out.flush();
+	}
+
+	private static void writeLaneMetric(PrintWriter out, String name, String type, String help, ToDoubleFunction<ExtractionQueue.Lane> laneValue) {
+		writeHeader(out, name, type, help);
+		for(ExtractionQueue.Lane lane : ExtractionQueue.Lane.values()) {
+			out.println(name + "{lane=\"" + lane.name().toLowerCase() + "\"} " + format(laneValue.applyAsDouble(lane)));
+		}
+	}
+
+	private static void writeHeader(PrintWriter out, String name, String type, String help) {
+		out.println("# HELP " + name + " " + help);
+		out.println("# TYPE " + name + " " + type);
+	}
+
+	private static void writeGauge(PrintWriter out, String name, String help, double value) {
+		writeHeader(out, name, "gauge", help);
+		out.println(name + " " + format(value));
+	}
+
+	private static void writeCounter(PrintWriter out, String name, String help, double value) {
+		writeHeader(out, name, "counter", help);
+		out.println(name + " " + format(value));
+	}
+
+	/**
+	 * Write the cumulative buckets, sum and count of the histogram
+	 *
+	 * @param out
+	 * @param name
+	 * @param labels labels of the histogram (name="value" pairs separated by comma) or null
+	 * @param histogram
+	 */
+	private static void writeHistogram(PrintWriter out, String name, String labels, Histogram histogram) {
+		String labelPrefix = (labels != null) ? labels + "," : "";
+		double[] upperBounds = histogram.getUpperBounds();
+		long[] bucketCounts = histogram.getBucketCounts();
+		long cumulativeCount = 0l;
+		for(int i = 0; i < bucketCounts.length; i++) {
+			cumulativeCount += bucketCounts[i];
+			String upperBound = (i < upperBounds.length) ? format(upperBounds[i]) : "+Inf";
+			out.println(name + "_bucket{" + labelPrefix + "le=\"" + upperBound + "\"} " + cumulativeCount);
+		}
+		String labelSet = (labels != null) ? "{" + labels + "}" : "";
+		out.println(name + "_sum" + labelSet + " " + format(histogram.getSum()));
+		out.println(name + "_count" + labelSet + " " + cumulativeCount);
+	}
+
+	private static String format(double value) {
+		if(value == Math.rint(value) && !Double.isInfinite(value) && Math.abs(value) < 1e15d) {
+			return String.valueOf((long) value);
+		}
+		return String.valueOf(value);
+	}
+
+	private static String escape(String labelValue) {
+		return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+
+}
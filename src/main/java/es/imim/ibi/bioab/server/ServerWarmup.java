@@ -0,0 +1,215 @@
+/**
+ * Biomedical Abbreviation Miner (BioAB Miner)
+ *
+ */
+package es.imim.ibi.bioab.server;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.backingdata.gateutils.generic.PropertyManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Strings;
+
+import es.imim.ibi.bioab.exec.BioABminer;
+import es.imim.ibi.bioab.exec.batch.BioABbatchRunner;
+import es.imim.ibi.bioab.exec.pdf.GROBIDloader;
+import gate.Document;
+import gate.Factory;
+
+/**
+ * Warm-up of the extraction pipeline: before the server is reported as ready (see {@link #isReady()}), a corpus of
+ * representative texts (and optionally PDFs) is processed by all the stages (Freeling, MATE, abbreviation spotter, type
+ * classifier and long form spotter, GROBID for PDFs) a number of times, so that the first requests do not pay class
+ * loading, model loading and JIT compilation.
+ *
+ * The default corpus is made of the Spanish clinical texts bundled in the warmup resource folder.
+ *
+ * Configuration properties:
+ *    - server.warmup.iterations: number of times the corpus is processed (default 3, 0 to disable the warm-up)
+ *    - server.warmup.folder: folder with the .txt (UTF-8) and .pdf files of the warm-up corpus, instead of the bundled texts
+ *    - server.warmup.pdf: full path of a PDF to add to the warm-up corpus
+ *
+ * @author Francesco Ronzano
+ *
+ */
+public class ServerWarmup {
+
+	private static Logger logger = LoggerFactory.getLogger(ServerWarmup.class);
+
+	public static final int DEFAULT_ITERATIONS = 3;
+	public static final String warmupResourceFolder = "warmup/";
+
+	private static volatile boolean ready = false;
+	private static volatile int iterations = 0;
+	private static volatile int completedIterations = 0;
+	private static volatile long lastIterationMs = -1l;
+
+	/**
+	 * Process the warm-up corpus and set the server as ready. Errors while processing a document are logged and do not
+	 * stop the warm-up.
+	 */
+	public static void run() {
+		iterations = getIntProperty("server.warmup.iterations", DEFAULT_ITERATIONS);
+
+		List<String> texts = new ArrayList<String>();
+		List<File> PDFs = new ArrayList<File>();
+		try {
+			loadCorpus(texts, PDFs);
+		} catch (IOException e) {
+			logger.error("Impossible to load the warm-up corpus - " + e.getMessage());
+		}
+
+		if(iterations > 0 && (texts.size() > 0 || PDFs.size() > 0)) {
+			logger.info("Warming up: processing " + texts.size() + " texts and " + PDFs.size() + " PDFs " + iterations + " times...");
+			long startWarmup = System.currentTimeMillis();
+			for(int i = 0; i < iterations; i++) {
+				long startIteration = System.currentTimeMillis();
+				for(String text : texts) {
+					process(BioABminer.getDocumentFormText(text), "text");
+				}
+				for(File PDF : PDFs) {
+					try {
+						process(GROBIDloader.parsePDF(PDF), PDF.getName());
+					} catch (Exception e) {
+						logger.warn("Warm-up: impossible to load the PDF " + PDF.getAbsolutePath() + " - " + e.getMessage());
+					}
+				}
+				lastIterationMs = System.currentTimeMillis() - startIteration;
+				completedIterations = i + 1;
+				logger.info("Warm-up iteration " + (i + 1) + " / " + iterations + " completed in " + lastIterationMs + " ms.");
+			}
+			logger.info("Warm-up completed in " + (System.currentTimeMillis() - startWarmup) + " ms.");
+		}
+		else {
+			logger.info("Warm-up disabled or empty warm-up corpus.");
+		}
+
+		ready = true;
+	}
+
+	private static void process(Document doc, String docDescription) {
+		if(doc == null) {
+			return;
+		}
+		try {
+			BioABminer.extractNLPfeatures(doc);
+			BioABminer.extractAbbreviations(doc);
+			BioABminer.getAbbreviationList(doc);
+		}
+		catch(Exception e) {
+			logger.warn("Warm-up: error while processing " + docDescription + " - " + e.getMessage());
+		}
+		finally {
+			Factory.deleteResource(doc);
+		}
+	}
+
+	/**
+	 * Load the texts and the PDFs of the warm-up corpus
+	 *
+	 * @param texts
+	 * @param PDFs
+	 * @throws IOException
+	 */
+	private static void loadCorpus(List<String> texts, List<File> PDFs) throws IOException {
+		String warmupFolder = getProperty("server.warmup.folder");
+		if(!Strings.isNullOrEmpty(warmupFolder)) {
+			for(File warmupFile : BioABbatchRunner.listInputFiles(new File(warmupFolder))) {
+				if(warmupFile.getName().toLowerCase().endsWith(".pdf")) {
+					PDFs.add(warmupFile);
+				}
+				else {
+					texts.add(new String(Files.readAllBytes(warmupFile.toPath()), StandardCharsets.UTF_8));
+				}
+			}
+		}
+		else {
+			for(String textFileName : readResourceLines(warmupResourceFolder + "index.txt")) {
+				if(!textFileName.trim().isEmpty() && !textFileName.startsWith("#")) {
+					texts.add(String.join("\n", readResourceLines(warmupResourceFolder + textFileName.trim())));
+				}
+			}
+		}
+
+		String warmupPDF = getProperty("server.warmup.pdf");
+		if(!Strings.isNullOrEmpty(warmupPDF)) {
+			File warmupPDFfile = new File(warmupPDF);
+			if(warmupPDFfile.isFile()) {
+				PDFs.add(warmupPDFfile);
+			}
+			else {
+				logger.warn("Warm-up PDF " + warmupPDF + " not found.");
+			}
+		}
+	}
+
+	private static List<String> readResourceLines(String resourcePath) throws IOException {
+		InputStream resourceStream = ServerWarmup.class.getClassLoader().getResourceAsStream(resourcePath);
+		if(resourceStream == null) {
+			throw new IOException("Resource " + resourcePath + " not found");
+		}
+		try (BufferedReader resourceReader = new BufferedReader(new InputStreamReader(resourceStream, StandardCharsets.UTF_8))) {
+			return resourceReader.lines().collect(Collectors.toList());
+		}
+	}
+
+	/**
+	 * True when the warm-up is completed
+	 *
+	 * @return
+	 */
+	public static boolean isReady() {
+		return ready;
+	}
+
+	public static int getIterations() {
+		return iterations;
+	}
+
+	public static int getCompletedIterations() {
+		return completedIterations;
+	}
+
+	/**
+	 * Duration of the last warm-up iteration (-1 if no iteration has been completed)
+	 *
+	 * @return
+	 */
+	public static long getLastIterationMs() {
+		return lastIterationMs;
+	}
+
+	private static String getProperty(String propertyName) {
+		try {
+			return PropertyManager.getProperty(propertyName);
+		}
+		catch(Exception e) {
+			return null;
+		}
+	}
+
+	private static int getIntProperty(String propertyName, int defaultValue) {
+		String propertyValue = getProperty(propertyName);
+		if(!Strings.isNullOrEmpty(propertyValue)) {
+			try {
+				return Integer.valueOf(propertyValue.trim());
+			}
+			catch(NumberFormatException e) {
+				logger.warn("Invalid value of property " + propertyName + ", using default value " + defaultValue);
+			}
+		}
+		return defaultValue;
+	}
+
+}
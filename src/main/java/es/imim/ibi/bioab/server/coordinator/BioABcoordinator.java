@@ -0,0 +1,103 @@
+/**
+ * Biomedical Abbreviation Miner (BioAB Miner)
+ *
+ */
+package es.imim.ibi.bioab.server.coordinator;
+
+import org.backingdata.gateutils.generic.PropertyManager;
+import org.eclipse.jetty.server.Connector;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Strings;
+
+import es.imim.ibi.bioab.server.servlet.CoordinatorProxyServlet;
+import es.imim.ibi.bioab.server.servlet.CoordinatorServlet;
+import es.imim.ibi.bioab.server.servlet.MetricsServlet;
+
+/**
+ * Coordinator runner: a Jetty server that does not load the extraction pipeline, but forwards the extraction requests to
+ * a set of worker processes (BioABserver), each one running its own pipeline, possibly on other machines (see
+ * {@link CoordinatorProxyServlet} and {@link WorkerRegistry}).
+ *
+ * The web form (/bioabminer/home, /bioabminer/fileUpload, css and js) and the JSON API (/bioabminer/api/extract) are
+ * forwarded to the workers. The job API is not forwarded, since jobs are stored by the worker that created them: jobs
+ * have to be sent to a worker directly.
+ *
+ * To test on a single machine, start the workers on different ports, listing them in coordinator.workers or setting
+ * server.coordinatorURL in their property file (self-registration requires coordinator.registrationToken, in the property
+ * files of both the coordinator and the workers, or coordinator.allowedWorkerHosts in the property file of the coordinator):
+ *    BioABserver (property file) 8182
+ *    BioABserver (property file) 8183
+ *    BioABcoordinator (property file) 8180
+ *
+ * Usage: BioABcoordinator (full path of the BioAB Miner property file) [port] (default: property coordinator.port or 8180)
+ *
+ * @author Francesco Ronzano
+ *
+ */
+public class BioABcoordinator {
+
+	private static Logger logger = LoggerFactory.getLogger(BioABcoordinator.class);
+
+	public static final int DEFAULT_PORT = 8180;
+
+	public static void main(String[] args) throws Exception {
+		if(args == null || args.length < 1) {
+			throw new IllegalArgumentException("Usage: BioABcoordinator <property file> [port]");
+		}
+
+		PropertyManager.setPropertyFilePath(args[0]);
+
+		int port = DEFAULT_PORT;
+		if(args.length > 1) {
+			port = Integer.valueOf(args[1]);
+		}
+		else {
+			try {
+				String portProperty = PropertyManager.getProperty("coordinator.port");
+				if(!Strings.isNullOrEmpty(portProperty)) {
+					port = Integer.valueOf(portProperty.trim());
+				}
+			}
+			catch(Exception e) {
+				/* Do nothing */
+			}
+		}
+
+		WorkerRegistry.init();
+
+		Server server = new Server();
+
+		ServerConnector connector = new ServerConnector(server);
+		connector.setPort(port);
+		server.setConnectors(new Connector[] { connector });
+		connector.setIdleTimeout(90000);
+
+		ServletContextHandler context = new ServletContextHandler();
+		context.setContextPath("/");
+
+		// Forwarded to the workers
+		context.addServlet(CoordinatorProxyServlet.class, "/bioabminer/api/extract");
+		context.addServlet(CoordinatorProxyServlet.class, "/bioabminer/fileUpload");
+		context.addServlet(CoordinatorProxyServlet.class, "/bioabminer/home");
+		context.addServlet(CoordinatorProxyServlet.class, "/bioabminer/css/*");
+		context.addServlet(CoordinatorProxyServlet.class, "/bioabminer/js/*");
+
+		// Worker registration and status, readiness probe
+		context.addServlet(CoordinatorServlet.class, CoordinatorServlet.coordinatorPath + "/*");
+		context.addServlet(CoordinatorServlet.class, "/ready");
+
+		// Prometheus metrics (requests forwarded by the coordinator)
+		context.addServlet(MetricsServlet.class, "/bioabminer/metrics");
+
+		server.setHandler(context);
+		server.start();
+		logger.info("BioAB Miner coordinator listening on port " + port + ".");
+		server.join();
+	}
+
+}
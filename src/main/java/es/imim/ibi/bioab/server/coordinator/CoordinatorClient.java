@@ -0,0 +1,96 @@
+/**
+ * Biomedical Abbreviation Miner (BioAB Miner)
+ *
+ */
+package es.imim.ibi.bioab.server.coordinator;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import es.imim.ibi.bioab.server.servlet.CoordinatorServlet;
+
+/**
+ * Registration of a worker to its coordinator: the worker registers itself periodically, so that a restarted coordinator
+ * learns its workers again (see {@link WorkerRegistry#register(String, String)}). The registration token, if any, is sent in the
+ * header {@link WorkerRegistry#registrationTokenHeader}.
+ *
+ * @author Francesco Ronzano
+ *
+ */
+public class CoordinatorClient {
+
+	private static Logger logger = LoggerFactory.getLogger(CoordinatorClient.class);
+
+	public static final long DEFAULT_REGISTRATION_SECONDS = 30l;
+
+	private static ScheduledExecutorService registrationExecutor = null;
+
+	/**
+	 * Register the worker to the coordinator now and every registrationSeconds
+	 *
+	 * @param coordinatorURL base URL of the coordinator (e.g. http://localhost:8180)
+	 * @param workerURL base URL of this worker, as reachable from the coordinator (e.g. http://localhost:8182)
+	 * @param registrationToken shared secret of the coordinator (property coordinator.registrationToken), null if not required
+	 * @param registrationSeconds
+	 */
+	public static synchronized void startRegistration(String coordinatorURL, String workerURL, String registrationToken, long registrationSeconds) {
+		if(registrationExecutor != null) {
+			return;
+		}
+
+		String registrationURL = coordinatorURL.replaceAll("/+$", "") + CoordinatorServlet.registerPath;
+		registrationExecutor = Executors.newSingleThreadScheduledExecutor((Runnable runnable) -> {
+			Thread registrationThread = new Thread(runnable, "BioAB-coordinator-registration");
+			registrationThread.setDaemon(true);
+			return registrationThread;
+		});
+		registrationExecutor.scheduleWithFixedDelay(new Runnable() {
+			private boolean registered = false;
+
+			@Override
+			public void run() {
+				try {
+					register(registrationURL, workerURL, registrationToken);
+					if(!registered) {
+						logger.info("Worker " + workerURL + " registered to the coordinator " + coordinatorURL + ".");
+					}
+					registered = true;
+				}
+				catch(Exception e) {
+					if(registered) {
+						logger.warn("Impossible to register the worker to the coordinator " + coordinatorURL + " - " + e.getMessage());
+					}
+					registered = false;
+				}
+			}
+		}, 0l, Math.max(1l, registrationSeconds), TimeUnit.SECONDS);
+	}
+
+	private static void register(String registrationURL, String workerURL, String registrationToken) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(registrationURL + "?url=" + URLEncoder.encode(workerURL, "UTF-8")).openConnection();
+		try {
+			connection.setRequestMethod("POST");
+			if(registrationToken != null && !registrationToken.trim().isEmpty()) {
+				connection.setRequestProperty(WorkerRegistry.registrationTokenHeader, registrationToken.trim());
+			}
+			connection.setConnectTimeout(5000);
+			connection.setReadTimeout(5000);
+			int status = connection.getResponseCode();
+			if(status != HttpURLConnection.HTTP_OK) {
+				throw new IOException("the coordinator answered " + status);
+			}
+		}
+		finally {
+			connection.disconnect();
+		}
+	}
+
+}
@@ -0,0 +1,130 @@
+/**
+ * Biomedical Abbreviation Miner (BioAB Miner)
+ *
+ */
+package es.imim.ibi.bioab.server.coordinator;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Extraction worker registered to the coordinator: a BioABserver process, identified by its base URL (e.g. http://localhost:8182).
+ *
+ * The load of the worker is the number of requests dispatched to it by the coordinator and not answered yet, plus the requests
+ * waiting in its extraction queue as reported by the last health check, divided by the number of pipeline workers of the process.
+ *
+ * @author Francesco Ronzano
+ *
+ */
+public class WorkerNode {
+
+	private final String url;
+
+	private final AtomicInteger inFlight = new AtomicInteger(0);
+	private final LongAdder dispatchedCount = new LongAdder();
+	private final LongAdder failedCount = new LongAdder();
+
+	// State reported by the last health check
+	private volatile boolean healthy = false;
+	private volatile int consecutiveFailures = 0;
+	private volatile int reportedWorkers = 1;
+	private volatile int reportedQueued = 0;
+	private volatile long lastCheck = 0l;
+	private volatile long lastSeen = 0l;
+
+	WorkerNode(String url) {
+		this.url = url;
+	}
+
+	public String getUrl() {
+		return url;
+	}
+
+	public boolean isHealthy() {
+		return healthy;
+	}
+
+	public int getInFlight() {
+		return inFlight.get();
+	}
+
+	public int getReportedWorkers() {
+		return reportedWorkers;
+	}
+
+	public int getReportedQueued() {
+		return reportedQueued;
+	}
+
+	public int getConsecutiveFailures() {
+		return consecutiveFailures;
+	}
+
+	public long getDispatchedCount() {
+		return dispatchedCount.sum();
+	}
+
+	public long getFailedCount() {
+		return failedCount.sum();
+	}
+
+	public long getLastCheck() {
+		return lastCheck;
+	}
+
+	/**
+	 * Time of the last successful health check or registration (0 if never seen)
+	 *
+	 * @return
+	 */
+	public long getLastSeen() {
+		return lastSeen;
+	}
+
+	/**
+	 * Load of the worker: requests in flight and queued per pipeline worker
+	 *
+	 * @return
+	 */
+	public double getLoad() {
+		return (inFlight.get() + reportedQueued) / (double) Math.max(1, reportedWorkers);
+	}
+
+	public void dispatched() {
+		inFlight.incrementAndGet();
+		dispatchedCount.increment();
+	}
+
+	public void answered() {
+		inFlight.decrementAndGet();
+	}
+
+	/**
+	 * The worker failed to answer a request (connection error or unavailable): it is not used until the next successful health check
+	 */
+	public void failed() {
+		failedCount.increment();
+		consecutiveFailures++;
+		healthy = false;
+	}
+
+	void checked(boolean ready, int workers, int queued) {
+		lastCheck = System.currentTimeMillis();
+		lastSeen = lastCheck;
+		consecutiveFailures = 0;
+		reportedWorkers = Math.max(1, workers);
+		reportedQueued = Math.max(0, queued);
+		healthy = ready;
+	}
+
+	void checkFailed() {
+		lastCheck = System.currentTimeMillis();
+		consecutiveFailures++;
+		healthy = false;
+	}
+
+	void seen() {
+		lastSeen = System.currentTimeMillis();
+	}
+
+}
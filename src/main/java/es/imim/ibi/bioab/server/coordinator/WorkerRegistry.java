@@ -0,0 +1,333 @@
+/**
+ * Biomedical Abbreviation Miner (BioAB Miner)
+ *
+ */
+package es.imim.ibi.bioab.server.coordinator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.backingdata.gateutils.generic.PropertyManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Strings;
+
+import es.imim.ibi.bioab.server.servlet.StatusServlet;
+
+/**
+ * Extraction workers of the coordinator (see {@link BioABcoordinator}).
+ *
+ * Workers are listed in the property coordinator.workers or register themselves (see {@link #register(String)}). The status of
+ * each worker (GET (worker URL)/bioabminer/api/status, see {@link StatusServlet}) is checked periodically: only the workers
+ * that answer and are ready receive requests. The workers that registered themselves and are not seen for
+ * coordinator.workerExpirySeconds are removed.
+ *
+ * Worker self-registration is disabled unless a registration token or a list of allowed worker hosts is configured: the
+ * coordinator forwards the documents of the users to its workers, so that only trusted workers can register. If both are
+ * configured, a worker has to satisfy both.
+ *
+ * Configuration properties:
+ *    - coordinator.workers: comma separated base URLs of the workers (e.g. http://localhost:8182,http://localhost:8183)
+ *    - coordinator.healthCheckSeconds: interval between health checks (default 5)
+ *    - coordinator.healthCheckTimeoutMs: connect and read timeout of health checks (default 2000)
+ *    - coordinator.workerExpirySeconds: registered workers not seen for this time are removed (default 300)
+ *    - coordinator.registrationToken: shared secret that the workers send in the {@link #registrationTokenHeader} header
+ *    of their registration (property coordinator.registrationToken of the workers)
+ *    - coordinator.allowedWorkerHosts: comma separated hosts (host or host:port) allowed to register as workers
+ *
+ * @author Francesco Ronzano
+ *
+ */
+public class WorkerRegistry {
+
+	private static Logger logger = LoggerFactory.getLogger(WorkerRegistry.class);
+
+	public static final long DEFAULT_HEALTH_CHECK_SECONDS = 5l;
+	public static final long DEFAULT_HEALTH_CHECK_TIMEOUT_MS = 2000l;
+	public static final long DEFAULT_WORKER_EXPIRY_SECONDS = 300l;
+
+	public static final String registrationTokenHeader = "X-BioAB-Registration-Token";
+
+	private static final Pattern readyPattern = Pattern.compile("\"ready\"\\s*:\\s*(true|false)");
+
+	private static final Map<String, WorkerNode> workerMap = new ConcurrentHashMap<String, WorkerNode>();
+	private static final Set<String> configuredWorkerURLs = ConcurrentHashMap.newKeySet();
+	private static ScheduledExecutorService healthChecker = null;
+
+	/**
+	 * Register the workers of the property coordinator.workers and start the health checks (if not already started)
+	 */
+	public static synchronized void init() {
+		if(healthChecker != null) {
+			return;
+		}
+
+		String workerURLs = getProperty("coordinator.workers");
+		if(!Strings.isNullOrEmpty(workerURLs)) {
+			for(String workerURL : workerURLs.split(",")) {
+				if(!workerURL.trim().isEmpty()) {
+					String normalizedURL = normalizeURL(workerURL);
+					configuredWorkerURLs.add(normalizedURL);
+					workerMap.putIfAbsent(normalizedURL, new WorkerNode(normalizedURL));
+				}
+			}
+		}
+
+		long healthCheckSeconds = Math.max(1l, getLongProperty("coordinator.healthCheckSeconds", DEFAULT_HEALTH_CHECK_SECONDS));
+		healthChecker = Executors.newSingleThreadScheduledExecutor((Runnable runnable) -> {
+			Thread checkerThread = new Thread(runnable, "BioAB-coordinator-health-check");
+			checkerThread.setDaemon(true);
+			return checkerThread;
+		});
+		healthChecker.scheduleWithFixedDelay(WorkerRegistry::checkAll, 0l, healthCheckSeconds, TimeUnit.SECONDS);
+
+		logger.info("Worker registry initialized with " + workerMap.size() + " configured workers, health check every " + healthCheckSeconds + " seconds.");
+	}
+
+	/**
+	 * True if the workers can register themselves (see {@link #register(String, String)})
+	 *
+	 * @return
+	 */
+	public static boolean isRegistrationEnabled() {
+		return !Strings.isNullOrEmpty(getProperty("coordinator.registrationToken")) || !getAllowedWorkerHosts().isEmpty();
+	}
+
+	/**
+	 * Register a worker (or refresh its registration); its status is checked immediately
+	 *
+	 * @param workerURL base URL of the worker
+	 * @param registrationToken token sent by the worker (null if not sent)
+	 * @return
+	 * @throws SecurityException if self-registration is disabled, the token is not valid or the host of the worker is not allowed
+	 * @throws IllegalArgumentException if the URL is not valid
+	 */
+	public static WorkerNode register(String workerURL, String registrationToken) {
+		String normalizedURL = normalizeURL(workerURL);
+
+		if(!isRegistrationEnabled()) {
+			throw new SecurityException("Worker self-registration disabled: set coordinator.registrationToken or coordinator.allowedWorkerHosts");
+		}
+		String expectedToken = getProperty("coordinator.registrationToken");
+		if(!Strings.isNullOrEmpty(expectedToken) && (registrationToken == null ||
+				!MessageDigest.isEqual(expectedToken.trim().getBytes(StandardCharsets.UTF_8), registrationToken.trim().getBytes(StandardCharsets.UTF_8)))) {
+			throw new SecurityException("Invalid registration token");
+		}
+		Set<String> allowedHosts = getAllowedWorkerHosts();
+		if(!allowedHosts.isEmpty()) {
+			URL url;
+			try {
+				url = new URL(normalizedURL);
+			}
+			catch(IOException e) {
+				throw new IllegalArgumentException("Invalid worker URL " + workerURL);
+			}
+			String host = Strings.nullToEmpty(url.getHost()).toLowerCase(Locale.ROOT);
+			int port = (url.getPort() != -1) ? url.getPort() : url.getDefaultPort();
+			if(!allowedHosts.contains(host) && !allowedHosts.contains(host + ":" + port)) {
+				throw new SecurityException("Worker host " + host + ":" + port + " not allowed");
+			}
+		}
+
+		WorkerNode worker = workerMap.computeIfAbsent(normalizedURL, (String url) -> {
+			logger.info("Worker " + url + " registered.");
+			return new WorkerNode(url);
+		});
+		worker.seen();
+		if(!worker.isHealthy() && healthChecker != null) {
+			healthChecker.execute(() -> check(worker));
+		}
+		return worker;
+	}
+
+	/**
+	 * Healthy worker with the lowest load, excluding the given ones (null if no worker is available)
+	 *
+	 * @param excluded workers already tried
+	 * @return
+	 */
+	public static WorkerNode choose(Set<WorkerNode> excluded) {
+		WorkerNode chosen = null;
+		for(WorkerNode worker : workerMap.values()) {
+			if(!worker.isHealthy() || (excluded != null && excluded.contains(worker))) {
+				continue;
+			}
+			if(chosen == null || worker.getLoad() < chosen.getLoad() ||
+					(worker.getLoad() == chosen.getLoad() && worker.getDispatchedCount() < chosen.getDispatchedCount())) {
+				chosen = worker;
+			}
+		}
+		return chosen;
+	}
+
+	/**
+	 * Workers, sorted by URL
+	 *
+	 * @return
+	 */
+	public static List<WorkerNode> getWorkers() {
+		List<WorkerNode> workers = new ArrayList<WorkerNode>(workerMap.values());
+		Collections.sort(workers, (WorkerNode w1, WorkerNode w2) -> w1.getUrl().compareTo(w2.getUrl()));
+		return workers;
+	}
+
+	public static int getHealthyCount() {
+		int healthy = 0;
+		for(WorkerNode worker : workerMap.values()) {
+			if(worker.isHealthy()) {
+				healthy++;
+			}
+		}
+		return healthy;
+	}
+
+	private static void checkAll() {
+		long expiryMs = getLongProperty("coordinator.workerExpirySeconds", DEFAULT_WORKER_EXPIRY_SECONDS) * 1000l;
+		for(WorkerNode worker : new ArrayList<WorkerNode>(workerMap.values())) {
+			check(worker);
+
+			if(!worker.isHealthy() && !configuredWorkerURLs.contains(worker.getUrl()) &&
+					System.currentTimeMillis() - worker.getLastSeen() > expiryMs) {
+				workerMap.remove(worker.getUrl());
+				logger.info("Worker " + worker.getUrl() + " removed: not seen for more than " + (expiryMs / 1000l) + " seconds.");
+			}
+		}
+	}
+
+	/**
+	 * Read the status of the worker
+	 *
+	 * @param worker
+	 */
+	static void check(WorkerNode worker) {
+		int timeoutMs = (int) getLongProperty("coordinator.healthCheckTimeoutMs", DEFAULT_HEALTH_CHECK_TIMEOUT_MS);
+		boolean wasHealthy = worker.isHealthy();
+		HttpURLConnection connection = null;
+		try {
+			connection = (HttpURLConnection) new URL(worker.getUrl() + StatusServlet.statusPath).openConnection();
+			connection.setConnectTimeout(timeoutMs);
+			connection.setReadTimeout(timeoutMs);
+			connection.setUseCaches(false);
+
+			if(connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+				throw new IOException("status " + connection.getResponseCode());
+			}
+
+			String status = readAll(connection.getInputStream());
+			Matcher readyMatcher = readyPattern.matcher(status);
+			boolean ready = readyMatcher.find() && readyMatcher.group(1).equals("true");
+			worker.checked(ready, (int) getLongField(status, "workers", 1l), (int) getLongField(status, "queued", 0l));
+		}
+		catch(Exception e) {
+			worker.checkFailed();
+			if(wasHealthy || worker.getConsecutiveFailures() == 1) {
+				logger.warn("Health check of worker " + worker.getUrl() + " failed - " + e.getMessage());
+			}
+		}
+		finally {
+			if(connection != null) {
+				connection.disconnect();
+			}
+		}
+
+		if(!wasHealthy && worker.isHealthy()) {
+			logger.info("Worker " + worker.getUrl() + " is available.");
+		}
+	}
+
+	/**
+	 * Value of a numeric field of the worker status (a flat JSON object)
+	 *
+	 * @param status
+	 * @param fieldName
+	 * @param defaultValue
+	 * @return
+	 */
+	private static long getLongField(String status, String fieldName, long defaultValue) {
+		Matcher fieldMatcher = Pattern.compile("\"" + Pattern.quote(fieldName) + "\"\\s*:\\s*(-?\\d+)").matcher(status);
+		return (fieldMatcher.find()) ? Long.valueOf(fieldMatcher.group(1)) : defaultValue;
+	}
+
+	private static String readAll(InputStream in) throws IOException {
+		try (InputStream statusStream = in) {
+			ByteArrayOutputStream statusBytes = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			int len;
+			while((len = statusStream.read(buffer)) != -1) {
+				statusBytes.write(buffer, 0, len);
+			}
+			return new String(statusBytes.toByteArray(), StandardCharsets.UTF_8);
+		}
+	}
+
+	private static String normalizeURL(String workerURL) {
+		String normalizedURL = workerURL.trim();
+		while(normalizedURL.endsWith("/")) {
+			normalizedURL = normalizedURL.substring(0, normalizedURL.length() - 1);
+		}
+		if(!normalizedURL.startsWith("http://") && !normalizedURL.startsWith("https://")) {
+			throw new IllegalArgumentException("Invalid worker URL " + workerURL);
+		}
+		return normalizedURL;
+	}
+
+	/**
+	 * Hosts of the property coordinator.allowedWorkerHosts, lower-cased
+	 *
+	 * @return
+	 */
+	private static Set<String> getAllowedWorkerHosts() {
+		Set<String> allowedHosts = new HashSet<String>();
+		String allowedHostList = getProperty("coordinator.allowedWorkerHosts");
+		if(!Strings.isNullOrEmpty(allowedHostList)) {
+			for(String allowedHost : allowedHostList.split(",")) {
+				if(!allowedHost.trim().isEmpty()) {
+					allowedHosts.add(allowedHost.trim().toLowerCase(Locale.ROOT));
+				}
+			}
+		}
+		return allowedHosts;
+	}
+
+	private static String getProperty(String propertyName) {
+		try {
+			return PropertyManager.getProperty(propertyName);
+		}
+		catch(Exception e) {
+			return null;
+		}
+	}
+
+	private static long getLongProperty(String propertyName, long defaultValue) {
+		String propertyValue = getProperty(propertyName);
+		if(!Strings.isNullOrEmpty(propertyValue)) {
+			try {
+				return Long.valueOf(propertyValue.trim());
+			}
+			catch(NumberFormatException e) {
+				logger.warn("Invalid value of property " + propertyName + ", using default value " + defaultValue);
+			}
+		}
+		return defaultValue;
+	}
+
+}
@@ -0,0 +1,315 @@
+/**
+ * Biomedical Abbreviation Miner (BioAB Miner)
+ *
+ */
+package es.imim.ibi.bioab.server.job;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Extraction job, persisted in its folder of the job spool folder:
+ *    - input/: the items to process (text and PDF files)
+ *    - job.properties: status and counters of the job
+ *    - results.ndjson: one JSON object per processed item, appended as soon as the item is processed
+ *
+ * Item names only contain letters, digits, '.', '_' and '-' (see {@link #toItemName(String)}), so that each line
+ * of results.ndjson starts with {"item":"(item name)" and the processed items can be recovered after a restart.
+ *
+ * @author Francesco Ronzano
+ *
+ */
+public class ExtractionJob {
+
+	public enum Status {
+		QUEUED,
+		RUNNING,
+		COMPLETED,
+		FAILED
+	}
+
+	public static final String inputFolderName = "input";
+	public static final String resultsFileName = "results.ndjson";
+	public static final String jobFileName = "job.properties";
+	private static final String itemPrefix = "{\"item\":\"";
+
+	private final String id;
+	private final File folder;
+
+	private volatile Status status = Status.QUEUED;
+	private volatile int itemCount = 0;
+	private volatile int completedCount = 0;
+	private volatile int failedCount = 0;
+	private volatile long created = 0l;
+	private volatile long updated = 0l;
+	private volatile String error = null;
+
+	// Notified when a result is appended or the status changes
+	private final List<Runnable> updateListeners = new CopyOnWriteArrayList<Runnable>();
+
+	ExtractionJob(String id, File folder) {
+		this.id = id;
+		this.folder = folder;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	public int getItemCount() {
+		return itemCount;
+	}
+
+	public int getCompletedCount() {
+		return completedCount;
+	}
+
+	public int getFailedCount() {
+		return failedCount;
+	}
+
+	public long getCreated() {
+		return created;
+	}
+
+	public long getUpdated() {
+		return updated;
+	}
+
+	public String getError() {
+		return error;
+	}
+
+	public boolean isFinished() {
+		return status == Status.COMPLETED || status == Status.FAILED;
+	}
+
+	public File getInputFolder() {
+		return new File(folder, inputFolderName);
+	}
+
+	public File getResultsFile() {
+		return new File(folder, resultsFileName);
+	}
+
+	/**
+	 * Items of the job, sorted by name
+	 *
+	 * @return
+	 */
+	public List<File> getItems() {
+		File[] items = getInputFolder().listFiles((File f) -> f.isFile());
+		if(items == null) {
+			return new ArrayList<File>();
+		}
+		Arrays.sort(items);
+		return new ArrayList<File>(Arrays.asList(items));
+	}
+
+	/**
+	 * Names of the items already processed, read from the results file; a partially written last line (interrupted
+	 * by a shutdown) is removed
+	 *
+	 * @return
+	 * @throws IOException
+	 */
+	synchronized Set<String> recoverProcessedItems() throws IOException {
+		Set<String> processedItems = new HashSet<String>();
+		File resultsFile = getResultsFile();
+		if(!resultsFile.exists()) {
+			return processedItems;
+		}
+
+		long lastLineEnd = 0l;
+		long position = 0l;
+		StringBuilder lineSb = new StringBuilder();
+		try (InputStream resultsStream = Files.newInputStream(resultsFile.toPath())) {
+			byte[] buffer = new byte[65536];
+			int len;
+			while((len = resultsStream.read(buffer)) != -1) {
+				for(int i = 0; i < len; i++) {
+					position++;
+					if(buffer[i] == '\n') {
+						lastLineEnd = position;
+						String line = lineSb.toString();
+						if(line.startsWith(itemPrefix) && line.indexOf('"', itemPrefix.length()) > 0) {
+							processedItems.add(line.substring(itemPrefix.length(), line.indexOf('"', itemPrefix.length())));
+						}
+						lineSb.setLength(0);
+					}
+					else if(lineSb.length() < 1024) {
+						lineSb.append((char) buffer[i]);
+					}
+				}
+			}
+		}
+
+		if(lastLineEnd < resultsFile.length()) {
+			try (RandomAccessFile resultsRAF = new RandomAccessFile(resultsFile, "rw")) {
+				resultsRAF.setLength(lastLineEnd);
+			}
+		}
+
+		return processedItems;
+	}
+
+	/**
+	 * Append the result of an item (a JSON object starting with {"item":"(item name)", on a single line) to the results file
+	 *
+	 * @param resultLine
+	 * @param failed
+	 * @throws IOException
+	 */
+	synchronized void appendResult(String resultLine, boolean failed) throws IOException {
+		try (FileOutputStream resultsOut = new FileOutputStream(getResultsFile(), true)) {
+			resultsOut.write((resultLine + "\n").getBytes(StandardCharsets.UTF_8));
+			resultsOut.getFD().sync();
+		}
+
+		this.completedCount++;
+		if(failed) {
+			this.failedCount++;
+		}
+		this.updated = System.currentTimeMillis();
+		notifyUpdate();
+	}
+
+	synchronized void setStatus(Status status, String error) {
+		this.status = status;
+		this.error = error;
+		this.updated = System.currentTimeMillis();
+		notifyUpdate();
+	}
+
+	synchronized void setCounts(int itemCount, int completedCount, int failedCount) {
+		this.itemCount = itemCount;
+		this.completedCount = completedCount;
+		this.failedCount = failedCount;
+	}
+
+	/**
+	 * Add a listener notified when a new result is appended or the job status changes; listeners are invoked on the thread
+	 * that updates the job, so that they should only schedule their work
+	 *
+	 * @param updateListener
+	 */
+	public void addUpdateListener(Runnable updateListener) {
+		this.updateListeners.add(updateListener);
+	}
+
+	public void removeUpdateListener(Runnable updateListener) {
+		this.updateListeners.remove(updateListener);
+	}
+
+	private void notifyUpdate() {
+		for(Runnable updateListener : this.updateListeners) {
+			try {
+				updateListener.run();
+			}
+			catch(RuntimeException e) {
+				/* Do not fail the job because of a listener */
+			}
+		}
+	}
+
+	/**
+	 * Save the status of the job (written to a temporary file and renamed)
+	 *
+	 * @throws IOException
+	 */
+	synchronized void save() throws IOException {
+		Properties jobProperties = new Properties();
+		jobProperties.setProperty("status", status.name());
+		jobProperties.setProperty("itemCount", String.valueOf(itemCount));
+		jobProperties.setProperty("created", String.valueOf(created));
+		jobProperties.setProperty("updated", String.valueOf(updated));
+		if(error != null) {
+			jobProperties.setProperty("error", error);
+		}
+
+		Path tempJobFile = Files.createTempFile(folder.toPath(), jobFileName, ".tmp");
+		try {
+			try (OutputStream jobOut = Files.newOutputStream(tempJobFile)) {
+				jobProperties.store(jobOut, "BioAB Miner extraction job " + id);
+			}
+			Files.move(tempJobFile, new File(folder, jobFileName).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		finally {
+			Files.deleteIfExists(tempJobFile);
+		}
+	}
+
+	/**
+	 * Load the job from its folder
+	 *
+	 * @param folder
+	 * @return
+	 * @throws IOException
+	 */
+	static ExtractionJob load(File folder) throws IOException {
+		Properties jobProperties = new Properties();
+		try (InputStream jobIn = Files.newInputStream(new File(folder, jobFileName).toPath())) {
+			jobProperties.load(jobIn);
+		}
+
+		ExtractionJob job = new ExtractionJob(folder.getName(), folder);
+		job.status = Status.valueOf(jobProperties.getProperty("status", Status.QUEUED.name()));
+		job.itemCount = Integer.valueOf(jobProperties.getProperty("itemCount", "0"));
+		job.created = Long.valueOf(jobProperties.getProperty("created", "0"));
+		job.updated = Long.valueOf(jobProperties.getProperty("updated", "0"));
+		job.error = jobProperties.getProperty("error");
+		return job;
+	}
+
+	/**
+	 * Create a new job in the folder
+	 *
+	 * @param id
+	 * @param folder
+	 * @return
+	 * @throws IOException
+	 */
+	static ExtractionJob create(String id, File folder) throws IOException {
+		Files.createDirectories(new File(folder, inputFolderName).toPath());
+		ExtractionJob job = new ExtractionJob(id, folder);
+		job.created = System.currentTimeMillis();
+		job.updated = job.created;
+		return job;
+	}
+
+	/**
+	 * Item name of a file name: the name of the file without path, with all the chars other than letters, digits, '.', '_' and '-'
+	 * replaced by '_'
+	 *
+	 * @param fileName
+	 * @return
+	 */
+	public static String toItemName(String fileName) {
+		String name = (fileName != null) ? fileName.replace('\\', '/') : "";
+		name = name.substring(name.lastIndexOf('/') + 1).replaceAll("[^A-Za-z0-9._-]", "_");
+		if(name.replace(".", "").isEmpty()) {
+			name = "item" + name;
+		}
+		return name;
+	}
+
+}
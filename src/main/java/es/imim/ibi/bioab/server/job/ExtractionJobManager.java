@@ -0,0 +1,446 @@
+/**
+ * Biomedical Abbreviation Miner (BioAB Miner)
+ *
+ */
+package es.imim.ibi.bioab.server.job;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.backingdata.gateutils.generic.PropertyManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Strings;
+
+import es.imim.ibi.bioab.exec.BioABminer;
+import es.imim.ibi.bioab.exec.Deadline;
+import es.imim.ibi.bioab.exec.model.Abbreviation;
+import es.imim.ibi.bioab.exec.pdf.GROBIDloader;
+import es.imim.ibi.bioab.exec.util.JSONwriter;
+import es.imim.ibi.bioab.server.ExtractionQueue;
+import es.imim.ibi.bioab.server.ServerMetrics;
+import gate.Document;
+import gate.Factory;
+
+/**
+ * Asynchronous extraction jobs: a job is created from a PDF, a text or a ZIP of texts and PDFs, its items are stored in
+ * the job spool folder and processed in background, one item at a time; the result of each item is appended to the
+ * results of the job (NDJSON) as soon as the item is processed. Items are processed in the bulk lane of the
+ * {@link ExtractionQueue}, sharing its concurrency cap with the PDF requests.
+ *
+ * Jobs are persisted in the spool folder: when the manager is initialized, the jobs not completed before the last shutdown
+ * are queued again and resume from the first item not processed.
+ *
+ * Configuration properties:
+ *    - server.jobs.spoolFolder: job spool folder (default: folder job-spool of the resource folder)
+ *    - server.jobs.workers: number of jobs processed in parallel (default 1)
+ *    - server.jobs.maxUploadMB: maximum size of the file uploaded to create a job (default 512)
+ *    - server.jobs.maxItems: maximum number of items of a job (default 10000)
+ *
+ * @author Francesco Ronzano
+ *
+ */
+public class ExtractionJobManager {
+
+	private static Logger logger = LoggerFactory.getLogger(ExtractionJobManager.class);
+
+	public static final int DEFAULT_WORKERS = 1;
+	public static final long DEFAULT_MAX_UPLOAD_MB = 512l;
+	public static final int DEFAULT_MAX_ITEMS = 10000;
+
+	// Endpoint of the job items in the server metrics
+	public static final String jobItemEndpoint = "job-item";
+
+	private static File spoolFolder = null;
+	private static ExecutorService jobExecutor = null;
+	private static Map<String, ExtractionJob> jobMap = new ConcurrentHashMap<String, ExtractionJob>();
+	private static Object initSynch = new Object();
+
+	/**
+	 * Create the spool folder and the job workers, and queue again the jobs not completed (if not already initialized)
+	 */
+	public static void init() {
+		synchronized(initSynch) {
+			if(jobExecutor != null) {
+				return;
+			}
+
+			String spoolFolderPath = getProperty("server.jobs.spoolFolder");
+			if(Strings.isNullOrEmpty(spoolFolderPath)) {
+				String resourceFolder = getProperty("resourceFolder.fullPath");
+				spoolFolderPath = ((resourceFolder != null) ? resourceFolder + ((resourceFolder.endsWith(File.separator)) ? "" : File.separator) : "") + "job-spool";
+			}
+			spoolFolder = new File(spoolFolderPath);
+			if(!spoolFolder.exists() && !spoolFolder.mkdirs()) {
+				logger.error("Impossible to create the job spool folder " + spoolFolder.getAbsolutePath());
+			}
+
+			int workers = (int) getLongProperty("server.jobs.workers", DEFAULT_WORKERS);
+			AtomicInteger threadCount = new AtomicInteger(0);
+			jobExecutor = Executors.newFixedThreadPool(Math.max(1, workers), (Runnable runnable) -> {
+				Thread jobThread = new Thread(runnable, "BioAB-job-worker-" + threadCount.incrementAndGet());
+				jobThread.setDaemon(true);
+				return jobThread;
+			});
+
+			// Recover the jobs of the spool folder
+			int resumed = 0;
+			File[] jobFolders = spoolFolder.listFiles((File f) -> f.isDirectory() && new File(f, ExtractionJob.jobFileName).exists());
+			if(jobFolders != null) {
+				Arrays.sort(jobFolders, (File f1, File f2) -> Long.compare(f1.lastModified(), f2.lastModified()));
+				for(File jobFolder : jobFolders) {
+					try {
+						ExtractionJob job = ExtractionJob.load(jobFolder);
+						jobMap.put(job.getId(), job);
+						if(!job.isFinished()) {
+							job.setStatus(ExtractionJob.Status.QUEUED, null);
+							jobExecutor.submit(() -> runJob(job));
+							resumed++;
+						}
+						else {
+							Set<String> processedItems = job.recoverProcessedItems();
+							job.setCounts(job.getItemCount(), processedItems.size(), 0);
+						}
+					} catch (Exception e) {
+						logger.error("Impossible to load the job of folder " + jobFolder.getAbsolutePath() + " - " + e.getMessage());
+					}
+				}
+			}
+
+			logger.info("Extraction job manager initialized: " + jobMap.size() + " jobs in " + spoolFolder.getAbsolutePath() + " (" + resumed + " queued again), " + workers + " workers.");
+		}
+	}
+
+	/**
+	 * Create and queue a job from the uploaded file
+	 *
+	 * @param uploadStream
+	 * @param fileName name of the uploaded file (.pdf, .txt or .zip)
+	 * @param contentType content type of the upload, used if the file name has no known extension
+	 * @return
+	 * @throws IllegalArgumentException if the upload is not valid (unknown type, too large, too many items, no item)
+	 * @throws IOException
+	 */
+	public static ExtractionJob createJob(InputStream uploadStream, String fileName, String contentType) throws IllegalArgumentException, IOException {
+		init();
+
+		String lowerFileName = (fileName != null) ? fileName.toLowerCase() : "";
+		String lowerContentType = (contentType != null) ? contentType.toLowerCase() : "";
+		String id = UUID.randomUUID().toString();
+		File jobFolder = new File(spoolFolder, id);
+		ExtractionJob job = ExtractionJob.create(id, jobFolder);
+
+		try {
+			long maxUploadBytes = getMaxUploadBytes();
+			if(lowerFileName.endsWith(".zip") || lowerContentType.startsWith("application/zip")) {
+				extractZip(uploadStream, job.getInputFolder(), maxUploadBytes);
+			}
+			else if(lowerFileName.endsWith(".pdf") || lowerContentType.startsWith("application/pdf")) {
+				copyItem(uploadStream, new File(job.getInputFolder(), toItemName(fileName, ".pdf")), maxUploadBytes);
+			}
+			else if(lowerFileName.endsWith(".txt") || lowerContentType.startsWith("text/plain")) {
+				copyItem(uploadStream, new File(job.getInputFolder(), toItemName(fileName, ".txt")), maxUploadBytes);
+			}
+			else {
+				throw new IllegalArgumentException("Unknown type of file " + fileName + " (" + contentType + "): send a PDF, a text file or a ZIP of PDF and text files");
+			}
+
+			int itemCount = job.getItems().size();
+			if(itemCount == 0) {
+				throw new IllegalArgumentException("No PDF or text file to process");
+			}
+
+			job.setCounts(itemCount, 0, 0);
+			job.save();
+		}
+		catch(IllegalArgumentException | IOException e) {
+			deleteFolder(jobFolder);
+			throw e;
+		}
+
+		jobMap.put(id, job);
+		jobExecutor.submit(() -> runJob(job));
+		logger.info("Job " + id + " created with " + job.getItemCount() + " items.");
+
+		return job;
+	}
+
+	/**
+	 * Maximum size of the file uploaded to create a job (property server.jobs.maxUploadMB)
+	 *
+	 * @return
+	 */
+	public static long getMaxUploadBytes() {
+		return getLongProperty("server.jobs.maxUploadMB", DEFAULT_MAX_UPLOAD_MB) * 1024l * 1024l;
+	}
+
+	public static ExtractionJob getJob(String id) {
+		return (id != null) ? jobMap.get(id) : null;
+	}
+
+	/**
+	 * Number of jobs queued or running
+	 *
+	 * @return
+	 */
+	public static int getPendingJobCount() {
+		int pending = 0;
+		for(ExtractionJob job : jobMap.values()) {
+			if(!job.isFinished()) {
+				pending++;
+			}
+		}
+		return pending;
+	}
+
+	private static void runJob(ExtractionJob job) {
+		try {
+			Set<String> processedItems = job.recoverProcessedItems();
+			List<File> items = job.getItems();
+			int failed = 0;
+			job.setCounts(items.size(), processedItems.size(), failed);
+			job.setStatus(ExtractionJob.Status.RUNNING, null);
+			job.save();
+
+			for(File item : items) {
+				if(processedItems.contains(item.getName())) {
+					continue;
+				}
+
+				// Items are processed in the bulk lane of the extraction queue, so that jobs do not delay interactive requests
+				ExtractionQueue.execute(ExtractionQueue.Lane.BULK, () -> {
+					processItem(job, item);
+					return null;
+				});
+			}
+
+			job.setStatus(ExtractionJob.Status.COMPLETED, null);
+			job.save();
+			logger.info("Job " + job.getId() + " completed: " + job.getCompletedCount() + " items processed, " + job.getFailedCount() + " failed.");
+		}
+		catch(Exception e) {
+			logger.error("Error while processing job " + job.getId() + " - " + e.getMessage());
+			e.printStackTrace();
+			job.setStatus(ExtractionJob.Status.FAILED, e.getMessage());
+			try {
+				job.save();
+			} catch (IOException saveExc) {
+				logger.error("Impossible to save job " + job.getId() + " - " + saveExc.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Process the item and append its result line to the job: {"item":(item name),"status":"OK","abbreviations":[...]} or
+	 * {"item":(item name),"status":"FAILED","error":(message)}; if the item exceeds the document deadline (see
+	 * {@link ExtractionQueue#newDocumentDeadline()}), {"item":(item name),"status":"TIMEOUT","timedOutStage":(stage),"abbreviations":[...]}
+	 * with the abbreviations found before the deadline
+	 *
+	 * @param job
+	 * @param item
+	 * @throws IOException
+	 */
+	private static void processItem(ExtractionJob job, File item) throws IOException {
+		long startNanos = System.nanoTime();
+		boolean isPDF = item.getName().toLowerCase().endsWith(".pdf");
+		boolean failed = false;
+		StringWriter resultWriter = new StringWriter();
+		JSONwriter json = new JSONwriter(resultWriter);
+		json.beginObject();
+		json.name("item").value(item.getName());
+
+		Document gateDoc = null;
+		Deadline deadline = null;
+		try {
+			if(isPDF) {
+				gateDoc = GROBIDloader.parsePDF(item);
+			}
+			else {
+				gateDoc = BioABminer.getDocumentFormText(new String(Files.readAllBytes(item.toPath()), StandardCharsets.UTF_8));
+			}
+
+			if(gateDoc == null) {
+				throw new Exception("Empty document");
+			}
+
+			deadline = ExtractionQueue.newDocumentDeadline();
+			BioABminer.extractNLPfeatures(gateDoc, deadline);
+			BioABminer.extractAbbreviations(gateDoc, deadline);
+			List<Abbreviation> abbreviationList = BioABminer.getAbbreviationList(gateDoc);
+
+			if(deadline != null && deadline.isTimedOut()) {
+				logger.warn("Job item " + item.getName() + " timed out after " + deadline.getTimeoutMillis() + " ms (stage " + deadline.getTimedOutStage() + ").");
+				json.name("status").value("TIMEOUT");
+				json.name("timedOutStage").value(deadline.getTimedOutStage().name().toLowerCase());
+			}
+			else {
+				json.name("status").value("OK");
+			}
+			json.name("abbreviations").beginArray();
+			for(Abbreviation abbreviation : abbreviationList) {
+				json.value(abbreviation);
+			}
+			json.endArray();
+		}
+		catch(Exception e) {
+			logger.warn("Error while processing job item " + item.getName() + " - " + e.getMessage());
+			failed = true;
+			resultWriter = new StringWriter();
+			json = new JSONwriter(resultWriter);
+			json.beginObject();
+			json.name("item").value(item.getName());
+			json.name("status").value("FAILED");
+			json.name("error").value(e.getMessage());
+		}
+		finally {
+			if(gateDoc != null) {
+				Factory.deleteResource(gateDoc);
+			}
+		}
+
+		json.endObject();
+		job.appendResult(resultWriter.toString(), failed);
+		ServerMetrics.recordRequest(jobItemEndpoint, (isPDF) ? "pdf" : "text", (failed) ? "failed" : ((deadline != null && deadline.isTimedOut()) ? "timeout" : "processed"), startNanos);
+	}
+
+	/**
+	 * Extract the PDF and text files of the ZIP to the input folder of the job, without loading them in memory
+	 *
+	 * @param zipStream
+	 * @param inputFolder
+	 * @param maxUploadBytes maximum total size of the extracted files
+	 * @throws IOException
+	 */
+	private static void extractZip(InputStream zipStream, File inputFolder, long maxUploadBytes) throws IOException {
+		int maxItems = (int) getLongProperty("server.jobs.maxItems", DEFAULT_MAX_ITEMS);
+		long extractedBytes = 0l;
+		int itemCount = 0;
+
+		ZipInputStream zipIn = new ZipInputStream(zipStream);
+		ZipEntry entry;
+		while((entry = zipIn.getNextEntry()) != null) {
+			String entryName = entry.getName().toLowerCase();
+			if(entry.isDirectory() || !(entryName.endsWith(".pdf") || entryName.endsWith(".txt")) || entryName.contains("__macosx/")) {
+				continue;
+			}
+
+			if(++itemCount > maxItems) {
+				throw new IllegalArgumentException("The ZIP contains more than " + maxItems + " PDF and text files");
+			}
+
+			// Items with the same name in different folders of the ZIP are numbered
+			String itemName = ExtractionJob.toItemName(entry.getName());
+			File itemFile = new File(inputFolder, itemName);
+			for(int i = 1; itemFile.exists(); i++) {
+				itemFile = new File(inputFolder, i + "_" + itemName);
+			}
+
+			extractedBytes += copyItem(zipIn, itemFile, maxUploadBytes - extractedBytes);
+		}
+	}
+
+	/**
+	 * Copy the stream to the item file, up to the maximum number of bytes
+	 *
+	 * @param in
+	 * @param itemFile
+	 * @param maxBytes
+	 * @return number of bytes copied
+	 * @throws IOException
+	 */
+	private static long copyItem(InputStream in, File itemFile, long maxBytes) throws IOException {
+		long copied = 0l;
+		byte[] buffer = new byte[65536];
+		try (OutputStream itemOut = Files.newOutputStream(itemFile.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+			int len;
+			while((len = in.read(buffer)) != -1) {
+				copied += len;
+				if(copied > maxBytes) {
+					throw new IllegalArgumentException("The uploaded file exceeds the maximum size of " + getLongProperty("server.jobs.maxUploadMB", DEFAULT_MAX_UPLOAD_MB) + " MB");
+				}
+				itemOut.write(buffer, 0, len);
+			}
+		}
+		return copied;
+	}
+
+	private static String toItemName(String fileName, String extension) {
+		String itemName = ExtractionJob.toItemName(Strings.isNullOrEmpty(fileName) ? "document" : fileName);
+		return (itemName.toLowerCase().endsWith(extension)) ? itemName : itemName + extension;
+	}
+
+	private static void deleteFolder(File folder) {
+		File[] files = folder.listFiles();
+		if(files != null) {
+			for(File f : files) {
+				if(f.isDirectory()) {
+					deleteFolder(f);
+				}
+				else {
+					f.delete();
+				}
+			}
+		}
+		folder.delete();
+	}
+
+	private static String getProperty(String propertyName) {
+		try {
+			return PropertyManager.getProperty(propertyName);
+		}
+		catch(Exception e) {
+			return null;
+		}
+	}
+
+	private static long getLongProperty(String propertyName, long defaultValue) {
+		String propertyValue = getProperty(propertyName);
+		if(!Strings.isNullOrEmpty(propertyValue)) {
+			try {
+				return Long.valueOf(propertyValue.trim());
+			}
+			catch(NumberFormatException e) {
+				logger.warn("Invalid value of property " + propertyName + ", using default value " + defaultValue);
+			}
+		}
+		return defaultValue;
+	}
+
+	/**
+	 * Spool folder of the jobs (null if not initialized)
+	 *
+	 * @return
+	 */
+	public static File getSpoolFolder() {
+		return spoolFolder;
+	}
+
+	/**
+	 * Ids of the known jobs
+	 *
+	 * @return
+	 */
+	public static List<String> getJobIds() {
+		return new ArrayList<String>(jobMap.keySet());
+	}
+
+}
@@ -0,0 +1,240 @@
+/**
+ * Biomedical Abbreviation Miner (BioAB Miner)
+ *
+ */
+package es.imim.ibi.bioab.server.servlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.Part;
+
+import org.apache.commons.fileupload.servlet.ServletFileUpload;
+import org.backingdata.gateutils.generic.PropertyManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Strings;
+
+import es.imim.ibi.bioab.exec.BioABminer;
+import es.imim.ibi.bioab.exec.Deadline;
+import es.imim.ibi.bioab.exec.model.Abbreviation;
+import es.imim.ibi.bioab.exec.pdf.GROBIDconversionException;
+import es.imim.ibi.bioab.exec.pdf.GROBIDloader;
+import es.imim.ibi.bioab.exec.util.JSONwriter;
+import es.imim.ibi.bioab.server.ExtractionQueue;
+import gate.Document;
+import gate.Factory;
+
+
+/**
+ * JSON API to extract the abbreviations of a text or of the PDF of a scientific publication (POST /bioabminer/api/extract).
+ *
+ * The input can be sent as:
+ *    - text/plain or application/pdf request body
+ *    - form parameter text
+ *    - multipart/form-data with a part text or a part pdfFile
+ *
+ * Texts up to server.lanes.interactiveMaxChars sent as text/plain body or form parameter are processed in the interactive
+ * lane of the {@link ExtractionQueue}; PDFs, longer texts and multipart requests in the bulk lane.
+ *
+ * The response is a JSON array, streamed to the client one abbreviation at a time; each abbreviation is a JSON object
+ * (see {@link JSONwriter#value(Abbreviation)}). Errors are JSON objects with the field error (status 400 for invalid input,
+ * 413 for too large input, 422 for PDFs that cannot be converted, 503 if the server is busy).
+ *
+ * If the extraction exceeds the document deadline (property server.documentTimeoutSeconds, see {@link Deadline}), the
+ * abbreviations found before the deadline are returned, with the headers X-BioAB-Status: TIMEOUT and X-BioAB-Timeout-Stage
+ * (stage of the pipeline that did not complete).
+ *
+ * @author Francesco Ronzano
+ *
+ */
+public class AbbreviationExtractionAPIServlet extends QueuedExtractionServlet {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final Logger logger = LoggerFactory.getLogger(AbbreviationExtractionAPIServlet.class);
+
+	// Maximum number of chars of the texts to analyze (property server.api.maxTextChars)
+	public static final int DEFAULT_MAX_TEXT_CHARS = 1000000;
+
+	public void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+		logger.info("Received API request from IP: " + getClientIp(request));
+		super.doPost(request, response);
+	}
+
+	@Override
+	protected void sendBusy(HttpServletResponse response, long retryAfterSeconds) throws IOException {
+		setJSONcontentType(response);
+		JSONwriter json = new JSONwriter(response.getWriter());
+		json.beginObject();
+		json.name("error").value("BioAB Miner is processing too many requests");
+		json.name("retryAfterSeconds").value(retryAfterSeconds);
+		json.endObject();
+		json.flush();
+	}
+
+	@Override
+	protected void process(HttpServletRequest request, HttpServletResponse response, Deadline deadline) throws ServletException, IOException {
+
+		Document doc = null;
+		try {
+			String contentType = (request.getContentType() != null) ? request.getContentType().toLowerCase() : "";
+
+			// Load the document
+			if(ServletFileUpload.isMultipartContent(request)) {
+				Part PDFpart = request.getPart("pdfFile");
+				Part textPart = request.getPart("text");
+				if(PDFpart != null && PDFpart.getSize() > 0l) {
+					try (InputStream PDFstream = PDFpart.getInputStream()) {
+						doc = GROBIDloader.parsePDF(PDFstream, PDFpart.getName());
+					}
+				}
+				else if(textPart != null && textPart.getSize() > 0l) {
+					try (InputStream textStream = textPart.getInputStream()) {
+						doc = loadText(readText(textStream), response);
+					}
+				}
+				else {
+					sendError(response, HttpServletResponse.SC_BAD_REQUEST, "Specify the text (part text) or the PDF (part pdfFile) to analyze");
+					return;
+				}
+			}
+			else if(contentType.startsWith("application/pdf")) {
+				doc = GROBIDloader.parsePDF(request.getInputStream(), "API_PDF");
+			}
+			else if(contentType.startsWith("text/plain")) {
+				doc = loadText(readText(request.getInputStream()), response);
+			}
+			else {
+				doc = loadText(request.getParameter("text"), response);
+			}
+
+			if(doc == null) {
+				return;
+			}
+
+			BioABminer.extractNLPfeatures(doc, deadline);
+			BioABminer.extractAbbreviations(doc, deadline);
+			List<Abbreviation> abbreviationList = BioABminer.getAbbreviationList(doc);
+
+			if(deadline != null && deadline.isTimedOut()) {
+				logger.warn("API request timed out after " + deadline.getTimeoutMillis() + " ms (stage " + deadline.getTimedOutStage() + "): " + abbreviationList.size() + " abbreviations returned.");
+				response.setHeader("X-BioAB-Status", "TIMEOUT");
+				response.setHeader("X-BioAB-Timeout-Stage", deadline.getTimedOutStage().name().toLowerCase());
+			}
+
+			// Stream the abbreviations
+			setJSONcontentType(response);
+			PrintWriter out = response.getWriter();
+			JSONwriter json = new JSONwriter(out);
+			json.beginArray();
+			int written = 0;
+			for(Abbreviation abbreviation : abbreviationList) {
+				json.value(abbreviation);
+				if(++written % 50 == 0) {
+					json.flush();
+				}
+			}
+			json.endArray();
+			json.flush();
+		}
+		catch(GROBIDconversionException e) {
+			sendError(response, (e.getReason() == GROBIDconversionException.Reason.TOO_LARGE) ? HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE : 422, e.getMessage());
+		}
+		catch(TextTooLongException e) {
+			sendError(response, HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, e.getMessage());
+		}
+		catch(Exception e) {
+			logger.error("Error while processing API request - " + e.getMessage());
+			e.printStackTrace();
+			if(!response.isCommitted()) {
+				sendError(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "An exception occurred while processing data: " + e.getMessage());
+			}
+		}
+		finally {
+			if(doc != null) {
+				Factory.deleteResource(doc);
+			}
+		}
+	}
+
+	private static Document loadText(String text, HttpServletResponse response) throws IOException, TextTooLongException {
+		if(Strings.isNullOrEmpty(text) || text.trim().equals("")) {
+			sendError(response, HttpServletResponse.SC_BAD_REQUEST, "Specify the text to analyze (text parameter or text/plain body)");
+			return null;
+		}
+		if(text.length() > getMaxTextChars()) {
+			throw new TextTooLongException("The text exceeds the maximum length of " + getMaxTextChars() + " chars");
+		}
+		return BioABminer.getDocumentFormText(text);
+	}
+
+	/**
+	 * Read the UTF-8 text from the stream, up to the maximum number of chars
+	 *
+	 * @param textStream
+	 * @return
+	 * @throws IOException
+	 * @throws TextTooLongException
+	 */
+	private static String readText(InputStream textStream) throws IOException, TextTooLongException {
+		int maxTextChars = getMaxTextChars();
+		StringBuilder textSb = new StringBuilder();
+		Reader textReader = new InputStreamReader(textStream, StandardCharsets.UTF_8);
+		char[] buffer = new char[8192];
+		int len;
+		while((len = textReader.read(buffer)) != -1) {
+			if(textSb.length() + len > maxTextChars) {
+				throw new TextTooLongException("The text exceeds the maximum length of " + maxTextChars + " chars");
+			}
+			textSb.append(buffer, 0, len);
+		}
+		return textSb.toString();
+	}
+
+	private static void sendError(HttpServletResponse response, int status, String message) throws IOException {
+		response.setStatus(status);
+		setJSONcontentType(response);
+		JSONwriter json = new JSONwriter(response.getWriter());
+		json.beginObject();
+		json.name("error").value(message);
+		json.endObject();
+		json.flush();
+	}
+
+	private static void setJSONcontentType(HttpServletResponse response) {
+		response.setContentType("application/json");
+		response.setCharacterEncoding("UTF-8");
+	}
+
+	private static int getMaxTextChars() {
+		try {
+			String maxTextChars = PropertyManager.getProperty("server.api.maxTextChars");
+			if(!Strings.isNullOrEmpty(maxTextChars)) {
+				return Integer.valueOf(maxTextChars.trim());
+			}
+		}
+		catch(Exception e) {
+			/* Do nothing */
+		}
+		return DEFAULT_MAX_TEXT_CHARS;
+	}
+
+	private static class TextTooLongException extends Exception {
+		private static final long serialVersionUID = 1L;
+
+		private TextTooLongException(String message) {
+			super(message);
+		}
+	}
+
+}
@@ -4,19 +4,18 @@
  */
 package es.imim.ibi.bioab.server.servlet;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintWriter;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 
 import javax.servlet.ServletException;
-import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.Part;
 
 import org.apache.commons.fileupload.servlet.ServletFileUpload;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -24,9 +23,11 @@ import org.slf4j.LoggerFactory;
 import com.google.common.base.Strings;
 
 import es.imim.ibi.bioab.exec.BioABminer;
+import es.imim.ibi.bioab.exec.Deadline;
 import es.imim.ibi.bioab.exec.pdf.GROBIDloader;
 import es.imim.ibi.bioab.server.template.TemplateUtils;
 import gate.Document;
+import gate.Factory;
 
 
 /**
@@ -35,7 +36,7 @@ import gate.Document;
  * @author Francesco Ronzano
  *
  */
-public class AbbreviationExtractionServlet extends HttpServlet {
+public class AbbreviationExtractionServlet extends QueuedExtractionServlet {
 
 	private static final long serialVersionUID = 1L;
 
@@ -114,23 +115,24 @@ public class AbbreviationExtractionServlet extends HttpServlet {
 		return new ImmutablePair<String, Double>(causeLeft, valueRight);
 	}
 	
-	private static String getClientIp(HttpServletRequest request) {
-        String remoteAddr = "NO_IP";
-
-        if (request != null) {
-            remoteAddr = request.getHeader("X-FORWARDED-FOR");
-            if (remoteAddr == null || "".equals(remoteAddr)) {
-                remoteAddr = request.getRemoteAddr();
-            }
-        }
-
-        return remoteAddr;
-    }
-
 	public void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
 		
 		Date currentDate = new Date();
-		System.out.println("Received Processing request from IP: " + getClientIp(request) + " on " + dateFormat.format(currentDate));
+		logger.info("Received Processing request from IP: " + getClientIp(request) + " on " + dateFormat.format(currentDate));
+		
+		super.doPost(request, response);
+	}
+	
+	@Override
+	protected void sendBusy(HttpServletResponse response, long retryAfterSeconds) throws IOException {
+		PrintWriter out = response.getWriter();
+		out.println(TemplateUtils.generateHTMLwebFormTemplate("BioAB Miner is processing too many requests. Please, try again in " + 
+				retryAfterSeconds + " seconds."));
+		out.flush();
+	}
+	
+	@Override
+	protected void process(HttpServletRequest request, HttpServletResponse response, Deadline deadline) throws ServletException, IOException {
 		
 		PrintWriter out = response.getWriter();
 
@@ -143,14 +145,14 @@ public class AbbreviationExtractionServlet extends HttpServlet {
 			if(textToAnalyze != null && !textToAnalyze.trim().equals("")) {
 				
 				Document doc = BioABminer.getDocumentFormText(textToAnalyze);
-				BioABminer.extractNLPfeatures(doc);
-				BioABminer.extractAbbreviations(doc);
+				BioABminer.extractNLPfeatures(doc, deadline);
+				BioABminer.extractAbbreviations(doc, deadline);
+				logTimeout(deadline);
 				
 				out.println(TemplateUtils.generateHTM_TXTtemplate(doc));
 				out.flush();
 				
-				doc.cleanup();
-				System.gc();
+				Factory.deleteResource(doc);
 			}
 			else {
 				// Error while analyzing text
@@ -172,10 +174,10 @@ public class AbbreviationExtractionServlet extends HttpServlet {
 						checkVarErrors += "Impossible to read PDF file contents" + "\n";
 					}
 					else if(paperFilePart.getSize() >= 5048576l) {
-						out.println(TemplateUtils.generateHTMLwebFormTemplate("Attention: the PDF file uploaded is greater than 5Mb. BioAB Miner "
-								+ "will soon support the on-line analysis of large file. "
-								+ "Currently, you can use the Java tool BioAB miner (https://github.com/fra82/bioabminer) "
-								+ "to performe analysis of this PDF file on your PC."));
+						out.println(TemplateUtils.generateHTMLwebFormTemplate("Attention: the PDF file uploaded is greater than 5Mb. "
+								+ "Large PDF files (and ZIP archives of PDF and text files) can be analyzed by the job API: "
+								+ "POST the file to /bioabminer/api/jobs, then poll /bioabminer/api/jobs/(job id) and "
+								+ "download the results from /bioabminer/api/jobs/(job id)/results."));
 						out.flush();
 						return;
 					}
@@ -186,15 +188,19 @@ public class AbbreviationExtractionServlet extends HttpServlet {
 				
 				if(Strings.isNullOrEmpty(checkVarErrors)) {
 					
-					Document doc = GROBIDloader.parsePDF(IOUtils.toByteArray(paperFilePart.getInputStream()), paperFilePart.getName());
-					BioABminer.extractNLPfeatures(doc);
-					BioABminer.extractAbbreviations(doc);
+					// Stream the upload (stored on disk by the multipart handler) to the scratch file of the conversion
+					Document doc = null;
+					try (InputStream PDFstream = paperFilePart.getInputStream()) {
+						doc = GROBIDloader.parsePDF(PDFstream, paperFilePart.getName());
+					}
+					BioABminer.extractNLPfeatures(doc, deadline);
+					BioABminer.extractAbbreviations(doc, deadline);
+					logTimeout(deadline);
 					
 					out.println(TemplateUtils.generateHTM_PDFtemplate(doc));
 					out.flush();
 					
-					doc.cleanup();
-					System.gc();
+					Factory.deleteResource(doc);
 				}
 				else {
 					out.println(TemplateUtils.generateHTMLwebFormTemplate(checkVarErrors));
@@ -210,6 +216,12 @@ public class AbbreviationExtractionServlet extends HttpServlet {
 		}
 	}
 	
+	private static void logTimeout(Deadline deadline) {
+		if(deadline != null && deadline.isTimedOut()) {
+			logger.warn("Document timed out after " + deadline.getTimeoutMillis() + " ms (stage " + deadline.getTimedOutStage() + "): partial results shown.");
+		}
+	}
+	
 	public void destroy() {
 		// do nothing.
 	}
@@ -0,0 +1,303 @@
+/**
+ * Biomedical Abbreviation Miner (BioAB Miner)
+ *
+ */
+package es.imim.ibi.bioab.server.servlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.backingdata.gateutils.generic.PropertyManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Strings;
+
+import es.imim.ibi.bioab.exec.util.JSONwriter;
+import es.imim.ibi.bioab.server.ServerMetrics;
+import es.imim.ibi.bioab.server.coordinator.WorkerNode;
+import es.imim.ibi.bioab.server.coordinator.WorkerRegistry;
+
+
+/**
+ * Coordinator endpoint: forwards each request, unchanged, to the same path of the least loaded healthy worker (see
+ * {@link WorkerRegistry#choose(Set)}) and streams the answer of the worker back to the client, together with its Retry-After,
+ * X-BioAB-* (e.g. the partial result headers X-BioAB-Status and X-BioAB-Timeout-Stage) and X-Queue-* headers.
+ *
+ * The body of the request is spooled to a temporary file, so that the request can be sent again to another worker if the
+ * chosen worker cannot be reached (connection refused, connect timeout or failure before the whole request was sent), answers
+ * 502 / 504 or is busy (503): up to coordinator.maxAttempts (default 3) workers are tried. If no worker can process the request,
+ * the coordinator answers 503. Once a worker has received the whole request, the request is never sent to another worker, since
+ * the worker may be processing it: if the worker does not answer within coordinator.readTimeoutSeconds the coordinator answers
+ * 504, if the connection fails the coordinator answers 502.
+ *
+ * Configuration properties:
+ *    - coordinator.maxAttempts: maximum number of workers tried for each request (default 3)
+ *    - coordinator.maxRequestMB: maximum size of the body of the requests (default 64)
+ *    - coordinator.connectTimeoutMs: timeout to connect to a worker (default 2000)
+ *    - coordinator.readTimeoutSeconds: timeout to read the answer of a worker (default 600)
+ *
+ * @author Francesco Ronzano
+ *
+ */
+public class CoordinatorProxyServlet extends HttpServlet {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final Logger logger = LoggerFactory.getLogger(CoordinatorProxyServlet.class);
+
+	public static final long DEFAULT_MAX_ATTEMPTS = 3l;
+	public static final long DEFAULT_MAX_REQUEST_MB = 64l;
+	public static final long DEFAULT_CONNECT_TIMEOUT_MS = 2000l;
+	public static final long DEFAULT_READ_TIMEOUT_SECONDS = 600l;
+
+	// Retry-After of the answers sent when no worker is available
+	private static final String noWorkerRetryAfterSeconds = "5";
+
+	public void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+		forward(request, response, null);
+	}
+
+	public void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+		long maxRequestBytes = getLongProperty("coordinator.maxRequestMB", DEFAULT_MAX_REQUEST_MB) * 1024l * 1024l;
+		if(request.getContentLengthLong() > maxRequestBytes) {
+			sendError(response, HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, "The request exceeds the maximum size of " + (maxRequestBytes / (1024l * 1024l)) + " MB", null);
+			return;
+		}
+
+		// Spool the body, to be able to send it again to another worker
+		File bodyFile = Files.createTempFile("bioab-coordinator-", ".body").toFile();
+		try {
+			long bodySize = 0l;
+			byte[] buffer = new byte[65536];
+			try (InputStream bodyIn = request.getInputStream(); OutputStream bodyOut = Files.newOutputStream(bodyFile.toPath())) {
+				int len;
+				while((len = bodyIn.read(buffer)) != -1) {
+					bodySize += len;
+					if(bodySize > maxRequestBytes) {
+						sendError(response, HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, "The request exceeds the maximum size of " + (maxRequestBytes / (1024l * 1024l)) + " MB", null);
+						return;
+					}
+					bodyOut.write(buffer, 0, len);
+				}
+			}
+
+			forward(request, response, bodyFile);
+		}
+		finally {
+			bodyFile.delete();
+		}
+	}
+
+	/**
+	 * Forward the request to the workers, until one of them answers
+	 *
+	 * @param request
+	 * @param response
+	 * @param bodyFile body of the request (null if no body)
+	 * @throws IOException
+	 */
+	private static void forward(HttpServletRequest request, HttpServletResponse response, File bodyFile) throws IOException {
+		long startNanos = System.nanoTime();
+		String endpoint = request.getServletPath();
+		String contentType = (request.getContentType() != null) ? request.getContentType().toLowerCase() : "";
+		String inputKind = (contentType.startsWith("application/pdf") || contentType.startsWith("multipart/")) ? "pdf" : "text";
+		String pathAndQuery = request.getRequestURI() + ((request.getQueryString() != null) ? "?" + request.getQueryString() : "");
+
+		int maxAttempts = (int) Math.max(1l, getLongProperty("coordinator.maxAttempts", DEFAULT_MAX_ATTEMPTS));
+		Set<WorkerNode> triedWorkers = new HashSet<WorkerNode>();
+		for(int attempt = 1; attempt <= maxAttempts; attempt++) {
+			WorkerNode worker = WorkerRegistry.choose(triedWorkers);
+			if(worker == null) {
+				break;
+			}
+			triedWorkers.add(worker);
+
+			HttpURLConnection connection = null;
+			worker.dispatched();
+			try {
+				int status;
+				boolean requestSent = false;
+				try {
+					connection = (HttpURLConnection) new URL(worker.getUrl() + pathAndQuery).openConnection();
+					connection.setRequestMethod(request.getMethod());
+					connection.setConnectTimeout((int) getLongProperty("coordinator.connectTimeoutMs", DEFAULT_CONNECT_TIMEOUT_MS));
+					connection.setReadTimeout((int) (getLongProperty("coordinator.readTimeoutSeconds", DEFAULT_READ_TIMEOUT_SECONDS) * 1000l));
+					connection.setUseCaches(false);
+					connection.setRequestProperty("X-FORWARDED-FOR", QueuedExtractionServlet.getClientIp(request));
+					if(request.getHeader("Accept") != null) {
+						connection.setRequestProperty("Accept", request.getHeader("Accept"));
+					}
+
+					if(bodyFile != null) {
+						connection.setDoOutput(true);
+						if(request.getContentType() != null) {
+							connection.setRequestProperty("Content-Type", request.getContentType());
+						}
+						connection.setFixedLengthStreamingMode(bodyFile.length());
+						try (OutputStream workerOut = connection.getOutputStream()) {
+							Files.copy(bodyFile.toPath(), workerOut);
+						}
+					}
+					else {
+						connection.connect();
+					}
+					requestSent = true;
+
+					status = connection.getResponseCode();
+				}
+				catch(SocketTimeoutException e) {
+					if(!requestSent) {
+						// Connect timeout: the worker did not receive the request
+						logger.warn("Worker " + worker.getUrl() + " not reachable (attempt " + attempt + " / " + maxAttempts + ") - " + e.getMessage());
+						worker.failed();
+						continue;
+					}
+					// Read timeout: the worker may still be processing the request, that is not sent again to another worker
+					logger.warn("Worker " + worker.getUrl() + " did not answer in time (attempt " + attempt + " / " + maxAttempts + ") - " + e.getMessage());
+					ServerMetrics.recordRequest(endpoint, inputKind, "timeout", startNanos);
+					sendError(response, HttpServletResponse.SC_GATEWAY_TIMEOUT, "The BioAB Miner worker did not answer within "
+							+ getLongProperty("coordinator.readTimeoutSeconds", DEFAULT_READ_TIMEOUT_SECONDS) + " seconds", null);
+					return;
+				}
+				catch(IOException e) {
+					if(!requestSent) {
+						// Connection refused / reset before the whole request was sent: try another worker
+						logger.warn("Worker " + worker.getUrl() + " failed before receiving the request (attempt " + attempt + " / " + maxAttempts + ") - " + e.getMessage());
+						worker.failed();
+						continue;
+					}
+					// The worker received the request and may have processed it: the request is not sent again
+					logger.error("Worker " + worker.getUrl() + " failed after receiving the request (attempt " + attempt + " / " + maxAttempts + ") - " + e.getMessage());
+					worker.failed();
+					ServerMetrics.recordRequest(endpoint, inputKind, "failed", startNanos);
+					sendError(response, HttpServletResponse.SC_BAD_GATEWAY, "The BioAB Miner worker failed while processing the request", null);
+					return;
+				}
+
+				if(status == HttpServletResponse.SC_SERVICE_UNAVAILABLE) {
+					// Worker busy: try another one
+					logger.info("Worker " + worker.getUrl() + " busy (attempt " + attempt + " / " + maxAttempts + ").");
+					continue;
+				}
+				if(status == HttpServletResponse.SC_BAD_GATEWAY || status == HttpServletResponse.SC_GATEWAY_TIMEOUT) {
+					logger.warn("Worker " + worker.getUrl() + " answered " + status + " (attempt " + attempt + " / " + maxAttempts + ").");
+					worker.failed();
+					continue;
+				}
+
+				// Stream the answer of the worker to the client
+				response.setStatus(status);
+				if(connection.getContentType() != null) {
+					response.setContentType(connection.getContentType());
+				}
+				copyWorkerHeaders(connection, response);
+				response.setHeader("X-BioAB-Worker", worker.getUrl());
+
+				InputStream workerIn = (status >= 400) ? connection.getErrorStream() : connection.getInputStream();
+				if(workerIn != null) {
+					try (InputStream answerIn = workerIn) {
+						OutputStream clientOut = response.getOutputStream();
+						byte[] buffer = new byte[8192];
+						int len;
+						while((len = answerIn.read(buffer)) != -1) {
+							clientOut.write(buffer, 0, len);
+							if(answerIn.available() == 0) {
+								// Keep the streaming of the worker (e.g. JSON array flushed every 50 abbreviations)
+								clientOut.flush();
+							}
+						}
+						clientOut.flush();
+					}
+					catch(IOException e) {
+						// The answer is partially sent: the request cannot be retried
+						logger.error("Error while streaming the answer of worker " + worker.getUrl() + " - " + e.getMessage());
+						worker.failed();
+						ServerMetrics.recordRequest(endpoint, inputKind, "failed", startNanos);
+						return;
+					}
+				}
+
+				ServerMetrics.recordRequest(endpoint, inputKind, "processed", startNanos);
+				return;
+			}
+			finally {
+				worker.answered();
+				if(connection != null) {
+					connection.disconnect();
+				}
+			}
+		}
+
+		// No worker answered
+		ServerMetrics.recordRequest(endpoint, inputKind, "rejected", startNanos);
+		logger.warn("Request " + pathAndQuery + " not processed: no worker available (" + triedWorkers.size() + " tried, " + WorkerRegistry.getHealthyCount() + " healthy).");
+		sendError(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE, "No BioAB Miner worker is available to process the request", noWorkerRetryAfterSeconds);
+	}
+
+	/**
+	 * Copy to the client the headers of the answer of the worker that the client needs: Retry-After and all the X-BioAB-* and
+	 * X-Queue-* headers (e.g. X-BioAB-Status: TIMEOUT and X-BioAB-Timeout-Stage of the partial results, X-Queue-Depth)
+	 *
+	 * @param connection
+	 * @param response
+	 */
+	private static void copyWorkerHeaders(HttpURLConnection connection, HttpServletResponse response) {
+		for(Map.Entry<String, List<String>> header : connection.getHeaderFields().entrySet()) {
+			String headerName = header.getKey();
+			if(headerName == null || header.getValue() == null) {
+				// Status line
+				continue;
+			}
+			String lowerHeaderName = headerName.toLowerCase();
+			if(lowerHeaderName.equals("retry-after") || lowerHeaderName.startsWith("x-bioab-") || lowerHeaderName.startsWith("x-queue-")) {
+				for(String headerValue : header.getValue()) {
+					response.addHeader(headerName, headerValue);
+				}
+			}
+		}
+	}
+
+	private static void sendError(HttpServletResponse response, int status, String message, String retryAfterSeconds) throws IOException {
+		response.setStatus(status);
+		if(retryAfterSeconds != null) {
+			response.setHeader("Retry-After", retryAfterSeconds);
+		}
+		response.setContentType("application/json");
+		response.setCharacterEncoding("UTF-8");
+		JSONwriter json = new JSONwriter(response.getWriter());
+		json.beginObject();
+		json.name("error").value(message);
+		json.endObject();
+		json.flush();
+	}
+
+	private static long getLongProperty(String propertyName, long defaultValue) {
+		try {
+			String propertyValue = PropertyManager.getProperty(propertyName);
+			if(!Strings.isNullOrEmpty(propertyValue)) {
+				return Long.valueOf(propertyValue.trim());
+			}
+		}
+		catch(Exception e) {
+			/* Do nothing */
+		}
+		return defaultValue;
+	}
+
+}
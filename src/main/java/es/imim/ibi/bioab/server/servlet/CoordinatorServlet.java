@@ -0,0 +1,120 @@
+/**
+ * Biomedical Abbreviation Miner (BioAB Miner)
+ *
+ */
+package es.imim.ibi.bioab.server.servlet;
+
+import java.io.IOException;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Strings;
+
+import es.imim.ibi.bioab.exec.util.JSONwriter;
+import es.imim.ibi.bioab.server.coordinator.WorkerNode;
+import es.imim.ibi.bioab.server.coordinator.WorkerRegistry;
+
+
+/**
+ * Management endpoints of the coordinator:
+ *    - POST /bioabminer/coordinator/register?url=(worker base URL): register a worker (or refresh its registration); the worker
+ *    has to send the registration token in the header {@link WorkerRegistry#registrationTokenHeader} or run on an allowed host,
+ *    otherwise the registration is refused (status 403), see {@link WorkerRegistry#register(String, String)}
+ *    - GET /bioabminer/coordinator/workers: status and load of the registered workers
+ *    - GET /ready: status 200 if at least one worker is healthy, 503 otherwise
+ *
+ * @author Francesco Ronzano
+ *
+ */
+public class CoordinatorServlet extends HttpServlet {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final Logger logger = LoggerFactory.getLogger(CoordinatorServlet.class);
+
+	public static final String coordinatorPath = "/bioabminer/coordinator";
+	public static final String registerPath = coordinatorPath + "/register";
+
+	public void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+		if(!registerPath.equals(request.getServletPath() + Strings.nullToEmpty(request.getPathInfo()))) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+
+		String workerURL = request.getParameter("url");
+		setJSONcontentType(response);
+		JSONwriter json = new JSONwriter(response.getWriter());
+		json.beginObject();
+		try {
+			if(Strings.isNullOrEmpty(workerURL)) {
+				throw new IllegalArgumentException("Specify the base URL of the worker (parameter url)");
+			}
+			WorkerNode worker = WorkerRegistry.register(workerURL, request.getHeader(WorkerRegistry.registrationTokenHeader));
+			json.name("registered").value(worker.getUrl());
+		}
+		catch(SecurityException e) {
+			logger.warn("Worker registration of " + workerURL + " from " + QueuedExtractionServlet.getClientIp(request) + " refused - " + e.getMessage());
+			response.setStatus(HttpServletResponse.SC_FORBIDDEN);
+			json.name("error").value("Registration refused");
+		}
+		catch(IllegalArgumentException e) {
+			logger.warn("Invalid worker registration from " + QueuedExtractionServlet.getClientIp(request) + " - " + e.getMessage());
+			response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+			json.name("error").value(e.getMessage());
+		}
+		json.endObject();
+		json.flush();
+	}
+
+	public void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+		String path = request.getServletPath() + Strings.nullToEmpty(request.getPathInfo());
+		setJSONcontentType(response);
+		response.setHeader("Cache-Control", "no-cache");
+
+		if(path.equals("/ready")) {
+			int healthyWorkers = WorkerRegistry.getHealthyCount();
+			response.setStatus((healthyWorkers > 0) ? HttpServletResponse.SC_OK : HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+			JSONwriter json = new JSONwriter(response.getWriter());
+			json.beginObject();
+			json.name("status").value((healthyWorkers > 0) ? "READY" : "NO_WORKERS");
+			json.name("healthyWorkers").value(healthyWorkers);
+			json.endObject();
+			json.flush();
+		}
+		else if(path.equals(coordinatorPath + "/workers")) {
+			JSONwriter json = new JSONwriter(response.getWriter());
+			json.beginArray();
+			for(WorkerNode worker : WorkerRegistry.getWorkers()) {
+				json.beginObject();
+				json.name("url").value(worker.getUrl());
+				json.name("healthy").value(worker.isHealthy());
+				json.name("load").value(worker.getLoad());
+				json.name("inFlight").value(worker.getInFlight());
+				json.name("queued").value(worker.getReportedQueued());
+				json.name("workers").value(worker.getReportedWorkers());
+				json.name("dispatched").value(worker.getDispatchedCount());
+				json.name("failed").value(worker.getFailedCount());
+				json.name("consecutiveFailures").value(worker.getConsecutiveFailures());
+				json.name("lastCheck").value(worker.getLastCheck());
+				json.endObject();
+			}
+			json.endArray();
+			json.flush();
+		}
+		else {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+		}
+	}
+
+	private static void setJSONcontentType(HttpServletResponse response) {
+		response.setContentType("application/json");
+		response.setCharacterEncoding("UTF-8");
+	}
+
+}
@@ -0,0 +1,381 @@
+/**
+ * Biomedical Abbreviation Miner (BioAB Miner)
+ *
+ */
+package es.imim.ibi.bioab.server.servlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.Part;
+
+import org.apache.commons.fileupload.servlet.ServletFileUpload;
+import org.backingdata.gateutils.generic.PropertyManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Strings;
+
+import es.imim.ibi.bioab.exec.util.JSONwriter;
+import es.imim.ibi.bioab.server.ServerMetrics;
+import es.imim.ibi.bioab.server.job.ExtractionJob;
+import es.imim.ibi.bioab.server.job.ExtractionJobManager;
+
+
+/**
+ * Job API to analyze large PDFs and ZIP archives of PDF and text files (see {@link ExtractionJobManager}):
+ *    - POST /bioabminer/api/jobs: create a job from the request body (application/pdf, application/zip or text/plain, file
+ *      name in the parameter name) or from the multipart part file; answers 202 with the id of the job
+ *    - GET /bioabminer/api/jobs/(job id): status and progress of the job
+ *    - GET /bioabminer/api/jobs/(job id)/results: results of the job as NDJSON (one JSON object per item), streamed to the
+ *      client as soon as the items are processed, until the job is finished or server.jobs.resultsStreamTimeoutSeconds
+ *      (default 600) elapse
+ *
+ * The results are streamed in async mode with non-blocking writes, so that the clients following running jobs do not hold
+ * the request threads of the server: the servlet has to be registered with async support.
+ *
+ * @author Francesco Ronzano
+ *
+ */
+public class ExtractionJobServlet extends HttpServlet {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final Logger logger = LoggerFactory.getLogger(ExtractionJobServlet.class);
+
+	public static final String jobsPath = "/bioabminer/api/jobs";
+	public static final long DEFAULT_RESULTS_STREAM_TIMEOUT_SECONDS = 600l;
+	public static final long RESULTS_POLL_SECONDS = 5l;
+
+	// Writes the results streams (writes never block, so that few threads serve all the streams)
+	private static final ScheduledExecutorService resultsStreamExecutor = Executors.newScheduledThreadPool(2, new ThreadFactory() {
+		private final AtomicInteger threadCount = new AtomicInteger(0);
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread streamThread = new Thread(runnable, "BioAB-job-results-stream-" + threadCount.incrementAndGet());
+			streamThread.setDaemon(true);
+			return streamThread;
+		}
+	});
+
+	public void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+		logger.info("Received job request from IP: " + QueuedExtractionServlet.getClientIp(request));
+
+		long startNanos = System.nanoTime();
+		String inputKind = "unknown";
+		try {
+			ExtractionJob job = null;
+			if(ServletFileUpload.isMultipartContent(request)) {
+				Part filePart = request.getPart("file");
+				if(filePart == null || filePart.getSize() <= 0l) {
+					ServerMetrics.recordRequest(jobsPath, inputKind, "invalid", startNanos);
+					sendError(response, HttpServletResponse.SC_BAD_REQUEST, "Specify the PDF, text or ZIP file to analyze (part file)");
+					return;
+				}
+				inputKind = getInputKind(filePart.getSubmittedFileName(), filePart.getContentType());
+				try (InputStream fileStream = filePart.getInputStream()) {
+					job = ExtractionJobManager.createJob(fileStream, filePart.getSubmittedFileName(), filePart.getContentType());
+				}
+			}
+			else {
+				inputKind = getInputKind(request.getParameter("name"), request.getContentType());
+				job = ExtractionJobManager.createJob(request.getInputStream(), request.getParameter("name"), request.getContentType());
+			}
+			ServerMetrics.recordRequest(jobsPath, inputKind, "accepted", startNanos);
+
+			response.setStatus(HttpServletResponse.SC_ACCEPTED);
+			response.setHeader("Location", jobsPath + "/" + job.getId());
+			setJSONcontentType(response);
+			JSONwriter json = new JSONwriter(response.getWriter());
+			writeJob(json, job);
+			json.flush();
+		}
+		catch(IllegalArgumentException e) {
+			ServerMetrics.recordRequest(jobsPath, inputKind, "invalid", startNanos);
+			sendError(response, HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+		}
+		catch(Exception e) {
+			ServerMetrics.recordRequest(jobsPath, inputKind, "failed", startNanos);
+			logger.error("Error while creating job - " + e.getMessage());
+			e.printStackTrace();
+			sendError(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "An exception occurred while creating the job: " + e.getMessage());
+		}
+	}
+
+	public void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+		// Path info: /(job id) or /(job id)/results
+		String pathInfo = (request.getPathInfo() != null) ? request.getPathInfo() : "";
+		String[] pathElements = pathInfo.replaceAll("^/+", "").split("/");
+		ExtractionJob job = ExtractionJobManager.getJob(pathElements[0]);
+		if(job == null) {
+			sendError(response, HttpServletResponse.SC_NOT_FOUND, "Job not found");
+			return;
+		}
+
+		if(pathElements.length == 1) {
+			setJSONcontentType(response);
+			response.setHeader("Cache-Control", "no-cache");
+			JSONwriter json = new JSONwriter(response.getWriter());
+			writeJob(json, job);
+			json.flush();
+		}
+		else if(pathElements.length == 2 && pathElements[1].equals("results")) {
+			streamResults(job, request, response);
+		}
+		else {
+			sendError(response, HttpServletResponse.SC_NOT_FOUND, "Unknown job resource " + pathInfo);
+		}
+	}
+
+	/**
+	 * Stream the complete lines of the results file of the job until the job is finished, without holding the request thread:
+	 * the request is switched to async mode and the lines are written by a {@link ResultsStream} when the job is updated
+	 * (and at least every {@link #RESULTS_POLL_SECONDS} seconds), as soon as the client can receive them
+	 *
+	 * @param job
+	 * @param request
+	 * @param response
+	 * @throws IOException
+	 */
+	private static void streamResults(ExtractionJob job, HttpServletRequest request, HttpServletResponse response) throws IOException {
+		response.setContentType("application/x-ndjson");
+		response.setCharacterEncoding("UTF-8");
+		response.setHeader("Cache-Control", "no-cache");
+
+		long timeoutMs = getResultsStreamTimeoutSeconds() * 1000l;
+		AsyncContext asyncContext = request.startAsync();
+		// The stream ends by itself after timeoutMs: the async timeout only covers a stalled client
+		asyncContext.setTimeout(timeoutMs + 60000l);
+
+		new ResultsStream(job, asyncContext, response.getOutputStream(), System.currentTimeMillis() + timeoutMs).start();
+	}
+
+	/**
+	 * Non-blocking stream of the results file of a job (Servlet 3.1 async IO): {@link #send()} writes the complete lines not
+	 * sent yet while the client can receive them, and completes the request when the job is finished and all its lines
+	 * have been sent, or when the stream timeout elapses
+	 */
+	private static class ResultsStream implements WriteListener, AsyncListener {
+		private final ExtractionJob job;
+		private final AsyncContext asyncContext;
+		private final ServletOutputStream out;
+		private final long deadline;
+		private final byte[] buffer = new byte[65536];
+		private final Runnable updateListener = () -> resultsStreamExecutor.execute(this::send);
+
+		private long position = 0l;
+		private boolean ended = false;
+		private ScheduledFuture<?> poll = null;
+
+		private ResultsStream(ExtractionJob job, AsyncContext asyncContext, ServletOutputStream out, long deadline) {
+			this.job = job;
+			this.asyncContext = asyncContext;
+			this.out = out;
+			this.deadline = deadline;
+		}
+
+		/**
+		 * Start the stream: the first lines are written when the container calls onWritePossible
+		 */
+		private synchronized void start() {
+			asyncContext.addListener(this);
+			job.addUpdateListener(updateListener);
+			poll = resultsStreamExecutor.scheduleWithFixedDelay(this::send, RESULTS_POLL_SECONDS, RESULTS_POLL_SECONDS, TimeUnit.SECONDS);
+			out.setWriteListener(this);
+		}
+
+		/**
+		 * Write the complete lines not sent yet, while the client can receive them
+		 */
+		private synchronized void send() {
+			if(ended) {
+				return;
+			}
+
+			try {
+				while(out.isReady()) {
+					// Read the status before the results, so that the results appended before the end of the job are sent
+					boolean finished = job.isFinished();
+
+					int sendLen = readCompleteLines();
+					if(sendLen > 0) {
+						out.write(buffer, 0, sendLen);
+						position += sendLen;
+						continue;
+					}
+
+					if(finished || System.currentTimeMillis() > deadline) {
+						end();
+					}
+					else if(out.isReady()) {
+						out.flush();
+					}
+					// Otherwise the container calls onWritePossible when the client can receive more data
+					return;
+				}
+			}
+			catch(IOException e) {
+				logger.debug("Results stream of job " + job.getId() + " interrupted - " + e.getMessage());
+				end();
+			}
+		}
+
+		/**
+		 * Read into the buffer the results from the position of the stream, up to the end of the last complete line
+		 *
+		 * @return number of bytes to send (0 if no complete line is available)
+		 * @throws IOException
+		 */
+		private int readCompleteLines() throws IOException {
+			if(!job.getResultsFile().exists()) {
+				return 0;
+			}
+
+			try (RandomAccessFile resultsRAF = new RandomAccessFile(job.getResultsFile(), "r")) {
+				long length = resultsRAF.length();
+				if(position >= length) {
+					return 0;
+				}
+				resultsRAF.seek(position);
+				int len = resultsRAF.read(buffer, 0, (int) Math.min(buffer.length, length - position));
+				if(len <= 0) {
+					return 0;
+				}
+
+				// Only send up to the end of the last complete line
+				int sendLen = len;
+				while(sendLen > 0 && buffer[sendLen - 1] != '\n') {
+					sendLen--;
+				}
+				if(sendLen == 0 && len == buffer.length) {
+					// Line longer than the buffer
+					sendLen = len;
+				}
+				return sendLen;
+			}
+		}
+
+		private synchronized void end() {
+			if(ended) {
+				return;
+			}
+			ended = true;
+			job.removeUpdateListener(updateListener);
+			if(poll != null) {
+				poll.cancel(false);
+			}
+			try {
+				asyncContext.complete();
+			}
+			catch(IllegalStateException e) {
+				/* Already completed by the container */
+			}
+		}
+
+		@Override
+		public void onWritePossible() throws IOException {
+			send();
+		}
+
+		@Override
+		public void onError(Throwable t) {
+			logger.debug("Results stream of job " + job.getId() + " interrupted - " + t.getMessage());
+			end();
+		}
+
+		@Override
+		public void onComplete(AsyncEvent event) throws IOException {
+			end();
+		}
+
+		@Override
+		public void onTimeout(AsyncEvent event) throws IOException {
+			end();
+		}
+
+		@Override
+		public void onError(AsyncEvent event) throws IOException {
+			end();
+		}
+
+		@Override
+		public void onStartAsync(AsyncEvent event) throws IOException {
+			/* Do nothing */
+		}
+	}
+
+	private static String getInputKind(String fileName, String contentType) {
+		String lowerFileName = (fileName != null) ? fileName.toLowerCase() : "";
+		String lowerContentType = (contentType != null) ? contentType.toLowerCase() : "";
+		if(lowerFileName.endsWith(".zip") || lowerContentType.startsWith("application/zip")) {
+			return "zip";
+		}
+		if(lowerFileName.endsWith(".pdf") || lowerContentType.startsWith("application/pdf")) {
+			return "pdf";
+		}
+		return "text";
+	}
+
+	private static void writeJob(JSONwriter json, ExtractionJob job) throws IOException {
+		json.beginObject();
+		json.name("jobId").value(job.getId());
+		json.name("status").value(job.getStatus().name());
+		json.name("items").value(job.getItemCount());
+		json.name("completed").value(job.getCompletedCount());
+		json.name("failed").value(job.getFailedCount());
+		json.name("created").value(job.getCreated());
+		json.name("updated").value(job.getUpdated());
+		if(job.getError() != null) {
+			json.name("error").value(job.getError());
+		}
+		json.name("statusUrl").value(jobsPath + "/" + job.getId());
+		json.name("resultsUrl").value(jobsPath + "/" + job.getId() + "/results");
+		json.endObject();
+	}
+
+	private static void sendError(HttpServletResponse response, int status, String message) throws IOException {
+		response.setStatus(status);
+		setJSONcontentType(response);
+		JSONwriter json = new JSONwriter(response.getWriter());
+		json.beginObject();
+		json.name("error").value(message);
+		json.endObject();
+		json.flush();
+	}
+
+	private static void setJSONcontentType(HttpServletResponse response) {
+		response.setContentType("application/json");
+		response.setCharacterEncoding("UTF-8");
+	}
+
+	private static long getResultsStreamTimeoutSeconds() {
+		try {
+			String timeoutSeconds = PropertyManager.getProperty("server.jobs.resultsStreamTimeoutSeconds");
+			if(!Strings.isNullOrEmpty(timeoutSeconds)) {
+				return Long.valueOf(timeoutSeconds.trim());
+			}
+		}
+		catch(Exception e) {
+			/* Do nothing */
+		}
+		return DEFAULT_RESULTS_STREAM_TIMEOUT_SECONDS;
+	}
+
+}
@@ -0,0 +1,33 @@
+/**
+ * Biomedical Abbreviation Miner (BioAB Miner)
+ *
+ */
+package es.imim.ibi.bioab.server.servlet;
+
+import java.io.IOException;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import es.imim.ibi.bioab.server.ServerMetrics;
+
+
+/**
+ * Metrics of the server in the Prometheus text format (GET /bioabminer/metrics), see {@link ServerMetrics}
+ *
+ * @author Francesco Ronzano
+ *
+ */
+public class MetricsServlet extends HttpServlet {
+
+	private static final long serialVersionUID = 1L;
+
+	public void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+		response.setContentType(ServerMetrics.contentType);
+		response.setHeader("Cache-Control", "no-cache");
+		ServerMetrics.write(response.getWriter());
+	}
+
+}
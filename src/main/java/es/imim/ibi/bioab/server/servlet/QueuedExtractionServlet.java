@@ -0,0 +1,207 @@
+/**
+ * Biomedical Abbreviation Miner (BioAB Miner)
+ *
+ */
+package es.imim.ibi.bioab.server.servlet;
+
+import java.io.IOException;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.Part;
+
+import org.backingdata.gateutils.generic.PropertyManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Strings;
+
+import es.imim.ibi.bioab.exec.Deadline;
+import es.imim.ibi.bioab.server.ExtractionQueue;
+import es.imim.ibi.bioab.server.ServerMetrics;
+
+/**
+ * Servlet processing its POST requests on the workers of the {@link ExtractionQueue} (Servlet 3 async mode): the request
+ * thread is released as soon as the request is queued.
+ *
+ * Each request is queued in the lane of the extraction queue returned by {@link #getLane(HttpServletRequest)}: PDFs and long
+ * texts in the bulk lane, short texts in the interactive lane.
+ *
+ * If the queue of the lane is full, or if the request waits in queue longer than server.maxQueueWaitSeconds (default 80),
+ * the request is not processed and {@link #sendBusy(HttpServletResponse, long)} answers 503 with the headers Retry-After
+ * and X-Queue-Depth.
+ *
+ * Each request is recorded in the {@link ServerMetrics}.
+ *
+ * The servlet has to be registered with async support.
+ *
+ * @author Francesco Ronzano
+ *
+ */
+public abstract class QueuedExtractionServlet extends HttpServlet {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final Logger logger = LoggerFactory.getLogger(QueuedExtractionServlet.class);
+
+	// Requests waiting in queue longer than this are answered 503 (property server.maxQueueWaitSeconds)
+	public static final long DEFAULT_MAX_QUEUE_WAIT_SECONDS = 80l;
+
+	public void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+
+		// Process the request on a worker of the extraction queue, releasing the request thread
+		long startNanos = System.nanoTime();
+		String endpoint = request.getServletPath();
+		AsyncContext asyncContext = request.startAsync();
+		asyncContext.setTimeout(0l);
+		long queuedTime = System.currentTimeMillis();
+		ExtractionQueue.Lane lane = getLane(request);
+		try {
+			ExtractionQueue.submit(lane, () -> {
+				HttpServletResponse asyncResponse = (HttpServletResponse) asyncContext.getResponse();
+				try {
+					// Requests waiting in queue longer than the client can wait are not processed
+					long queueWaitMs = System.currentTimeMillis() - queuedTime;
+					if(queueWaitMs > getMaxQueueWaitSeconds() * 1000l) {
+						logger.warn("Request not processed: waited " + queueWaitMs + " ms in queue.");
+						setBusyHeaders(asyncResponse, lane);
+						sendBusy(asyncResponse, ExtractionQueue.getRetryAfterSeconds(lane));
+						ServerMetrics.recordRequest(endpoint, "unknown", "expired", -1l);
+						return;
+					}
+
+					HttpServletRequest asyncRequest = (HttpServletRequest) asyncContext.getRequest();
+					Deadline deadline = ExtractionQueue.newDocumentDeadline();
+					process(asyncRequest, asyncResponse, deadline);
+					ServerMetrics.recordRequest(endpoint, getInputKind(asyncRequest), (deadline != null && deadline.isTimedOut()) ? "timeout" : "processed", startNanos);
+				}
+				catch(Throwable e) {
+					// Errors too (e.g. OutOfMemoryError, StackOverflowError on a pathological document): the client gets a 500
+					logger.error("Error while processing request - " + e.getMessage(), e);
+					ServerMetrics.recordRequest(endpoint, getInputKind((HttpServletRequest) asyncContext.getRequest()), "failed", startNanos);
+					if(!asyncResponse.isCommitted()) {
+						try {
+							asyncResponse.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+						}
+						catch(IOException | IllegalStateException sendException) {
+							logger.debug("Impossible to send the error response - " + sendException.getMessage());
+						}
+					}
+				}
+				finally {
+					asyncContext.complete();
+				}
+			});
+		}
+		catch(RejectedExecutionException e) {
+			// Queue full: answer immediately
+			logger.warn("Request rejected, queue full - " + ExtractionQueue.getStatus());
+			setBusyHeaders(response, lane);
+			sendBusy(response, ExtractionQueue.getRetryAfterSeconds(lane));
+			ServerMetrics.recordRequest(endpoint, "unknown", "rejected", -1l);
+			asyncContext.complete();
+		}
+	}
+
+	/**
+	 * Process the request, on a worker of the extraction queue
+	 *
+	 * @param request
+	 * @param response
+	 * @param deadline deadline of the extraction, started when the request is taken from the queue (null for no deadline)
+	 * @throws ServletException
+	 * @throws IOException
+	 */
+	protected abstract void process(HttpServletRequest request, HttpServletResponse response, Deadline deadline) throws ServletException, IOException;
+
+	/**
+	 * Write the body of the 503 response to a request that has not been processed (status and headers are already set)
+	 *
+	 * @param response
+	 * @param retryAfterSeconds estimate of the seconds to wait before retrying
+	 * @throws IOException
+	 */
+	protected abstract void sendBusy(HttpServletResponse response, long retryAfterSeconds) throws IOException;
+
+	/**
+	 * Lane of the extraction queue of the request, decided from the headers before reading the body: bulk for PDFs (body
+	 * application/pdf or multipart upload) and for texts longer than server.lanes.interactiveMaxChars or of unknown length
+	 * (chunked), interactive for the other texts
+	 *
+	 * @param request
+	 * @return
+	 */
+	protected ExtractionQueue.Lane getLane(HttpServletRequest request) {
+		String contentType = (request.getContentType() != null) ? request.getContentType().toLowerCase() : "";
+		if(contentType.startsWith("application/pdf") || contentType.startsWith("multipart/")) {
+			return ExtractionQueue.Lane.BULK;
+		}
+		return ExtractionQueue.getTextLane(request.getContentLengthLong());
+	}
+
+	/**
+	 * Kind of input of the request, for the server metrics: pdf if the request contains a PDF (body or part pdfFile), text otherwise
+	 *
+	 * @param request
+	 * @return
+	 */
+	protected String getInputKind(HttpServletRequest request) {
+		String contentType = (request.getContentType() != null) ? request.getContentType().toLowerCase() : "";
+		if(contentType.startsWith("application/pdf")) {
+			return "pdf";
+		}
+		if(contentType.startsWith("multipart/")) {
+			try {
+				Part PDFpart = request.getPart("pdfFile");
+				return (PDFpart != null && PDFpart.getSize() > 0l) ? "pdf" : "text";
+			}
+			catch(Exception e) {
+				return "unknown";
+			}
+		}
+		return "text";
+	}
+
+	/**
+	 * Set status 503, the estimate of the seconds to wait before retrying (Retry-After) and the depth of the queue of the lane (X-Queue-Depth)
+	 *
+	 * @param response
+	 * @param lane
+	 */
+	private static void setBusyHeaders(HttpServletResponse response, ExtractionQueue.Lane lane) {
+		response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+		response.setHeader("Retry-After", String.valueOf(ExtractionQueue.getRetryAfterSeconds(lane)));
+		response.setHeader("X-Queue-Depth", String.valueOf(ExtractionQueue.getQueueDepth(lane)));
+	}
+
+	private static long getMaxQueueWaitSeconds() {
+		try {
+			String maxQueueWaitSeconds = PropertyManager.getProperty("server.maxQueueWaitSeconds");
+			if(!Strings.isNullOrEmpty(maxQueueWaitSeconds)) {
+				return Long.valueOf(maxQueueWaitSeconds.trim());
+			}
+		}
+		catch(Exception e) {
+			/* Do nothing */
+		}
+		return DEFAULT_MAX_QUEUE_WAIT_SECONDS;
+	}
+
+	protected static String getClientIp(HttpServletRequest request) {
+        String remoteAddr = "NO_IP";
+
+        if (request != null) {
+            remoteAddr = request.getHeader("X-FORWARDED-FOR");
+            if (remoteAddr == null || "".equals(remoteAddr)) {
+                remoteAddr = request.getRemoteAddr();
+            }
+        }
+
+        return remoteAddr;
+    }
+
+}
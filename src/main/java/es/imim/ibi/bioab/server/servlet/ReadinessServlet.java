@@ -0,0 +1,46 @@
+/**
+ * Biomedical Abbreviation Miner (BioAB Miner)
+ *
+ */
+package es.imim.ibi.bioab.server.servlet;
+
+import java.io.IOException;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import es.imim.ibi.bioab.exec.util.JSONwriter;
+import es.imim.ibi.bioab.server.ServerWarmup;
+
+
+/**
+ * Readiness probe (GET /ready): status 200 once the warm-up of the server is completed (see {@link ServerWarmup}), 503 before.
+ * The body is a JSON object with the status (READY or WARMING_UP) and the progress of the warm-up.
+ *
+ * @author Francesco Ronzano
+ *
+ */
+public class ReadinessServlet extends HttpServlet {
+
+	private static final long serialVersionUID = 1L;
+
+	public void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+		boolean ready = ServerWarmup.isReady();
+		response.setStatus((ready) ? HttpServletResponse.SC_OK : HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+		response.setContentType("application/json");
+		response.setCharacterEncoding("UTF-8");
+		response.setHeader("Cache-Control", "no-cache");
+
+		JSONwriter json = new JSONwriter(response.getWriter());
+		json.beginObject();
+		json.name("status").value((ready) ? "READY" : "WARMING_UP");
+		json.name("warmupIterations").value(ServerWarmup.getIterations());
+		json.name("warmupIterationsCompleted").value(ServerWarmup.getCompletedIterations());
+		json.name("lastWarmupIterationMs").value(ServerWarmup.getLastIterationMs());
+		json.endObject();
+		json.flush();
+	}
+
+}
@@ -0,0 +1,52 @@
+/**
+ * Biomedical Abbreviation Miner (BioAB Miner)
+ *
+ */
+package es.imim.ibi.bioab.server.servlet;
+
+import java.io.IOException;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import es.imim.ibi.bioab.exec.util.JSONwriter;
+import es.imim.ibi.bioab.server.ExtractionQueue;
+import es.imim.ibi.bioab.server.ServerWarmup;
+import es.imim.ibi.bioab.server.job.ExtractionJobManager;
+
+
+/**
+ * Status of the server (GET /bioabminer/api/status), read by the coordinator to check the health and the load of its workers:
+ * a flat JSON object with the readiness of the server, the number of workers of the extraction queue, the requests being
+ * processed and queued (overall and by lane) and the pending jobs.
+ *
+ * @author Francesco Ronzano
+ *
+ */
+public class StatusServlet extends HttpServlet {
+
+	private static final long serialVersionUID = 1L;
+
+	public static final String statusPath = "/bioabminer/api/status";
+
+	public void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+		response.setContentType("application/json");
+		response.setCharacterEncoding("UTF-8");
+		response.setHeader("Cache-Control", "no-cache");
+
+		JSONwriter json = new JSONwriter(response.getWriter());
+		json.beginObject();
+		json.name("ready").value(ServerWarmup.isReady());
+		json.name("workers").value(ExtractionQueue.getWorkers());
+		json.name("active").value(ExtractionQueue.getActiveCount());
+		json.name("queued").value(ExtractionQueue.getQueueDepth());
+		json.name("interactiveQueued").value(ExtractionQueue.getQueueDepth(ExtractionQueue.Lane.INTERACTIVE));
+		json.name("bulkQueued").value(ExtractionQueue.getQueueDepth(ExtractionQueue.Lane.BULK));
+		json.name("jobsPending").value(ExtractionJobManager.getPendingJobCount());
+		json.endObject();
+		json.flush();
+	}
+
+}
@@ -56,7 +56,7 @@ public class WebFormManagerServlet extends HttpServlet {
 	public void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
 		
 		Date currentDate = new Date();
-		System.out.println("Received Form request from IP: " + getClientIp(request) + " on " + dateFormat.format(currentDate));
+		logger.info("Received Form request from IP: " + getClientIp(request) + " on " + dateFormat.format(currentDate));
 		
 		PrintWriter out = response.getWriter();
 		out.println(TemplateUtils.generateHTMLwebFormTemplate(null));